@@ -314,4 +314,173 @@ ALTER TABLE incoming_product_variant_details
     ADD CONSTRAINT fk_product_variants_to_incoming_product_variant_details
     FOREIGN KEY (product_variant_id) REFERENCES product_variants (id);
 
-SELECT * FROM incoming_product_variant_details;
\ No newline at end of file
+SELECT * FROM incoming_product_variant_details;
+
+# keyset pagination for product list, seek on (name, id)
+CREATE INDEX idx_products_name_id ON products (name, id);
+
+# denormalized read model for the product list, maintained by the application on every product/category/photo write
+CREATE TABLE IF NOT EXISTS product_list_view (
+    id INT NOT NULL,
+    name VARCHAR(100) NOT NULL,
+    description TEXT NOT NULL,
+    category_id INT NOT NULL,
+    category_name VARCHAR(100) NOT NULL,
+    image_location VARCHAR(255),
+    PRIMARY KEY (id),
+    INDEX idx_product_list_view_name_id (name, id),
+    INDEX idx_product_list_view_category_id (category_id)
+) ENGINE = InnoDB;
+
+# populate it once from the existing data, afterwards use the --rebuild-product-list-view command
+INSERT INTO product_list_view (id, name, description, category_id, category_name, image_location)
+SELECT p.id,
+       p.name,
+       p.description,
+       c.id,
+       c.name,
+       (SELECT pp.image_location FROM product_photos pp WHERE pp.product_id = p.id ORDER BY pp.id ASC LIMIT 1)
+FROM products p
+JOIN categories c ON p.category_id = c.id;
+
+SELECT * FROM product_list_view;
+
+# append-only stock ledger, one row per stock change of a product (product_variant_id is null) or a product variant
+# no foreign keys, the history is kept after a product or variant is deleted
+CREATE TABLE IF NOT EXISTS stock_movements (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    product_id INT NOT NULL,
+    product_variant_id INT,
+    delta INT NOT NULL,
+    source_type VARCHAR(50) NOT NULL,
+    source_id INT,
+    created_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id),
+    INDEX idx_stock_movements_product_id_created_at (product_id, created_at),
+    INDEX idx_stock_movements_created_at (created_at)
+) ENGINE = InnoDB;
+
+# stock per product/variant at each snapshot boundary, written by the stock snapshot job for items that moved since the previous boundary
+CREATE TABLE IF NOT EXISTS stock_snapshots (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    product_id INT NOT NULL,
+    product_variant_id INT,
+    stock INT NOT NULL,
+    snapshot_at TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (id),
+    INDEX idx_stock_snapshots_product_id_snapshot_at (product_id, product_variant_id, snapshot_at),
+    INDEX idx_stock_snapshots_snapshot_at (snapshot_at)
+) ENGINE = InnoDB;
+
+# open the ledger with the current stock, so the sum of the movements of an item is its stock
+INSERT INTO stock_movements (product_id, product_variant_id, delta, source_type, source_id, created_at)
+SELECT p.id, NULL, p.stock, 'OPENING_BALANCE', NULL, CURRENT_TIMESTAMP(6)
+FROM products p
+WHERE p.has_variant = FALSE AND p.stock IS NOT NULL AND p.stock <> 0;
+
+INSERT INTO stock_movements (product_id, product_variant_id, delta, source_type, source_id, created_at)
+SELECT pv.product_id, pv.id, pv.stock, 'OPENING_BALANCE', NULL, CURRENT_TIMESTAMP(6)
+FROM product_variants pv
+WHERE pv.stock IS NOT NULL AND pv.stock <> 0;
+
+SELECT * FROM stock_movements;
+
+# one snapshot per item and boundary, the generated key makes the null variant of a product without variant comparable
+ALTER TABLE stock_snapshots
+    ADD COLUMN product_variant_key INT AS (COALESCE(product_variant_id, 0)) STORED,
+    ADD CONSTRAINT uk_stock_snapshots_item_snapshot_at UNIQUE (product_id, product_variant_key, snapshot_at);
+
+DROP INDEX idx_stock_snapshots_product_id_snapshot_at ON stock_snapshots;
+
+# stock movement writers hold a shared lock on this row from stamping created_at until commit, the stock snapshot job
+# takes it exclusively to wait for every movement stamped before its boundary, so no movement commits into a closed period
+CREATE TABLE IF NOT EXISTS stock_movement_barrier (
+    id INT NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+INSERT INTO stock_movement_barrier (id) VALUES (1);
+
+# stock movements whose stock column increment is still queued in the stock coalescing writer,
+# the writer deletes the marker in the same transaction as the increment
+CREATE TABLE IF NOT EXISTS pending_stock_movements (
+    stock_movement_id BIGINT NOT NULL,
+    PRIMARY KEY (stock_movement_id)
+) ENGINE = InnoDB;
+
+# ids of every table with a generated id are handed out in blocks of 50 by the application (pooled table generator),
+# so inserts can be sent as JDBC batches. next_val is the highest id of the block handed out next, so the seed is
+# the current highest id plus the block size. Sequence names match the table names.
+CREATE TABLE IF NOT EXISTS id_generators (
+    sequence_name VARCHAR(100) NOT NULL,
+    next_val BIGINT NOT NULL,
+    PRIMARY KEY (sequence_name)
+) ENGINE = InnoDB;
+
+INSERT INTO id_generators (sequence_name, next_val)
+SELECT 'suppliers', COALESCE(MAX(id), 0) + 50 FROM suppliers
+UNION ALL SELECT 'addresses', COALESCE(MAX(id), 0) + 50 FROM addresses
+UNION ALL SELECT 'refresh_token', COALESCE(MAX(id), 0) + 50 FROM refresh_token
+UNION ALL SELECT 'categories', COALESCE(MAX(id), 0) + 50 FROM categories
+UNION ALL SELECT 'products', COALESCE(MAX(id), 0) + 50 FROM products
+UNION ALL SELECT 'product_variants', COALESCE(MAX(id), 0) + 50 FROM product_variants
+UNION ALL SELECT 'product_variant_attributes', COALESCE(MAX(id), 0) + 50 FROM product_variant_attributes
+UNION ALL SELECT 'incoming_products', COALESCE(MAX(id), 0) + 50 FROM incoming_products
+UNION ALL SELECT 'incoming_product_details', COALESCE(MAX(id), 0) + 50 FROM incoming_product_details
+UNION ALL SELECT 'incoming_product_variant_details', COALESCE(MAX(id), 0) + 50 FROM incoming_product_variant_details
+UNION ALL SELECT 'stock_movements', COALESCE(MAX(id), 0) + 50 FROM stock_movements
+UNION ALL SELECT 'stock_snapshots', COALESCE(MAX(id), 0) + 50 FROM stock_snapshots;
+
+# resized copies of product photos, made in the background after the photo is saved
+CREATE TABLE IF NOT EXISTS product_photo_renditions (
+    product_photo_id VARCHAR(255) NOT NULL,
+    width INT NOT NULL,
+    image_location VARCHAR(255) NOT NULL,
+    PRIMARY KEY (product_photo_id, width),
+    CONSTRAINT fk_product_photos_product_photo_renditions FOREIGN KEY (product_photo_id) REFERENCES product_photos (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+ALTER TABLE product_list_view
+    ADD COLUMN thumbnail_location VARCHAR(255);
+
+# reference count of every content addressed photo file, from product_photos.image_location and users.photo
+CREATE TABLE IF NOT EXISTS stored_photos (
+    image_location VARCHAR(255) NOT NULL,
+    ref_count INT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (image_location)
+) ENGINE = InnoDB;
+
+# incoming product list, ordered and seeked by (date_in, id)
+CREATE INDEX idx_incoming_products_date_in_id ON incoming_products (date_in, id);
+
+# incoming product filters by supplier or user within a date range, and the receiving history of a product or variant
+CREATE INDEX idx_incoming_products_supplier_id_date_in_id ON incoming_products (supplier_id, date_in, id);
+CREATE INDEX idx_incoming_products_user_username_date_in_id ON incoming_products (user_username, date_in, id);
+CREATE INDEX idx_incoming_product_details_product_id_incoming_product_id ON incoming_product_details (product_id, incoming_product_id);
+CREATE INDEX idx_incoming_product_variant_details_variant_id_detail_id ON incoming_product_variant_details (product_variant_id, incoming_product_detail_id);
+
+# received quantity and spend per month, supplier and product, kept up to date by every incoming product write
+# and rebuilt from the details by a nightly job; derived data, so without foreign keys
+CREATE TABLE IF NOT EXISTS purchase_monthly_aggregates (
+    purchase_month DATE NOT NULL,
+    supplier_id INT NOT NULL,
+    product_id INT NOT NULL,
+    quantity BIGINT NOT NULL,
+    total_price BIGINT NOT NULL,
+    line_count INT NOT NULL,
+    PRIMARY KEY (purchase_month, supplier_id, product_id),
+    INDEX idx_purchase_monthly_aggregates_supplier_id_month (supplier_id, purchase_month),
+    INDEX idx_purchase_monthly_aggregates_product_id_month (product_id, purchase_month)
+) ENGINE = InnoDB;
+
+# Idempotency-Key of the incoming product writes, hashed with the username; a key is inserted in the transaction
+# of the write it protects, so a concurrent retry waits on its row lock and replays the stored response
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    key_hash BINARY(32) NOT NULL,
+    request_hash BINARY(32) NOT NULL,
+    response_body MEDIUMTEXT,
+    expires_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (key_hash),
+    INDEX idx_idempotency_keys_expires_at (expires_at)
+) ENGINE = InnoDB;
@@ -0,0 +1,116 @@
+package dev.mfikri.widuriestock.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import dev.mfikri.widuriestock.config.ProductDetailCacheProperties;
+import dev.mfikri.widuriestock.model.product.ProductResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of fully built {@link ProductResponse} keyed by product id.
+ * An empty value marks a product id that is known to not exist (negative caching),
+ * it lives for a shorter ttl than a found product.
+ */
+@Slf4j
+@Component
+public class ProductDetailCache {
+    private static final String CACHE_NAME = "product.detail";
+
+    private final Cache<Integer, Optional<ProductResponse>> cache;
+    private final Counter invalidationCounter;
+
+    public ProductDetailCache(ProductDetailCacheProperties properties, MeterRegistry meterRegistry) {
+        long ttlNanos = properties.getTtl().toNanos();
+        long negativeTtlNanos = properties.getNegativeTtl().toNanos();
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<Integer, Optional<ProductResponse>>() {
+                    @Override
+                    public long expireAfterCreate(Integer key, Optional<ProductResponse> value, long currentTime) {
+                        return value.isPresent() ? ttlNanos : negativeTtlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer key, Optional<ProductResponse> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer key, Optional<ProductResponse> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        // exposes cache.gets{result=hit|miss}, cache.evictions and cache.size under /actuator/metrics
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.invalidationCounter = Counter.builder("cache.invalidations")
+                .tag("cache", CACHE_NAME)
+                .description("Number of entries removed because the product was written")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached product, or runs the loader once per key on a miss.
+     * The loader returns an empty optional when the product does not exist.
+     */
+    public Optional<ProductResponse> get(Integer productId, Function<Integer, Optional<ProductResponse>> loader) {
+        return cache.get(productId, loader);
+    }
+
+    public void evict(Integer productId) {
+        evict(List.of(productId));
+    }
+
+    /**
+     * Evicts the products once the current transaction commits, so a concurrent reader
+     * cannot put back the state from before the write. Evicts immediately when no transaction is active.
+     */
+    public void evict(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        afterCommit(() -> invalidate(productIds));
+    }
+
+    public void evictAll() {
+        afterCommit(() -> {
+            log.debug("Evicting all product detail cache entries.");
+            cache.invalidateAll();
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void invalidate(Collection<Integer> productIds) {
+        log.debug("Evicting product detail cache entries. productIds={}", productIds);
+        cache.invalidateAll(productIds);
+        invalidationCounter.increment(productIds.size());
+    }
+}
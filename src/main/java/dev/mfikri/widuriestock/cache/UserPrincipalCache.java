@@ -0,0 +1,107 @@
+package dev.mfikri.widuriestock.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.mfikri.widuriestock.config.SecurityConfigProperties;
+import dev.mfikri.widuriestock.config.UserPrincipalCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of the principal an access token authenticates as, keyed by username, so an authenticated request
+ * does not load the user row. Entries are evicted when the role or the password of the user changes; the cache is
+ * local to the instance, so a change made on another instance is seen once the entry expires after the ttl.
+ * <p>
+ * The time of the last change is kept for as long as an access token lives, so a role claim of a token issued
+ * before the change is not trusted.
+ */
+@Slf4j
+@Component
+public class UserPrincipalCache {
+    private static final String CACHE_NAME = "user.principal";
+
+    private final Cache<String, UserDetails> cache;
+    private final Cache<String, Instant> changedAt;
+    private final Counter invalidationCounter;
+
+    public UserPrincipalCache(UserPrincipalCacheProperties properties, SecurityConfigProperties securityConfigProperties, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        this.changedAt = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(Duration.ofMillis(securityConfigProperties.getJwtTtl()))
+                .build();
+
+        // exposes cache.gets{result=hit|miss}, cache.evictions and cache.size under /actuator/metrics
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.invalidationCounter = Counter.builder("cache.invalidations")
+                .tag("cache", CACHE_NAME)
+                .description("Number of entries removed because the role or the password of the user was changed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached principal, or runs the loader once per key on a miss. A loader that throws caches nothing.
+     */
+    public UserDetails get(String username, Function<String, UserDetails> loader) {
+        return cache.get(username, loader);
+    }
+
+    /**
+     * @return false when the role or the password of the user changed at or after the token was issued
+     */
+    public boolean isIssuedAfterLastChange(String username, Instant issuedAt) {
+        Instant lastChange = changedAt.getIfPresent(username);
+        // the issued at claim has seconds precision, a token of the same second may be from before the change
+        return lastChange == null || issuedAt.isAfter(lastChange.truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    /**
+     * Evicts the user once the current transaction commits, so a concurrent request cannot put back the
+     * principal from before the change. Evicts immediately when no transaction is active.
+     */
+    public void evict(String username) {
+        afterCommit(() -> {
+            log.debug("Evicting user principal cache entry. username={}", username);
+            changedAt.put(username, Instant.now());
+            cache.invalidate(username);
+            invalidationCounter.increment();
+        });
+    }
+
+    public void evictAll() {
+        afterCommit(() -> {
+            log.debug("Evicting all user principal cache entries.");
+            cache.invalidateAll();
+            changedAt.invalidateAll();
+        });
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
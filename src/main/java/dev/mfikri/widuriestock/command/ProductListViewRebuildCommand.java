@@ -0,0 +1,38 @@
+package dev.mfikri.widuriestock.command;
+
+import dev.mfikri.widuriestock.service.ProductListViewService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Repopulates the product_list_view table from the normalized tables.
+ * Run the application with the {@code --rebuild-product-list-view} option, e.g. after a deploy that adds the table.
+ */
+@Slf4j
+@Component
+public class ProductListViewRebuildCommand implements ApplicationRunner {
+    private static final String OPTION_NAME = "rebuild-product-list-view";
+
+    private final ProductListViewService productListViewService;
+    private final Integer batchSize;
+
+    public ProductListViewRebuildCommand(ProductListViewService productListViewService,
+                                         @Value("${app.product-list-view.rebuild-batch-size}") Integer batchSize) {
+        this.productListViewService = productListViewService;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION_NAME)) {
+            return;
+        }
+
+        log.info("Receiving command to rebuild product list view.");
+        int count = productListViewService.rebuild(batchSize);
+        log.info("Product list view rebuild command finished. count={}", count);
+    }
+}
@@ -23,6 +23,8 @@ public class AuthorizationConfig {
     public Customizer<AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizationManagerRequestMatcherRegistry> authorizeHttpRequestsCustomizer() {
         return authorize -> authorize
                 .dispatcherTypeMatchers(DispatcherType.ERROR).permitAll()
+                // the request dispatch of a streamed response was already authorized, its async dispatch only completes it
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/api/auth/login").permitAll()
                 .requestMatchers(SWAGGER_WHITELIST).permitAll()
                 .requestMatchers("/api/auth/refresh-token").permitAll()
@@ -50,8 +52,12 @@ public class AuthorizationConfig {
 
                 // products crud api
                 .requestMatchers(HttpMethod.POST, "/api/products").hasRole(Role.ADMIN_WAREHOUSE.name())
+                .requestMatchers(HttpMethod.POST, "/api/products/import").hasRole(Role.ADMIN_WAREHOUSE.name())
                 .requestMatchers(HttpMethod.GET, "/api/products").authenticated()
+                .requestMatchers(HttpMethod.GET, "/api/products/export").authenticated()
                 .requestMatchers(HttpMethod.GET, "/api/products/*").authenticated()
+                .requestMatchers(HttpMethod.GET, "/api/products/*/stock-history").authenticated()
+                .requestMatchers(HttpMethod.GET, "/api/products/*/incoming-history").authenticated()
                 .requestMatchers(HttpMethod.DELETE, "/api/products/*").hasRole(Role.ADMIN_WAREHOUSE.name())
                 .requestMatchers(HttpMethod.PUT, "/api/products/*").hasRole(Role.ADMIN_WAREHOUSE.name())
 
@@ -64,6 +70,7 @@ public class AuthorizationConfig {
 
                 // incoming-product api
                 .requestMatchers(HttpMethod.POST, "/api/incoming-products").hasRole(Role.ADMIN_WAREHOUSE.name())
+                .requestMatchers(HttpMethod.POST, "/api/incoming-products/batch").hasRole(Role.ADMIN_WAREHOUSE.name())
                 .requestMatchers(HttpMethod.GET, "/api/incoming-products").authenticated()
                 .requestMatchers(HttpMethod.GET, "/api/incoming-products/*").authenticated()
                 .requestMatchers(HttpMethod.PUT, "/api/incoming-products/*").hasRole(Role.ADMIN_WAREHOUSE.name())
@@ -77,6 +84,17 @@ public class AuthorizationConfig {
                 .requestMatchers(HttpMethod.DELETE, "/api/incoming-products/*").hasRole(Role.ADMIN_WAREHOUSE.name())
                 .requestMatchers(HttpMethod.DELETE, "/api/incoming-product-details/*").hasRole(Role.ADMIN_WAREHOUSE.name())
                 .requestMatchers(HttpMethod.DELETE, "/api/incoming-product-variant-details/*").hasRole(Role.ADMIN_WAREHOUSE.name())
+
+                // stored photos
+                .requestMatchers(HttpMethod.GET, "/media/**").authenticated()
+                .requestMatchers(HttpMethod.HEAD, "/media/**").authenticated()
+                .requestMatchers(HttpMethod.GET, "/api/media/orphans").hasRole("OWNER")
+
+                // purchase reports
+                .requestMatchers(HttpMethod.GET, "/api/reports/purchases/**").hasRole("OWNER")
+
+                // actuator
+                .requestMatchers(HttpMethod.GET, "/actuator/**").hasRole("OWNER")
                 .anyRequest().denyAll();
     }
 }
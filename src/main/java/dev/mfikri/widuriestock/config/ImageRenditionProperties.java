@@ -0,0 +1,19 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "app.image-rendition")
+@Getter
+@Setter
+public class ImageRenditionProperties {
+    private List<Integer> widths;
+    private int threads;
+    private int queueCapacity;
+    private float jpegQuality;
+}
@@ -0,0 +1,16 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+@Component
+@ConfigurationProperties(prefix = "app.media")
+@Getter
+@Setter
+public class MediaProperties {
+    private DataSize hotCacheMaximumSize;
+    private DataSize hotCacheMaximumFileSize;
+}
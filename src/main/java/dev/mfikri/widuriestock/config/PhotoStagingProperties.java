@@ -0,0 +1,14 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.photo-staging")
+@Getter
+@Setter
+public class PhotoStagingProperties {
+    private int maxConcurrentWrites;
+}
@@ -0,0 +1,18 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.product-detail-cache")
+@Getter
+@Setter
+public class ProductDetailCacheProperties {
+    private long maximumSize;
+    private Duration ttl;
+    private Duration negativeTtl;
+}
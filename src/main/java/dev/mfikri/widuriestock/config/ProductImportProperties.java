@@ -0,0 +1,15 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "app.product-import")
+@Getter
+@Setter
+public class ProductImportProperties {
+    private int batchSize;
+    private int maxReportedErrors;
+}
@@ -126,7 +126,7 @@ public class SecurityConfig {
     @Bean
     public JwtUtil jwtUtil() {
         final SecretKey secretKey = Keys.hmacShaKeyFor(securityConfigProperties.getSecretKey().getBytes());
-        return new JwtUtil(secretKey);
+        return new JwtUtil(secretKey, securityConfigProperties.getVerifiedTokenCacheSize());
     }
 
     @Bean
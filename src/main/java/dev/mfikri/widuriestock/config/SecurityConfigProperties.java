@@ -12,4 +12,5 @@ import org.springframework.stereotype.Component;
 public class SecurityConfigProperties {
     private String secretKey;
     private Long jwtTtl;
+    private long verifiedTokenCacheSize;
 }
@@ -0,0 +1,20 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.stock-coalescing")
+@Getter
+@Setter
+public class StockCoalescingProperties {
+    private boolean enabled;
+    private Duration flushInterval;
+    private int maxBatchEntries;
+    private int stripes;
+    private Duration recoveryInterval;
+}
@@ -0,0 +1,19 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.upload-sweeper")
+@Getter
+@Setter
+public class UploadSweeperProperties {
+    private Duration gracePeriod;
+    private int batchSize;
+    private Duration batchPause;
+    private int maxReportedOrphans;
+}
@@ -0,0 +1,18 @@
+package dev.mfikri.widuriestock.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@ConfigurationProperties(prefix = "app.user-principal-cache")
+@Getter
+@Setter
+public class UserPrincipalCacheProperties {
+    private long maximumSize;
+    private Duration ttl;
+    private boolean roleClaimEnabled;
+}
@@ -1,16 +1,21 @@
 package dev.mfikri.widuriestock.controller;
 
+import dev.mfikri.widuriestock.model.CursorPage;
 import dev.mfikri.widuriestock.model.PagingResponse;
 import dev.mfikri.widuriestock.model.WebResponse;
 import dev.mfikri.widuriestock.model.incoming_product.*;
+import dev.mfikri.widuriestock.service.IdempotencyService;
+import dev.mfikri.widuriestock.service.IncomingProductBatchService;
 import dev.mfikri.widuriestock.service.IncomingProductService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
 import java.security.Principal;
 import java.util.List;
 
@@ -19,10 +24,16 @@ import java.util.List;
 @RequestMapping("/api")
 public class IncomingProductController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final IncomingProductService incomingProductService;
+    private final IdempotencyService idempotencyService;
+    private final IncomingProductBatchService incomingProductBatchService;
 
-    public IncomingProductController(IncomingProductService incomingProductService) {
+    public IncomingProductController(IncomingProductService incomingProductService, IdempotencyService idempotencyService, IncomingProductBatchService incomingProductBatchService) {
         this.incomingProductService = incomingProductService;
+        this.idempotencyService = idempotencyService;
+        this.incomingProductBatchService = incomingProductBatchService;
     }
 
     @PostMapping(path = "/incoming-products",
@@ -30,19 +41,38 @@ public class IncomingProductController {
             produces = MediaType.APPLICATION_JSON_VALUE
     )
     @ResponseStatus(HttpStatus.CREATED)
-    public WebResponse<IncomingProductResponse> create(@RequestBody IncomingProductCreateRequest request, HttpServletRequest httpServletRequest) {
+    public WebResponse<IncomingProductResponse> create(@RequestBody IncomingProductCreateRequest request,
+                                                       @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                       HttpServletRequest httpServletRequest) {
         log.info("Receiving request to create an incoming product.");
 
         Principal userPrincipal = httpServletRequest.getUserPrincipal();
         request.setUsername(userPrincipal.getName());
 
-        IncomingProductResponse response = incomingProductService.create(request);
+        IncomingProductResponse response = idempotencyService.execute(idempotencyKey, userPrincipal.getName(),
+                "POST /api/incoming-products", request, IncomingProductResponse.class,
+                () -> incomingProductService.create(request));
 
         return WebResponse.<IncomingProductResponse>builder()
                 .data(response)
                 .build();
     }
 
+    @PostMapping(path = "/incoming-products/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<IncomingProductBatchResponse> createBatch(InputStream body, Principal principal) {
+        log.info("Receiving request to create incoming products in batch.");
+
+        // the body is read while it streams in, it is never buffered as a whole
+        IncomingProductBatchResponse response = incomingProductBatchService.createBatch(body, principal.getName());
+
+        return WebResponse.<IncomingProductBatchResponse>builder()
+                .data(response)
+                .build();
+    }
+
     @GetMapping(path = "/incoming-products/{incomingProductId}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
@@ -63,13 +93,45 @@ public class IncomingProductController {
     public WebResponse<List<IncomingProductGetListResponse>> getList(@ModelAttribute IncomingProductGetListRequest request) {
         log.info("Receiving request to get all incoming products.");
 
-        Page<IncomingProductGetListResponse> responsePage = incomingProductService.getList(request);
+        // cursor mode is used when 'after' is sent, an empty 'after' starts from the oldest transaction
+        if (request.getAfter() != null) {
+            CursorPage<IncomingProductGetListResponse> responseCursorPage = incomingProductService.getListAfter(request);
+
+            return WebResponse.<List<IncomingProductGetListResponse>>builder()
+                    .data(responseCursorPage.getContent())
+                    .paging(PagingResponse.builder()
+                            .sizePerPage(responseCursorPage.getSize())
+                            .nextCursor(responseCursorPage.getNextCursor())
+                            .build())
+                    .build();
+        }
+
+        // the total page is only known when the range was counted
+        Slice<IncomingProductGetListResponse> responseSlice = incomingProductService.getList(request);
         return WebResponse.<List<IncomingProductGetListResponse>>builder()
-                .data(responsePage.getContent())
+                .data(responseSlice.getContent())
+                .paging(PagingResponse.builder()
+                        .currentPage(responseSlice.getNumber())
+                        .totalPage(responseSlice instanceof Page<?> responsePage ? responsePage.getTotalPages() : null)
+                        .sizePerPage(responseSlice.getSize())
+                        .build())
+                .build();
+    }
+
+    @GetMapping(path = "/products/{productId}/incoming-history",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<List<IncomingProductHistoryResponse>> getHistory(@ModelAttribute IncomingProductHistoryRequest request, @PathVariable Integer productId) {
+        log.info("Receiving request to get incoming history of a product. productId={}", productId);
+
+        request.setProductId(productId);
+        CursorPage<IncomingProductHistoryResponse> responseCursorPage = incomingProductService.getHistory(request);
+
+        return WebResponse.<List<IncomingProductHistoryResponse>>builder()
+                .data(responseCursorPage.getContent())
                 .paging(PagingResponse.builder()
-                        .currentPage(responsePage.getNumber())
-                        .totalPage(responsePage.getTotalPages())
-                        .sizePerPage(responsePage.getSize())
+                        .sizePerPage(responseCursorPage.getSize())
+                        .nextCursor(responseCursorPage.getNextCursor())
                         .build())
                 .build();
     }
@@ -100,11 +162,15 @@ public class IncomingProductController {
     )
     @ResponseStatus(HttpStatus.CREATED)
     public WebResponse<IncomingProductResponse.IncomingProductDetail> createIncomingProductDetail(@PathVariable Integer incomingProductId,
-                                                                                  @RequestBody IncomingProductCreateRequest.IncomingProductDetails request
+                                                                                  @RequestBody IncomingProductCreateRequest.IncomingProductDetails request,
+                                                                                  @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                                  Principal principal
                                                                                ) {
         log.info("Receiving request to create an incoming product detail for incoming product. incomingProductId={}.", incomingProductId);
 
-        IncomingProductResponse.IncomingProductDetail response = incomingProductService.addIncomingProductDetails(incomingProductId, request);
+        IncomingProductResponse.IncomingProductDetail response = idempotencyService.execute(idempotencyKey, principal.getName(),
+                "POST /api/incoming-products/" + incomingProductId + "/incoming-product-details", request, IncomingProductResponse.IncomingProductDetail.class,
+                () -> incomingProductService.addIncomingProductDetails(incomingProductId, request));
 
         return WebResponse.<IncomingProductResponse.IncomingProductDetail>builder()
                 .data(response)
@@ -117,10 +183,14 @@ public class IncomingProductController {
     )
     @ResponseStatus(HttpStatus.CREATED)
     public WebResponse<IncomingProductResponse.IncomingProductVariantDetail> createIncomingProductVariantDetail(@PathVariable Integer incomingProductDetailId,
-                                                                                  @RequestBody IncomingProductCreateRequest.IncomingProductVariantDetail request
+                                                                                  @RequestBody IncomingProductCreateRequest.IncomingProductVariantDetail request,
+                                                                                  @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                                                  Principal principal
     ) {
         log.info("Receiving request to create an incoming product variant detail for incoming product detail. incomingProductDetailId={}.", incomingProductDetailId);
-        IncomingProductResponse.IncomingProductVariantDetail response = incomingProductService.addIncomingProductVariantDetails(incomingProductDetailId, request);
+        IncomingProductResponse.IncomingProductVariantDetail response = idempotencyService.execute(idempotencyKey, principal.getName(),
+                "POST /api/incoming-product-details/" + incomingProductDetailId + "/incoming-product-variant-detail", request, IncomingProductResponse.IncomingProductVariantDetail.class,
+                () -> incomingProductService.addIncomingProductVariantDetails(incomingProductDetailId, request));
 
         return WebResponse.<IncomingProductResponse.IncomingProductVariantDetail>builder()
                 .data(response)
@@ -0,0 +1,190 @@
+package dev.mfikri.widuriestock.controller;
+
+import dev.mfikri.widuriestock.model.WebResponse;
+import dev.mfikri.widuriestock.model.media.MediaFile;
+import dev.mfikri.widuriestock.model.media.UploadSweepResponse;
+import dev.mfikri.widuriestock.service.MediaService;
+import dev.mfikri.widuriestock.service.UploadSweeperService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Serves the stored photos. The body is handed to the connector with sendfile when it supports it, so the
+ * bytes go from the page cache to the socket without passing through the JVM, and is copied with
+ * {@link FileChannel#transferTo} otherwise. Small, often requested files are served from memory.
+ */
+@Slf4j
+@RestController
+public class MediaController {
+    private static final String MEDIA_PREFIX = "/media/";
+    private static final String IMMUTABLE_MAX_AGE = "max-age=31536000, immutable";
+
+    // request attributes of the tomcat sendfile support, see org.apache.catalina.Globals
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final MediaService mediaService;
+    private final UploadSweeperService uploadSweeperService;
+
+    public MediaController(MediaService mediaService, UploadSweeperService uploadSweeperService) {
+        this.mediaService = mediaService;
+        this.uploadSweeperService = uploadSweeperService;
+    }
+
+    @GetMapping(path = "/api/media/orphans",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<UploadSweepResponse> getOrphans() {
+        log.info("Receiving request to report orphaned uploads.");
+
+        UploadSweepResponse response = uploadSweeperService.sweep(true);
+
+        return WebResponse.<UploadSweepResponse>builder()
+                .data(response)
+                .build();
+    }
+
+    @GetMapping(path = "/media/**")
+    public void get(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        MediaFile mediaFile = mediaService.get(path.substring(MEDIA_PREFIX.length()));
+
+        response.setHeader(HttpHeaders.ETAG, mediaFile.getEtag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, mediaFile.getLastModified().toEpochMilli());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, (mediaFile.isRestricted() ? "private, " : "public, ")
+                + (mediaFile.isImmutable() ? IMMUTABLE_MAX_AGE : "no-cache"));
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (matchesEtag(request.getHeader(HttpHeaders.IF_NONE_MATCH), mediaFile.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long length = mediaFile.getSize();
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // a range of another version of the file would be spliced into the cached one, the whole file is sent instead
+        Optional<long[]> range = ifRange == null || ifRange.equals(mediaFile.getEtag())
+                ? parseRange(request.getHeader(HttpHeaders.RANGE), mediaFile.getSize())
+                : Optional.empty();
+        if (range.isPresent()) {
+            if (range.get().length == 0) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + mediaFile.getSize());
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.get()[0];
+            length = range.get()[1] - start + 1;
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + range.get()[1] + "/" + mediaFile.getSize());
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        }
+
+        response.setContentType(mediaFile.getContentType().toString());
+        response.setContentLengthLong(length);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        Optional<byte[]> hotContent = mediaService.getHotContent(mediaFile);
+        if (hotContent.isPresent()) {
+            response.getOutputStream().write(hotContent.get(), (int) start, (int) length);
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // the connector writes the file once this handler returns
+            request.setAttribute(SENDFILE_FILENAME, mediaFile.getPath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, start + length);
+            return;
+        }
+
+        transfer(mediaFile, start, length, response.getOutputStream());
+    }
+
+    private static void transfer(MediaFile mediaFile, long start, long length, OutputStream outputStream) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(mediaFile.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = start;
+            long end = start + length;
+            while (position < end) {
+                long transferred = fileChannel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    // the file got shorter than its attributes said
+                    log.warn("Media file ended before its size. path={}, position={}, end={}", mediaFile.getPath(), position, end);
+                    return;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        // weak comparison, a weak validator of the same bytes still means the cached copy is current
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(candidate -> candidate.startsWith("W/") ? candidate.substring(2) : candidate)
+                .anyMatch(candidate -> candidate.equals("*") || candidate.equals(etag));
+    }
+
+    /**
+     * Reads a single byte range, a header that is missing, malformed or asks for several ranges is ignored.
+     *
+     * @return the first and last byte, both inclusive, or an empty array when the range is not satisfiable
+     */
+    private static Optional<long[]> parseRange(String header, long size) {
+        if (header == null || !header.startsWith("bytes=") || header.contains(",")) {
+            return Optional.empty();
+        }
+
+        String[] bounds = header.substring("bytes=".length()).trim().split("-", -1);
+        if (bounds.length != 2) {
+            return Optional.empty();
+        }
+
+        try {
+            if (bounds[0].isEmpty()) {
+                // suffix range, the last n bytes
+                long suffixLength = Long.parseLong(bounds[1]);
+                if (suffixLength <= 0 || size == 0) {
+                    return Optional.of(new long[0]);
+                }
+                return Optional.of(new long[]{Math.max(0, size - suffixLength), size - 1});
+            }
+
+            long first = Long.parseLong(bounds[0]);
+            Long requestedLast = bounds[1].isEmpty() ? null : Long.parseLong(bounds[1]);
+            if (first < 0 || (requestedLast != null && requestedLast < first)) {
+                return Optional.empty();
+            }
+            if (first >= size) {
+                return Optional.of(new long[0]);
+            }
+            return Optional.of(new long[]{first, requestedLast == null ? size - 1 : Math.min(requestedLast, size - 1)});
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
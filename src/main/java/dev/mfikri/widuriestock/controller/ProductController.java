@@ -1,19 +1,30 @@
 package dev.mfikri.widuriestock.controller;
 
+import dev.mfikri.widuriestock.model.CursorPage;
 import dev.mfikri.widuriestock.model.PagingResponse;
 import dev.mfikri.widuriestock.model.WebResponse;
 import dev.mfikri.widuriestock.model.product.ProductCreateRequest;
+import dev.mfikri.widuriestock.model.product.ProductFileFormat;
+import dev.mfikri.widuriestock.model.product.ProductImportResponse;
 import dev.mfikri.widuriestock.model.product.ProductResponse;
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryRequest;
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryResponse;
 import dev.mfikri.widuriestock.model.product.ProductUpdateRequest;
 import dev.mfikri.widuriestock.model.product.ProductsGetListResponse;
+import dev.mfikri.widuriestock.service.ProductExportService;
+import dev.mfikri.widuriestock.service.ProductImportService;
 import dev.mfikri.widuriestock.service.ProductService;
+import dev.mfikri.widuriestock.service.StockHistoryService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
+import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @RestController
@@ -21,9 +32,15 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService productService;
+    private final StockHistoryService stockHistoryService;
+    private final ProductImportService productImportService;
+    private final ProductExportService productExportService;
 
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, StockHistoryService stockHistoryService, ProductImportService productImportService, ProductExportService productExportService) {
         this.productService = productService;
+        this.stockHistoryService = stockHistoryService;
+        this.productImportService = productImportService;
+        this.productExportService = productExportService;
     }
 
     @PostMapping(path = "/products",
@@ -41,13 +58,80 @@ public class ProductController {
                 .build();
     }
 
+    @PostMapping(path = "/products/import",
+            consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<ProductImportResponse> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) {
+        log.info("Receiving request to import products. contentType={}", contentType);
+
+        // the body is read while it streams in, it is never buffered as a whole
+        ProductFileFormat format = contentType.isCompatibleWith(MediaType.APPLICATION_NDJSON) ? ProductFileFormat.NDJSON : ProductFileFormat.CSV;
+        ProductImportResponse response = productImportService.importProducts(body, format);
+
+        return WebResponse.<ProductImportResponse>builder()
+                .data(response)
+                .build();
+    }
+
+    @GetMapping(path = "/products/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(value = "format", required = false, defaultValue = "csv") String format,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.info("Receiving request to export products. format={}", format);
+
+        ProductFileFormat fileFormat = switch (format.toLowerCase()) {
+            case "csv" -> ProductFileFormat.CSV;
+            case "ndjson" -> ProductFileFormat.NDJSON;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Format must be csv or ndjson.");
+        };
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        // the body is written on an async thread while the catalog is read, nothing is buffered as a whole
+        StreamingResponseBody body = outputStream -> {
+            if (!gzip) {
+                productExportService.exportProducts(fileFormat, outputStream);
+                return;
+            }
+
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, 64 * 1024);
+            productExportService.exportProducts(fileFormat, gzipOutputStream);
+            gzipOutputStream.finish();
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(fileFormat == ProductFileFormat.CSV ? MediaType.parseMediaType("text/csv;charset=UTF-8") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileFormat == ProductFileFormat.CSV ? "products.csv" : "products.ndjson")
+                        .build()
+                        .toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     @GetMapping(path = "/products",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
     public WebResponse<List<ProductsGetListResponse>> getList(@RequestParam(value = "page", required = false, defaultValue = "0") Integer page,
-                                        @RequestParam(value = "size", required = false, defaultValue = "10") Integer size) {
+                                        @RequestParam(value = "size", required = false, defaultValue = "10") Integer size,
+                                        @RequestParam(value = "after", required = false) String after) {
         log.info("Receiving request to get list of products.");
 
+        // cursor mode is used when 'after' is sent, an empty 'after' starts from the first product
+        if (after != null) {
+            CursorPage<ProductsGetListResponse> responseCursorPage = productService.getListAfter(after, size);
+
+            return WebResponse.<List<ProductsGetListResponse>>builder()
+                    .data(responseCursorPage.getContent())
+                    .paging(PagingResponse.builder()
+                            .sizePerPage(responseCursorPage.getSize())
+                            .nextCursor(responseCursorPage.getNextCursor())
+                            .build())
+                    .build();
+        }
+
         Page<ProductsGetListResponse> responsePage = productService.getList(page, size);
 
         return WebResponse.<List<ProductsGetListResponse>>builder()
@@ -73,6 +157,20 @@ public class ProductController {
                 .build();
     }
 
+    @GetMapping(path = "/products/{productId}/stock-history",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<ProductStockHistoryResponse> getStockHistory(@ModelAttribute ProductStockHistoryRequest request, @PathVariable Integer productId) {
+        log.info("Receiving request to get stock history of a product. productId={}", productId);
+
+        request.setProductId(productId);
+        ProductStockHistoryResponse response = stockHistoryService.getProductStockHistory(request);
+
+        return WebResponse.<ProductStockHistoryResponse>builder()
+                .data(response)
+                .build();
+    }
+
     @PutMapping(path = "/products/{productId}",
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
@@ -102,5 +200,18 @@ public class ProductController {
                 .build();
     }
 
-
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (parts[0].strip().equalsIgnoreCase("gzip")) {
+                // "gzip;q=0" explicitly refuses it
+                return parts.length < 2 || !parts[1].strip().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
 }
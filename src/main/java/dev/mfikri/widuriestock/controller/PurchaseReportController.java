@@ -0,0 +1,52 @@
+package dev.mfikri.widuriestock.controller;
+
+import dev.mfikri.widuriestock.model.WebResponse;
+import dev.mfikri.widuriestock.model.report.ProductPurchaseReportResponse;
+import dev.mfikri.widuriestock.model.report.PurchaseReportRequest;
+import dev.mfikri.widuriestock.model.report.SupplierPurchaseReportResponse;
+import dev.mfikri.widuriestock.service.PurchaseReportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/reports/purchases")
+public class PurchaseReportController {
+    private final PurchaseReportService purchaseReportService;
+
+    public PurchaseReportController(PurchaseReportService purchaseReportService) {
+        this.purchaseReportService = purchaseReportService;
+    }
+
+    @GetMapping(path = "/suppliers",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<List<SupplierPurchaseReportResponse>> getSupplierReport(@ModelAttribute PurchaseReportRequest request) {
+        log.info("Receiving request to get purchase report per supplier.");
+
+        List<SupplierPurchaseReportResponse> responses = purchaseReportService.getSupplierReport(request);
+
+        return WebResponse.<List<SupplierPurchaseReportResponse>>builder()
+                .data(responses)
+                .build();
+    }
+
+    @GetMapping(path = "/products",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public WebResponse<List<ProductPurchaseReportResponse>> getProductReport(@ModelAttribute PurchaseReportRequest request) {
+        log.info("Receiving request to get purchase report per product.");
+
+        List<ProductPurchaseReportResponse> responses = purchaseReportService.getProductReport(request);
+
+        return WebResponse.<List<ProductPurchaseReportResponse>>builder()
+                .data(responses)
+                .build();
+    }
+}
@@ -19,7 +19,8 @@ import java.time.Instant;
 @EntityListeners({AuditingEntityListener.class})
 public class Address {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "addresses_id")
+    @TableGenerator(name = "addresses_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "addresses", allocationSize = 50)
     private int id;
 
     private String street;
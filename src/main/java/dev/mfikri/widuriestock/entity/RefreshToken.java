@@ -13,7 +13,8 @@ import java.time.Instant;
 @Entity(name = "refresh_token")
 public class RefreshToken {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "refresh_token_id")
+    @TableGenerator(name = "refresh_token_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "refresh_token", allocationSize = 50)
     private int id;
 
     @Column(name = "refresh_token")
@@ -22,7 +22,8 @@ import java.util.Set;
 @EntityListeners({AuditingEntityListener.class})
 public class Supplier {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "suppliers_id")
+    @TableGenerator(name = "suppliers_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "suppliers", allocationSize = 50)
     private Integer id;
 
     @Column(name = "supplier_name", unique = true)
@@ -4,6 +4,7 @@ import dev.mfikri.widuriestock.entity.Supplier;
 import dev.mfikri.widuriestock.entity.User;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -17,11 +18,23 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity(name = "incoming_products")
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = "IncomingProduct.detail", attributeNodes = {
+                @NamedAttributeNode(value = "supplier", subgraph = "supplier"),
+                @NamedAttributeNode("user"),
+                @NamedAttributeNode(value = "incomingProductDetails", subgraph = "incomingProductDetails")
+        }, subgraphs = {
+                // the inverse one-to-one address is always loaded with the supplier, join it instead of a select per supplier
+                @NamedSubgraph(name = "supplier", attributeNodes = @NamedAttributeNode("address")),
+                @NamedSubgraph(name = "incomingProductDetails", attributeNodes = @NamedAttributeNode("product"))
+        })
+})
 @EntityListeners({AuditingEntityListener.class})
 public class IncomingProduct {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "incoming_products_id")
+    @TableGenerator(name = "incoming_products_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "incoming_products", allocationSize = 50)
     private Integer id;
 
     @Column(name = "date_in")
@@ -51,6 +64,7 @@ public class IncomingProduct {
     @JoinColumn(name = "user_username", referencedColumnName = "username")
     private User user;
 
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "incomingProduct", cascade = CascadeType.REMOVE)
     private List<IncomingProductDetail> incomingProductDetails;
 }
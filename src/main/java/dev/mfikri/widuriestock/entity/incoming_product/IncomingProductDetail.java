@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -21,7 +22,8 @@ import java.util.List;
 @EntityListeners({AuditingEntityListener.class})
 public class IncomingProductDetail {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "incoming_product_details_id")
+    @TableGenerator(name = "incoming_product_details_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "incoming_product_details", allocationSize = 50)
     private Integer id;
 
     @Column(name = "price_per_unit")
@@ -57,7 +59,8 @@ public class IncomingProductDetail {
     @JoinColumn(name = "product_id", referencedColumnName = "id")
     private Product product;
 
-    @OneToMany(mappedBy = "incomingProductDetail", cascade = CascadeType.REMOVE, fetch = FetchType.EAGER)
+    @BatchSize(size = 50)
+    @OneToMany(mappedBy = "incomingProductDetail", cascade = CascadeType.REMOVE)
     private List<IncomingProductVariantDetail> incomingProductVariantDetails;
 
 
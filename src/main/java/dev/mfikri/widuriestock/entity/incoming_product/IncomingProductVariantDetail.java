@@ -21,7 +21,8 @@ import java.time.Instant;
 @EntityListeners({AuditingEntityListener.class})
 public class IncomingProductVariantDetail {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "incoming_product_variant_details_id")
+    @TableGenerator(name = "incoming_product_variant_details_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "incoming_product_variant_details", allocationSize = 50)
     private Integer id;
 
     @Column(name = "price_per_unit")
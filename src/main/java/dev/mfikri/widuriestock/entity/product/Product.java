@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -18,11 +19,16 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity(name = "products")
+@NamedEntityGraph(name = "Product.detail", attributeNodes = {
+        @NamedAttributeNode("category"),
+        @NamedAttributeNode("productVariants")
+})
 @EntityListeners({AuditingEntityListener.class})
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "products_id")
+    @TableGenerator(name = "products_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "products", allocationSize = 50)
     private Integer id;
     private String name;
     private String description;
@@ -44,9 +50,12 @@ public class Product {
     @JoinColumn(name = "category_id", referencedColumnName = "id")
     private Category category;
 
+    // photos and variants are both bags and cannot be join fetched together, photos come in a second batch query
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "product")
     private List<ProductPhoto> productPhotos;
 
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "product", cascade = CascadeType.REMOVE)
     private List<ProductVariant> productVariants;
 
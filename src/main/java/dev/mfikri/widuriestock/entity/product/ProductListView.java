@@ -0,0 +1,35 @@
+package dev.mfikri.widuriestock.entity.product;
+
+import dev.mfikri.widuriestock.repository.ProductSummary;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// read model for GET /api/products, the rows are maintained by ProductListViewService, never edit it directly
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity(name = "product_list_view")
+public class ProductListView implements ProductSummary {
+    @Id
+    private Integer id;
+    private String name;
+    private String description;
+
+    @Column(name = "category_id")
+    private Integer categoryId;
+
+    @Column(name = "category_name")
+    private String categoryName;
+
+    @Column(name = "image_location")
+    private String imageLocation;
+
+    @Column(name = "thumbnail_location")
+    private String thumbnailLocation;
+}
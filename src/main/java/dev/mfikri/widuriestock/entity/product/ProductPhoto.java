@@ -6,6 +6,9 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Getter
 @Setter
 @AllArgsConstructor
@@ -22,4 +25,9 @@ public class ProductPhoto {
     @ManyToOne
     @JoinColumn(name = "product_id", referencedColumnName = "id")
     private Product product;
+
+    @ElementCollection
+    @CollectionTable(name = "product_photo_renditions", joinColumns = @JoinColumn(name = "product_photo_id"))
+    @OrderBy("width ASC")
+    private List<ProductPhotoRendition> renditions = new ArrayList<>();
 }
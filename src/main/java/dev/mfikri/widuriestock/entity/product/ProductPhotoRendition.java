@@ -0,0 +1,21 @@
+package dev.mfikri.widuriestock.entity.product;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// a resized copy of a product photo, renditions are only made for widths smaller than the original
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Embeddable
+public class ProductPhotoRendition {
+    private Integer width;
+
+    @Column(name = "image_location")
+    private String imageLocation;
+}
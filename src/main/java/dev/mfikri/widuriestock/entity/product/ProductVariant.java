@@ -6,6 +6,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.BatchSize;
 
 import java.util.List;
 
@@ -17,7 +18,8 @@ import java.util.List;
 public class ProductVariant {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "product_variants_id")
+    @TableGenerator(name = "product_variants_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "product_variants", allocationSize = 50)
     private Integer id;
     private String sku;
     private Integer stock;
@@ -27,6 +29,7 @@ public class ProductVariant {
     @JoinColumn(name = "product_id", referencedColumnName = "id")
     private Product product;
 
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "productVariant", cascade = CascadeType.REMOVE)
     private List<ProductVariantAttribute> productVariantAttributes;
 
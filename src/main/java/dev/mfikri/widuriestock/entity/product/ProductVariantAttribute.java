@@ -13,7 +13,8 @@ import lombok.Setter;
 @Entity(name = "product_variant_attributes")
 public class ProductVariantAttribute {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "product_variant_attributes_id")
+    @TableGenerator(name = "product_variant_attributes_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "product_variant_attributes", allocationSize = 50)
     private Integer id;
 
     @Column(name = "attribute_key")
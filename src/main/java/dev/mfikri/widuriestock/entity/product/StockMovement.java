@@ -0,0 +1,43 @@
+package dev.mfikri.widuriestock.entity.product;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+// append-only stock ledger, rows are never updated and outlive the product they belong to
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity(name = "stock_movements")
+public class StockMovement {
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "stock_movements_id")
+    @TableGenerator(name = "stock_movements_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "stock_movements", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "product_id")
+    private Integer productId;
+
+    // null when the movement is on the stock of a product without variant
+    @Column(name = "product_variant_id")
+    private Integer productVariantId;
+
+    private Integer delta;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source_type")
+    private StockMovementSourceType sourceType;
+
+    @Column(name = "source_id")
+    private Integer sourceId;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
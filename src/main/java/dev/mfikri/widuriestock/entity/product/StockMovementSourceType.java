@@ -0,0 +1,7 @@
+package dev.mfikri.widuriestock.entity.product;
+
+public enum StockMovementSourceType {
+    OPENING_BALANCE,
+    PRODUCT,
+    INCOMING_PRODUCT
+}
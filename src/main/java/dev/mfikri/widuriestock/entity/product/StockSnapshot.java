@@ -0,0 +1,39 @@
+package dev.mfikri.widuriestock.entity.product;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+// stock of one product or product variant at a snapshot boundary, the sum of all its movements created before snapshotAt
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity(name = "stock_snapshots")
+public class StockSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "stock_snapshots_id")
+    @TableGenerator(name = "stock_snapshots_id", table = "id_generators", pkColumnName = "sequence_name", valueColumnName = "next_val", pkColumnValue = "stock_snapshots", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "product_id")
+    private Integer productId;
+
+    @Column(name = "product_variant_id")
+    private Integer productVariantId;
+
+    // generated by the database, 0 for the stock of a product without variant
+    @Column(name = "product_variant_key", insertable = false, updatable = false)
+    private Integer productVariantKey;
+
+    private Integer stock;
+
+    @Column(name = "snapshot_at")
+    private Instant snapshotAt;
+}
@@ -1,7 +1,11 @@
 package dev.mfikri.widuriestock.filter;
 
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
+import dev.mfikri.widuriestock.config.UserPrincipalCacheProperties;
 import dev.mfikri.widuriestock.entrypoint.JwtAuthenticationEntryPoint;
 import dev.mfikri.widuriestock.exception.JwtAuthenticationException;
+import dev.mfikri.widuriestock.model.user.UserPrincipal;
+import dev.mfikri.widuriestock.util.JwtClaims;
 import dev.mfikri.widuriestock.util.JwtUtil;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
@@ -34,15 +38,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
     private final JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
+    private final UserPrincipalCache userPrincipalCache;
+    private final UserPrincipalCacheProperties userPrincipalCacheProperties;
 
 
     private final String AUTH_HEADER = "Authorization";
     private final String AUTH_TYPE = "Bearer";
+    private static final String ROLE_PREFIX = "ROLE_";
 
-    public JwtAuthenticationFilter(UserDetailsService userDetailsService, JwtUtil jwtUtil, JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint) {
+    public JwtAuthenticationFilter(UserDetailsService userDetailsService, JwtUtil jwtUtil, JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint, UserPrincipalCache userPrincipalCache, UserPrincipalCacheProperties userPrincipalCacheProperties) {
         this.userDetailsService = userDetailsService;
         this.jwtUtil = jwtUtil;
         this.jwtAuthenticationEntryPoint = jwtAuthenticationEntryPoint;
+        this.userPrincipalCache = userPrincipalCache;
+        this.userPrincipalCacheProperties = userPrincipalCacheProperties;
     }
 
     @Override
@@ -54,11 +63,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         try {
-            final String tokenUsername = jwtUtil.extractUsername(token);
+            // one verification of the signature and the expiry, every check below reads its claims
+            final JwtClaims claims = jwtUtil.verify(token);
+            final String tokenUsername = claims.subject();
             if (tokenUsername != null && securityContextHolderStrategy.getContext().getAuthentication() == null) {
-                UserDetails userDetails;
-                userDetails = userDetailsService.loadUserByUsername(tokenUsername);
-                if (!jwtUtil.isTokenValid(token, userDetails.getUsername())) {
+                UserDetails userDetails = loadUserPrincipal(claims);
+                if (!tokenUsername.equals(userDetails.getUsername())) {
                     throw new UsernameNotFoundException("Failed to authenticate with access token");
                 }
 
@@ -84,6 +94,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private UserDetails loadUserPrincipal(JwtClaims claims) {
+        if (userPrincipalCacheProperties.isRoleClaimEnabled()
+                && claims.role() != null
+                && userPrincipalCache.isIssuedAfterLastChange(claims.subject(), claims.issuedAt())) {
+            return new UserPrincipal(claims.subject(), null, ROLE_PREFIX + claims.role());
+        }
+
+        return userPrincipalCache.get(claims.subject(), username -> {
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            // the password hash is not needed to authorize a request, it is not kept in memory
+            return new UserPrincipal(userDetails.getUsername(), null, userDetails.getAuthorities().iterator().next().getAuthority());
+        });
+    }
+
     private String extractAuthorizationHeader(HttpServletRequest request) {
         final String headerValue = request.getHeader(AUTH_HEADER);
 
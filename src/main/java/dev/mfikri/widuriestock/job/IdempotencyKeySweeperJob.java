@@ -0,0 +1,32 @@
+package dev.mfikri.widuriestock.job;
+
+import dev.mfikri.widuriestock.service.IdempotencyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes the expired Idempotency-Keys. Runs of several instances may overlap, each batch deletes rows the
+ * other has not deleted yet.
+ */
+@Slf4j
+@Component
+public class IdempotencyKeySweeperJob {
+    private final IdempotencyService idempotencyService;
+
+    public IdempotencyKeySweeperJob(IdempotencyService idempotencyService) {
+        this.idempotencyService = idempotencyService;
+    }
+
+    @Scheduled(cron = "${app.idempotency.sweep-cron}")
+    public void run() {
+        log.info("Running idempotency key sweeper job.");
+        try {
+            int deleted = idempotencyService.sweepExpired();
+            log.info("Idempotency key sweeper job finished. deleted={}", deleted);
+        } catch (DataAccessException e) {
+            log.warn("Idempotency key sweeper job failed, retrying on the next run. error={}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package dev.mfikri.widuriestock.job;
+
+import dev.mfikri.widuriestock.service.PurchaseReportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds the monthly purchase aggregates from the incoming product details. Every write keeps them up to
+ * date already, the rebuild only repairs rows that drifted, for example after details were changed by hand.
+ */
+@Slf4j
+@Component
+public class PurchaseAggregateRebuildJob {
+    private final PurchaseReportService purchaseReportService;
+
+    public PurchaseAggregateRebuildJob(PurchaseReportService purchaseReportService) {
+        this.purchaseReportService = purchaseReportService;
+    }
+
+    @Scheduled(cron = "${app.purchase-aggregate.rebuild-cron}")
+    public void run() {
+        log.info("Running purchase aggregate rebuild job.");
+        try {
+            int count = purchaseReportService.rebuild();
+            log.info("Purchase aggregate rebuild job finished. count={}", count);
+        } catch (DataAccessException e) {
+            log.warn("Purchase aggregate rebuild job failed, retrying on the next run. error={}", e.getMessage());
+        }
+    }
+}
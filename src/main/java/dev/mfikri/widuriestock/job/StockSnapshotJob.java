@@ -0,0 +1,43 @@
+package dev.mfikri.widuriestock.job;
+
+import dev.mfikri.widuriestock.service.StockHistoryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Takes the daily stock snapshot at the start of the current day. It runs every hour because a run for a
+ * boundary that is already snapshotted does nothing, so a failed run is retried by the next one.
+ * <p>
+ * A snapshot never misses a late movement: the ledger stamps created_at with the database clock while the
+ * writer holds the stock movement barrier, and the snapshot waits for the barrier before reading. The boundary
+ * itself comes from the application clock, so the two clocks must not drift by more than the delay between
+ * midnight and the first run.
+ */
+@Slf4j
+@Component
+public class StockSnapshotJob {
+    private final StockHistoryService stockHistoryService;
+
+    public StockSnapshotJob(StockHistoryService stockHistoryService) {
+        this.stockHistoryService = stockHistoryService;
+    }
+
+    @Scheduled(cron = "${app.stock-snapshot.cron}")
+    public void run() {
+        Instant snapshotAt = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant();
+
+        log.info("Running stock snapshot job. snapshotAt={}", snapshotAt);
+        try {
+            int count = stockHistoryService.takeSnapshots(snapshotAt);
+            log.info("Stock snapshot job finished. snapshotAt={}, count={}", snapshotAt, count);
+        } catch (DataAccessException e) {
+            log.warn("Stock snapshot job failed, retrying on the next run. snapshotAt={}, error={}", snapshotAt, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package dev.mfikri.widuriestock.job;
+
+import dev.mfikri.widuriestock.model.media.UploadSweepResponse;
+import dev.mfikri.widuriestock.service.UploadSweeperService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Deletes orphaned uploads once a day. Runs of several instances may overlap, a file deleted by one is
+ * skipped by the other.
+ */
+@Slf4j
+@Component
+public class UploadSweeperJob {
+    private final UploadSweeperService uploadSweeperService;
+
+    public UploadSweeperJob(UploadSweeperService uploadSweeperService) {
+        this.uploadSweeperService = uploadSweeperService;
+    }
+
+    @Scheduled(cron = "${app.upload-sweeper.cron}")
+    public void run() {
+        log.info("Running upload sweeper job.");
+        try {
+            UploadSweepResponse response = uploadSweeperService.sweep(false);
+            log.info("Upload sweeper job finished. deletedFiles={}", response.getDeletedFiles());
+        } catch (ResponseStatusException e) {
+            log.warn("Upload sweeper job failed, retrying on the next run. error={}", e.getReason());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dev.mfikri.widuriestock.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -9,8 +10,10 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PagingResponse {
-    private int currentPage;
-    private int totalPage;
+    private Integer currentPage;
+    private Integer totalPage;
     private int sizePerPage;
+    private String nextCursor;
 }
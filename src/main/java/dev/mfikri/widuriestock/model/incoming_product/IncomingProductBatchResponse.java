@@ -0,0 +1,33 @@
+package dev.mfikri.widuriestock.model.incoming_product;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IncomingProductBatchResponse {
+    private Integer created;
+    private Integer failed;
+
+    // one result per receipt, in the order of the body
+    private List<ReceiptResult> results;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class ReceiptResult {
+        // line of the body the receipt is on
+        private Long row;
+        // set when the receipt is created
+        private Integer incomingProductId;
+        // set when the receipt failed
+        private String error;
+    }
+}
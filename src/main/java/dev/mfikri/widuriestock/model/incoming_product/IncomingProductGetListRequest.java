@@ -18,7 +18,21 @@ public class IncomingProductGetListRequest {
     private LocalDate startDate;
     private LocalDate endDate;
 
+    private Integer supplierId;
+    private Integer productId;
+    private Integer variantId;
+    private String username;
+
+    // part of the note, case insensitive
+    private String note;
+
     private Integer page;
     private Integer size;
 
+    // cursor from the previous page, switches the list to cursor mode
+    private String after;
+
+    // false skips the count of the whole range, the paging then has no total page
+    private Boolean count;
+
 }
@@ -0,0 +1,28 @@
+package dev.mfikri.widuriestock.model.incoming_product;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IncomingProductHistoryRequest {
+
+    @JsonIgnore
+    private Integer productId;
+
+    private Integer variantId;
+
+    // cursor from the previous page, empty or missing for the latest receipts
+    private String after;
+
+    @Positive
+    @Max(100)
+    private Integer size;
+}
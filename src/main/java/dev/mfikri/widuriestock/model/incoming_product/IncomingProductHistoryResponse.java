@@ -0,0 +1,29 @@
+package dev.mfikri.widuriestock.model.incoming_product;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * One received line of a product, the incoming product detail itself or, for a product with variants, one of
+ * its variant details.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IncomingProductHistoryResponse {
+    private Integer incomingProductId;
+    private Integer incomingProductDetailId;
+    private Integer incomingProductVariantDetailId;
+    private LocalDate dateIn;
+    private IncomingProductSupplierResponse supplier;
+    private String username;
+    private IncomingProductProductVariantResponse variant;
+    private Integer pricePerUnit;
+    private Integer quantity;
+    private Integer totalPrice;
+}
@@ -0,0 +1,30 @@
+package dev.mfikri.widuriestock.model.media;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.http.MediaType;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MediaFile {
+    private Path path;
+    private long size;
+    private Instant lastModified;
+    private MediaType contentType;
+
+    // strong, quoted
+    private String etag;
+
+    // named by its content, the bytes behind the name never change
+    private boolean immutable;
+
+    // profile photos are only cached by the browser of the user
+    private boolean restricted;
+}
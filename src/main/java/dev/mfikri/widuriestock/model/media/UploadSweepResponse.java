@@ -0,0 +1,23 @@
+package dev.mfikri.widuriestock.model.media;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSweepResponse {
+    private Boolean dryRun;
+    private Long scannedFiles;
+    private Long orphanedFiles;
+    private Long orphanedBytes;
+    private Long deletedFiles;
+
+    // the first orphans found, up to the configured maximum
+    private List<String> orphans;
+}
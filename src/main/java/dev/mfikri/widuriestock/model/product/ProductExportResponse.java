@@ -0,0 +1,47 @@
+package dev.mfikri.widuriestock.model.product;
+
+import lombok.*;
+
+import java.util.List;
+
+// one line of the ndjson export, the field names match the product create request so the line can be imported again
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductExportResponse {
+    private Integer id;
+    private String name;
+    private String description;
+    private Integer categoryId;
+    private String categoryName;
+    private Boolean hasVariant;
+    private Integer stock;
+    private Integer price;
+
+    private List<ProductVariant> variants;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class ProductVariant {
+        private Integer id;
+        private String sku;
+        private Integer stock;
+        private Integer price;
+
+        private List<ProductVariantAttribute> attributes;
+    }
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class ProductVariantAttribute {
+        private String attributeKey;
+        private String attributeValue;
+    }
+}
@@ -0,0 +1,9 @@
+package dev.mfikri.widuriestock.model.product;
+
+// formats of the product import and export, an exported file can be imported again
+public enum ProductFileFormat {
+    // one row per product, consecutive rows of the same product with variants hold one variant each
+    CSV,
+    // one product json object per line
+    NDJSON
+}
@@ -0,0 +1,29 @@
+package dev.mfikri.widuriestock.model.product;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductImportResponse {
+    private Integer imported;
+    private Integer failed;
+
+    // the first rows that failed, 'failed' counts all of them
+    private List<RowError> errors;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class RowError {
+        // line of the body the product starts on
+        private Long row;
+        private String name;
+        private String message;
+    }
+}
@@ -0,0 +1,31 @@
+package dev.mfikri.widuriestock.model.product;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductStockHistoryRequest {
+
+    @JsonIgnore
+    private Integer productId;
+
+    private Integer variantId;
+
+    private LocalDate from;
+    private LocalDate to;
+
+    // maximum number of points returned, the range is downsampled into this many buckets
+    @Positive
+    @Max(1000)
+    private Integer points;
+}
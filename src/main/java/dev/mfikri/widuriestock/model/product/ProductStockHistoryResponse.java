@@ -0,0 +1,37 @@
+package dev.mfikri.widuriestock.model.product;
+
+import lombok.*;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ProductStockHistoryResponse {
+    private Integer productId;
+    private Integer variantId;
+    private Instant from;
+    private Instant to;
+    private Long bucketSeconds;
+    private Integer openingStock;
+    private Integer closingStock;
+
+    private List<Point> points;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class Point {
+        private Instant start;
+        private Instant end;
+        // stock at the end of the bucket
+        private Integer stock;
+        private Integer inbound;
+        private Integer outbound;
+        private Integer movements;
+    }
+}
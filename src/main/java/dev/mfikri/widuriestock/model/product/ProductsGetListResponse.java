@@ -15,4 +15,6 @@ public class ProductsGetListResponse {
     private String description;
     private CategoryResponse categoryResponse;
     private String imageLocation;
+    // smallest rendition of the cover photo, null until it is made or when the format can not be resized
+    private String thumbnailLocation;
 }
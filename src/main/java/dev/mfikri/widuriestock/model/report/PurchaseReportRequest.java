@@ -0,0 +1,22 @@
+package dev.mfikri.widuriestock.model.report;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.YearMonth;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class PurchaseReportRequest {
+
+    // both months are inclusive, default is the last 12 months up to the current one
+    private YearMonth from;
+    private YearMonth to;
+
+    private Integer supplierId;
+    private Integer productId;
+}
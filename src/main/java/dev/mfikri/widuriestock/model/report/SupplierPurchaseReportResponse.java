@@ -0,0 +1,22 @@
+package dev.mfikri.widuriestock.model.report;
+
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductSupplierResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.YearMonth;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SupplierPurchaseReportResponse {
+    private YearMonth month;
+    private IncomingProductSupplierResponse supplier;
+    private Long quantity;
+    private Long totalPrice;
+    // number of received lines, a line is one incoming product detail
+    private Integer lines;
+}
@@ -0,0 +1,47 @@
+package dev.mfikri.widuriestock.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out ids for rows written with plain JDBC batches from the same pooled table generator Hibernate uses
+ * for the entity. Both draw from one in-memory block per entity, so their ids never collide, and the
+ * id_generators table is only read once per block.
+ */
+@Repository
+public class EntityIdGenerator {
+    private final SessionFactoryImplementor sessionFactory;
+
+    public EntityIdGenerator(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * @param entityClass entity whose id generator is used
+     * @param count       number of ids
+     * @return new ids in the java type of the entity id, ascending
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> nextIds(Class<?> entityClass, int count) {
+        if (count == 0) {
+            return List.of();
+        }
+
+        IdentifierGenerator generator = (IdentifierGenerator) sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass).getGenerator();
+        List<T> ids = new ArrayList<>(count);
+        // a new block is fetched by the generator on its own connection and transaction, like for a persist
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            for (int i = 0; i < count; i++) {
+                ids.add((T) generator.generate((SharedSessionContractImplementor) session, null));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,7 @@
+package dev.mfikri.widuriestock.repository;
+
+/**
+ * A stored Idempotency-Key. The response is the JSON of the first successful request with the key.
+ */
+public record IdempotencyKeyEntry(byte[] requestHash, String responseBody) {
+}
@@ -0,0 +1,50 @@
+package dev.mfikri.widuriestock.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public class IdempotencyKeyRepository {
+    private static final String SELECT_BY_KEY_HASH = "SELECT request_hash, response_body FROM idempotency_keys WHERE key_hash = ?";
+
+    private static final String INSERT = "INSERT INTO idempotency_keys (key_hash, request_hash, expires_at) VALUES (?, ?, ?)";
+
+    private static final String UPDATE_RESPONSE = "UPDATE idempotency_keys SET response_body = ? WHERE key_hash = ?";
+
+    // bounded, so a sweep never holds locks on more than one batch of rows
+    private static final String DELETE_EXPIRED = "DELETE FROM idempotency_keys WHERE expires_at < ? LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdempotencyKeyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<IdempotencyKeyEntry> findByKeyHash(byte[] keyHash) {
+        List<IdempotencyKeyEntry> entries = jdbcTemplate.query(SELECT_BY_KEY_HASH, (rs, rowNum) ->
+                new IdempotencyKeyEntry(rs.getBytes("request_hash"), rs.getString("response_body")), keyHash);
+        return entries.stream().findFirst();
+    }
+
+    /**
+     * Waits for the row lock when another transaction inserted the same key and has not ended yet.
+     *
+     * @throws org.springframework.dao.DuplicateKeyException when the key is already stored
+     */
+    public void insert(byte[] keyHash, byte[] requestHash, Instant expiresAt) {
+        jdbcTemplate.update(INSERT, keyHash, requestHash, Timestamp.from(expiresAt));
+    }
+
+    public void updateResponse(byte[] keyHash, String responseBody) {
+        jdbcTemplate.update(UPDATE_RESPONSE, responseBody, keyHash);
+    }
+
+    public int deleteExpired(Instant now, int limit) {
+        return jdbcTemplate.update(DELETE_EXPIRED, Timestamp.from(now), limit);
+    }
+}
@@ -0,0 +1,30 @@
+package dev.mfikri.widuriestock.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+/**
+ * Reads every file location a row references, without loading them all into memory at once.
+ */
+@Repository
+public class ImageReferenceRepository {
+    private static final String SELECT_IMAGE_LOCATIONS = "SELECT image_location FROM product_photos WHERE image_location IS NOT NULL " +
+            "UNION ALL SELECT image_location FROM product_photo_renditions " +
+            "UNION ALL SELECT photo FROM users WHERE photo IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ImageReferenceRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // makes MySQL Connector/J stream the rows instead of reading the whole result set into memory
+        this.jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    public void streamImageLocations(Consumer<String> consumer) {
+        jdbcTemplate.query(SELECT_IMAGE_LOCATIONS, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+}
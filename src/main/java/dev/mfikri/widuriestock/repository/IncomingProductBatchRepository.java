@@ -0,0 +1,139 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProduct;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductDetail;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductVariantDetail;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Bulk lookups and batched inserts for the incoming product batch. The lookups read only the columns the checks
+ * need, one query per table, and each insert takes ids for its rows from the entity id generator, sets them on
+ * the given entities and writes the rows in one JDBC batch, so the children can refer to them.
+ */
+@Slf4j
+@Repository
+public class IncomingProductBatchRepository {
+    private static final String SELECT_SUPPLIER_IDS = "SELECT id FROM suppliers WHERE id IN (%s)";
+    private static final String SELECT_PRODUCT_HAS_VARIANTS = "SELECT id, has_variant FROM products WHERE id IN (%s)";
+    private static final String SELECT_VARIANT_PRODUCT_IDS = "SELECT id, product_id FROM product_variants WHERE id IN (%s)";
+
+    private static final String INSERT_INCOMING_PRODUCT = "INSERT INTO incoming_products (id, date_in, supplier_id, user_username, total_products, note, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String INSERT_INCOMING_PRODUCT_DETAIL = "INSERT INTO incoming_product_details (id, incoming_product_id, product_id, price_per_unit, quantity, total_price, has_variant, total_variant_quantity, total_variant_price, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String INSERT_INCOMING_PRODUCT_VARIANT_DETAIL = "INSERT INTO incoming_product_variant_details (id, incoming_product_detail_id, product_variant_id, price_per_unit, quantity, total_price, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityIdGenerator entityIdGenerator;
+
+    public IncomingProductBatchRepository(JdbcTemplate jdbcTemplate, EntityIdGenerator entityIdGenerator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityIdGenerator = entityIdGenerator;
+    }
+
+    public Set<Integer> findSupplierIds(Collection<Integer> supplierIds) {
+        if (supplierIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbcTemplate.queryForList(SELECT_SUPPLIER_IDS.formatted(placeholders(supplierIds.size())), Integer.class, supplierIds.toArray()));
+    }
+
+    /**
+     * @return hasVariant keyed by product id, of the products that exist
+     */
+    public Map<Integer, Boolean> findProductHasVariants(Collection<Integer> productIds) {
+        Map<Integer, Boolean> hasVariants = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            jdbcTemplate.query(SELECT_PRODUCT_HAS_VARIANTS.formatted(placeholders(productIds.size())),
+                    (RowCallbackHandler) rs -> hasVariants.put(rs.getInt("id"), rs.getBoolean("has_variant")), productIds.toArray());
+        }
+        return hasVariants;
+    }
+
+    /**
+     * @return product id keyed by product variant id, of the variants that exist
+     */
+    public Map<Integer, Integer> findVariantProductIds(Collection<Integer> productVariantIds) {
+        Map<Integer, Integer> productIds = new HashMap<>();
+        if (!productVariantIds.isEmpty()) {
+            jdbcTemplate.query(SELECT_VARIANT_PRODUCT_IDS.formatted(placeholders(productVariantIds.size())),
+                    (RowCallbackHandler) rs -> productIds.put(rs.getInt("id"), rs.getInt("product_id")), productVariantIds.toArray());
+        }
+        return productIds;
+    }
+
+    public void insertIncomingProducts(List<IncomingProduct> incomingProducts) {
+        if (incomingProducts.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting incoming products in batch. count={}", incomingProducts.size());
+        List<Integer> ids = entityIdGenerator.nextIds(IncomingProduct.class, incomingProducts.size());
+        for (int i = 0; i < incomingProducts.size(); i++) {
+            incomingProducts.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_INCOMING_PRODUCT, incomingProducts, incomingProducts.size(), (ps, incomingProduct) -> {
+            ps.setInt(1, incomingProduct.getId());
+            ps.setDate(2, Date.valueOf(incomingProduct.getDateIn()));
+            ps.setInt(3, incomingProduct.getSupplier().getId());
+            ps.setString(4, incomingProduct.getUser().getUsername());
+            ps.setInt(5, incomingProduct.getTotalProducts());
+            ps.setString(6, incomingProduct.getNote());
+        });
+    }
+
+    public void insertIncomingProductDetails(List<IncomingProductDetail> incomingProductDetails) {
+        if (incomingProductDetails.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting incoming product details in batch. count={}", incomingProductDetails.size());
+        List<Integer> ids = entityIdGenerator.nextIds(IncomingProductDetail.class, incomingProductDetails.size());
+        for (int i = 0; i < incomingProductDetails.size(); i++) {
+            incomingProductDetails.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_INCOMING_PRODUCT_DETAIL, incomingProductDetails, incomingProductDetails.size(), (ps, incomingProductDetail) -> {
+            ps.setInt(1, incomingProductDetail.getId());
+            ps.setInt(2, incomingProductDetail.getIncomingProduct().getId());
+            ps.setInt(3, incomingProductDetail.getProduct().getId());
+            ps.setObject(4, incomingProductDetail.getPricePerUnit(), Types.INTEGER);
+            ps.setObject(5, incomingProductDetail.getQuantity(), Types.INTEGER);
+            ps.setObject(6, incomingProductDetail.getTotalPrice(), Types.INTEGER);
+            ps.setBoolean(7, incomingProductDetail.getHasVariant());
+            ps.setObject(8, incomingProductDetail.getTotalVariantQuantity(), Types.INTEGER);
+            ps.setObject(9, incomingProductDetail.getTotalVariantPrice(), Types.INTEGER);
+        });
+    }
+
+    public void insertIncomingProductVariantDetails(List<IncomingProductVariantDetail> incomingProductVariantDetails) {
+        if (incomingProductVariantDetails.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting incoming product variant details in batch. count={}", incomingProductVariantDetails.size());
+        List<Integer> ids = entityIdGenerator.nextIds(IncomingProductVariantDetail.class, incomingProductVariantDetails.size());
+        for (int i = 0; i < incomingProductVariantDetails.size(); i++) {
+            incomingProductVariantDetails.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_INCOMING_PRODUCT_VARIANT_DETAIL, incomingProductVariantDetails, incomingProductVariantDetails.size(), (ps, incomingProductVariantDetail) -> {
+            ps.setInt(1, incomingProductVariantDetail.getId());
+            ps.setInt(2, incomingProductVariantDetail.getIncomingProductDetail().getId());
+            ps.setInt(3, incomingProductVariantDetail.getProductVariant().getId());
+            ps.setInt(4, incomingProductVariantDetail.getPricePerUnit());
+            ps.setInt(5, incomingProductVariantDetail.getQuantity());
+            ps.setInt(6, incomingProductVariantDetail.getTotalPrice());
+        });
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,171 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductHistoryResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductProductResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductProductVariantResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductSupplierResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads incoming product transactions straight into their responses, without loading the entities into the
+ * persistence context. The header is read with one query and every detail with its variant details with a
+ * second one, whatever the number of details.
+ */
+@Repository
+public class IncomingProductReadRepository {
+    private static final String SELECT_HEADER = "SELECT ip.id, ip.date_in, ip.user_username, ip.total_products, ip.note, ip.update_reason, s.id AS supplier_id, s.supplier_name " +
+            "FROM incoming_products ip " +
+            "JOIN suppliers s ON s.id = ip.supplier_id " +
+            "WHERE ip.id = ?";
+
+    // the rows of a detail come one after the other, so the tree is built in one pass over the result
+    private static final String SELECT_DETAILS = "SELECT d.id, d.price_per_unit, d.quantity, d.total_price, d.has_variant, d.total_variant_quantity, d.total_variant_price, " +
+            "p.id AS product_id, p.name AS product_name, " +
+            "vd.id AS variant_detail_id, vd.price_per_unit AS variant_price_per_unit, vd.quantity AS variant_quantity, vd.total_price AS variant_total_price, " +
+            "pv.id AS variant_id, pv.sku AS variant_sku " +
+            "FROM incoming_product_details d " +
+            "JOIN products p ON p.id = d.product_id " +
+            "LEFT JOIN incoming_product_variant_details vd ON vd.incoming_product_detail_id = d.id " +
+            "LEFT JOIN product_variants pv ON pv.id = vd.product_variant_id " +
+            "WHERE d.incoming_product_id = ? " +
+            "ORDER BY d.id ASC, vd.id ASC";
+
+    // a line is the detail itself or one of its variant details, newest receipt first
+    private static final String SELECT_HISTORY = "SELECT ip.id AS incoming_product_id, ip.date_in, ip.user_username, s.id AS supplier_id, s.supplier_name, " +
+            "d.id AS detail_id, vd.id AS variant_detail_id, pv.id AS variant_id, pv.sku AS variant_sku, " +
+            "COALESCE(vd.price_per_unit, d.price_per_unit) AS price_per_unit, COALESCE(vd.quantity, d.quantity) AS quantity, " +
+            "COALESCE(vd.total_price, d.total_price) AS total_price " +
+            "FROM incoming_product_details d " +
+            "JOIN incoming_products ip ON ip.id = d.incoming_product_id " +
+            "JOIN suppliers s ON s.id = ip.supplier_id " +
+            "LEFT JOIN incoming_product_variant_details vd ON vd.incoming_product_detail_id = d.id " +
+            "LEFT JOIN product_variants pv ON pv.id = vd.product_variant_id " +
+            "WHERE d.product_id = ? ";
+    private static final String HISTORY_VARIANT_FILTER = "AND vd.product_variant_id = ? ";
+    private static final String HISTORY_SEEK = "AND (ip.date_in < ? OR (ip.date_in = ? AND (d.id < ? OR (d.id = ? AND COALESCE(vd.id, 0) < ?)))) ";
+    private static final String HISTORY_ORDER = "ORDER BY ip.date_in DESC, d.id DESC, COALESCE(vd.id, 0) DESC LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IncomingProductReadRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public Optional<IncomingProductResponse> findResponseById(Integer id) {
+        List<IncomingProductResponse> headers = jdbcTemplate.query(SELECT_HEADER, (rs, rowNum) -> {
+            Date dateIn = rs.getDate("date_in");
+            return IncomingProductResponse.builder()
+                    .id(rs.getInt("id"))
+                    .dateIn(dateIn != null ? dateIn.toLocalDate() : null)
+                    .supplier(IncomingProductSupplierResponse.builder()
+                            .id(rs.getInt("supplier_id"))
+                            .name(rs.getString("supplier_name"))
+                            .build())
+                    .username(rs.getString("user_username"))
+                    .totalProducts(rs.getObject("total_products", Integer.class))
+                    .note(rs.getString("note"))
+                    .updateReason(rs.getString("update_reason"))
+                    .build();
+        }, id);
+        if (headers.isEmpty()) {
+            return Optional.empty();
+        }
+
+        List<IncomingProductResponse.IncomingProductDetail> details = new ArrayList<>();
+        jdbcTemplate.query(SELECT_DETAILS, (RowCallbackHandler) rs -> {
+            int detailId = rs.getInt("id");
+            IncomingProductResponse.IncomingProductDetail detail = details.isEmpty() ? null : details.getLast();
+            if (detail == null || detail.getId() != detailId) {
+                boolean hasVariant = rs.getBoolean("has_variant");
+                detail = IncomingProductResponse.IncomingProductDetail.builder()
+                        .id(detailId)
+                        .product(IncomingProductProductResponse.builder()
+                                .id(rs.getInt("product_id"))
+                                .name(rs.getString("product_name"))
+                                .build())
+                        .pricePerUnit(rs.getObject("price_per_unit", Integer.class))
+                        .quantity(rs.getObject("quantity", Integer.class))
+                        .totalPrice(rs.getObject("total_price", Integer.class))
+                        .hasVariant(hasVariant)
+                        .totalVariantQuantity(rs.getObject("total_variant_quantity", Integer.class))
+                        .totalVariantPrice(rs.getObject("total_variant_price", Integer.class))
+                        .incomingProductVariantDetails(hasVariant ? new ArrayList<>() : null)
+                        .build();
+                details.add(detail);
+            }
+
+            Integer variantDetailId = rs.getObject("variant_detail_id", Integer.class);
+            if (variantDetailId != null && detail.getIncomingProductVariantDetails() != null) {
+                detail.getIncomingProductVariantDetails().add(IncomingProductResponse.IncomingProductVariantDetail.builder()
+                        .id(variantDetailId)
+                        .variant(IncomingProductProductVariantResponse.builder()
+                                .id(rs.getInt("variant_id"))
+                                .sku(rs.getString("variant_sku"))
+                                .build())
+                        .pricePerUnit(rs.getObject("variant_price_per_unit", Integer.class))
+                        .quantity(rs.getObject("variant_quantity", Integer.class))
+                        .totalPrice(rs.getObject("variant_total_price", Integer.class))
+                        .build());
+            }
+        }, id);
+
+        IncomingProductResponse response = headers.getFirst();
+        response.setIncomingProductDetails(details);
+        return Optional.of(response);
+    }
+
+    /**
+     * Reads the received lines of a product, newest first. The cursor is the date, detail id and variant detail id
+     * of the last line of the previous page, the first page is read when the date is null.
+     *
+     * @param variantId optional, only the lines of this variant
+     */
+    public List<IncomingProductHistoryResponse> findHistory(Integer productId, Integer variantId,
+                                                            LocalDate afterDateIn, Integer afterDetailId, Integer afterVariantDetailId, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT_HISTORY);
+        List<Object> args = new ArrayList<>();
+        args.add(productId);
+        if (variantId != null) {
+            sql.append(HISTORY_VARIANT_FILTER);
+            args.add(variantId);
+        }
+        if (afterDateIn != null) {
+            sql.append(HISTORY_SEEK);
+            args.addAll(List.of(Date.valueOf(afterDateIn), Date.valueOf(afterDateIn), afterDetailId, afterDetailId,
+                    afterVariantDetailId != null ? afterVariantDetailId : 0));
+        }
+        sql.append(HISTORY_ORDER);
+        args.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Integer variantDetailId = rs.getObject("variant_detail_id", Integer.class);
+            return IncomingProductHistoryResponse.builder()
+                    .incomingProductId(rs.getInt("incoming_product_id"))
+                    .incomingProductDetailId(rs.getInt("detail_id"))
+                    .incomingProductVariantDetailId(variantDetailId)
+                    .dateIn(rs.getDate("date_in").toLocalDate())
+                    .supplier(IncomingProductSupplierResponse.builder()
+                            .id(rs.getInt("supplier_id"))
+                            .name(rs.getString("supplier_name"))
+                            .build())
+                    .username(rs.getString("user_username"))
+                    .variant(variantDetailId == null ? null : IncomingProductProductVariantResponse.builder()
+                            .id(rs.getInt("variant_id"))
+                            .sku(rs.getString("variant_sku"))
+                            .build())
+                    .pricePerUnit(rs.getObject("price_per_unit", Integer.class))
+                    .quantity(rs.getObject("quantity", Integer.class))
+                    .totalPrice(rs.getObject("total_price", Integer.class))
+                    .build();
+        }, args.toArray());
+    }
+}
@@ -1,14 +1,58 @@
 package dev.mfikri.widuriestock.repository;
 
 import dev.mfikri.widuriestock.entity.incoming_product.IncomingProduct;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface IncomingProductRepository extends JpaRepository<IncomingProduct, Integer> {
-    Page<IncomingProduct> findByDateInBetween(LocalDate dateInAfter, LocalDate dateInBefore, Pageable pageable);
+    // the username is the foreign key column itself, only the supplier is joined
+    String SELECT_SUMMARY = "SELECT ip.id AS id, ip.dateIn AS dateIn, s.id AS supplierId, s.supplierName AS supplierName, " +
+            "ip.user.username AS username, ip.totalProducts AS totalProducts, ip.note AS note " +
+            "FROM incoming_products ip JOIN ip.supplier s ";
+
+    // a filter that is not sent is bound as null, MySQL folds its whole condition away before choosing the index
+    String WHERE_FILTER = "WHERE ip.dateIn BETWEEN :startDate AND :endDate " +
+            "AND (:supplierId IS NULL OR ip.supplier.id = :supplierId) " +
+            "AND (:username IS NULL OR ip.user.username = :username) " +
+            "AND (:notePattern IS NULL OR ip.note LIKE :notePattern ESCAPE '!') " +
+            "AND (:productId IS NULL OR EXISTS (SELECT 1 FROM incoming_product_details d " +
+            "    WHERE d.incomingProduct = ip AND d.product.id = :productId)) " +
+            "AND (:variantId IS NULL OR EXISTS (SELECT 1 FROM incoming_product_variant_details vd " +
+            "    WHERE vd.incomingProductDetail.incomingProduct = ip AND vd.productVariant.id = :variantId)) ";
+
+    @EntityGraph("IncomingProduct.detail")
+    Optional<IncomingProduct> findDetailById(Integer id);
+
+    @Query(
+            value = SELECT_SUMMARY + WHERE_FILTER + "ORDER BY ip.dateIn ASC, ip.id ASC",
+            countQuery = "SELECT count(ip) FROM incoming_products ip " + WHERE_FILTER
+    )
+    Page<IncomingProductSummary> findSummaryPage(LocalDate startDate, LocalDate endDate, Integer supplierId, String username, String notePattern,
+                                                 Integer productId, Integer variantId, Pageable pageable);
+
+    // reads one extra row to know whether there is a next page instead of counting the whole range
+    @Query(SELECT_SUMMARY + WHERE_FILTER + "ORDER BY ip.dateIn ASC, ip.id ASC")
+    Slice<IncomingProductSummary> findSummarySlice(LocalDate startDate, LocalDate endDate, Integer supplierId, String username, String notePattern,
+                                                   Integer productId, Integer variantId, Pageable pageable);
+
+    @Query(SELECT_SUMMARY + WHERE_FILTER + "ORDER BY ip.dateIn ASC, ip.id ASC")
+    List<IncomingProductSummary> findSummaries(LocalDate startDate, LocalDate endDate, Integer supplierId, String username, String notePattern,
+                                               Integer productId, Integer variantId, Limit limit);
+
+    @Query(SELECT_SUMMARY + WHERE_FILTER +
+            "AND (ip.dateIn > :dateIn OR (ip.dateIn = :dateIn AND ip.id > :id)) " +
+            "ORDER BY ip.dateIn ASC, ip.id ASC")
+    List<IncomingProductSummary> findSummariesAfter(LocalDate startDate, LocalDate endDate, Integer supplierId, String username, String notePattern,
+                                                    Integer productId, Integer variantId, LocalDate dateIn, Integer id, Limit limit);
 }
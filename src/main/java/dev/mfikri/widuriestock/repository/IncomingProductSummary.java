@@ -0,0 +1,13 @@
+package dev.mfikri.widuriestock.repository;
+
+import java.time.LocalDate;
+
+public interface IncomingProductSummary {
+    Integer getId();
+    LocalDate getDateIn();
+    Integer getSupplierId();
+    String getSupplierName();
+    String getUsername();
+    Integer getTotalProducts();
+    String getNote();
+}
@@ -1,5 +1,6 @@
 package dev.mfikri.widuriestock.repository;
 
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductDetail;
 import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductVariantDetail;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.repository.CrudRepository;
@@ -7,4 +8,5 @@ import org.springframework.stereotype.Repository;
 
 @Repository
 public interface IncomingProductVariantDetailRepository extends JpaRepository<IncomingProductVariantDetail, Integer> {
+    long countByIncomingProductDetail(IncomingProductDetail incomingProductDetail);
 }
@@ -0,0 +1,108 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.model.product.ProductExportResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Reads the whole catalog with one forward-only query. The driver streams the result set row by row,
+ * so memory use does not grow with the catalog, and only one product is assembled at a time.
+ */
+@Slf4j
+@Repository
+public class ProductExportRepository {
+    // the rows of a product, its variants and their attributes arrive together and in id order
+    private static final String SELECT_CATALOG = "SELECT p.id, p.name, p.description, p.has_variant, p.price, p.stock, c.id AS category_id, c.name AS category_name, " +
+            "v.id AS variant_id, v.sku, v.price AS variant_price, v.stock AS variant_stock, a.attribute_key, a.attribute_value " +
+            "FROM products p " +
+            "JOIN categories c ON c.id = p.category_id " +
+            "LEFT JOIN product_variants v ON v.product_id = p.id " +
+            "LEFT JOIN product_variant_attributes a ON a.product_variants_id = v.id " +
+            "ORDER BY p.id, v.id, a.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ProductExportRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // makes MySQL Connector/J stream the rows instead of reading the whole result set into memory
+        this.jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+    }
+
+    /**
+     * Passes every product with its variants and attributes to the consumer, in id order.
+     * Joins the current transaction, so run it in one to read a consistent snapshot.
+     */
+    public void streamProducts(Consumer<ProductExportResponse> consumer) {
+        ProductAssembler assembler = new ProductAssembler(consumer);
+        jdbcTemplate.query(SELECT_CATALOG, assembler);
+        assembler.finish();
+    }
+
+    private static class ProductAssembler implements RowCallbackHandler {
+        private final Consumer<ProductExportResponse> consumer;
+        private ProductExportResponse product;
+        private ProductExportResponse.ProductVariant productVariant;
+
+        private ProductAssembler(Consumer<ProductExportResponse> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            int productId = rs.getInt("id");
+            if (product == null || product.getId() != productId) {
+                finish();
+                boolean hasVariant = rs.getBoolean("has_variant");
+                product = ProductExportResponse.builder()
+                        .id(productId)
+                        .name(rs.getString("name"))
+                        .description(rs.getString("description"))
+                        .categoryId(rs.getInt("category_id"))
+                        .categoryName(rs.getString("category_name"))
+                        .hasVariant(hasVariant)
+                        .price(rs.getObject("price", Integer.class))
+                        .stock(rs.getObject("stock", Integer.class))
+                        .variants(hasVariant ? new ArrayList<>() : null)
+                        .build();
+                productVariant = null;
+            }
+
+            Integer variantId = rs.getObject("variant_id", Integer.class);
+            if (variantId != null && product.getVariants() != null) {
+                if (productVariant == null || !productVariant.getId().equals(variantId)) {
+                    productVariant = ProductExportResponse.ProductVariant.builder()
+                            .id(variantId)
+                            .sku(rs.getString("sku"))
+                            .price(rs.getInt("variant_price"))
+                            .stock(rs.getInt("variant_stock"))
+                            .attributes(new ArrayList<>())
+                            .build();
+                    product.getVariants().add(productVariant);
+                }
+
+                String attributeKey = rs.getString("attribute_key");
+                if (attributeKey != null) {
+                    productVariant.getAttributes().add(ProductExportResponse.ProductVariantAttribute.builder()
+                            .attributeKey(attributeKey)
+                            .attributeValue(rs.getString("attribute_value"))
+                            .build());
+                }
+            }
+        }
+
+        private void finish() {
+            if (product != null) {
+                consumer.accept(product);
+                product = null;
+            }
+        }
+    }
+}
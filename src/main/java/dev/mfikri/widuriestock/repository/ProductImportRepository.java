@@ -0,0 +1,90 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.entity.product.Product;
+import dev.mfikri.widuriestock.entity.product.ProductVariant;
+import dev.mfikri.widuriestock.entity.product.ProductVariantAttribute;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Batched inserts for the product import. Each method takes ids for its rows from the entity id generator,
+ * sets them on the given entities and writes the rows in one JDBC batch, so the children of the next batch can refer to them.
+ */
+@Slf4j
+@Repository
+public class ProductImportRepository {
+    private static final String INSERT_PRODUCT = "INSERT INTO products (id, name, description, has_variant, stock, price, category_id, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+    private static final String INSERT_PRODUCT_VARIANT = "INSERT INTO product_variants (id, sku, stock, price, product_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_PRODUCT_VARIANT_ATTRIBUTE = "INSERT INTO product_variant_attributes (id, attribute_key, attribute_value, product_variants_id) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityIdGenerator entityIdGenerator;
+
+    public ProductImportRepository(JdbcTemplate jdbcTemplate, EntityIdGenerator entityIdGenerator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityIdGenerator = entityIdGenerator;
+    }
+
+    public void insertProducts(List<Product> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting products in batch. count={}", products.size());
+        List<Integer> ids = entityIdGenerator.nextIds(Product.class, products.size());
+        for (int i = 0; i < products.size(); i++) {
+            products.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT, products, products.size(), (ps, product) -> {
+            ps.setInt(1, product.getId());
+            ps.setString(2, product.getName());
+            ps.setString(3, product.getDescription());
+            ps.setBoolean(4, product.getHasVariant());
+            ps.setObject(5, product.getStock(), Types.INTEGER);
+            ps.setObject(6, product.getPrice(), Types.INTEGER);
+            ps.setInt(7, product.getCategory().getId());
+        });
+    }
+
+    public void insertProductVariants(List<ProductVariant> productVariants) {
+        if (productVariants.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting product variants in batch. count={}", productVariants.size());
+        List<Integer> ids = entityIdGenerator.nextIds(ProductVariant.class, productVariants.size());
+        for (int i = 0; i < productVariants.size(); i++) {
+            productVariants.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT_VARIANT, productVariants, productVariants.size(), (ps, productVariant) -> {
+            ps.setInt(1, productVariant.getId());
+            ps.setString(2, productVariant.getSku());
+            ps.setInt(3, productVariant.getStock());
+            ps.setInt(4, productVariant.getPrice());
+            ps.setInt(5, productVariant.getProduct().getId());
+        });
+    }
+
+    public void insertProductVariantAttributes(List<ProductVariantAttribute> productVariantAttributes) {
+        if (productVariantAttributes.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting product variant attributes in batch. count={}", productVariantAttributes.size());
+        List<Integer> ids = entityIdGenerator.nextIds(ProductVariantAttribute.class, productVariantAttributes.size());
+        for (int i = 0; i < productVariantAttributes.size(); i++) {
+            productVariantAttributes.get(i).setId(ids.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT_VARIANT_ATTRIBUTE, productVariantAttributes, productVariantAttributes.size(), (ps, productVariantAttribute) -> {
+            ps.setInt(1, productVariantAttribute.getId());
+            ps.setString(2, productVariantAttribute.getAttributeKey());
+            ps.setString(3, productVariantAttribute.getAttributeValue());
+            ps.setInt(4, productVariantAttribute.getProductVariant().getId());
+        });
+    }
+}
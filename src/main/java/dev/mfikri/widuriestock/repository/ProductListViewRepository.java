@@ -0,0 +1,77 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.entity.product.ProductListView;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ProductListViewRepository extends JpaRepository<ProductListView, Integer> {
+
+    @Query(
+            value = "SELECT v.* " +
+                    "FROM product_list_view v " +
+                    "JOIN (SELECT id FROM product_list_view ORDER BY name, id LIMIT :#{#pageable.offset}, :#{#pageable.pageSize}) AS v_page ON v.id = v_page.id " +
+                    "ORDER BY v.name ASC, v.id ASC",
+            countQuery = "SELECT count(*) FROM product_list_view",
+            nativeQuery = true
+    )
+    Page<ProductListView> findPage(Pageable pageable);
+
+    List<ProductListView> findAllByOrderByNameAscIdAsc(Limit limit);
+
+    @Query("SELECT v FROM product_list_view v WHERE v.name > :name OR (v.name = :name AND v.id > :id) ORDER BY v.name ASC, v.id ASC")
+    List<ProductListView> findAllAfter(String name, Integer id, Limit limit);
+
+    // rebuilds the rows from the normalized tables, the cover image is the first photo ordered by id and its thumbnail the smallest rendition of it
+    @Modifying(flushAutomatically = true)
+    @Query(
+            value = "INSERT INTO product_list_view (id, name, description, category_id, category_name, image_location, thumbnail_location) " +
+                    "SELECT * FROM (" +
+                    "    SELECT " +
+                    "        p.id, " +
+                    "        p.name, " +
+                    "        p.description, " +
+                    "        c.id AS category_id, " +
+                    "        c.name AS category_name, " +
+                    "        (SELECT pp.image_location FROM product_photos pp WHERE pp.product_id = p.id ORDER BY pp.id ASC LIMIT 1) AS image_location, " +
+                    "        (SELECT r.image_location FROM product_photo_renditions r " +
+                    "         WHERE r.product_photo_id = (SELECT pp.id FROM product_photos pp WHERE pp.product_id = p.id ORDER BY pp.id ASC LIMIT 1) " +
+                    "         ORDER BY r.width ASC LIMIT 1) AS thumbnail_location " +
+                    "    FROM products p " +
+                    "    JOIN categories c ON p.category_id = c.id " +
+                    "    WHERE p.id IN (:productIds)" +
+                    ") AS src " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "    name = src.name, " +
+                    "    description = src.description, " +
+                    "    category_id = src.category_id, " +
+                    "    category_name = src.category_name, " +
+                    "    image_location = src.image_location, " +
+                    "    thumbnail_location = src.thumbnail_location",
+            nativeQuery = true
+    )
+    void upsertByProductIds(Collection<Integer> productIds);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE product_list_view v SET v.categoryName = :categoryName WHERE v.categoryId = :categoryId")
+    int updateCategoryName(Integer categoryId, String categoryName);
+
+    @Modifying
+    @Query("DELETE FROM product_list_view v WHERE v.id = :productId")
+    void deleteByProductId(Integer productId);
+
+    @Modifying
+    @Query(
+            value = "DELETE v FROM product_list_view v LEFT JOIN products p ON p.id = v.id WHERE p.id IS NULL",
+            nativeQuery = true
+    )
+    int deleteOrphans();
+}
@@ -1,33 +1,35 @@
 package dev.mfikri.widuriestock.repository;
 
 import dev.mfikri.widuriestock.entity.product.Product;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Integer> {
     boolean existsByName(String name);
 
-    @Query(
-            value = "SELECT " +
-                    "    p.id as id, " +
-                    "    p.name as name, " +
-                    "    p.description as description, " +
-                    "    c.id as categoryId, " +
-                    "    c.name as categoryName, " +
-                    "    (SELECT pp.image_location FROM product_photos pp WHERE pp.product_id = p.id ORDER BY pp.id ASC LIMIT 1) as imageLocation " +
-                    "FROM products p " +
-                    "JOIN (SELECT id FROM products ORDER BY name LIMIT :#{#pageable.offset}, :#{#pageable.pageSize}) AS p_page ON p.id = p_page.id " +
-                    "JOIN categories c ON p.category_id = c.id " +
-                    "ORDER BY p.name ASC",
-            countQuery = "SELECT count(*) FROM products p",
-            nativeQuery = true
-
-    )
-    Page<ProductSummary> findProductListView(Pageable pageable);
-}
+    // names compare with the collation of the column, callers dedupe case-insensitively to match it
+    @Query("SELECT p.name FROM products p WHERE p.name IN :names")
+    List<String> findNamesIn(Collection<String> names);
+
+    @EntityGraph("Product.detail")
+    Optional<Product> findDetailById(Integer id);
 
+    // row lock for writes that set the stock to an absolute value, a concurrent delta update waits for it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM products p WHERE p.id = :id")
+    Optional<Product> findByIdForUpdate(Integer id);
+
+    @Query("SELECT p.id FROM products p WHERE p.id > :afterId ORDER BY p.id ASC")
+    List<Integer> findIdsAfter(Integer afterId, Limit limit);
+}
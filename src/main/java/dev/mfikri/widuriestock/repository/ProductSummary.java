@@ -7,4 +7,5 @@ public interface ProductSummary {
     Integer getCategoryId();
     String getCategoryName();
     String getImageLocation();
+    String getThumbnailLocation();
 }
@@ -2,7 +2,10 @@ package dev.mfikri.widuriestock.repository;
 
 import dev.mfikri.widuriestock.entity.product.Product;
 import dev.mfikri.widuriestock.entity.product.ProductVariant;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -18,4 +21,9 @@ public interface ProductVariantRepository extends JpaRepository<ProductVariant,
 
     List<ProductVariant> findByProduct(Product product);
 
+    // locked in id order, the same order the stock delta updates take the row locks in
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT v FROM product_variants v WHERE v.product = :product ORDER BY v.id ASC")
+    List<ProductVariant> findByProductForUpdate(Product product);
+
 }
@@ -0,0 +1,9 @@
+package dev.mfikri.widuriestock.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Change of one purchase_monthly_aggregates row, the month is its first day.
+ */
+public record PurchaseAggregateDelta(LocalDate purchaseMonth, Integer supplierId, Integer productId, long quantity, long totalPrice, int lineCount) {
+}
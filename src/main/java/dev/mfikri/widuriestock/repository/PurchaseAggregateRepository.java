@@ -0,0 +1,137 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductProductResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductSupplierResponse;
+import dev.mfikri.widuriestock.model.report.ProductPurchaseReportResponse;
+import dev.mfikri.widuriestock.model.report.SupplierPurchaseReportResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Monthly purchase totals per supplier and product. Writers add deltas to the rows, so concurrent transactions
+ * never lose each other's changes, and the reports read only this table whatever the size of the history.
+ */
+@Repository
+public class PurchaseAggregateRepository {
+    private static final String APPLY_DELTA = "INSERT INTO purchase_monthly_aggregates (purchase_month, supplier_id, product_id, quantity, total_price, line_count) " +
+            "SELECT * FROM (SELECT ? AS delta_month, ? AS delta_supplier_id, ? AS delta_product_id, ? AS delta_quantity, ? AS delta_total_price, ? AS delta_line_count) AS delta " +
+            "ON DUPLICATE KEY UPDATE " +
+            "    quantity = quantity + delta.delta_quantity, " +
+            "    total_price = total_price + delta.delta_total_price, " +
+            "    line_count = line_count + delta.delta_line_count";
+
+    private static final String DELETE_ALL = "DELETE FROM purchase_monthly_aggregates";
+
+    // a detail with variants carries the totals of its variant details, kept in step by every write
+    private static final String INSERT_FROM_DETAILS = "INSERT INTO purchase_monthly_aggregates (purchase_month, supplier_id, product_id, quantity, total_price, line_count) " +
+            "SELECT DATE_FORMAT(ip.date_in, '%Y-%m-01') AS purchase_month, ip.supplier_id, d.product_id, " +
+            "       SUM(COALESCE(CASE WHEN d.has_variant THEN d.total_variant_quantity ELSE d.quantity END, 0)), " +
+            "       SUM(COALESCE(CASE WHEN d.has_variant THEN d.total_variant_price ELSE d.total_price END, 0)), " +
+            "       COUNT(*) " +
+            "FROM incoming_product_details d " +
+            "JOIN incoming_products ip ON ip.id = d.incoming_product_id " +
+            "WHERE ip.date_in IS NOT NULL " +
+            "GROUP BY DATE_FORMAT(ip.date_in, '%Y-%m-01'), ip.supplier_id, d.product_id";
+
+    private static final String SELECT_SUPPLIER_REPORT = "SELECT a.purchase_month, a.supplier_id, s.supplier_name, " +
+            "SUM(a.quantity) AS quantity, SUM(a.total_price) AS total_price, SUM(a.line_count) AS line_count " +
+            "FROM purchase_monthly_aggregates a " +
+            "JOIN suppliers s ON s.id = a.supplier_id " +
+            "WHERE a.purchase_month BETWEEN ? AND ? ";
+    private static final String GROUP_SUPPLIER_REPORT = "GROUP BY a.purchase_month, a.supplier_id, s.supplier_name " +
+            "HAVING SUM(a.line_count) > 0 " +
+            "ORDER BY a.purchase_month ASC, a.supplier_id ASC";
+
+    private static final String SELECT_PRODUCT_REPORT = "SELECT a.purchase_month, a.product_id, p.name AS product_name, " +
+            "SUM(a.quantity) AS quantity, SUM(a.total_price) AS total_price, SUM(a.line_count) AS line_count " +
+            "FROM purchase_monthly_aggregates a " +
+            "JOIN products p ON p.id = a.product_id " +
+            "WHERE a.purchase_month BETWEEN ? AND ? ";
+    private static final String GROUP_PRODUCT_REPORT = "GROUP BY a.purchase_month, a.product_id, p.name " +
+            "HAVING SUM(a.line_count) > 0 " +
+            "ORDER BY a.purchase_month ASC, a.product_id ASC";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PurchaseAggregateRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param deltas in key order, so concurrent transactions lock the rows in the same order
+     */
+    public void applyDeltas(List<PurchaseAggregateDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(APPLY_DELTA, deltas.stream()
+                .map(delta -> new Object[]{Date.valueOf(delta.purchaseMonth()), delta.supplierId(), delta.productId(),
+                        delta.quantity(), delta.totalPrice(), delta.lineCount()})
+                .toList());
+    }
+
+    /**
+     * Replaces every row with the totals computed from the details. The details read are locked until the
+     * transaction ends, so a concurrent writer applies its delta after the rebuild, on top of it.
+     *
+     * @return number of rows written
+     */
+    public int rebuild() {
+        jdbcTemplate.update(DELETE_ALL);
+        return jdbcTemplate.update(INSERT_FROM_DETAILS);
+    }
+
+    public List<SupplierPurchaseReportResponse> findSupplierReport(YearMonth from, YearMonth to, Integer supplierId, Integer productId) {
+        List<Object> args = new ArrayList<>();
+        String sql = SELECT_SUPPLIER_REPORT + filter(from, to, supplierId, productId, args) + GROUP_SUPPLIER_REPORT;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> SupplierPurchaseReportResponse.builder()
+                .month(YearMonth.from(rs.getDate("purchase_month").toLocalDate()))
+                .supplier(IncomingProductSupplierResponse.builder()
+                        .id(rs.getInt("supplier_id"))
+                        .name(rs.getString("supplier_name"))
+                        .build())
+                .quantity(rs.getLong("quantity"))
+                .totalPrice(rs.getLong("total_price"))
+                .lines(rs.getInt("line_count"))
+                .build(), args.toArray());
+    }
+
+    public List<ProductPurchaseReportResponse> findProductReport(YearMonth from, YearMonth to, Integer supplierId, Integer productId) {
+        List<Object> args = new ArrayList<>();
+        String sql = SELECT_PRODUCT_REPORT + filter(from, to, supplierId, productId, args) + GROUP_PRODUCT_REPORT;
+
+        return jdbcTemplate.query(sql, (rs, rowNum) -> ProductPurchaseReportResponse.builder()
+                .month(YearMonth.from(rs.getDate("purchase_month").toLocalDate()))
+                .product(IncomingProductProductResponse.builder()
+                        .id(rs.getInt("product_id"))
+                        .name(rs.getString("product_name"))
+                        .build())
+                .quantity(rs.getLong("quantity"))
+                .totalPrice(rs.getLong("total_price"))
+                .lines(rs.getInt("line_count"))
+                .build(), args.toArray());
+    }
+
+    private static String filter(YearMonth from, YearMonth to, Integer supplierId, Integer productId, List<Object> args) {
+        args.add(Date.valueOf(from.atDay(1)));
+        args.add(Date.valueOf(to.atDay(1)));
+
+        StringBuilder sql = new StringBuilder();
+        if (supplierId != null) {
+            sql.append("AND a.supplier_id = ? ");
+            args.add(supplierId);
+        }
+        if (productId != null) {
+            sql.append("AND a.product_id = ? ");
+            args.add(productId);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,8 @@
+package dev.mfikri.widuriestock.repository;
+
+public interface StockMovementBucket {
+    Long getBucket();
+    Long getInbound();
+    Long getOutbound();
+    Long getMovements();
+}
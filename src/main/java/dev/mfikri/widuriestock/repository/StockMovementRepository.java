@@ -0,0 +1,40 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.entity.product.StockMovement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+// rows are appended through StockRepository in the transaction that changes the stock
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+    @Query("SELECT COALESCE(SUM(m.delta), 0) FROM stock_movements m " +
+            "WHERE m.productId = :productId AND (:productVariantId IS NULL OR m.productVariantId = :productVariantId) " +
+            "AND m.createdAt >= :from AND m.createdAt < :to")
+    long sumDelta(Integer productId, Integer productVariantId, Instant from, Instant to);
+
+    @Query("SELECT m.productId AS productId, m.productVariantId AS productVariantId, SUM(m.delta) AS delta " +
+            "FROM stock_movements m " +
+            "WHERE m.createdAt >= :from AND m.createdAt < :to " +
+            "GROUP BY m.productId, m.productVariantId")
+    List<StockMovementSum> sumDeltaGroupByItem(Instant from, Instant to);
+
+    // aggregates the movements of [from, to) into fixed size buckets, bucket 0 starts at 'from'
+    @Query(
+            value = "SELECT FLOOR(TIMESTAMPDIFF(SECOND, :from, m.created_at) / :bucketSeconds) AS bucket, " +
+                    "       SUM(CASE WHEN m.delta > 0 THEN m.delta ELSE 0 END) AS inbound, " +
+                    "       SUM(CASE WHEN m.delta < 0 THEN -m.delta ELSE 0 END) AS outbound, " +
+                    "       COUNT(*) AS movements " +
+                    "FROM stock_movements m " +
+                    "WHERE m.product_id = :productId AND (:productVariantId IS NULL OR m.product_variant_id = :productVariantId) " +
+                    "AND m.created_at >= :from AND m.created_at < :to " +
+                    "GROUP BY bucket " +
+                    "ORDER BY bucket",
+            nativeQuery = true
+    )
+    List<StockMovementBucket> sumDeltaGroupByBucket(Integer productId, Integer productVariantId, Instant from, Instant to, long bucketSeconds);
+}
@@ -0,0 +1,7 @@
+package dev.mfikri.widuriestock.repository;
+
+public interface StockMovementSum {
+    Integer getProductId();
+    Integer getProductVariantId();
+    Long getDelta();
+}
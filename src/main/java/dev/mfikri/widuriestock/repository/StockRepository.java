@@ -0,0 +1,199 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.entity.product.StockMovement;
+import dev.mfikri.widuriestock.entity.product.StockSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based stock mutations. Every statement adds a delta to the current column value,
+ * so concurrent writers on the same product or variant never lose an increment.
+ */
+@Slf4j
+@Repository
+public class StockRepository {
+    private static final String INCREMENT_PRODUCT_STOCK = "UPDATE products SET stock = stock + ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?";
+    private static final String INCREMENT_PRODUCT_VARIANT_STOCK = "UPDATE product_variants SET stock = stock + ? WHERE id = ?";
+
+    // created_at is stamped by the database while the barrier is held, see awaitStockMovementWriters
+    private static final String INSERT_STOCK_MOVEMENT = "INSERT INTO stock_movements (id, product_id, product_variant_id, delta, source_type, source_id, created_at) VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP(6))";
+    private static final String LOCK_STOCK_MOVEMENT_BARRIER_SHARED = "SELECT id FROM stock_movement_barrier WHERE id = 1 LOCK IN SHARE MODE";
+    private static final String LOCK_STOCK_MOVEMENT_BARRIER_EXCLUSIVE = "SELECT id FROM stock_movement_barrier WHERE id = 1 FOR UPDATE";
+
+    private static final String INSERT_PENDING_STOCK_MOVEMENT = "INSERT INTO pending_stock_movements (stock_movement_id) VALUES (?)";
+    private static final String LOCK_PENDING_STOCK_MOVEMENTS = "SELECT m.id, m.product_id, m.product_variant_id, m.delta FROM pending_stock_movements p " +
+            "JOIN stock_movements m ON m.id = p.stock_movement_id WHERE p.stock_movement_id IN (%s) ORDER BY p.stock_movement_id FOR UPDATE";
+    private static final String DELETE_PENDING_STOCK_MOVEMENTS = "DELETE FROM pending_stock_movements WHERE stock_movement_id IN (%s)";
+    private static final String FIND_PENDING_STOCK_MOVEMENTS_CREATED_BEFORE = "SELECT m.id, m.product_id, m.product_variant_id, m.delta FROM pending_stock_movements p " +
+            "JOIN stock_movements m ON m.id = p.stock_movement_id WHERE m.created_at < CURRENT_TIMESTAMP(6) - INTERVAL ? SECOND ORDER BY p.stock_movement_id LIMIT ?";
+    private static final int IN_CLAUSE_CHUNK_SIZE = 1000;
+
+    // a snapshot that is already there was written by an overlapping run for the same boundary, from the same movements
+    private static final String INSERT_STOCK_SNAPSHOT = "INSERT INTO stock_snapshots (id, product_id, product_variant_id, stock, snapshot_at) VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE id = id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityIdGenerator entityIdGenerator;
+
+    public StockRepository(JdbcTemplate jdbcTemplate, EntityIdGenerator entityIdGenerator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityIdGenerator = entityIdGenerator;
+    }
+
+    /**
+     * @param deltas stock delta keyed by product id, iterated in key order so concurrent transactions lock rows in the same order
+     */
+    public void incrementProductStocks(Map<Integer, Integer> deltas) {
+        batchIncrement(INCREMENT_PRODUCT_STOCK, deltas);
+    }
+
+    /**
+     * @param deltas stock delta keyed by product variant id, iterated in key order so concurrent transactions lock rows in the same order
+     */
+    public void incrementProductVariantStocks(Map<Integer, Integer> deltas) {
+        batchIncrement(INCREMENT_PRODUCT_VARIANT_STOCK, deltas);
+    }
+
+    private void batchIncrement(String sql, Map<Integer, Integer> deltas) {
+        List<Object[]> batchArgs = deltas.entrySet().stream()
+                .filter(delta -> delta.getValue() != 0)
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .toList();
+
+        if (batchArgs.isEmpty()) {
+            return;
+        }
+
+        log.debug("Incrementing stock in batch. sql={}, count={}", sql, batchArgs.size());
+        jdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    /**
+     * Appends rows to the stock ledger in one batch, in the same transaction as the stock change they record.
+     * The shared barrier lock is held until that transaction ends. Sets the new ids on the given movements.
+     */
+    public void insertStockMovements(List<StockMovement> stockMovements) {
+        if (stockMovements.isEmpty()) {
+            return;
+        }
+
+        lockStockMovementBarrier(LOCK_STOCK_MOVEMENT_BARRIER_SHARED);
+        log.debug("Inserting stock movements in batch. count={}", stockMovements.size());
+        List<Long> stockMovementIds = entityIdGenerator.nextIds(StockMovement.class, stockMovements.size());
+        for (int i = 0; i < stockMovements.size(); i++) {
+            stockMovements.get(i).setId(stockMovementIds.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_STOCK_MOVEMENT, stockMovements, stockMovements.size(), StockRepository::setStockMovement);
+    }
+
+    /**
+     * Appends rows to the stock ledger like {@link #insertStockMovements(List)} and marks them pending,
+     * for movements whose stock column increment is applied later by the stock coalescing writer.
+     *
+     * @return the ids of the inserted movements, in the order of the given list
+     */
+    public List<Long> insertPendingStockMovements(List<StockMovement> stockMovements) {
+        if (stockMovements.isEmpty()) {
+            return List.of();
+        }
+
+        insertStockMovements(stockMovements);
+        List<Long> stockMovementIds = stockMovements.stream().map(StockMovement::getId).toList();
+        log.debug("Marking stock movements pending. count={}", stockMovementIds.size());
+        jdbcTemplate.batchUpdate(INSERT_PENDING_STOCK_MOVEMENT, stockMovementIds, stockMovementIds.size(), (ps, stockMovementId) -> ps.setLong(1, stockMovementId));
+        return stockMovementIds;
+    }
+
+    /**
+     * Locks the pending markers of the given movements and returns the movements that are still pending,
+     * a movement applied by a concurrent flush is left out.
+     */
+    public List<StockMovement> lockPendingStockMovements(List<Long> stockMovementIds) {
+        List<StockMovement> stockMovements = new ArrayList<>();
+        for (List<Long> chunk : chunk(stockMovementIds)) {
+            stockMovements.addAll(jdbcTemplate.query(LOCK_PENDING_STOCK_MOVEMENTS.formatted(placeholders(chunk.size())), StockRepository::mapPendingStockMovement, chunk.toArray()));
+        }
+        return stockMovements;
+    }
+
+    public void deletePendingStockMovements(List<Long> stockMovementIds) {
+        for (List<Long> chunk : chunk(stockMovementIds)) {
+            jdbcTemplate.update(DELETE_PENDING_STOCK_MOVEMENTS.formatted(placeholders(chunk.size())), chunk.toArray());
+        }
+    }
+
+    public List<StockMovement> findPendingStockMovementsCreatedBefore(Duration age, int limit) {
+        return jdbcTemplate.query(FIND_PENDING_STOCK_MOVEMENTS_CREATED_BEFORE, StockRepository::mapPendingStockMovement, age.toSeconds(), limit);
+    }
+
+    private static void setStockMovement(PreparedStatement ps, StockMovement stockMovement) throws SQLException {
+        ps.setLong(1, stockMovement.getId());
+        ps.setInt(2, stockMovement.getProductId());
+        ps.setObject(3, stockMovement.getProductVariantId(), Types.INTEGER);
+        ps.setInt(4, stockMovement.getDelta());
+        ps.setString(5, stockMovement.getSourceType().name());
+        ps.setObject(6, stockMovement.getSourceId(), Types.INTEGER);
+    }
+
+    private static StockMovement mapPendingStockMovement(ResultSet rs, int rowNum) throws SQLException {
+        return StockMovement.builder()
+                .id(rs.getLong("id"))
+                .productId(rs.getInt("product_id"))
+                .productVariantId(rs.getObject("product_variant_id", Integer.class))
+                .delta(rs.getInt("delta"))
+                .build();
+    }
+
+    private static List<List<Long>> chunk(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+            chunks.add(ids.subList(i, Math.min(i + IN_CLAUSE_CHUNK_SIZE, ids.size())));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * Blocks until every transaction that has stamped a stock movement so far has ended. Movements stamped after
+     * this returns are stamped after the lock was released, so run it in its own transaction and read afterward.
+     */
+    public void awaitStockMovementWriters() {
+        lockStockMovementBarrier(LOCK_STOCK_MOVEMENT_BARRIER_EXCLUSIVE);
+    }
+
+    private void lockStockMovementBarrier(String sql) {
+        if (jdbcTemplate.queryForList(sql, Integer.class).isEmpty()) {
+            throw new IllegalStateException("The stock_movement_barrier row is missing, stock movements can not be written safely.");
+        }
+    }
+
+    public void insertStockSnapshots(List<StockSnapshot> stockSnapshots) {
+        if (stockSnapshots.isEmpty()) {
+            return;
+        }
+
+        log.debug("Inserting stock snapshots in batch. count={}", stockSnapshots.size());
+        List<Long> stockSnapshotIds = entityIdGenerator.nextIds(StockSnapshot.class, stockSnapshots.size());
+        for (int i = 0; i < stockSnapshots.size(); i++) {
+            stockSnapshots.get(i).setId(stockSnapshotIds.get(i));
+        }
+        jdbcTemplate.batchUpdate(INSERT_STOCK_SNAPSHOT, stockSnapshots, stockSnapshots.size(), (ps, stockSnapshot) -> {
+            ps.setLong(1, stockSnapshot.getId());
+            ps.setInt(2, stockSnapshot.getProductId());
+            ps.setObject(3, stockSnapshot.getProductVariantId(), Types.INTEGER);
+            ps.setInt(4, stockSnapshot.getStock());
+            ps.setTimestamp(5, Timestamp.from(stockSnapshot.getSnapshotAt()));
+        });
+    }
+}
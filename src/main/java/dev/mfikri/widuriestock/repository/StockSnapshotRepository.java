@@ -0,0 +1,38 @@
+package dev.mfikri.widuriestock.repository;
+
+import dev.mfikri.widuriestock.entity.product.StockSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+
+    @Query("SELECT MAX(s.snapshotAt) FROM stock_snapshots s")
+    Optional<Instant> findLatestSnapshotAt();
+
+    @Query("SELECT MAX(s.snapshotAt) FROM stock_snapshots s WHERE s.snapshotAt <= :at")
+    Optional<Instant> findLatestSnapshotAtNotAfter(Instant at);
+
+    // the latest snapshot of every item of the product taken at or before 'at'
+    @Query("SELECT s FROM stock_snapshots s " +
+            "WHERE s.productId = :productId AND (:productVariantId IS NULL OR s.productVariantId = :productVariantId) " +
+            "AND s.snapshotAt = (" +
+            "    SELECT MAX(s2.snapshotAt) FROM stock_snapshots s2 " +
+            "    WHERE s2.productId = s.productId AND s2.productVariantKey = s.productVariantKey AND s2.snapshotAt <= :at" +
+            ")")
+    List<StockSnapshot> findLatestByProductId(Integer productId, Integer productVariantId, Instant at);
+
+    @Query("SELECT s FROM stock_snapshots s " +
+            "WHERE s.productId IN :productIds " +
+            "AND s.snapshotAt = (" +
+            "    SELECT MAX(s2.snapshotAt) FROM stock_snapshots s2 " +
+            "    WHERE s2.productId = s.productId AND s2.productVariantKey = s.productVariantKey AND s2.snapshotAt <= :at" +
+            ")")
+    List<StockSnapshot> findLatestByProductIdIn(Collection<Integer> productIds, Instant at);
+}
@@ -0,0 +1,47 @@
+package dev.mfikri.widuriestock.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reference counts of content addressed photo files. Every statement locks the row of the file, so a
+ * new reference and the deletion of an unreferenced file are serialized.
+ */
+@Repository
+public class StoredPhotoRepository {
+    private static final String INCREMENT_REF_COUNT = "INSERT INTO stored_photos (image_location, ref_count) VALUES (?, 1) " +
+            "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1";
+    private static final String DECREMENT_REF_COUNT = "UPDATE stored_photos SET ref_count = ref_count - 1 WHERE image_location = ? AND ref_count > 0";
+    // the row is created when it is missing, so a file that was never referenced is locked the same way
+    private static final String LOCK_ROW = "INSERT INTO stored_photos (image_location, ref_count) VALUES (?, 0) " +
+            "ON DUPLICATE KEY UPDATE ref_count = ref_count";
+    private static final String FIND_REF_COUNT = "SELECT ref_count FROM stored_photos WHERE image_location = ? FOR UPDATE";
+    private static final String DELETE = "DELETE FROM stored_photos WHERE image_location = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StoredPhotoRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void incrementRefCount(String imageLocation) {
+        jdbcTemplate.update(INCREMENT_REF_COUNT, imageLocation);
+    }
+
+    public void decrementRefCount(String imageLocation) {
+        jdbcTemplate.update(DECREMENT_REF_COUNT, imageLocation);
+    }
+
+    /**
+     * @return the reference count of the file, its row stays locked until the transaction ends
+     */
+    public int lockRefCount(String imageLocation) {
+        jdbcTemplate.update(LOCK_ROW, imageLocation);
+        Integer refCount = jdbcTemplate.queryForObject(FIND_REF_COUNT, Integer.class, imageLocation);
+        return refCount == null ? 0 : refCount;
+    }
+
+    public void delete(String imageLocation) {
+        jdbcTemplate.update(DELETE, imageLocation);
+    }
+}
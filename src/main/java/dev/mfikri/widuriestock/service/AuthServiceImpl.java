@@ -23,6 +23,8 @@ import java.util.UUID;
 @Slf4j
 @Service
 public class AuthServiceImpl implements AuthService {
+    private static final String ROLE_PREFIX = "ROLE_";
+
     private final UserRepository userRepository;
     private final RefreshTokenRepository refreshTokenRepository;
     
@@ -67,9 +69,10 @@ public class AuthServiceImpl implements AuthService {
         }
 
         String authenticatedUsername = authenticate.getName();
+        String role = authenticate.getAuthorities().iterator().next().getAuthority().substring(ROLE_PREFIX.length());
 
         log.debug("Generating new access token. username={}", authenticatedUsername);
-        String token = jwtUtil.generate(authenticatedUsername, jwtTtl);
+        String token = jwtUtil.generate(authenticatedUsername, role, jwtTtl);
 
         log.info("Successfully logged in. username={}", authenticatedUsername);
         return AuthTokenResponse.builder()
@@ -96,7 +99,7 @@ public class AuthServiceImpl implements AuthService {
         }
         String username = refreshToken.getUser().getUsername();
         log.debug("Generating new access token for user. username={}", username);
-        String accessToken = jwtUtil.generate(username, jwtTtl);
+        String accessToken = jwtUtil.generate(username, refreshToken.getUser().getRole().toUpperCase(), jwtTtl);
 
         log.info("Successfully generated new access token for user. username={}", username);
         return AuthTokenResponse.builder()
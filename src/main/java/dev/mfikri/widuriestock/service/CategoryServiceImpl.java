@@ -1,5 +1,6 @@
 package dev.mfikri.widuriestock.service;
 
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
 import dev.mfikri.widuriestock.entity.product.Category;
 import dev.mfikri.widuriestock.model.product.CategoryCreateRequest;
 import dev.mfikri.widuriestock.model.product.CategoryResponse;
@@ -19,10 +20,14 @@ import java.util.List;
 public class CategoryServiceImpl implements CategoryService {
     private final ValidationService validationService;
     private final CategoryRepository categoryRepository;
+    private final ProductListViewService productListViewService;
+    private final ProductDetailCache productDetailCache;
 
-    public CategoryServiceImpl(ValidationService validationService, CategoryRepository categoryRepository) {
+    public CategoryServiceImpl(ValidationService validationService, CategoryRepository categoryRepository, ProductListViewService productListViewService, ProductDetailCache productDetailCache) {
         this.validationService = validationService;
         this.categoryRepository = categoryRepository;
+        this.productListViewService = productListViewService;
+        this.productDetailCache = productDetailCache;
     }
 
     @Override
@@ -70,6 +75,7 @@ public class CategoryServiceImpl implements CategoryService {
     }
 
     @Override
+    @Transactional
     public CategoryResponse update(CategoryUpdateRequest request) {
         log.info("Processing request to update a category. categoryId={}", request.getId());
         validationService.validate(request);
@@ -79,6 +85,9 @@ public class CategoryServiceImpl implements CategoryService {
         category.setDescription(request.getDescription());
         log.debug("Saving updated category entity to the database.");
         categoryRepository.save(category);
+        productListViewService.refreshCategory(category);
+        // cached product details carry the category name, renames are rare so drop them all
+        productDetailCache.evictAll();
 
         log.info("Successfully update a category. categoryId={}", request.getId());
         return toCategoryResponse(category);
@@ -0,0 +1,173 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.repository.StoredPhotoRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Names every file by the SHA-256 of its content and fans the files out into two levels of directories by
+ * the first bytes of the hash, {@code upload/<folder>/ab/cd/abcd...<hash>.<ext>}. Identical content is
+ * written once and counted in stored_photos for every row that references it. Renditions are named after
+ * the file they are made from and are deleted with it.
+ * <p>
+ * Files written before this storage have a flat name and are left as they are.
+ */
+@Slf4j
+@Service
+public class ContentAddressedPhotoStorage implements PhotoStorage {
+    private static final Path ROOT = Path.of("upload");
+    private static final Pattern STORED_LOCATION = Pattern.compile("upload/(product|profile)/[0-9a-f]{2}/[0-9a-f]{2}/([0-9a-f]{64})\\.[a-z]+");
+
+    private final StoredPhotoRepository storedPhotoRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ContentAddressedPhotoStorage(StoredPhotoRepository storedPhotoRepository, PlatformTransactionManager transactionManager) {
+        this.storedPhotoRepository = storedPhotoRepository;
+        // runs after the transaction of the caller completed, its resources are still bound to the thread
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public Path store(InputStream content, String folder, String extension) throws IOException {
+        Path folderPath = ROOT.resolve(folder);
+        Path temporary = folderPath.resolve(".tmp-" + UUID.randomUUID());
+
+        MessageDigest digest = sha256();
+        try (DigestInputStream digestInputStream = new DigestInputStream(content, digest)) {
+            Files.copy(digestInputStream, temporary);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path path = folderPath.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + "." + extension);
+
+        if (Files.exists(path)) {
+            log.debug("Photo content is already stored. imageLocation={}", path);
+            Files.delete(temporary);
+            // an unreferenced file is kept by the upload sweeper for its grace period, which starts again here
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            return path;
+        }
+
+        Files.createDirectories(path.getParent());
+        // a concurrent upload of the same content replaces the file with the same bytes
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return path;
+    }
+
+    @Override
+    public void retain(String imageLocation) {
+        if (!isStored(imageLocation)) {
+            return;
+        }
+
+        // the row stays locked until commit, a file seen here is not deleted as unreferenced meanwhile
+        storedPhotoRepository.incrementRefCount(imageLocation);
+        if (!Files.exists(Path.of(imageLocation))) {
+            // deleted as unreferenced after it was stored for this request, it is written again on retry
+            log.warn("Retained photo file does not exist. imageLocation={}", imageLocation);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    deleteIfUnreferenced(List.of(Path.of(imageLocation)));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void release(String imageLocation) {
+        if (!isStored(imageLocation)) {
+            return;
+        }
+
+        storedPhotoRepository.decrementRefCount(imageLocation);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteIfUnreferenced(List.of(Path.of(imageLocation)));
+            }
+        });
+    }
+
+    @Override
+    public void deleteIfUnreferenced(Collection<Path> imageLocations) {
+        for (Path path : imageLocations) {
+            String imageLocation = path.toString();
+            if (!isStored(imageLocation)) {
+                continue;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if (storedPhotoRepository.lockRefCount(imageLocation) > 0) {
+                        return;
+                    }
+                    // deleted while the row is locked, a concurrent retain waits and then finds the file missing
+                    deleteFiles(path);
+                    storedPhotoRepository.delete(imageLocation);
+                });
+            } catch (RuntimeException e) {
+                log.warn("Failed to delete unreferenced photo file. imageLocation={}, error={}", imageLocation, e.getMessage());
+            }
+        }
+    }
+
+    private static void deleteFiles(Path path) {
+        Matcher matcher = STORED_LOCATION.matcher(path.toString());
+        if (!matcher.matches()) {
+            return;
+        }
+
+        log.debug("Deleting unreferenced photo file. imageLocation={}", path);
+        try {
+            Files.deleteIfExists(path);
+            try (DirectoryStream<Path> renditions = Files.newDirectoryStream(path.getParent(), matcher.group(2) + "-w*.jpg")) {
+                for (Path rendition : renditions) {
+                    Files.deleteIfExists(rendition);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // the shard directory is already gone
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
+        }
+    }
+
+    private static boolean isStored(String imageLocation) {
+        return imageLocation != null && STORED_LOCATION.matcher(imageLocation).matches();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
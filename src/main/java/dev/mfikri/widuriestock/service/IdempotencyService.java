@@ -0,0 +1,21 @@
+package dev.mfikri.widuriestock.service;
+
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+
+    /**
+     * Runs the write once per Idempotency-Key of a user. The write runs in the transaction that stores the key,
+     * a retry with the same key and request gets the stored response, and a concurrent retry waits for the first
+     * request to end. Without a key the write simply runs.
+     *
+     * @param scope   method and path of the request, a key can not be reused for another endpoint
+     * @param request body of the request, a key can not be reused with another body
+     */
+    <T> T execute(String idempotencyKey, String username, String scope, Object request, Class<T> responseType, Supplier<T> write);
+
+    /**
+     * Deletes the expired keys in batches. Returns the number of deleted keys.
+     */
+    int sweepExpired();
+}
@@ -0,0 +1,142 @@
+package dev.mfikri.widuriestock.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.config.IdempotencyProperties;
+import dev.mfikri.widuriestock.repository.IdempotencyKeyEntry;
+import dev.mfikri.widuriestock.repository.IdempotencyKeyRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Stores the Idempotency-Key in the same transaction as the write it protects. A failed write rolls the key back
+ * too, so only successful responses are replayed and a request that failed can be retried with the same key.
+ * Two requests with the same key are serialized by the lock on the key row, which also holds across instances.
+ */
+@Slf4j
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final IdempotencyProperties idempotencyProperties;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public IdempotencyServiceImpl(IdempotencyKeyRepository idempotencyKeyRepository, IdempotencyProperties idempotencyProperties, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.idempotencyProperties = idempotencyProperties;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public <T> T execute(String idempotencyKey, String username, String scope, Object request, Class<T> responseType, Supplier<T> write) {
+        if (idempotencyKey == null) {
+            return write.get();
+        }
+
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key must not be blank or longer than " + MAX_KEY_LENGTH + " characters.");
+        }
+
+        byte[] keyHash = sha256(username + '\0' + idempotencyKey);
+        byte[] requestHash = sha256(scope + '\0' + toJson(request));
+
+        // a retry after the first request ended is answered without taking any lock
+        Optional<IdempotencyKeyEntry> storedEntry = idempotencyKeyRepository.findByKeyHash(keyHash);
+        if (storedEntry.isPresent()) {
+            return replay(storedEntry.get(), requestHash, responseType);
+        }
+
+        Optional<T> response = transactionTemplate.execute(status -> {
+            if (!insertKey(keyHash, requestHash, scope)) {
+                return Optional.empty();
+            }
+            T writeResponse = write.get();
+            idempotencyKeyRepository.updateResponse(keyHash, toJson(writeResponse));
+            return Optional.of(writeResponse);
+        });
+        if (response.isPresent()) {
+            return response.get();
+        }
+
+        // a concurrent request with the same key committed while this one waited for its row
+        log.info("Idempotency-Key was used by a concurrent request, replaying its response. scope={}", scope);
+        IdempotencyKeyEntry entry = idempotencyKeyRepository.findByKeyHash(keyHash)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "A request with the same Idempotency-Key is still in progress."));
+        return replay(entry, requestHash, responseType);
+    }
+
+    // false when the key is already stored, only this statement is rolled back then
+    private boolean insertKey(byte[] keyHash, byte[] requestHash, String scope) {
+        try {
+            idempotencyKeyRepository.insert(keyHash, requestHash, Instant.now().plus(idempotencyProperties.getTtl()));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        } catch (PessimisticLockingFailureException e) {
+            log.warn("Timed out waiting for a concurrent request with the same Idempotency-Key. scope={}, error={}", scope, e.getMessage());
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A request with the same Idempotency-Key is still in progress.");
+        }
+    }
+
+    @Override
+    public int sweepExpired() {
+        Instant now = Instant.now();
+        int batchSize = idempotencyProperties.getSweepBatchSize();
+
+        int deleted = 0;
+        int batchDeleted;
+        do {
+            batchDeleted = idempotencyKeyRepository.deleteExpired(now, batchSize);
+            deleted += batchDeleted;
+        } while (batchDeleted == batchSize);
+
+        log.info("Successfully swept expired idempotency keys. deleted={}", deleted);
+        return deleted;
+    }
+
+    private <T> T replay(IdempotencyKeyEntry entry, byte[] requestHash, Class<T> responseType) {
+        if (!Arrays.equals(entry.requestHash(), requestHash)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key is already used for a different request.");
+        }
+
+        log.debug("Replaying the stored response of an Idempotency-Key.");
+        try {
+            return objectMapper.readValue(entry.responseBody(), responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
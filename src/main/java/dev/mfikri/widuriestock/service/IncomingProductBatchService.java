@@ -0,0 +1,14 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductBatchResponse;
+
+import java.io.InputStream;
+
+public interface IncomingProductBatchService {
+
+    /**
+     * Creates the incoming products of a streamed ndjson body, one create request per line, all received by the
+     * given user. A receipt that fails is reported and skipped, the receipts around it are still created.
+     */
+    IncomingProductBatchResponse createBatch(InputStream inputStream, String username);
+}
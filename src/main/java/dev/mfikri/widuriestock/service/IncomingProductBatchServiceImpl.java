@@ -0,0 +1,371 @@
+package dev.mfikri.widuriestock.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
+import dev.mfikri.widuriestock.config.IncomingProductBatchProperties;
+import dev.mfikri.widuriestock.entity.Supplier;
+import dev.mfikri.widuriestock.entity.User;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProduct;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductDetail;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductVariantDetail;
+import dev.mfikri.widuriestock.entity.product.Product;
+import dev.mfikri.widuriestock.entity.product.ProductVariant;
+import dev.mfikri.widuriestock.entity.product.StockMovement;
+import dev.mfikri.widuriestock.entity.product.StockMovementSourceType;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductBatchResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductCreateRequest;
+import dev.mfikri.widuriestock.repository.IncomingProductBatchRepository;
+import dev.mfikri.widuriestock.repository.PurchaseAggregateRepository;
+import dev.mfikri.widuriestock.repository.StockRepository;
+import dev.mfikri.widuriestock.repository.UserRepository;
+import jakarta.validation.ConstraintViolationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.util.Pair;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Creates incoming products from a streamed ndjson body. Receipts are read one line at a time and written in chunks
+ * of the configured batch size: the suppliers, products and variants of a chunk are resolved with one query per
+ * table, and the chunk is written in one transaction with one JDBC batch per table and one stock increment per
+ * product or variant. A receipt that fails a check is reported and skipped, the receipts around it are still created.
+ */
+@Slf4j
+@Service
+public class IncomingProductBatchServiceImpl implements IncomingProductBatchService {
+
+    private final ValidationService validationService;
+    private final UserRepository userRepository;
+    private final IncomingProductBatchRepository incomingProductBatchRepository;
+    private final StockRepository stockRepository;
+    private final PurchaseAggregateRepository purchaseAggregateRepository;
+    private final StockUpdateCoalescer stockUpdateCoalescer;
+    private final ProductDetailCache productDetailCache;
+    private final IncomingProductBatchProperties properties;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public IncomingProductBatchServiceImpl(ValidationService validationService, UserRepository userRepository, IncomingProductBatchRepository incomingProductBatchRepository, StockRepository stockRepository, PurchaseAggregateRepository purchaseAggregateRepository, StockUpdateCoalescer stockUpdateCoalescer, ProductDetailCache productDetailCache, IncomingProductBatchProperties properties, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.validationService = validationService;
+        this.userRepository = userRepository;
+        this.incomingProductBatchRepository = incomingProductBatchRepository;
+        this.stockRepository = stockRepository;
+        this.purchaseAggregateRepository = purchaseAggregateRepository;
+        this.stockUpdateCoalescer = stockUpdateCoalescer;
+        this.productDetailCache = productDetailCache;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public IncomingProductBatchResponse createBatch(InputStream inputStream, String username) {
+        log.info("Processing request to create incoming products in batch. username={}", username);
+
+        User user = userRepository.findById(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User is not found."));
+
+        List<IncomingProductBatchResponse.ReceiptResult> results = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            List<Receipt> chunk = new ArrayList<>(properties.getBatchSize());
+            long line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+
+                chunk.add(parse(line, text, username));
+                if (chunk.size() == properties.getBatchSize()) {
+                    createChunk(chunk, user, results);
+                    chunk.clear();
+                }
+            }
+            createChunk(chunk, user, results);
+        } catch (IOException e) {
+            // the chunks before the broken part are committed, report where reading stopped
+            log.warn("Failed to read the incoming product batch body. processed={}, error={}", results.size(), e.getMessage());
+            results.add(IncomingProductBatchResponse.ReceiptResult.builder()
+                    .error("Failed to read the batch body: " + e.getMessage())
+                    .build());
+        }
+
+        int created = (int) results.stream().filter(result -> result.getIncomingProductId() != null).count();
+        log.info("Successfully created incoming products in batch. created={}, failed={}", created, results.size() - created);
+        return IncomingProductBatchResponse.builder()
+                .created(created)
+                .failed(results.size() - created)
+                .results(results)
+                .build();
+    }
+
+    private Receipt parse(long line, String text, String username) {
+        try {
+            IncomingProductCreateRequest request = objectMapper.readValue(text, IncomingProductCreateRequest.class);
+            // every receipt of the batch is received by the caller, the same as a single create
+            request.setUsername(username);
+            return new Receipt(line, request);
+        } catch (JsonProcessingException e) {
+            Receipt receipt = new Receipt(line, null);
+            receipt.error = "Row is not a valid incoming product: " + e.getOriginalMessage();
+            return receipt;
+        }
+    }
+
+    private void createChunk(List<Receipt> chunk, User user, List<IncomingProductBatchResponse.ReceiptResult> results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> supplierIds = new HashSet<>();
+        Set<Integer> productIds = new HashSet<>();
+        Set<Integer> variantIds = new HashSet<>();
+        for (Receipt receipt : chunk) {
+            if (receipt.error == null) {
+                receipt.error = check(receipt);
+            }
+            if (receipt.error == null) {
+                supplierIds.add(receipt.request.getSupplierId());
+                productIds.addAll(receipt.productIds);
+                variantIds.addAll(receipt.variantIds);
+            }
+        }
+
+        // one query per table for the whole chunk instead of one per receipt
+        Set<Integer> existingSupplierIds = incomingProductBatchRepository.findSupplierIds(supplierIds);
+        Map<Integer, Boolean> productHasVariants = incomingProductBatchRepository.findProductHasVariants(productIds);
+        Map<Integer, Integer> variantProductIds = incomingProductBatchRepository.findVariantProductIds(variantIds);
+
+        List<Receipt> receipts = new ArrayList<>();
+        for (Receipt receipt : chunk) {
+            if (receipt.error == null) {
+                receipt.error = checkReferences(receipt.request, existingSupplierIds, productHasVariants, variantProductIds);
+            }
+            if (receipt.error == null) {
+                receipts.add(receipt);
+            }
+        }
+
+        if (!receipts.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(receipts, user, productHasVariants, variantProductIds));
+            } catch (DataAccessException e) {
+                // a supplier, product or variant was removed after the lookup, find the receipts it breaks
+                log.warn("Failed to insert incoming product batch chunk, retrying one receipt at a time. count={}, error={}", receipts.size(), e.getMessage());
+                for (Receipt receipt : receipts) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> insert(List.of(receipt), user, productHasVariants, variantProductIds));
+                    } catch (DataAccessException receiptException) {
+                        log.warn("Failed to insert incoming product of batch. row={}, error={}", receipt.row, receiptException.getMessage());
+                        receipt.incomingProductId = null;
+                        receipt.error = "Incoming product could not be created.";
+                    }
+                }
+            }
+        }
+
+        chunk.forEach(receipt -> results.add(IncomingProductBatchResponse.ReceiptResult.builder()
+                .row(receipt.row)
+                .incomingProductId(receipt.incomingProductId)
+                .error(receipt.error)
+                .build()));
+    }
+
+    private String check(Receipt receipt) {
+        try {
+            validationService.validate(receipt.request);
+            Pair<Set<Integer>, Set<Integer>> ids = IncomingProductCreateChecks.checkAndCollectIds(receipt.request);
+            receipt.productIds = ids.getFirst();
+            receipt.variantIds = ids.getSecond();
+        } catch (ConstraintViolationException e) {
+            return e.getConstraintViolations().stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        } catch (ResponseStatusException e) {
+            return e.getReason();
+        }
+        return null;
+    }
+
+    // the same checks and messages as a single create, against the ids resolved for the chunk
+    private String checkReferences(IncomingProductCreateRequest request, Set<Integer> existingSupplierIds,
+                                   Map<Integer, Boolean> productHasVariants, Map<Integer, Integer> variantProductIds) {
+        if (!existingSupplierIds.contains(request.getSupplierId())) {
+            return "Supplier is not found. Please check Supplier Id again.";
+        }
+
+        for (IncomingProductCreateRequest.IncomingProductDetails detailRequest : request.getIncomingProductDetails()) {
+            if (!productHasVariants.containsKey(detailRequest.getProductId())) {
+                return "Some products are not found. Please check product IDs again.";
+            }
+            if (detailRequest.getHasVariant()) {
+                for (IncomingProductCreateRequest.IncomingProductVariantDetail variantDetailRequest : detailRequest.getIncomingProductVariantDetails()) {
+                    if (!variantProductIds.containsKey(variantDetailRequest.getVariantId())) {
+                        return "Some productVariants are not found. Please check productVariant IDs again.";
+                    }
+                }
+            }
+        }
+
+        for (IncomingProductCreateRequest.IncomingProductDetails detailRequest : request.getIncomingProductDetails()) {
+            Boolean productHasVariant = productHasVariants.get(detailRequest.getProductId());
+            if (!detailRequest.getHasVariant().equals(productHasVariant)) {
+                return "Product id: " + detailRequest.getProductId() + " hasVariant is " + productHasVariant + ", please check hasVariant again.";
+            }
+            if (detailRequest.getHasVariant()) {
+                for (IncomingProductCreateRequest.IncomingProductVariantDetail variantDetailRequest : detailRequest.getIncomingProductVariantDetails()) {
+                    if (!variantProductIds.get(variantDetailRequest.getVariantId()).equals(detailRequest.getProductId())) {
+                        return "ProductVariant with id " + variantDetailRequest.getVariantId() + " is not a variant for Product with id " + detailRequest.getProductId() + ".";
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private void insert(List<Receipt> receipts, User user, Map<Integer, Boolean> productHasVariants, Map<Integer, Integer> variantProductIds) {
+        List<IncomingProduct> incomingProducts = new ArrayList<>();
+        for (Receipt receipt : receipts) {
+            Supplier supplier = new Supplier();
+            supplier.setId(receipt.request.getSupplierId());
+
+            IncomingProduct incomingProduct = new IncomingProduct();
+            incomingProduct.setDateIn(receipt.request.getDateIn());
+            incomingProduct.setSupplier(supplier);
+            incomingProduct.setUser(user);
+            incomingProduct.setTotalProducts(receipt.request.getTotalProducts());
+            incomingProduct.setNote(receipt.request.getNote());
+            incomingProducts.add(incomingProduct);
+        }
+        incomingProductBatchRepository.insertIncomingProducts(incomingProducts);
+
+        List<IncomingProductDetail> incomingProductDetails = new ArrayList<>();
+        List<IncomingProductVariantDetail> incomingProductVariantDetails = new ArrayList<>();
+        List<StockDeltas> stockDeltasList = new ArrayList<>();
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        for (int i = 0; i < receipts.size(); i++) {
+            IncomingProduct incomingProduct = incomingProducts.get(i);
+            StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProduct.getId());
+            List<IncomingProductDetail> details = new ArrayList<>();
+            for (IncomingProductCreateRequest.IncomingProductDetails detailRequest : receipts.get(i).request.getIncomingProductDetails()) {
+                IncomingProductDetail detail = buildDetail(detailRequest, incomingProduct, productHasVariants, variantProductIds, incomingProductVariantDetails, stockDeltas);
+                details.add(detail);
+            }
+            incomingProductDetails.addAll(details);
+            stockDeltasList.add(stockDeltas);
+            purchaseDeltas.addDetails(incomingProduct, details, 1);
+        }
+
+        // stock before the details, the child inserts take foreign key locks on the same rows
+        applyStockDeltas(stockDeltasList);
+
+        incomingProductBatchRepository.insertIncomingProductDetails(incomingProductDetails);
+        incomingProductBatchRepository.insertIncomingProductVariantDetails(incomingProductVariantDetails);
+        purchaseAggregateRepository.applyDeltas(purchaseDeltas.toPurchaseAggregateDeltas());
+
+        // stock of the products or their variants has changed, the cached product details are stale after commit
+        productDetailCache.evict(incomingProductDetails.stream().map(detail -> detail.getProduct().getId()).distinct().toList());
+
+        for (int i = 0; i < receipts.size(); i++) {
+            receipts.get(i).incomingProductId = incomingProducts.get(i).getId();
+        }
+        log.debug("Inserted incoming product batch chunk. count={}, lastIncomingProductId={}", incomingProducts.size(), incomingProducts.getLast().getId());
+    }
+
+    private IncomingProductDetail buildDetail(IncomingProductCreateRequest.IncomingProductDetails detailRequest, IncomingProduct incomingProduct,
+                                              Map<Integer, Boolean> productHasVariants, Map<Integer, Integer> variantProductIds,
+                                              List<IncomingProductVariantDetail> incomingProductVariantDetails, StockDeltas stockDeltas) {
+        Product product = new Product();
+        product.setId(detailRequest.getProductId());
+        product.setHasVariant(productHasVariants.get(detailRequest.getProductId()));
+
+        IncomingProductDetail detail = new IncomingProductDetail();
+        detail.setIncomingProduct(incomingProduct);
+        detail.setProduct(product);
+        detail.setHasVariant(detailRequest.getHasVariant());
+
+        if (!detailRequest.getHasVariant()) {
+            detail.setPricePerUnit(detailRequest.getPricePerUnit());
+            detail.setQuantity(detailRequest.getQuantity());
+            detail.setTotalPrice(detailRequest.getPricePerUnit() * detailRequest.getQuantity());
+            stockDeltas.addProduct(product.getId(), detailRequest.getQuantity());
+            return detail;
+        }
+
+        int totalVariantQuantity = 0;
+        int totalVariantPrice = 0;
+        for (IncomingProductCreateRequest.IncomingProductVariantDetail variantDetailRequest : detailRequest.getIncomingProductVariantDetails()) {
+            ProductVariant productVariant = new ProductVariant();
+            productVariant.setId(variantDetailRequest.getVariantId());
+            productVariant.setProduct(product);
+
+            IncomingProductVariantDetail variantDetail = new IncomingProductVariantDetail();
+            variantDetail.setIncomingProductDetail(detail);
+            variantDetail.setProductVariant(productVariant);
+            variantDetail.setPricePerUnit(variantDetailRequest.getPricePerUnit());
+            variantDetail.setQuantity(variantDetailRequest.getQuantity());
+            variantDetail.setTotalPrice(variantDetailRequest.getQuantity() * variantDetailRequest.getPricePerUnit());
+            incomingProductVariantDetails.add(variantDetail);
+
+            stockDeltas.addProductVariant(variantProductIds.get(productVariant.getId()), productVariant.getId(), variantDetailRequest.getQuantity());
+            totalVariantQuantity += variantDetail.getQuantity();
+            totalVariantPrice += variantDetail.getTotalPrice();
+        }
+        detail.setTotalVariantQuantity(totalVariantQuantity);
+        detail.setTotalVariantPrice(totalVariantPrice);
+        return detail;
+    }
+
+    private void applyStockDeltas(List<StockDeltas> stockDeltasList) {
+        if (stockUpdateCoalescer.isEnabled()) {
+            // only the ledger is written here, the stock columns are incremented by the coalescing writer after commit
+            stockDeltasList.forEach(stockUpdateCoalescer::enqueue);
+            return;
+        }
+
+        // every receipt keeps its own ledger rows, but each product or variant is incremented once for the chunk,
+        // in id order so concurrent transactions take row locks in the same order
+        SortedMap<Integer, Integer> productDeltas = new TreeMap<>();
+        SortedMap<Integer, Integer> productVariantDeltas = new TreeMap<>();
+        List<StockMovement> stockMovements = new ArrayList<>();
+        for (StockDeltas stockDeltas : stockDeltasList) {
+            stockDeltas.getProductDeltas().forEach((productId, delta) -> productDeltas.merge(productId, delta, Integer::sum));
+            stockDeltas.getProductVariantDeltas().forEach((productVariantId, delta) -> productVariantDeltas.merge(productVariantId, delta, Integer::sum));
+            stockMovements.addAll(stockDeltas.toStockMovements());
+        }
+        log.debug("Applying stock deltas of incoming product batch chunk. productDeltas={}, productVariantDeltas={}", productDeltas, productVariantDeltas);
+
+        stockRepository.incrementProductStocks(productDeltas);
+        stockRepository.incrementProductVariantStocks(productVariantDeltas);
+        stockRepository.insertStockMovements(stockMovements);
+    }
+
+    private static class Receipt {
+        private final long row;
+        private final IncomingProductCreateRequest request;
+        private Set<Integer> productIds;
+        private Set<Integer> variantIds;
+        private String error;
+        private Integer incomingProductId;
+
+        private Receipt(long row, IncomingProductCreateRequest request) {
+            this.row = row;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductCreateRequest;
+import org.springframework.data.util.Pair;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Rules of a new incoming product that bean validation can not express, shared by the create and the batch.
+ */
+final class IncomingProductCreateChecks {
+    private IncomingProductCreateChecks() {
+    }
+
+    /**
+     * @return the product ids and the product variant ids of the details
+     */
+    static Pair<Set<Integer>, Set<Integer>> checkAndCollectIds(IncomingProductCreateRequest request) {
+        Set<Integer> productIds = new HashSet<>();
+        Set<Integer> variantIds = new HashSet<>();
+
+        for (var detail : request.getIncomingProductDetails()) {
+            checkDetailHasVariant(detail.getHasVariant(),
+                    detail.getPricePerUnit(),
+                    detail.getQuantity(),
+                    detail.getIncomingProductVariantDetails() == null,
+                    detail.getIncomingProductVariantDetails() != null);
+
+            if (!productIds.add(detail.getProductId())) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product id " + detail.getProductId() + " is duplicate.");
+            }
+
+            if (detail.getHasVariant()) {
+                Set<Integer> variantsForThisProduct = new HashSet<>();
+                for (var variantDetail: detail.getIncomingProductVariantDetails()) {
+                    if (!variantsForThisProduct.add(variantDetail.getVariantId())) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ProductVariant id " + variantDetail.getVariantId() + " is duplicate for same product.");
+                    }
+                    variantIds.add(variantDetail.getVariantId());
+                }
+            }
+        }
+        return Pair.of(productIds, variantIds);
+    }
+
+    static void checkDetailHasVariant(Boolean hasVariant,
+                                      Integer pricePerUnit, Integer quantity,
+                                      boolean incomingProductVariantDetailsIsNull,
+                                      boolean incomingProductVariantDetailsIsNotNull) {
+        if (hasVariant &&
+                (pricePerUnit != null || quantity != null)
+        ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'pricePerUnit', and 'quantity' properties must not send when 'hasVariant' is true.");
+        }
+
+        if (hasVariant && incomingProductVariantDetailsIsNull) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'IncomingProductVariantDetails' properties must not null when 'hasVariant' is true.");
+        }
+
+        if (!hasVariant &&
+                (pricePerUnit == null || quantity == null)
+        ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'pricePerUnit', and 'quantity' properties must not null when 'hasVariant' is false.");
+        }
+
+        if (!hasVariant && incomingProductVariantDetailsIsNotNull) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'IncomingProductVariantDetails' properties must not send when 'hasVariant' is false.");
+        }
+    }
+}
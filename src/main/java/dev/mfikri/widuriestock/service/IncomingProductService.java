@@ -1,13 +1,19 @@
 package dev.mfikri.widuriestock.service;
 
 
+import dev.mfikri.widuriestock.model.CursorPage;
 import dev.mfikri.widuriestock.model.incoming_product.*;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 public interface IncomingProductService {
     IncomingProductResponse create(IncomingProductCreateRequest request);
     IncomingProductResponse get(Integer incomingProductId);
-    Page<IncomingProductGetListResponse> getList(IncomingProductGetListRequest request);
+    Slice<IncomingProductGetListResponse> getList(IncomingProductGetListRequest request);
+
+    CursorPage<IncomingProductGetListResponse> getListAfter(IncomingProductGetListRequest request);
+
+    CursorPage<IncomingProductHistoryResponse> getHistory(IncomingProductHistoryRequest request);
+
     IncomingProductResponse update(IncomingProductUpdateRequest request);
 
     IncomingProductResponse.IncomingProductDetail addIncomingProductDetails(Integer incomingProductId, IncomingProductCreateRequest.IncomingProductDetails request);
@@ -1,5 +1,6 @@
 package dev.mfikri.widuriestock.service;
 
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
 import dev.mfikri.widuriestock.entity.Supplier;
 import dev.mfikri.widuriestock.entity.User;
 import dev.mfikri.widuriestock.entity.incoming_product.IncomingProduct;
@@ -7,8 +8,11 @@ import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductDetail;
 import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductVariantDetail;
 import dev.mfikri.widuriestock.entity.product.Product;
 import dev.mfikri.widuriestock.entity.product.ProductVariant;
+import dev.mfikri.widuriestock.entity.product.StockMovementSourceType;
+import dev.mfikri.widuriestock.model.CursorPage;
 import dev.mfikri.widuriestock.model.incoming_product.*;
 import dev.mfikri.widuriestock.repository.*;
+import dev.mfikri.widuriestock.util.CursorUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.*;
 import org.springframework.data.util.Pair;
@@ -24,26 +28,41 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 @Service
 public class IncomingProductServiceImpl implements IncomingProductService {
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     private final ValidationService validationService;
 
     private final IncomingProductRepository incomingProductRepository;
     private final IncomingProductDetailRepository incomingProductDetailRepository;
     private final IncomingProductVariantDetailRepository incomingProductVariantDetailRepository;
+    private final IncomingProductReadRepository incomingProductReadRepository;
 
     private final SupplierRepository supplierRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
     private final ProductVariantRepository productVariantRepository;
 
-    public IncomingProductServiceImpl(ValidationService validationService, IncomingProductRepository incomingProductRepository, IncomingProductDetailRepository incomingProductDetailRepository, IncomingProductVariantDetailRepository incomingProductVariantDetailRepository, SupplierRepository supplierRepository, UserRepository userRepository, ProductRepository productRepository, ProductVariantRepository productVariantRepository) {
+    private final StockRepository stockRepository;
+    private final PurchaseAggregateRepository purchaseAggregateRepository;
+
+    private final ProductDetailCache productDetailCache;
+
+    private final StockUpdateCoalescer stockUpdateCoalescer;
+
+    public IncomingProductServiceImpl(ValidationService validationService, IncomingProductRepository incomingProductRepository, IncomingProductDetailRepository incomingProductDetailRepository, IncomingProductVariantDetailRepository incomingProductVariantDetailRepository, IncomingProductReadRepository incomingProductReadRepository, SupplierRepository supplierRepository, UserRepository userRepository, ProductRepository productRepository, ProductVariantRepository productVariantRepository, StockRepository stockRepository, PurchaseAggregateRepository purchaseAggregateRepository, ProductDetailCache productDetailCache, StockUpdateCoalescer stockUpdateCoalescer) {
         this.validationService = validationService;
         this.incomingProductRepository = incomingProductRepository;
         this.incomingProductDetailRepository = incomingProductDetailRepository;
         this.incomingProductVariantDetailRepository = incomingProductVariantDetailRepository;
+        this.incomingProductReadRepository = incomingProductReadRepository;
         this.supplierRepository = supplierRepository;
         this.userRepository = userRepository;
         this.productRepository = productRepository;
         this.productVariantRepository = productVariantRepository;
+        this.stockRepository = stockRepository;
+        this.purchaseAggregateRepository = purchaseAggregateRepository;
+        this.productDetailCache = productDetailCache;
+        this.stockUpdateCoalescer = stockUpdateCoalescer;
     }
 
     @Override
@@ -64,18 +83,27 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         log.debug("Saving main IncomingProduct entity to the database.");
         incomingProductRepository.save(incomingProductEntity);
 
-        // 4. Process and build child entities
-        Pair<List<IncomingProductDetail>, List<IncomingProductVariantDetail>> processedDetails = processAndBuildDetails(request, incomingProductEntity);
+        // 4. Process and build child entities, collecting the stock changes
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProductEntity.getId());
+        Pair<List<IncomingProductDetail>, List<IncomingProductVariantDetail>> processedDetails = processAndBuildDetails(request, incomingProductEntity, stockDeltas);
 
         List<IncomingProductDetail> incomingProductDetailListEntity = processedDetails.getFirst();
         List<IncomingProductVariantDetail> incomingProductVariantDetailListEntity = processedDetails.getSecond();
 
-        // 5. Save all created child entities in bulk
+        // 5. Apply stock changes before the child inserts take foreign key locks on the same rows
+        applyStockDeltas(stockDeltas);
+
+        // 6. Save all created child entities in bulk
         log.debug("Saving all child entities to the persistence database.");
         incomingProductDetailRepository.saveAll(incomingProductDetailListEntity);
         if (!incomingProductVariantDetailListEntity.isEmpty()) {
             incomingProductVariantDetailRepository.saveAll(incomingProductVariantDetailListEntity);
         }
+        evictProductDetailCache(incomingProductDetailListEntity);
+
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addDetails(incomingProductEntity, incomingProductDetailListEntity, 1);
+        applyPurchaseDeltas(purchaseDeltas);
 
         log.info("Successfully created new incoming product. incomingProductId={}", incomingProductEntity.getId());
         incomingProductEntity.setIncomingProductDetails(incomingProductDetailListEntity);
@@ -87,18 +115,129 @@ public class IncomingProductServiceImpl implements IncomingProductService {
     public IncomingProductResponse get(Integer incomingProductId) {
         log.info("Processing request to get an incoming product transaction. incomingProductId={}", incomingProductId);
 
-        // find incomingProductEntity
-        IncomingProduct incomingProductEntity = findIncomingProductByIdOrThrows(incomingProductId);
+        // read straight into the response, two queries whatever the number of details and no entities to track
+        IncomingProductResponse response = incomingProductReadRepository.findResponseById(incomingProductId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "IncomingProduct is not found. Please check IncomingProduct id again."));
 
         log.info("Successfully get an incoming product transaction. incomingProductId={}", incomingProductId);
-        return toIncomingProductResponse(incomingProductEntity);
+        return response;
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Page<IncomingProductGetListResponse> getList(IncomingProductGetListRequest request) {
+    public Slice<IncomingProductGetListResponse> getList(IncomingProductGetListRequest request) {
         log.info("Processing request to get list of incoming product transactions.");
 
+        ListFilter filter = toListFilter(request);
+
+        // validate page and size
+        log.debug("Validating and assign default value. page={}, size={}", request.getPage(), request.getSize());
+        int activePage = request.getPage() != null ? request.getPage() : 0;
+        int activeSize = request.getSize() != null ? request.getSize() : 10;
+
+        // the order is in the query, date_in then id so rows of the same day keep their place between pages
+        Pageable pageable = PageRequest.of(activePage, activeSize);
+        Slice<IncomingProductSummary> incomingProductSlice = Boolean.FALSE.equals(request.getCount())
+                ? incomingProductRepository.findSummarySlice(filter.startDate(), filter.endDate(), filter.supplierId(), filter.username(), filter.notePattern(),
+                        filter.productId(), filter.variantId(), pageable)
+                : incomingProductRepository.findSummaryPage(filter.startDate(), filter.endDate(), filter.supplierId(), filter.username(), filter.notePattern(),
+                        filter.productId(), filter.variantId(), pageable);
+
+        log.info("Successfully get list of incoming product transactions.");
+        return incomingProductSlice.map(this::toIncomingProductGetListResponse);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<IncomingProductGetListResponse> getListAfter(IncomingProductGetListRequest request) {
+        log.info("Processing request to get list of incoming product transactions with cursor.");
+
+        ListFilter filter = toListFilter(request);
+
+        int activeSize = request.getSize() != null ? request.getSize() : 10;
+        if (activeSize < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size must be greater than 0.");
+        }
+
+        if (activeSize > MAX_CURSOR_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size must not be greater than " + MAX_CURSOR_PAGE_SIZE + ".");
+        }
+
+        // fetch one extra row to know whether there is a next page without running a count query
+        List<IncomingProductSummary> incomingProductSummaries;
+        String after = request.getAfter();
+        if (after == null || after.isBlank()) {
+            incomingProductSummaries = incomingProductRepository.findSummaries(filter.startDate(), filter.endDate(), filter.supplierId(), filter.username(), filter.notePattern(),
+                    filter.productId(), filter.variantId(), Limit.of(activeSize + 1));
+        } else {
+            List<String> cursor = CursorUtil.decode(after, 2);
+            log.debug("Seeking incoming product list after cursor. dateIn={}, id={}", cursor.get(0), cursor.get(1));
+            incomingProductSummaries = incomingProductRepository.findSummariesAfter(filter.startDate(), filter.endDate(), filter.supplierId(), filter.username(), filter.notePattern(),
+                    filter.productId(), filter.variantId(), CursorUtil.decodeLocalDate(cursor.get(0)), CursorUtil.decodeInteger(cursor.get(1)), Limit.of(activeSize + 1));
+        }
+
+        boolean hasNext = incomingProductSummaries.size() > activeSize;
+        List<IncomingProductSummary> pageContent = hasNext ? incomingProductSummaries.subList(0, activeSize) : incomingProductSummaries;
+
+        String nextCursor = null;
+        if (hasNext) {
+            IncomingProductSummary last = pageContent.getLast();
+            nextCursor = CursorUtil.encode(last.getDateIn().toString(), String.valueOf(last.getId()));
+        }
+
+        log.info("Successfully get list of incoming product transactions with cursor. count={}", pageContent.size());
+        return CursorPage.<IncomingProductGetListResponse>builder()
+                .content(pageContent.stream().map(this::toIncomingProductGetListResponse).toList())
+                .nextCursor(nextCursor)
+                .size(activeSize)
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPage<IncomingProductHistoryResponse> getHistory(IncomingProductHistoryRequest request) {
+        log.info("Processing request to get incoming history of a product. productId={}, variantId={}", request.getProductId(), request.getVariantId());
+
+        validationService.validate(request);
+
+        if (!productRepository.existsById(request.getProductId())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Product is not found. Please check Product id again.");
+        }
+
+        int activeSize = request.getSize() != null ? request.getSize() : 10;
+
+        // fetch one extra line to know whether there is a next page
+        List<IncomingProductHistoryResponse> historyLines;
+        String after = request.getAfter();
+        if (after == null || after.isBlank()) {
+            historyLines = incomingProductReadRepository.findHistory(request.getProductId(), request.getVariantId(), null, null, null, activeSize + 1);
+        } else {
+            List<String> cursor = CursorUtil.decode(after, 3);
+            log.debug("Seeking incoming history after cursor. dateIn={}, incomingProductDetailId={}, incomingProductVariantDetailId={}", cursor.get(0), cursor.get(1), cursor.get(2));
+            historyLines = incomingProductReadRepository.findHistory(request.getProductId(), request.getVariantId(),
+                    CursorUtil.decodeLocalDate(cursor.get(0)), CursorUtil.decodeInteger(cursor.get(1)), CursorUtil.decodeInteger(cursor.get(2)), activeSize + 1);
+        }
+
+        boolean hasNext = historyLines.size() > activeSize;
+        List<IncomingProductHistoryResponse> pageContent = hasNext ? historyLines.subList(0, activeSize) : historyLines;
+
+        String nextCursor = null;
+        if (hasNext) {
+            IncomingProductHistoryResponse last = pageContent.getLast();
+            Integer lastVariantDetailId = last.getIncomingProductVariantDetailId();
+            nextCursor = CursorUtil.encode(last.getDateIn().toString(), String.valueOf(last.getIncomingProductDetailId()),
+                    String.valueOf(lastVariantDetailId != null ? lastVariantDetailId : 0));
+        }
+
+        log.info("Successfully get incoming history of a product. productId={}, count={}", request.getProductId(), pageContent.size());
+        return CursorPage.<IncomingProductHistoryResponse>builder()
+                .content(pageContent)
+                .nextCursor(nextCursor)
+                .size(activeSize)
+                .build();
+    }
+
+    private ListFilter toListFilter(IncomingProductGetListRequest request) {
         // validation startDate and endDate
         log.debug("Validating and assign default value. startDate={}, endDate={}", request.getStartDate(), request.getEndDate());
 
@@ -112,28 +251,28 @@ public class IncomingProductServiceImpl implements IncomingProductService {
                     "Start date " + activeStartDate + " must be before or equal to end date " + activeEndDate + ".");
         }
 
-        // validate page and size
-        log.debug("Validating and assign default value. page={}, size={}", request.getPage(), request.getSize());
-        int activePage = request.getPage() != null ? request.getPage() : 0;
-        int activeSize = request.getSize() != null ? request.getSize() : 10;
+        // the note is matched anywhere in the text, wildcards sent by the client are taken literally
+        String notePattern = null;
+        if (request.getNote() != null && !request.getNote().isBlank()) {
+            notePattern = "%" + request.getNote().trim().replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+        }
+        String username = request.getUsername() != null && !request.getUsername().isBlank() ? request.getUsername().trim() : null;
 
-        Pageable pageable = PageRequest.of(activePage, activeSize, Sort.by(Sort.Order.asc("dateIn")));
-        Page<IncomingProduct> incomingProductPage = incomingProductRepository.findByDateInBetween(activeStartDate, activeEndDate, pageable);
+        return new ListFilter(activeStartDate, activeEndDate, request.getSupplierId(), username, notePattern, request.getProductId(), request.getVariantId());
+    }
 
-        List<IncomingProductGetListResponse> incomingProductsListResponse = incomingProductPage.getContent().stream().map(incomingProduct -> IncomingProductGetListResponse.builder()
-                .id(incomingProduct.getId())
-                .dateIn(incomingProduct.getDateIn())
+    private IncomingProductGetListResponse toIncomingProductGetListResponse(IncomingProductSummary incomingProductSummary) {
+        return IncomingProductGetListResponse.builder()
+                .id(incomingProductSummary.getId())
+                .dateIn(incomingProductSummary.getDateIn())
                 .supplier(IncomingProductSupplierResponse.builder()
-                        .id(incomingProduct.getSupplier().getId())
-                        .name(incomingProduct.getSupplier().getSupplierName())
+                        .id(incomingProductSummary.getSupplierId())
+                        .name(incomingProductSummary.getSupplierName())
                         .build())
-                .username(incomingProduct.getUser().getUsername())
-                .totalProducts(incomingProduct.getTotalProducts())
-                .note(incomingProduct.getNote())
-                .build()).toList();
-
-        log.info("Successfully get list of incoming product transactions.");
-        return new PageImpl<>(incomingProductsListResponse, pageable, incomingProductPage.getTotalElements());
+                .username(incomingProductSummary.getUsername())
+                .totalProducts(incomingProductSummary.getTotalProducts())
+                .note(incomingProductSummary.getNote())
+                .build();
     }
 
     @Override
@@ -153,7 +292,16 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         }
 
         // The main update logic is now orchestrated here, relying on Dirty Checking.
-        applyUpdates(incomingProduct, request, supplier, user);
+        // Stock is not part of it, the collected deltas are applied as set-based updates.
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProduct.getId());
+        // the date or the supplier may change, so the old lines are taken out and the updated ones put back
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addDetails(incomingProduct, incomingProduct.getIncomingProductDetails(), -1);
+        applyUpdates(incomingProduct, request, supplier, user, stockDeltas);
+        purchaseDeltas.addDetails(incomingProduct, incomingProduct.getIncomingProductDetails(), 1);
+        applyStockDeltas(stockDeltas);
+        applyPurchaseDeltas(purchaseDeltas);
+        evictProductDetailCache(incomingProduct.getIncomingProductDetails());
 
         log.info("Successfully updated an incoming product transaction. incomingProductId={}", incomingProduct.getId());
         return toIncomingProductResponse(incomingProduct);
@@ -201,7 +349,7 @@ public class IncomingProductServiceImpl implements IncomingProductService {
             IncomingProductDetail existingDetail = productDetailMap.get(productDetailRequest.getId());
 
             // validation hasVariant
-            incomingProductDetailsValidationHasVariant(productDetailRequest.getHasVariant(),
+            IncomingProductCreateChecks.checkDetailHasVariant(productDetailRequest.getHasVariant(),
                     productDetailRequest.getPricePerUnit(),
                     productDetailRequest.getQuantity(),
                     productDetailRequest.getIncomingProductVariantDetails() == null,
@@ -260,7 +408,8 @@ public class IncomingProductServiceImpl implements IncomingProductService {
     private void applyUpdates(IncomingProduct incomingProduct,
                               IncomingProductUpdateRequest request,
                               Supplier supplier,
-                              User user) {
+                              User user,
+                              StockDeltas stockDeltas) {
         log.debug("Applying updates to entities.");
 
         // 1. Validate and structure the request data
@@ -278,10 +427,10 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         incomingProduct.setUpdateReason(request.getUpdateReason());
 
         // 3. Apply changes to child entities and related business logic (stock)
-        applyDetailUpdates(incomingProduct.getIncomingProductDetails(), updateContext);
+        applyDetailUpdates(incomingProduct.getIncomingProductDetails(), updateContext, stockDeltas);
     }
 
-    private void applyDetailUpdates(List<IncomingProductDetail> productDetails, UpdateRequestContext updateContext) {
+    private void applyDetailUpdates(List<IncomingProductDetail> productDetails, UpdateRequestContext updateContext, StockDeltas stockDeltas) {
         Map<Integer, IncomingProductUpdateRequest.IncomingProductDetail> productDetailRequestMap = updateContext.detailRequestMap();
         Map<Integer, IncomingProductUpdateRequest.IncomingProductVariantDetail> variantDetailRequestMap = updateContext.variantDetailRequestMap();
 
@@ -292,8 +441,8 @@ public class IncomingProductServiceImpl implements IncomingProductService {
             if (!productDetail.getHasVariant()) {
                 // update the Product stock
                 log.debug("Updated stock product");
-                Product product = productDetail.getProduct();
-                product.setStock(calcStockChange(product.getStock(), productDetailRequest.getQuantity(), productDetail.getQuantity()));
+                stockDeltas.addProduct(productDetail.getProduct().getId(),
+                        calcQuantityChange(productDetailRequest.getQuantity(), productDetail.getQuantity()));
 
                 // set IncomingProductDetail
                 setIncomingProductDetailWithoutVariant(productDetail,
@@ -312,17 +461,12 @@ public class IncomingProductServiceImpl implements IncomingProductService {
                 for (var variantDetailEntity: productDetail.getIncomingProductVariantDetails()) {
                     IncomingProductUpdateRequest.IncomingProductVariantDetail variantDetailRequest = variantDetailRequestMap.get(variantDetailEntity.getId());
 
+                    validationIncomingProductVariantDetail(variantDetailEntity, variantDetailRequest);
+
                     // update the ProductVariant stock
                     log.debug("Updated stock product variant");
-                    ProductVariant productVariant = variantDetailEntity.getProductVariant();
-
-                    int productVariantStockChange = calcStockChange(productVariant.getStock(),
-                            variantDetailRequest.getQuantity(),
-                            variantDetailEntity.getQuantity());
-
-                    productVariant.setStock(productVariantStockChange);
-
-                    validationIncomingProductVariantDetail(variantDetailEntity, variantDetailRequest);
+                    stockDeltas.addProductVariant(productDetail.getProduct().getId(), variantDetailEntity.getProductVariant().getId(),
+                            calcQuantityChange(variantDetailRequest.getQuantity(), variantDetailEntity.getQuantity()));
 
                     // set IncomingProductVariantDetail
                     variantDetailEntity.setPricePerUnit(variantDetailRequest.getPricePerUnit());
@@ -359,12 +503,19 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         Map<Integer, ProductVariant> variantMap = fetchProductVariants(variantIds);
 
         List<IncomingProductVariantDetail> allVariantDetails = new ArrayList<>();
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProduct.getId());
 
-        IncomingProductDetail incomingProductDetail = buildProductDetailEntity(request, incomingProduct, product, variantMap, allVariantDetails);
+        IncomingProductDetail incomingProductDetail = buildProductDetailEntity(request, incomingProduct, product, variantMap, allVariantDetails, stockDeltas);
+        applyStockDeltas(stockDeltas);
 
         incomingProductRepository.save(incomingProduct);
         incomingProductDetailRepository.save(incomingProductDetail);
         incomingProductVariantDetailRepository.saveAll(allVariantDetails);
+        productDetailCache.evict(product.getId());
+
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addDetail(incomingProduct, incomingProductDetail, 1);
+        applyPurchaseDeltas(purchaseDeltas);
 
         log.info("Successfully added new IncomingProductDetail. incomingProductDetailId={}", incomingProductDetail.getId());
         return toIncomingProductDetailListResponse(List.of(incomingProductDetail)).getFirst();
@@ -374,7 +525,7 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         log.debug("Validating and collecting variantId.");
 
         // validate hasVariant
-        incomingProductDetailsValidationHasVariant(request.getHasVariant(),
+        IncomingProductCreateChecks.checkDetailHasVariant(request.getHasVariant(),
                 request.getPricePerUnit(),
                 request.getQuantity(),
                 request.getIncomingProductVariantDetails() == null,
@@ -413,7 +564,9 @@ public class IncomingProductServiceImpl implements IncomingProductService {
 
         ProductVariant productVariant = findProductVariantByIdOrThrows(variantDetailRequest.getVariantId());
 
-        IncomingProductVariantDetail variantDetail = buildVariantDetailAndUpdateVariantStock(variantDetailRequest, productDetail, productVariant);
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, productDetail.getIncomingProduct().getId());
+        IncomingProductVariantDetail variantDetail = buildVariantDetail(variantDetailRequest, productDetail, productVariant, stockDeltas);
+        applyStockDeltas(stockDeltas);
 
         log.debug("Set totalVariantPrice and totalVariantQuantity.");
         if (productDetail.getTotalVariantPrice() == null) {
@@ -431,6 +584,11 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         }
 
         incomingProductVariantDetailRepository.save(variantDetail);
+        productDetailCache.evict(productVariant.getProduct().getId());
+
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addVariantDetail(productDetail.getIncomingProduct(), productDetail.getProduct().getId(), variantDetail, 1);
+        applyPurchaseDeltas(purchaseDeltas);
 
         log.info("Successfully added new IncomingProductVariantDetail. incomingProductVariantDetailId={}", variantDetail.getId());
         return toIncomingProductVariantDetailResponse(variantDetail);
@@ -459,19 +617,24 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         log.info("Processing request to delete an incoming product transaction. incomingProductId={}", incomingProductId);
         IncomingProduct incomingProduct = findIncomingProductByIdOrThrows(incomingProductId);
 
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProduct.getId());
         for (IncomingProductDetail productDetail: incomingProduct.getIncomingProductDetails()) {
             if (!productDetail.getHasVariant()) {
-                Product product = productDetail.getProduct();
-                product.setStock(product.getStock() - productDetail.getQuantity());
+                stockDeltas.addProduct(productDetail.getProduct().getId(), -productDetail.getQuantity());
             } else {
                 for ( IncomingProductVariantDetail variantDetail: productDetail.getIncomingProductVariantDetails()) {
-                    ProductVariant productVariant = variantDetail.getProductVariant();
-                    productVariant.setStock(productVariant.getStock() - variantDetail.getQuantity());
+                    stockDeltas.addProductVariant(productDetail.getProduct().getId(), variantDetail.getProductVariant().getId(), -variantDetail.getQuantity());
                 }
             }
         }
+        applyStockDeltas(stockDeltas);
+
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addDetails(incomingProduct, incomingProduct.getIncomingProductDetails(), -1);
+        applyPurchaseDeltas(purchaseDeltas);
 
         incomingProductRepository.delete(incomingProduct);
+        evictProductDetailCache(incomingProduct.getIncomingProductDetails());
         log.info("Successfully deleted an incoming product transaction. incomingProductId={}", incomingProductId);
     }
 
@@ -483,21 +646,25 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         IncomingProductDetail incomingProductDetail = findIncomingProductDetailByIdOrThrows(incomingProductDetailId);
 
         log.debug("Updating product or product variant stock.");
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProductDetail.getIncomingProduct().getId());
         if (!incomingProductDetail.getHasVariant()) {
-            Product product = incomingProductDetail.getProduct();
-            product.setStock(product.getStock() - incomingProductDetail.getQuantity());
+            stockDeltas.addProduct(incomingProductDetail.getProduct().getId(), -incomingProductDetail.getQuantity());
         } else {
-            incomingProductDetail.getIncomingProductVariantDetails().forEach(incomingProductVariantDetail -> {
-                ProductVariant productVariant = incomingProductVariantDetail.getProductVariant();
-                productVariant.setStock(productVariant.getStock() - incomingProductVariantDetail.getQuantity());
-            });
+            incomingProductDetail.getIncomingProductVariantDetails().forEach(incomingProductVariantDetail ->
+                    stockDeltas.addProductVariant(incomingProductDetail.getProduct().getId(), incomingProductVariantDetail.getProductVariant().getId(), -incomingProductVariantDetail.getQuantity()));
         }
+        applyStockDeltas(stockDeltas);
 
         // update IncomingProduct
         IncomingProduct incomingProduct = incomingProductDetail.getIncomingProduct();
         incomingProduct.setTotalProducts(incomingProduct.getTotalProducts() - 1);
 
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addDetail(incomingProduct, incomingProductDetail, -1);
+        applyPurchaseDeltas(purchaseDeltas);
+
         incomingProductDetailRepository.delete(incomingProductDetail);
+        productDetailCache.evict(incomingProductDetail.getProduct().getId());
         log.info("Successfully deleted an incoming product detail. incomingProductDetailId={}", incomingProductDetailId);
     }
 
@@ -517,9 +684,16 @@ public class IncomingProductServiceImpl implements IncomingProductService {
 
         // update ProductVariant
         ProductVariant productVariant = variantDetail.getProductVariant();
-        productVariant.setStock(productVariant.getStock() - variantDetail.getQuantity());
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.INCOMING_PRODUCT, incomingProductDetail.getIncomingProduct().getId());
+        stockDeltas.addProductVariant(productVariant.getProduct().getId(), productVariant.getId(), -variantDetail.getQuantity());
+        applyStockDeltas(stockDeltas);
+
+        PurchaseDeltas purchaseDeltas = new PurchaseDeltas();
+        purchaseDeltas.addVariantDetail(incomingProductDetail.getIncomingProduct(), incomingProductDetail.getProduct().getId(), variantDetail, -1);
+        applyPurchaseDeltas(purchaseDeltas);
 
         incomingProductVariantDetailRepository.delete(variantDetail);
+        productDetailCache.evict(productVariant.getProduct().getId());
         log.info("Successfully deleted an incoming product variant detail. incomingProductVariantDetailId={}", incomingProductVariantDetailId);
     }
 
@@ -534,31 +708,6 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         }
     }
 
-    private void incomingProductDetailsValidationHasVariant(Boolean hasVariant,
-                                                            Integer pricePerUnit, Integer quantity,
-                                                            boolean incomingProductVariantDetailsIsNull,
-                                                            boolean incomingProductVariantDetailsIsNotNull) {
-        if (hasVariant &&
-                (pricePerUnit != null || quantity != null)
-        ) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'pricePerUnit', and 'quantity' properties must not send when 'hasVariant' is true.");
-        }
-
-        if (hasVariant && incomingProductVariantDetailsIsNull) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'IncomingProductVariantDetails' properties must not null when 'hasVariant' is true.");
-        }
-
-        if (!hasVariant &&
-                (pricePerUnit == null || quantity == null)
-        ) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'pricePerUnit', and 'quantity' properties must not null when 'hasVariant' is false.");
-        }
-
-        if (!hasVariant && incomingProductVariantDetailsIsNotNull) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "incomingProductDetails 'IncomingProductVariantDetails' properties must not send when 'hasVariant' is false.");
-        }
-    }
-
     private IncomingProductResponse.IncomingProductVariantDetail toIncomingProductVariantDetailResponse (IncomingProductVariantDetail incomingProductVariantDetail) {
         log.debug("Mapping incomingProductVariantDetail to response.");
         return IncomingProductResponse.IncomingProductVariantDetail.builder()
@@ -697,35 +846,6 @@ public class IncomingProductServiceImpl implements IncomingProductService {
 
 
 
-    private Pair<Set<Integer>, Set<Integer>> validateAndCollectIds(IncomingProductCreateRequest request) {
-        log.debug("Validating request details and collecting entity IDs.");
-        Set<Integer> productIds = new HashSet<>();
-        Set<Integer> variantIds = new HashSet<>();
-
-        for (var detail : request.getIncomingProductDetails()) {
-            incomingProductDetailsValidationHasVariant(detail.getHasVariant(),
-                    detail.getPricePerUnit(),
-                    detail.getQuantity(),
-                    detail.getIncomingProductVariantDetails() == null,
-                    detail.getIncomingProductVariantDetails() != null);
-
-            if (!productIds.add(detail.getProductId())) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product id " + detail.getProductId() + " is duplicate.");
-            }
-
-            if (detail.getHasVariant()) {
-                Set<Integer> variantsForThisProduct = new HashSet<>();
-                for (var variantDetail: detail.getIncomingProductVariantDetails()) {
-                    if (!variantsForThisProduct.add(variantDetail.getVariantId())) {
-                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ProductVariant id " + variantDetail.getVariantId() + " is duplicate for same product.");
-                    }
-                    variantIds.add(variantDetail.getVariantId());
-                }
-            }
-        }
-        return Pair.of(productIds, variantIds);
-    }
-
     private Map<Integer, Product> fetchProducts(Set<Integer> productIds) {
         log.debug("Fetching all product in bulk. count={}", productIds.size());
 
@@ -756,10 +876,10 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         return  variantMap;
     }
 
-    private Pair<List<IncomingProductDetail>, List<IncomingProductVariantDetail>> processAndBuildDetails(IncomingProductCreateRequest request, IncomingProduct incomingProductEntity) {
+    private Pair<List<IncomingProductDetail>, List<IncomingProductVariantDetail>> processAndBuildDetails(IncomingProductCreateRequest request, IncomingProduct incomingProductEntity, StockDeltas stockDeltas) {
         log.debug("Processing and building details.");
         // 1. Validate request and collect all Ids
-        Pair<Set<Integer>, Set<Integer>> allIds = validateAndCollectIds(request);
+        Pair<Set<Integer>, Set<Integer>> allIds = IncomingProductCreateChecks.checkAndCollectIds(request);
         Set<Integer> productIds = allIds.getFirst();
         Set<Integer> variantIds = allIds.getSecond();
 
@@ -767,7 +887,7 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         Map<Integer, Product> productMap = fetchProducts(productIds);
         Map<Integer, ProductVariant> variantMap = fetchProductVariants(variantIds);
 
-        // 3. Process details, create child entities, and update stock
+        // 3. Process details, create child entities, and collect stock changes
         List<IncomingProductDetail> incomingProductDetailListEntity = new ArrayList<>();
         List<IncomingProductVariantDetail> allVariantDetails = new ArrayList<>();
 
@@ -775,14 +895,13 @@ public class IncomingProductServiceImpl implements IncomingProductService {
             Product product = productMap.get(detailRequest.getProductId());
             compareHasVariantIncomingProductDetailAndProduct(detailRequest.getHasVariant() != product.getHasVariant(), product);
 
-            IncomingProductDetail productDetailEntity = buildProductDetailEntity(detailRequest, incomingProductEntity, product, variantMap, allVariantDetails);
+            IncomingProductDetail productDetailEntity = buildProductDetailEntity(detailRequest, incomingProductEntity, product, variantMap, allVariantDetails, stockDeltas);
 
             incomingProductDetailListEntity.add(productDetailEntity);
         }
-        // NOTE: We DO NOT need to save productMap or variantMap.
-        // They were fetched from the database, making them "managed".
-        // JPA's Dirty Checking will automatically persist any changes (like stock updates)
-        // when the transaction commits.
+        // NOTE: Products and variants are NOT modified here.
+        // Their stock changes are collected in stockDeltas and applied by the caller
+        // as set-based updates, so concurrent transactions do not overwrite each other.
 
         return Pair.of(incomingProductDetailListEntity, allVariantDetails);
     }
@@ -806,7 +925,8 @@ public class IncomingProductServiceImpl implements IncomingProductService {
                                                            IncomingProduct incomingProductEntity,
                                                            Product product,
                                                            Map<Integer, ProductVariant> variantMap,
-                                                           List<IncomingProductVariantDetail> allVariantDetails) {
+                                                           List<IncomingProductVariantDetail> allVariantDetails,
+                                                           StockDeltas stockDeltas) {
         log.debug("Building IncomingProductDetail entity. productDetailsRequest={}", productDetailsRequest);
 
         IncomingProductDetail productDetailEntity = new IncomingProductDetail();
@@ -817,7 +937,7 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         if (!productDetailsRequest.getHasVariant()) {
             // Product without variants
             setIncomingProductDetailWithoutVariant(productDetailEntity, productDetailsRequest.getPricePerUnit(), productDetailsRequest.getQuantity());
-            product.setStock(product.getStock() + productDetailsRequest.getQuantity());
+            stockDeltas.addProduct(product.getId(), productDetailsRequest.getQuantity());
         } else {
             // Product with variants
             AtomicInteger totalVariantQuantity = new AtomicInteger(0);
@@ -833,7 +953,7 @@ public class IncomingProductServiceImpl implements IncomingProductService {
                 }
 
 
-                IncomingProductVariantDetail variantDetailEntity = buildVariantDetailAndUpdateVariantStock(variantDetailRequest, productDetailEntity, productVariant);
+                IncomingProductVariantDetail variantDetailEntity = buildVariantDetail(variantDetailRequest, productDetailEntity, productVariant, stockDeltas);
 
                 totalVariantQuantity.addAndGet(variantDetailRequest.getQuantity());
                 totalVariantPrice.addAndGet(variantDetailEntity.getTotalPrice());
@@ -849,9 +969,10 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         return productDetailEntity;
     }
 
-    private IncomingProductVariantDetail buildVariantDetailAndUpdateVariantStock(IncomingProductCreateRequest.IncomingProductVariantDetail variantDetailRequest,
-                                                                                 IncomingProductDetail incomingProductDetail,
-                                                                                 ProductVariant productVariant) {
+    private IncomingProductVariantDetail buildVariantDetail(IncomingProductCreateRequest.IncomingProductVariantDetail variantDetailRequest,
+                                                           IncomingProductDetail incomingProductDetail,
+                                                           ProductVariant productVariant,
+                                                           StockDeltas stockDeltas) {
         log.debug("Building IncomingProductVariantDetail entity. variantDetailRequest={}", variantDetailRequest);
 
         IncomingProductVariantDetail incomingProductVariantDetail = new IncomingProductVariantDetail();
@@ -861,18 +982,43 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         incomingProductVariantDetail.setQuantity(variantDetailRequest.getQuantity());
         incomingProductVariantDetail.setTotalPrice(variantDetailRequest.getQuantity() * variantDetailRequest.getPricePerUnit());
 
-        // update productVariant stock
-        productVariant.setStock(productVariant.getStock() + variantDetailRequest.getQuantity());
+        // collect productVariant stock change
+        stockDeltas.addProductVariant(productVariant.getProduct().getId(), productVariant.getId(), variantDetailRequest.getQuantity());
 
         return incomingProductVariantDetail;
     }
 
-    private int calcStockChange(int currentStock, int newQuantityIn, int oldQuantityIn ) {
-        log.debug("Calculating stock change. currentStock={}, newQuantityIn={}, oldQuantityIn={}", currentStock, newQuantityIn, oldQuantityIn);
-        // quantityChange = 15 - 10 = 5 | stockProduct = currentStock + +5
-        // quantityChange = 5 - 10 = -5 | stockProduct = currentStock + -5
-        int quantityChange = newQuantityIn - oldQuantityIn;
-        return currentStock + quantityChange;
+    private void evictProductDetailCache(List<IncomingProductDetail> productDetails) {
+        // stock of the product or its variants has changed, the cached product detail is stale after commit
+        productDetailCache.evict(productDetails.stream().map(productDetail -> productDetail.getProduct().getId()).distinct().toList());
+    }
+
+    private void applyStockDeltas(StockDeltas stockDeltas) {
+        log.debug("Applying stock deltas. productDeltas={}, productVariantDeltas={}", stockDeltas.getProductDeltas(), stockDeltas.getProductVariantDeltas());
+        if (stockUpdateCoalescer.isEnabled()) {
+            // only the ledger is written here, the stock columns are incremented by the coalescing writer after commit
+            stockUpdateCoalescer.enqueue(stockDeltas);
+            return;
+        }
+
+        // products before variants and each in id order, so concurrent transactions take row locks in the same order
+        stockRepository.incrementProductStocks(stockDeltas.getProductDeltas());
+        stockRepository.incrementProductVariantStocks(stockDeltas.getProductVariantDeltas());
+        stockRepository.insertStockMovements(stockDeltas.toStockMovements());
+    }
+
+    private void applyPurchaseDeltas(PurchaseDeltas purchaseDeltas) {
+        // written in the same transaction, so the monthly totals commit or roll back with the details
+        List<PurchaseAggregateDelta> purchaseAggregateDeltas = purchaseDeltas.toPurchaseAggregateDeltas();
+        log.debug("Applying purchase aggregate deltas. purchaseAggregateDeltas={}", purchaseAggregateDeltas);
+        purchaseAggregateRepository.applyDeltas(purchaseAggregateDeltas);
+    }
+
+    private int calcQuantityChange(int newQuantityIn, int oldQuantityIn) {
+        log.debug("Calculating quantity change. newQuantityIn={}, oldQuantityIn={}", newQuantityIn, oldQuantityIn);
+        // quantityChange = 15 - 10 = 5 | stockProduct = stock + +5
+        // quantityChange = 5 - 10 = -5 | stockProduct = stock + -5
+        return newQuantityIn - oldQuantityIn;
     }
 
     private int calcTotalPrice(int price, int quantity) {
@@ -880,4 +1026,7 @@ public class IncomingProductServiceImpl implements IncomingProductService {
         return price * quantity;
     }
 
+
+    private record ListFilter(LocalDate startDate, LocalDate endDate, Integer supplierId, String username, String notePattern, Integer productId, Integer variantId) {
+    }
 }
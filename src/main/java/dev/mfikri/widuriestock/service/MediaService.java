@@ -0,0 +1,18 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.media.MediaFile;
+
+import java.util.Optional;
+
+public interface MediaService {
+
+    /**
+     * @param mediaPath path below the upload directory, e.g. product/ab/cd/abcd...png
+     */
+    MediaFile get(String mediaPath);
+
+    /**
+     * @return the whole content when the file is small enough to be kept in memory and is requested often
+     */
+    Optional<byte[]> getHotContent(MediaFile mediaFile);
+}
@@ -0,0 +1,112 @@
+package dev.mfikri.widuriestock.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.mfikri.widuriestock.config.MediaProperties;
+import dev.mfikri.widuriestock.model.media.MediaFile;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves media paths to the files below the upload directory. Files named by the hash of their content
+ * (see {@link ContentAddressedPhotoStorage}) and their renditions take the ETag from the name, other files
+ * from their modification time and size.
+ * <p>
+ * Small files are kept in a byte cache bounded by total size. Its admission policy keeps the files that are
+ * requested most often, which in practice are the list thumbnails.
+ */
+@Slf4j
+@Service
+public class MediaServiceImpl implements MediaService {
+    private static final String CACHE_NAME = "media.hot";
+    private static final Path ROOT = Path.of("upload").toAbsolutePath().normalize();
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("([0-9a-f]{64}(?:-w\\d+)?)\\.[a-z]+");
+
+    private final long hotCacheMaximumFileSize;
+    private final Cache<HotFile, byte[]> hotCache;
+
+    public MediaServiceImpl(MediaProperties properties, MeterRegistry meterRegistry) {
+        this.hotCacheMaximumFileSize = properties.getHotCacheMaximumFileSize().toBytes();
+        this.hotCache = Caffeine.newBuilder()
+                .maximumWeight(properties.getHotCacheMaximumSize().toBytes())
+                .<HotFile, byte[]>weigher((hotFile, content) -> content.length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hotCache, CACHE_NAME);
+    }
+
+    @Override
+    public MediaFile get(String mediaPath) {
+        Path path = ROOT.resolve(mediaPath).normalize();
+        // no way out of the upload directory, and no staging or temporary files
+        if (!path.startsWith(ROOT) || path.equals(ROOT)
+                || path.getFileName().toString().startsWith(".") || path.getFileName().toString().endsWith(".tmp")) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Media is not found.");
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Media is not found.");
+        }
+        if (!attributes.isRegularFile()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Media is not found.");
+        }
+
+        Matcher matcher = CONTENT_ADDRESSED_NAME.matcher(path.getFileName().toString());
+        boolean immutable = matcher.matches();
+        String etag = immutable ? matcher.group(1)
+                : Long.toHexString(attributes.lastModifiedTime().toMillis()) + "-" + Long.toHexString(attributes.size());
+
+        return MediaFile.builder()
+                .path(path)
+                .size(attributes.size())
+                .lastModified(attributes.lastModifiedTime().toInstant())
+                .contentType(MediaTypeFactory.getMediaType(path.getFileName().toString()).orElse(MediaType.APPLICATION_OCTET_STREAM))
+                .etag("\"" + etag + "\"")
+                .immutable(immutable)
+                .restricted(ROOT.relativize(path).startsWith("profile"))
+                .build();
+    }
+
+    @Override
+    public Optional<byte[]> getHotContent(MediaFile mediaFile) {
+        if (mediaFile.getSize() > hotCacheMaximumFileSize) {
+            return Optional.empty();
+        }
+
+        // a file written again gets a new key, the old content ages out of the cache
+        HotFile hotFile = new HotFile(mediaFile.getPath(), mediaFile.getSize(), mediaFile.getLastModified().toEpochMilli());
+        try {
+            return Optional.of(hotCache.get(hotFile, key -> {
+                try {
+                    return Files.readAllBytes(key.path());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            log.warn("Failed to read media file. path={}, error={}", mediaFile.getPath(), e.getMessage());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Media is not found.");
+        }
+    }
+
+    private record HotFile(Path path, long size, long lastModified) {
+    }
+}
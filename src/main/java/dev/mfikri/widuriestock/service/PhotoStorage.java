@@ -0,0 +1,39 @@
+package dev.mfikri.widuriestock.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * Stores the photo files referenced by product_photos.image_location and users.photo. A stored file is
+ * kept while a row references it, {@link #retain} and {@link #release} are called in the transaction that
+ * writes the reference.
+ */
+public interface PhotoStorage {
+
+    /**
+     * Writes the content, identical content is stored once.
+     *
+     * @param folder    product or profile
+     * @param extension file extension without the dot
+     * @return location of the stored file
+     */
+    Path store(InputStream content, String folder, String extension) throws IOException;
+
+    /**
+     * Counts a new reference to the file. Locations this storage did not write are ignored.
+     */
+    void retain(String imageLocation);
+
+    /**
+     * Drops a reference to the file, once the transaction commits an unreferenced file is deleted.
+     * Locations this storage did not write are ignored.
+     */
+    void release(String imageLocation);
+
+    /**
+     * Deletes the files no row references, for stored files whose transaction did not commit.
+     */
+    void deleteIfUnreferenced(Collection<Path> imageLocations);
+}
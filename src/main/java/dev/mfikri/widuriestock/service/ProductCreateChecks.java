@@ -0,0 +1,60 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.product.ProductCreateRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rules of a new product that bean validation can not express, shared by the create and the import.
+ */
+final class ProductCreateChecks {
+    private ProductCreateChecks() {
+    }
+
+    static void check(ProductCreateRequest request) {
+        if (!request.getHasVariant() && (request.getPrice() == null || request.getStock() == null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Price and Stock must be included when 'hasVariant' is false.");
+        }
+
+        if (request.getHasVariant() && (request.getPrice() != null || request.getStock() != null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Price and Stock must not be included when 'hasVariant' is true.");
+        }
+
+        if (!request.getHasVariant() && request.getVariants() != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product variants must not be included when 'hasVariant' is false.");
+        }
+
+        if (request.getHasVariant() && request.getVariants() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product variant must be included when 'hasVariant' is true.");
+        }
+
+        if (request.getHasVariant()) {
+            checkVariants(request.getVariants());
+        }
+    }
+
+    private static void checkVariants(List<ProductCreateRequest.ProductVariantCreateRequest> variants) {
+        Set<String> skus = new HashSet<>();
+        variants.forEach(variant -> skus.add(variant.getSku()));
+        if (skus.size() != variants.size()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Variants 'sku' must be unique in a product.");
+        }
+
+        int attributeSize = 0;
+        for (int i = 0; i < variants.size(); i++) {
+            int variantAttributeSize = variants.get(i).getAttributes().size();
+            if (variantAttributeSize > 2) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Variant 'Attribute' size must not exceed than 2.");
+            }
+
+            if (i != 0 && variantAttributeSize != attributeSize) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Variant 'Attribute' size must be same for each 'Variant'.");
+            }
+            attributeSize = variantAttributeSize;
+        }
+    }
+}
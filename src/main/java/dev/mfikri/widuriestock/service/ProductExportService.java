@@ -0,0 +1,10 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.product.ProductFileFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ProductExportService {
+    void exportProducts(ProductFileFormat format, OutputStream outputStream) throws IOException;
+}
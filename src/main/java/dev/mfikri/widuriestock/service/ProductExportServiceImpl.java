@@ -0,0 +1,117 @@
+package dev.mfikri.widuriestock.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.mfikri.widuriestock.model.product.ProductExportResponse;
+import dev.mfikri.widuriestock.model.product.ProductFileFormat;
+import dev.mfikri.widuriestock.repository.ProductExportRepository;
+import dev.mfikri.widuriestock.util.CsvWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the whole catalog while it is read. The catalog query runs in one read-only repeatable read
+ * transaction, so the export is a consistent snapshot even while products are written.
+ */
+@Slf4j
+@Service
+public class ProductExportServiceImpl implements ProductExportService {
+    // the same columns the csv import reads, plus the ids and the category name
+    private static final List<String> CSV_HEADER = List.of("id", "name", "description", "categoryId", "categoryName", "hasVariant", "price", "stock",
+            "variantId", "sku", "attribute1Key", "attribute1Value", "attribute2Key", "attribute2Value");
+    private static final int MAX_CSV_ATTRIBUTES = 2;
+    private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+
+    private final ProductExportRepository productExportRepository;
+    private final ObjectWriter objectWriter;
+    private final TransactionTemplate transactionTemplate;
+
+    public ProductExportServiceImpl(ProductExportRepository productExportRepository, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.productExportRepository = productExportRepository;
+        this.objectWriter = objectMapper.writerFor(ProductExportResponse.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    @Override
+    public void exportProducts(ProductFileFormat format, OutputStream outputStream) throws IOException {
+        log.info("Processing request to export products. format={}", format);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+        ProductWriter productWriter = format == ProductFileFormat.CSV ? csvProductWriter(writer) : ndjsonProductWriter(writer);
+
+        int[] count = {0};
+        try {
+            transactionTemplate.executeWithoutResult(status -> productExportRepository.streamProducts(product -> {
+                try {
+                    productWriter.write(product);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            }));
+        } catch (UncheckedIOException e) {
+            // mostly the client went away, the transaction is rolled back and the rest is not read
+            log.warn("Failed to write product export. format={}, count={}, error={}", format, count[0], e.getMessage());
+            throw e.getCause();
+        }
+        writer.flush();
+
+        log.info("Successfully exported products. format={}, count={}", format, count[0]);
+    }
+
+    private ProductWriter csvProductWriter(Writer writer) throws IOException {
+        CsvWriter csvWriter = new CsvWriter(writer);
+        csvWriter.writeRecord(CSV_HEADER);
+
+        return product -> {
+            if (product.getVariants() == null || product.getVariants().isEmpty()) {
+                csvWriter.writeRecord(csvRecord(product, product.getPrice(), product.getStock(), null));
+                return;
+            }
+
+            // one row per variant, price and stock of a product with variants belong to the variant
+            for (ProductExportResponse.ProductVariant variant : product.getVariants()) {
+                csvWriter.writeRecord(csvRecord(product, variant.getPrice(), variant.getStock(), variant));
+            }
+        };
+    }
+
+    private static List<Object> csvRecord(ProductExportResponse product, Integer price, Integer stock, ProductExportResponse.ProductVariant variant) {
+        List<Object> record = new ArrayList<>(CSV_HEADER.size());
+        record.addAll(Arrays.asList(product.getId(), product.getName(), product.getDescription(), product.getCategoryId(), product.getCategoryName(),
+                product.getHasVariant(), price, stock, variant != null ? variant.getId() : null, variant != null ? variant.getSku() : null));
+
+        for (int i = 0; i < MAX_CSV_ATTRIBUTES; i++) {
+            ProductExportResponse.ProductVariantAttribute attribute = variant != null && i < variant.getAttributes().size() ? variant.getAttributes().get(i) : null;
+            record.add(attribute != null ? attribute.getAttributeKey() : null);
+            record.add(attribute != null ? attribute.getAttributeValue() : null);
+        }
+        return record;
+    }
+
+    private ProductWriter ndjsonProductWriter(Writer writer) {
+        return product -> {
+            objectWriter.writeValue(writer, product);
+            writer.write('\n');
+        };
+    }
+
+    private interface ProductWriter {
+        void write(ProductExportResponse product) throws IOException;
+    }
+}
@@ -0,0 +1,10 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.product.ProductFileFormat;
+import dev.mfikri.widuriestock.model.product.ProductImportResponse;
+
+import java.io.InputStream;
+
+public interface ProductImportService {
+    ProductImportResponse importProducts(InputStream inputStream, ProductFileFormat format);
+}
@@ -0,0 +1,458 @@
+package dev.mfikri.widuriestock.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
+import dev.mfikri.widuriestock.config.ProductImportProperties;
+import dev.mfikri.widuriestock.entity.product.*;
+import dev.mfikri.widuriestock.model.product.ProductCreateRequest;
+import dev.mfikri.widuriestock.model.product.ProductFileFormat;
+import dev.mfikri.widuriestock.model.product.ProductImportResponse;
+import dev.mfikri.widuriestock.repository.*;
+import dev.mfikri.widuriestock.util.CsvReader;
+import jakarta.validation.ConstraintViolationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Imports products from a streamed body. Rows are read one at a time and written in chunks of the configured
+ * batch size, each chunk in its own transaction with one JDBC batch per table. A row that fails a check is
+ * reported and skipped, the rows around it are still imported.
+ */
+@Slf4j
+@Service
+public class ProductImportServiceImpl implements ProductImportService {
+    private static final int MAX_CHUNK_ATTEMPTS = 2;
+
+    private final ValidationService validationService;
+    private final CategoryRepository categoryRepository;
+    private final ProductRepository productRepository;
+    private final ProductImportRepository productImportRepository;
+    private final ProductListViewRepository productListViewRepository;
+    private final StockRepository stockRepository;
+    private final ProductDetailCache productDetailCache;
+    private final ProductImportProperties properties;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public ProductImportServiceImpl(ValidationService validationService, CategoryRepository categoryRepository, ProductRepository productRepository, ProductImportRepository productImportRepository, ProductListViewRepository productListViewRepository, StockRepository stockRepository, ProductDetailCache productDetailCache, ProductImportProperties properties, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.validationService = validationService;
+        this.categoryRepository = categoryRepository;
+        this.productRepository = productRepository;
+        this.productImportRepository = productImportRepository;
+        this.productListViewRepository = productListViewRepository;
+        this.stockRepository = stockRepository;
+        this.productDetailCache = productDetailCache;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public ProductImportResponse importProducts(InputStream inputStream, ProductFileFormat format) {
+        log.info("Processing request to import products. format={}", format);
+
+        // categories are few, one lookup map replaces a query per row
+        Map<Integer, Category> categories = categoryRepository.findAll().stream()
+                .collect(Collectors.toMap(Category::getId, Function.identity()));
+        ImportContext context = new ImportContext(categories);
+
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        try (RowReader rowReader = format == ProductFileFormat.CSV ? csvRowReader(new CsvReader(bufferedReader)) : ndjsonRowReader(bufferedReader)) {
+            List<ImportRow> chunk = new ArrayList<>(properties.getBatchSize());
+            ImportRow row;
+            while ((row = rowReader.next()) != null) {
+                chunk.add(row);
+                if (chunk.size() == properties.getBatchSize()) {
+                    importChunk(chunk, context);
+                    chunk.clear();
+                }
+            }
+            importChunk(chunk, context);
+        } catch (IOException e) {
+            // the chunks before the broken part are committed, report where reading stopped
+            log.warn("Failed to read the product import body. imported={}, error={}", context.imported, e.getMessage());
+            context.fail(new ImportRow(null, null, null, "Failed to read the import body: " + e.getMessage()));
+        }
+
+        log.info("Successfully imported products. imported={}, failed={}", context.imported, context.failed);
+        return ProductImportResponse.builder()
+                .imported(context.imported)
+                .failed(context.failed)
+                .errors(context.errors)
+                .build();
+    }
+
+    private void importChunk(List<ImportRow> chunk, ImportContext context) {
+        int firstError = context.errors.size();
+        insertChunk(chunk, context);
+        // the checks fail rows out of order, report them in the order of the body
+        context.errors.subList(firstError, context.errors.size()).sort(Comparator.comparing(ProductImportResponse.RowError::getRow, Comparator.nullsLast(Comparator.naturalOrder())));
+    }
+
+    private void insertChunk(List<ImportRow> chunk, ImportContext context) {
+        List<ImportRow> rows = new ArrayList<>();
+        for (ImportRow row : chunk) {
+            String error = row.error() != null ? row.error() : check(row.request(), context.categories);
+            if (error != null) {
+                context.fail(row.withError(error));
+            } else {
+                rows.add(row);
+            }
+        }
+
+        // one query for the names of the whole chunk, a name used earlier in the same body is a duplicate too
+        rows = rejectExistingNames(rows, context);
+        rows.removeIf(row -> {
+            if (!context.names.add(nameKey(row.name()))) {
+                context.fail(row.withError("Product name is already exists."));
+                return true;
+            }
+            return false;
+        });
+
+        for (int attempt = 1; !rows.isEmpty(); attempt++) {
+            List<ImportRow> insertRows = rows;
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(insertRows, context.categories));
+                context.imported += rows.size();
+                return;
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent create took one of the names after the check, find it and retry the rest
+                log.warn("Failed to insert product import chunk. attempt={}, count={}, error={}", attempt, rows.size(), e.getMessage());
+                List<ImportRow> remaining = rejectExistingNames(rows, context);
+                if (attempt == MAX_CHUNK_ATTEMPTS || remaining.size() == rows.size()) {
+                    remaining.forEach(row -> context.fail(row.withError("Product could not be imported.")));
+                    return;
+                }
+                rows = remaining;
+            }
+        }
+    }
+
+    private String check(ProductCreateRequest request, Map<Integer, Category> categories) {
+        try {
+            validationService.validate(request);
+            ProductCreateChecks.check(request);
+        } catch (ConstraintViolationException e) {
+            return e.getConstraintViolations().stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        } catch (ResponseStatusException e) {
+            return e.getReason();
+        }
+
+        if (!categories.containsKey(request.getCategoryId())) {
+            return "Category is not found.";
+        }
+        return null;
+    }
+
+    private List<ImportRow> rejectExistingNames(List<ImportRow> rows, ImportContext context) {
+        if (rows.isEmpty()) {
+            return rows;
+        }
+
+        Set<String> existingNames = productRepository.findNamesIn(rows.stream().map(ImportRow::name).toList()).stream()
+                .map(ProductImportServiceImpl::nameKey)
+                .collect(Collectors.toSet());
+
+        List<ImportRow> remaining = new ArrayList<>();
+        for (ImportRow row : rows) {
+            if (existingNames.contains(nameKey(row.name()))) {
+                context.fail(row.withError("Product name is already exists."));
+            } else {
+                remaining.add(row);
+            }
+        }
+        return remaining;
+    }
+
+    private void insert(List<ImportRow> rows, Map<Integer, Category> categories) {
+        List<Product> products = new ArrayList<>();
+        for (ImportRow row : rows) {
+            ProductCreateRequest request = row.request();
+            Product product = new Product();
+            product.setName(request.getName());
+            product.setDescription(request.getDescription());
+            product.setHasVariant(request.getHasVariant());
+            product.setStock(request.getStock());
+            product.setPrice(request.getPrice());
+            product.setCategory(categories.get(request.getCategoryId()));
+            products.add(product);
+        }
+        productImportRepository.insertProducts(products);
+
+        List<List<ProductVariant>> productVariantsByProduct = new ArrayList<>();
+        List<ProductVariantAttribute> productVariantAttributes = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            List<ProductVariant> productVariants = new ArrayList<>();
+            if (products.get(i).getHasVariant()) {
+                for (ProductCreateRequest.ProductVariantCreateRequest variantRequest : rows.get(i).request().getVariants()) {
+                    ProductVariant productVariant = new ProductVariant();
+                    productVariant.setSku(variantRequest.getSku());
+                    productVariant.setPrice(variantRequest.getPrice());
+                    productVariant.setStock(variantRequest.getStock());
+                    productVariant.setProduct(products.get(i));
+                    productVariants.add(productVariant);
+
+                    variantRequest.getAttributes().forEach(attributeRequest -> {
+                        ProductVariantAttribute productVariantAttribute = new ProductVariantAttribute();
+                        productVariantAttribute.setProductVariant(productVariant);
+                        productVariantAttribute.setAttributeKey(attributeRequest.getAttributeKey());
+                        productVariantAttribute.setAttributeValue(attributeRequest.getAttributeValue());
+                        productVariantAttributes.add(productVariantAttribute);
+                    });
+                }
+            }
+            productVariantsByProduct.add(productVariants);
+        }
+        productImportRepository.insertProductVariants(productVariantsByProduct.stream().flatMap(List::stream).toList());
+        productImportRepository.insertProductVariantAttributes(productVariantAttributes);
+
+        // the opening stock of every product is recorded in the ledger, the same as a single create
+        List<StockMovement> stockMovements = new ArrayList<>();
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.PRODUCT, product.getId());
+            if (product.getHasVariant()) {
+                productVariantsByProduct.get(i).forEach(productVariant -> stockDeltas.addProductVariant(product.getId(), productVariant.getId(), productVariant.getStock()));
+            } else {
+                stockDeltas.addProduct(product.getId(), product.getStock());
+            }
+            stockMovements.addAll(stockDeltas.toStockMovements());
+        }
+        stockRepository.insertStockMovements(stockMovements);
+
+        List<Integer> productIds = products.stream().map(Product::getId).toList();
+        productListViewRepository.upsertByProductIds(productIds);
+        // an id may have been requested before it existed and be cached as not found
+        productDetailCache.evict(productIds);
+        log.debug("Inserted product import chunk. count={}, lastProductId={}", products.size(), productIds.getLast());
+    }
+
+    private RowReader ndjsonRowReader(BufferedReader reader) {
+        return new RowReader() {
+            private long line = 0;
+
+            @Override
+            public ImportRow next() throws IOException {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    line++;
+                    if (text.isBlank()) {
+                        continue;
+                    }
+
+                    try {
+                        ProductCreateRequest request = objectMapper.readValue(text, ProductCreateRequest.class);
+                        return new ImportRow(line, request.getName(), request, null);
+                    } catch (JsonProcessingException e) {
+                        return new ImportRow(line, null, null, "Row is not a valid product: " + e.getOriginalMessage());
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    private RowReader csvRowReader(CsvReader csvReader) throws IOException {
+        List<String> header = csvReader.readRecord();
+        Map<String, Integer> columns = new HashMap<>();
+        if (header != null) {
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(header.get(i).strip(), i);
+            }
+        }
+
+        if (header != null && !columns.containsKey("name")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Import header must contain the 'name' column.");
+        }
+
+        return new RowReader() {
+            private List<String> pendingRecord = header == null ? null : csvReader.readRecord();
+            private long pendingLine = csvReader.getRecordLine();
+
+            @Override
+            public ImportRow next() throws IOException {
+                List<String> record = pendingRecord;
+                long line = pendingLine;
+                if (record == null) {
+                    return null;
+                }
+
+                String name = CsvColumns.value(record, columns, "name");
+                String error = null;
+                ProductCreateRequest request = null;
+                try {
+                    request = CsvColumns.toProduct(record, columns);
+                } catch (IllegalArgumentException e) {
+                    error = e.getMessage();
+                }
+
+                // the following rows of a product with variants add one variant each
+                while ((pendingRecord = csvReader.readRecord()) != null) {
+                    pendingLine = csvReader.getRecordLine();
+                    if (!CsvColumns.isVariantOf(pendingRecord, columns, name)) {
+                        break;
+                    }
+
+                    try {
+                        if (request != null) {
+                            request.getVariants().add(CsvColumns.toVariant(pendingRecord, columns));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        error = error != null ? error : e.getMessage();
+                    }
+                }
+
+                return new ImportRow(line, name, request, error);
+            }
+
+            @Override
+            public void close() throws IOException {
+                csvReader.close();
+            }
+        };
+    }
+
+    // MySQL compares the unique name case-insensitively, so must the in-memory dedupe
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private interface RowReader extends Closeable {
+        // null at the end of the body
+        ImportRow next() throws IOException;
+    }
+
+    private record ImportRow(Long row, String name, ProductCreateRequest request, String error) {
+        ImportRow withError(String error) {
+            return new ImportRow(row, name, request, error);
+        }
+    }
+
+    private class ImportContext {
+        private final Map<Integer, Category> categories;
+        private final Set<String> names = new HashSet<>();
+        private final List<ProductImportResponse.RowError> errors = new ArrayList<>();
+        private int imported;
+        private int failed;
+
+        private ImportContext(Map<Integer, Category> categories) {
+            this.categories = categories;
+        }
+
+        private void fail(ImportRow row) {
+            failed++;
+            if (errors.size() < properties.getMaxReportedErrors()) {
+                errors.add(ProductImportResponse.RowError.builder()
+                        .row(row.row())
+                        .name(row.name())
+                        .message(row.error())
+                        .build());
+            }
+        }
+    }
+
+    /**
+     * Column mapping of the csv format. A product with variants takes one row per variant, the product columns are
+     * read from its first row and 'price', 'stock' and the attribute columns of every row belong to the variant.
+     */
+    private static final class CsvColumns {
+        private CsvColumns() {
+        }
+
+        static ProductCreateRequest toProduct(List<String> record, Map<String, Integer> columns) {
+            ProductCreateRequest request = ProductCreateRequest.builder()
+                    .name(value(record, columns, "name"))
+                    .description(value(record, columns, "description"))
+                    .categoryId(integer(record, columns, "categoryId"))
+                    .hasVariant(bool(record, columns, "hasVariant"))
+                    .build();
+
+            if (Boolean.TRUE.equals(request.getHasVariant())) {
+                request.setVariants(new ArrayList<>(List.of(toVariant(record, columns))));
+            } else {
+                request.setPrice(integer(record, columns, "price"));
+                request.setStock(integer(record, columns, "stock"));
+            }
+            return request;
+        }
+
+        static ProductCreateRequest.ProductVariantCreateRequest toVariant(List<String> record, Map<String, Integer> columns) {
+            ProductCreateRequest.ProductVariantCreateRequest variant = new ProductCreateRequest.ProductVariantCreateRequest();
+            variant.setSku(value(record, columns, "sku"));
+            variant.setPrice(integer(record, columns, "price"));
+            variant.setStock(integer(record, columns, "stock"));
+
+            List<ProductCreateRequest.ProductVariantCreateRequest.ProductVariantAttributeCreateRequest> attributes = new ArrayList<>();
+            for (int i = 1; i <= 2; i++) {
+                String key = value(record, columns, "attribute" + i + "Key");
+                String attributeValue = value(record, columns, "attribute" + i + "Value");
+                if (key != null || attributeValue != null) {
+                    ProductCreateRequest.ProductVariantCreateRequest.ProductVariantAttributeCreateRequest attribute = new ProductCreateRequest.ProductVariantCreateRequest.ProductVariantAttributeCreateRequest();
+                    attribute.setAttributeKey(key);
+                    attribute.setAttributeValue(attributeValue);
+                    attributes.add(attribute);
+                }
+            }
+            variant.setAttributes(attributes);
+            return variant;
+        }
+
+        static boolean isVariantOf(List<String> record, Map<String, Integer> columns, String name) {
+            return name != null && name.equals(value(record, columns, "name")) && "true".equalsIgnoreCase(value(record, columns, "hasVariant"));
+        }
+
+        static String value(List<String> record, Map<String, Integer> columns, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= record.size() || record.get(index).isEmpty()) {
+                return null;
+            }
+            return record.get(index);
+        }
+
+        private static Integer integer(List<String> record, Map<String, Integer> columns, String column) {
+            String value = value(record, columns, column);
+            if (value == null) {
+                return null;
+            }
+
+            try {
+                return Integer.valueOf(value.strip());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'" + column + "' must be a number.");
+            }
+        }
+
+        private static Boolean bool(List<String> record, Map<String, Integer> columns, String column) {
+            String value = value(record, columns, column);
+            if (value == null) {
+                return null;
+            }
+
+            if (!value.strip().equalsIgnoreCase("true") && !value.strip().equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("'" + column + "' must be true or false.");
+            }
+            return Boolean.valueOf(value.strip());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.entity.product.Category;
+
+public interface ProductListViewService {
+    void refresh(Integer productId);
+
+    void remove(Integer productId);
+
+    void refreshCategory(Category category);
+
+    int rebuild(int batchSize);
+}
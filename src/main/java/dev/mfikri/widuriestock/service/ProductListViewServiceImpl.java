@@ -0,0 +1,82 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.entity.product.Category;
+import dev.mfikri.widuriestock.repository.ProductListViewRepository;
+import dev.mfikri.widuriestock.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+@Slf4j
+@Service
+public class ProductListViewServiceImpl implements ProductListViewService {
+    private final ProductListViewRepository productListViewRepository;
+    private final ProductRepository productRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ProductListViewServiceImpl(ProductListViewRepository productListViewRepository, ProductRepository productRepository, PlatformTransactionManager transactionManager) {
+        this.productListViewRepository = productListViewRepository;
+        this.productRepository = productRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // the write methods join the caller transaction, so the read model commits or rolls back together with the product
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void refresh(Integer productId) {
+        log.debug("Refreshing product list view. productId={}", productId);
+        productListViewRepository.upsertByProductIds(List.of(productId));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void remove(Integer productId) {
+        log.debug("Removing product from product list view. productId={}", productId);
+        productListViewRepository.deleteByProductId(productId);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void refreshCategory(Category category) {
+        log.debug("Refreshing category name in product list view. categoryId={}", category.getId());
+        int updated = productListViewRepository.updateCategoryName(category.getId(), category.getName());
+        log.debug("Refreshed category name in product list view. categoryId={}, count={}", category.getId(), updated);
+    }
+
+    @Override
+    public int rebuild(int batchSize) {
+        log.info("Rebuilding product list view. batchSize={}", batchSize);
+
+        int total = 0;
+        Integer lastId = 0;
+        while (true) {
+            // every batch runs in its own short transaction so the rebuild never holds locks over the whole table
+            Integer afterId = lastId;
+            List<Integer> productIds = transactionTemplate.execute(status -> {
+                List<Integer> ids = productRepository.findIdsAfter(afterId, Limit.of(batchSize));
+                if (!ids.isEmpty()) {
+                    productListViewRepository.upsertByProductIds(ids);
+                }
+                return ids;
+            });
+
+            if (productIds == null || productIds.isEmpty()) {
+                break;
+            }
+
+            total += productIds.size();
+            lastId = productIds.getLast();
+            log.debug("Rebuilt product list view batch. lastProductId={}, total={}", lastId, total);
+        }
+
+        Integer deleted = transactionTemplate.execute(status -> productListViewRepository.deleteOrphans());
+        log.info("Successfully rebuilt product list view. count={}, deletedOrphans={}", total, deleted);
+        return total;
+    }
+}
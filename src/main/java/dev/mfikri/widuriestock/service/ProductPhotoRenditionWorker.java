@@ -0,0 +1,154 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.config.ImageRenditionProperties;
+import dev.mfikri.widuriestock.entity.product.ProductPhoto;
+import dev.mfikri.widuriestock.entity.product.ProductPhotoRendition;
+import dev.mfikri.widuriestock.repository.ProductPhotoRepository;
+import dev.mfikri.widuriestock.util.ImageUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the resized renditions of product photos on a bounded pool, after the transaction that saved the
+ * photo commits. The original stays as it is. When the queue is full the photo is left without renditions
+ * and clients keep using the original.
+ */
+@Slf4j
+@Component
+public class ProductPhotoRenditionWorker {
+    private static final String METRIC_PREFIX = "photo.rendition";
+
+    private final ImageRenditionProperties properties;
+    private final ProductPhotoRepository productPhotoRepository;
+    private final ProductListViewService productListViewService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer renditionTimer;
+    private final Counter rejectedCounter;
+
+    public ProductPhotoRenditionWorker(ImageRenditionProperties properties, ProductPhotoRepository productPhotoRepository, ProductListViewService productListViewService, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.productPhotoRepository = productPhotoRepository;
+        this.productListViewService = productListViewService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()), runnable -> {
+            Thread thread = new Thread(runnable, "photo-rendition-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", executor, executor -> executor.getQueue().size())
+                .description("Number of product photos waiting for their renditions")
+                .register(meterRegistry);
+        this.renditionTimer = Timer.builder(METRIC_PREFIX)
+                .description("Time to make and record the renditions of one product photo")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder(METRIC_PREFIX + ".rejected")
+                .description("Number of product photos left without renditions because the queue was full")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues the renditions of the given photos once the current transaction commits.
+     * Photos with an image that is replaced before their turn are skipped.
+     */
+    void schedule(List<ProductPhoto> productPhotos) {
+        List<PhotoImage> photoImages = productPhotos.stream()
+                .map(productPhoto -> new PhotoImage(productPhoto.getId(), productPhoto.getProduct().getId(), productPhoto.getImageLocation()))
+                .toList();
+        if (photoImages.isEmpty()) {
+            return;
+        }
+
+        afterCommit(() -> photoImages.forEach(this::submit));
+    }
+
+    private void submit(PhotoImage photoImage) {
+        try {
+            executor.execute(() -> renditionTimer.record(() -> render(photoImage)));
+        } catch (RuntimeException e) {
+            rejectedCounter.increment();
+            log.warn("Rendition queue is full, the photo keeps only its original. productPhotoId={}, error={}", photoImage.productPhotoId(), e.getMessage());
+        }
+    }
+
+    private void render(PhotoImage photoImage) {
+        Map<Integer, Path> renditions;
+        try {
+            renditions = ImageUtil.createRenditions(Path.of(photoImage.imageLocation()), properties.getWidths(), properties.getJpegQuality());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to make photo renditions. productPhotoId={}, imageLocation={}, error={}", photoImage.productPhotoId(), photoImage.imageLocation(), e.getMessage());
+            return;
+        }
+        if (renditions.isEmpty()) {
+            return;
+        }
+
+        Boolean recorded = transactionTemplate.execute(status -> {
+            Optional<ProductPhoto> productPhoto = productPhotoRepository.findById(photoImage.productPhotoId());
+            if (productPhoto.isEmpty()) {
+                return null;
+            }
+            // the photo got a new image meanwhile, its own renditions are made by the job queued for it
+            if (!photoImage.imageLocation().equals(productPhoto.get().getImageLocation())) {
+                return false;
+            }
+
+            List<ProductPhotoRendition> photoRenditions = productPhoto.get().getRenditions();
+            photoRenditions.clear();
+            renditions.forEach((width, path) -> photoRenditions.add(new ProductPhotoRendition(width, path.toString())));
+            productPhotoRepository.save(productPhoto.get());
+            productListViewService.refresh(photoImage.productId());
+            return true;
+        });
+
+        // the files are not deleted when the photo is gone or changed, they are shared by every photo with the
+        // same content and are deleted by the photo storage with the image they are made from
+        log.debug("Made photo renditions. productPhotoId={}, widths={}, recorded={}", photoImage.productPhotoId(), renditions.keySet(), recorded);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record PhotoImage(String productPhotoId, Integer productId, String imageLocation) {
+    }
+}
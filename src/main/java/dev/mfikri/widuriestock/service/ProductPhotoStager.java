@@ -0,0 +1,91 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.config.PhotoStagingProperties;
+import dev.mfikri.widuriestock.util.ImageUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Writes uploaded product photos to disk before the transaction that records them opens, so no database
+ * connection is held during the file I/O. The photos of one request are written concurrently on virtual
+ * threads, and the writes of all requests together are bounded by max-concurrent-writes.
+ * <p>
+ * The files are named by their content, so a photo that replaces another never overwrites the file
+ * the committed row still points to.
+ */
+@Slf4j
+@Component
+public class ProductPhotoStager {
+    private final PhotoStorage photoStorage;
+    private final Semaphore writePermits;
+
+    public ProductPhotoStager(PhotoStorage photoStorage, PhotoStagingProperties properties) {
+        this.photoStorage = photoStorage;
+        this.writePermits = new Semaphore(properties.getMaxConcurrentWrites());
+    }
+
+    /**
+     * @return the written files, in the order of the given images. When one write fails the others
+     * are deleted and its exception is thrown.
+     */
+    List<Path> stage(List<MultipartFile> images) {
+        if (images.isEmpty()) {
+            return List.of();
+        }
+
+        log.debug("Staging product photos. count={}", images.size());
+        List<Future<Path>> writes = new ArrayList<>(images.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (MultipartFile image : images) {
+                writes.add(executor.submit(() -> write(image)));
+            }
+        }
+
+        List<Path> paths = new ArrayList<>(images.size());
+        RuntimeException failure = null;
+        for (Future<Path> write : writes) {
+            try {
+                paths.add(write.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException runtimeException ? runtimeException
+                            : new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
+            }
+        }
+
+        if (failure != null) {
+            delete(paths);
+            throw failure;
+        }
+        return paths;
+    }
+
+    private Path write(MultipartFile image) throws InterruptedException {
+        writePermits.acquire();
+        try {
+            return ImageUtil.uploadPhoto(photoStorage, image, true);
+        } finally {
+            writePermits.release();
+        }
+    }
+
+    /**
+     * Deletes staged files whose transaction did not commit, unless a committed row references the same content.
+     */
+    void delete(Collection<Path> paths) {
+        photoStorage.deleteIfUnreferenced(paths);
+    }
+}
@@ -1,5 +1,6 @@
 package dev.mfikri.widuriestock.service;
 
+import dev.mfikri.widuriestock.model.CursorPage;
 import dev.mfikri.widuriestock.model.product.ProductCreateRequest;
 import dev.mfikri.widuriestock.model.product.ProductResponse;
 import dev.mfikri.widuriestock.model.product.ProductUpdateRequest;
@@ -10,6 +11,8 @@ public interface ProductService {
     ProductResponse create(ProductCreateRequest request);
     Page<ProductsGetListResponse> getList(Integer page, Integer size);
 
+    CursorPage<ProductsGetListResponse> getListAfter(String after, Integer size);
+
     ProductResponse get(Integer productId);
 
     ProductResponse update (ProductUpdateRequest request);
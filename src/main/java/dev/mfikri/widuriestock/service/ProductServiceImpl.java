@@ -1,14 +1,18 @@
 package dev.mfikri.widuriestock.service;
 
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
 import dev.mfikri.widuriestock.entity.product.*;
+import dev.mfikri.widuriestock.model.CursorPage;
 import dev.mfikri.widuriestock.model.product.*;
 import dev.mfikri.widuriestock.repository.*;
-import dev.mfikri.widuriestock.util.ImageUtil;
+import dev.mfikri.widuriestock.util.CursorUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.*;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.nio.file.Path;
@@ -17,6 +21,7 @@ import java.util.*;
 @Slf4j
 @Service
 public class ProductServiceImpl implements ProductService {
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
 
     private final ValidationService validationService;
     private final CategoryRepository categoryRepository;
@@ -24,49 +29,63 @@ public class ProductServiceImpl implements ProductService {
     private final ProductPhotoRepository productPhotoRepository;
     private final ProductVariantRepository productVariantRepository;
     private final ProductVariantAttributeRepository productVariantAttributeRepository;
-
-    public ProductServiceImpl(ValidationService validationService, CategoryRepository categoryRepository, ProductRepository productRepository, ProductPhotoRepository productPhotoRepository, ProductVariantRepository productVariantRepository, ProductVariantAttributeRepository productVariantAttributeRepository) {
+    private final ProductListViewRepository productListViewRepository;
+    private final ProductListViewService productListViewService;
+    private final ProductDetailCache productDetailCache;
+    private final StockRepository stockRepository;
+    private final ProductPhotoRenditionWorker productPhotoRenditionWorker;
+    private final ProductPhotoStager productPhotoStager;
+    private final PhotoStorage photoStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    public ProductServiceImpl(ValidationService validationService, CategoryRepository categoryRepository, ProductRepository productRepository, ProductPhotoRepository productPhotoRepository, ProductVariantRepository productVariantRepository, ProductVariantAttributeRepository productVariantAttributeRepository, ProductListViewRepository productListViewRepository, ProductListViewService productListViewService, ProductDetailCache productDetailCache, StockRepository stockRepository, ProductPhotoRenditionWorker productPhotoRenditionWorker, ProductPhotoStager productPhotoStager, PhotoStorage photoStorage, PlatformTransactionManager transactionManager) {
         this.validationService = validationService;
         this.categoryRepository = categoryRepository;
         this.productRepository = productRepository;
         this.productPhotoRepository = productPhotoRepository;
         this.productVariantRepository = productVariantRepository;
         this.productVariantAttributeRepository = productVariantAttributeRepository;
+        this.productListViewRepository = productListViewRepository;
+        this.productListViewService = productListViewService;
+        this.productDetailCache = productDetailCache;
+        this.stockRepository = stockRepository;
+        this.productPhotoRenditionWorker = productPhotoRenditionWorker;
+        this.productPhotoStager = productPhotoStager;
+        this.photoStorage = photoStorage;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
     @Override
-    @Transactional
     public ProductResponse create(ProductCreateRequest request) {
         validationService.validate(request);
 
+        // the photos are written before the transaction opens, it only records their locations
+        List<Path> photoPaths = request.getProductPhotos() == null ? List.of() : productPhotoStager.stage(request.getProductPhotos().stream()
+                .map(ProductCreateRequest.ProductPhotoCreateRequest::getImage)
+                .toList());
+        try {
+            return transactionTemplate.execute(status -> createProduct(request, photoPaths));
+        } catch (RuntimeException e) {
+            productPhotoStager.delete(photoPaths);
+            throw e;
+        }
+    }
+
+    private ProductResponse createProduct(ProductCreateRequest request, List<Path> photoPaths) {
         Category category = categoryRepository.findById(request.getCategoryId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Category is not found."));
 
         boolean productNameIsExists = productRepository.existsByName(request.getName());
 
-        {
-            if (productNameIsExists) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product name is already exists.");
-            }
-
-            if (!request.getHasVariant() && (request.getPrice() == null || request.getStock() == null)) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Price and Stock must be included when 'hasVariant' is false.");
-            }
-
-            if (request.getHasVariant() && (request.getPrice() != null || request.getStock() != null)) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Price and Stock must not be included when 'hasVariant' is true.");
-            }
-
-
-            if (!request.getHasVariant() && request.getVariants() != null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product variants must not be included when 'hasVariant' is false.");
-            }
-
-            if (request.getHasVariant() && request.getVariants() == null) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product variant must be included when 'hasVariant' is true.");
-            }
+        if (productNameIsExists) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product name is already exists.");
         }
 
+        ProductCreateChecks.check(request);
+
         Product product = new Product();
         product.setName(request.getName());
         product.setDescription(request.getDescription());
@@ -80,11 +99,7 @@ public class ProductServiceImpl implements ProductService {
         Map<String, List<ProductVariantAttribute>> productVariantAttributesMap = new HashMap<>();
 
         if (request.getHasVariant()) {
-            Set<String> skuVariantProductSet = new HashSet<>();
-
             request.getVariants().forEach(productVariantCreateRequest -> {
-                skuVariantProductSet.add(productVariantCreateRequest.getSku());
-
                 ProductVariant productVariant = new ProductVariant();
                 productVariant.setSku(productVariantCreateRequest.getSku());
                 productVariant.setPrice(productVariantCreateRequest.getPrice());
@@ -94,26 +109,10 @@ public class ProductServiceImpl implements ProductService {
                 productVariantsList.add(productVariant);
             });
 
-            // check sku duplicate
-            if (skuVariantProductSet.size() != productVariantsList.size()) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Variants 'sku' must be unique in a product.");
-            }
-
             productVariantRepository.saveAll(productVariantsList);
 
-            int attributeSize = 0;
             for (int i = 0; i < productVariantsList.size(); i++) {
                 ProductCreateRequest.ProductVariantCreateRequest productVariantCreateRequest = request.getVariants().get(i);
-
-                if (productVariantCreateRequest.getAttributes().size() > 2) {
-                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Variant 'Attribute' size must not exceed than 2.");
-                }
-
-                if (i != 0 && productVariantCreateRequest.getAttributes().size() != attributeSize){
-                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Variant 'Attribute' size must be same for each 'Variant'.");
-                }
-                attributeSize = productVariantCreateRequest.getAttributes().size();
-
                 ProductVariant productVariantCurrent = productVariantsList.get(i);
 
                 productVariantCreateRequest.getAttributes().forEach(productVariantAttributeCreateRequest -> {
@@ -130,6 +129,14 @@ public class ProductServiceImpl implements ProductService {
             productVariantAttributeRepository.saveAll(productVariantAttributesMap.values().stream().flatMap(Collection::stream).toList());
         }
 
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.PRODUCT, product.getId());
+        if (request.getHasVariant()) {
+            productVariantsList.forEach(productVariant -> stockDeltas.addProductVariant(product.getId(), productVariant.getId(), stockOrZero(productVariant.getStock())));
+        } else {
+            stockDeltas.addProduct(product.getId(), stockOrZero(product.getStock()));
+        }
+        stockRepository.insertStockMovements(stockDeltas.toStockMovements());
+
         // write productVariant response
         List<ProductResponse.ProductVariant> productVariantsResponse = productVariantsList.stream().map(productVariant -> {
             ProductResponse.ProductVariant productVariantResponse = new ProductResponse.ProductVariant();
@@ -159,15 +166,12 @@ public class ProductServiceImpl implements ProductService {
 
         List<ProductResponse.ProductPhoto> productPhotosResponse = new ArrayList<>();
         if (request.getProductPhotos() != null) {
-            for (int i = 0; i < request.getProductPhotos().size(); i++) {
-                ProductCreateRequest.ProductPhotoCreateRequest productPhotoCreateRequest = request.getProductPhotos().get(i);
-
+            for (Path photoPath : photoPaths) {
                 ProductPhoto productPhoto = new ProductPhoto();
                 productPhoto.setProduct(product);
                 productPhoto.setId(UUID.randomUUID().toString());
-
-                Path path = ImageUtil.uploadPhoto(productPhotoCreateRequest.getImage(), product.getName() + "-" + productPhoto.getId(), true);
-                productPhoto.setImageLocation(path.toString());
+                productPhoto.setImageLocation(photoPath.toString());
+                photoStorage.retain(productPhoto.getImageLocation());
                 productPhotos.add(productPhoto);
 
                 // write product photo response
@@ -176,9 +180,13 @@ public class ProductServiceImpl implements ProductService {
                 productPhotoResponse.setImageLocation(productPhoto.getImageLocation());
                 productPhotosResponse.add(productPhotoResponse);
             }
-            productPhotoRepository.saveAll(productPhotos);
+            // the saved copies carry the ids the rows were written with
+            productPhotoRenditionWorker.schedule(productPhotoRepository.saveAll(productPhotos));
         }
 
+        productListViewService.refresh(product.getId());
+        // the id may have been requested before it existed and be cached as not found
+        productDetailCache.evict(product.getId());
 
         return ProductResponse.builder()
                 .id(product.getId())
@@ -203,23 +211,11 @@ public class ProductServiceImpl implements ProductService {
     @Transactional(readOnly = true)
     public Page<ProductsGetListResponse> getList(Integer page, Integer size) {
 
-        Pageable pageable = PageRequest.of(page, size, Sort.by("name").ascending());
+        Pageable pageable = PageRequest.of(page, size);
 
-        Page<ProductSummary> productsPage = productRepository.findProductListView(pageable);
+        Page<ProductListView> productsPage = productListViewRepository.findPage(pageable);
 
-        List<ProductsGetListResponse> productsListResponse = productsPage.getContent().stream().map(productSummary -> {
-            ProductsGetListResponse product = new ProductsGetListResponse();
-            product.setId(productSummary.getId());
-            product.setName(productSummary.getName());
-            product.setDescription(productSummary.getDescription());
-            product.setCategoryResponse(CategoryResponse.builder()
-                            .id(productSummary.getCategoryId())
-                            .name(productSummary.getCategoryName())
-                    .build());
-            product.setImageLocation(productSummary.getImageLocation());
-
-            return product;
-        }).toList();
+        List<ProductsGetListResponse> productsListResponse = productsPage.getContent().stream().map(this::toProductsGetListResponse).toList();
 
 
         return new PageImpl<>(productsListResponse, pageable, productsPage.getTotalElements());
@@ -227,42 +223,92 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     @Transactional(readOnly = true)
-    public ProductResponse get(Integer productId) {
-        Product product = findProductByIdOrThrows(productId);
+    public CursorPage<ProductsGetListResponse> getListAfter(String after, Integer size) {
+        log.info("Processing request to get list of products with cursor.");
 
-        List<ProductResponse.ProductPhoto> productPhotos = product.getProductPhotos().stream().map(this::toProductPhotoResponse).toList();
-        List<ProductResponse.ProductVariant> productVariants = product.getProductVariants().stream().map(this::toProductVariantResponse).toList();
+        if (size == null || size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size must be greater than 0.");
+        }
 
-        return ProductResponse.builder()
-                .id(product.getId())
-                .name(product.getName())
-                .description(product.getDescription())
-                .hasVariant(product.getHasVariant())
-                .stock(product.getStock())
-                .price(product.getPrice())
-                .categoryResponse(CategoryResponse.builder()
-                        .id(product.getCategory().getId())
-                        .name(product.getCategory().getName())
-                        .build())
-                .photos(productPhotos)
-                .variants(productVariants)
+        if (size > MAX_CURSOR_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Size must not be greater than " + MAX_CURSOR_PAGE_SIZE + ".");
+        }
+
+        // fetch one extra row to know whether there is a next page without running a count query
+        List<ProductListView> productSummaries;
+        if (after == null || after.isBlank()) {
+            productSummaries = productListViewRepository.findAllByOrderByNameAscIdAsc(Limit.of(size + 1));
+        } else {
+            List<String> cursor = CursorUtil.decode(after, 2);
+            log.debug("Seeking product list after cursor. name={}, id={}", cursor.get(0), cursor.get(1));
+            productSummaries = productListViewRepository.findAllAfter(cursor.get(0), CursorUtil.decodeInteger(cursor.get(1)), Limit.of(size + 1));
+        }
+
+        boolean hasNext = productSummaries.size() > size;
+        List<ProductListView> pageContent = hasNext ? productSummaries.subList(0, size) : productSummaries;
+
+        String nextCursor = null;
+        if (hasNext) {
+            ProductListView last = pageContent.getLast();
+            nextCursor = CursorUtil.encode(last.getName(), String.valueOf(last.getId()));
+        }
+
+        log.info("Successfully get list of products with cursor. count={}", pageContent.size());
+        return CursorPage.<ProductsGetListResponse>builder()
+                .content(pageContent.stream().map(this::toProductsGetListResponse).toList())
+                .nextCursor(nextCursor)
+                .size(size)
                 .build();
     }
 
     @Override
-    @Transactional
+    public ProductResponse get(Integer productId) {
+        // a cache hit does not open a transaction or borrow a connection at all
+        return productDetailCache.get(productId, this::loadProductResponse)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product is not found."));
+    }
+
+    @Override
     public ProductResponse update(ProductUpdateRequest request) {
         validationService.validate(request);
 
+        // new images are written before the transaction opens, keyed by the index of their photo in the request
+        Map<Integer, Path> photoPaths = new HashMap<>();
+        if (request.getProductPhotos() != null) {
+            List<Integer> imageIndexes = new ArrayList<>();
+            for (int i = 0; i < request.getProductPhotos().size(); i++) {
+                if (request.getProductPhotos().get(i).getImage() != null) {
+                    imageIndexes.add(i);
+                }
+            }
+            List<Path> stagedPaths = productPhotoStager.stage(imageIndexes.stream()
+                    .map(i -> request.getProductPhotos().get(i).getImage())
+                    .toList());
+            for (int i = 0; i < imageIndexes.size(); i++) {
+                photoPaths.put(imageIndexes.get(i), stagedPaths.get(i));
+            }
+        }
+        try {
+            return transactionTemplate.execute(status -> updateProduct(request, photoPaths));
+        } catch (RuntimeException e) {
+            productPhotoStager.delete(photoPaths.values());
+            throw e;
+        }
+    }
+
+    private ProductResponse updateProduct(ProductUpdateRequest request, Map<Integer, Path> photoPaths) {
         Category category = categoryRepository.findById(request.getCategoryId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Category is not found."));
 
-        Product product = findProductByIdOrThrows(request.getId());
+        // the stock is written as an absolute value, lock the rows so no concurrent stock delta is overwritten
+        Product product = lockProductWithVariantsOrThrows(request.getId());
 
         List<ProductPhoto> productPhotos = new ArrayList<>();
         List<ProductVariant> productVariants = new ArrayList<>();
         List<ProductVariantAttribute> productVariantAttributes = new ArrayList<>();
 
+        // stock is set to the requested values, the ledger records the difference to the current ones
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.PRODUCT, product.getId());
 
         if (request.getHasVariant()) {
             if (request.getPrice() != null || request.getStock() != null ) {
@@ -275,11 +321,13 @@ public class ProductServiceImpl implements ProductService {
             product.setCategory(category);
             product.setName(request.getName());
             product.setDescription(request.getDescription());
+            stockDeltas.addProduct(product.getId(), -stockOrZero(product.getStock()));
             product.setStock(null);
             product.setPrice(null);
             product.setHasVariant(request.getHasVariant());
 
-            // update variant
+            // update variant, new variants get their id on save so the previous stock is kept per instance
+            Map<ProductVariant, Integer> previousVariantStocks = new IdentityHashMap<>();
             productVariants = request.getVariants().stream().map(productVariantUpdateRequest -> {
                 ProductVariant productVariant;
                 if (productVariantUpdateRequest.getId() != null) {
@@ -293,11 +341,14 @@ public class ProductServiceImpl implements ProductService {
                 }
 
                 productVariant.setSku(productVariantUpdateRequest.getSku());
+                previousVariantStocks.put(productVariant, stockOrZero(productVariant.getStock()));
                 productVariant.setStock(productVariantUpdateRequest.getStock());
                 productVariant.setPrice(productVariantUpdateRequest.getPrice());
                 return productVariant;
             }).toList();
             productVariantRepository.saveAll(productVariants);
+            productVariants.forEach(productVariant -> stockDeltas.addProductVariant(product.getId(), productVariant.getId(),
+                    stockOrZero(productVariant.getStock()) - previousVariantStocks.get(productVariant)));
 
             // update variant attribute
             for (int i = 0; i < productVariants.size(); i++) {
@@ -332,6 +383,10 @@ public class ProductServiceImpl implements ProductService {
             if (request.getVariants() != null) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Product variants must not be included when 'hasVariant' is false.");
             }
+            product.getProductVariants().forEach(productVariant ->
+                    stockDeltas.addProductVariant(product.getId(), productVariant.getId(), -stockOrZero(productVariant.getStock())));
+            stockDeltas.addProduct(product.getId(), request.getStock() - stockOrZero(product.getStock()));
+
             log.info("invoke");
             productVariantRepository.deleteAllByProduct(product);
             log.info("invoke1");
@@ -348,6 +403,7 @@ public class ProductServiceImpl implements ProductService {
 
         if (request.getProductPhotos() != null) {
             log.info("photo");
+            List<ProductPhoto> uploadedPhotos = new ArrayList<>();
             for (int i = 0; i < request.getProductPhotos().size(); i++) {
                 ProductUpdateRequest.ProductPhotoUpdateRequest productPhotoUpdateRequest = request.getProductPhotos().get(i);
                 ProductPhoto photo;
@@ -360,18 +416,32 @@ public class ProductServiceImpl implements ProductService {
                     photo.setId(UUID.randomUUID().toString());
                 }
 
-                if (productPhotoUpdateRequest.getImage() != null) {
-                    Path path = ImageUtil.uploadPhoto(productPhotoUpdateRequest.getImage(), product.getName() + "-" + photo.getId(), true);
-                    photo.setImageLocation(path.toString());
-                } else {
-                    photo.setImageLocation(productPhotoUpdateRequest.getImageLocation());
+                Path photoPath = photoPaths.get(i);
+                String imageLocation = photoPath != null ? photoPath.toString() : productPhotoUpdateRequest.getImageLocation();
+                if (!Objects.equals(photo.getImageLocation(), imageLocation)) {
+                    // the replaced file is deleted once the update commits, unless another row references its content
+                    photoStorage.retain(imageLocation);
+                    photoStorage.release(photo.getImageLocation());
+                    // the renditions of the replaced image are made again once the update commits
+                    photo.getRenditions().clear();
+                }
+                photo.setImageLocation(imageLocation);
+                if (photoPath != null) {
+                    uploadedPhotos.add(photo);
                 }
                 photo.setProduct(product);
                 productPhotos.add(photo);
             }
-            productPhotoRepository.saveAll(productPhotos);
+            List<ProductPhoto> savedPhotos = productPhotoRepository.saveAll(productPhotos);
+            // the saved copies carry the ids the rows were written with
+            productPhotoRenditionWorker.schedule(savedPhotos.stream()
+                    .filter(savedPhoto -> uploadedPhotos.stream().anyMatch(uploadedPhoto -> Objects.equals(uploadedPhoto.getImageLocation(), savedPhoto.getImageLocation())))
+                    .toList());
         }
         productRepository.save(product);
+        stockRepository.insertStockMovements(stockDeltas.toStockMovements());
+        productListViewService.refresh(product.getId());
+        productDetailCache.evict(product.getId());
 
 
         List<ProductResponse.ProductVariant> productVariantsResponse = new ArrayList<>();
@@ -409,13 +479,72 @@ public class ProductServiceImpl implements ProductService {
     @Override
     @Transactional
     public void delete(Integer productId) {
-        Product product = findProductByIdOrThrows(productId);
+        Product product = lockProductWithVariantsOrThrows(productId);
+
+        // close the ledger of the product, the movements are kept as history
+        StockDeltas stockDeltas = new StockDeltas(StockMovementSourceType.PRODUCT, productId);
+        stockDeltas.addProduct(productId, -stockOrZero(product.getStock()));
+        product.getProductVariants().forEach(productVariant ->
+                stockDeltas.addProductVariant(productId, productVariant.getId(), -stockOrZero(productVariant.getStock())));
+        stockRepository.insertStockMovements(stockDeltas.toStockMovements());
+
+        productPhotoRepository.findProductPhotoByProduct(product).forEach(productPhoto -> photoStorage.release(productPhoto.getImageLocation()));
         productPhotoRepository.deleteAllByProduct(product);
         productRepository.delete(product);
+        productListViewService.remove(productId);
+        productDetailCache.evict(productId);
+    }
+
+    private static int stockOrZero(Integer stock) {
+        return stock == null ? 0 : stock;
+    }
+
+    private Product lockProductWithVariantsOrThrows(Integer productId) {
+        Product product = productRepository.findByIdForUpdate(productId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product is not found."));
+        // the variants become managed with their current stock, later lookups in this transaction reuse them
+        productVariantRepository.findByProductForUpdate(product);
+        return product;
+    }
+
+    private Optional<ProductResponse> loadProductResponse(Integer productId) {
+        log.debug("Loading product detail from database. productId={}", productId);
+        return readOnlyTransactionTemplate.execute(status -> productRepository.findDetailById(productId).map(this::toProductResponse));
+    }
+
+    private ProductResponse toProductResponse(Product product) {
+        List<ProductResponse.ProductPhoto> productPhotos = product.getProductPhotos().stream().map(this::toProductPhotoResponse).toList();
+        List<ProductResponse.ProductVariant> productVariants = product.getProductVariants().stream().map(this::toProductVariantResponse).toList();
+
+        return ProductResponse.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .hasVariant(product.getHasVariant())
+                .stock(product.getStock())
+                .price(product.getPrice())
+                .categoryResponse(CategoryResponse.builder()
+                        .id(product.getCategory().getId())
+                        .name(product.getCategory().getName())
+                        .build())
+                .photos(productPhotos)
+                .variants(productVariants)
+                .build();
     }
 
-    private Product findProductByIdOrThrows(Integer productId) {
-        return productRepository.findById(productId).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product is not found."));
+    private ProductsGetListResponse toProductsGetListResponse(ProductSummary productSummary) {
+        ProductsGetListResponse product = new ProductsGetListResponse();
+        product.setId(productSummary.getId());
+        product.setName(productSummary.getName());
+        product.setDescription(productSummary.getDescription());
+        product.setCategoryResponse(CategoryResponse.builder()
+                        .id(productSummary.getCategoryId())
+                        .name(productSummary.getCategoryName())
+                .build());
+        product.setImageLocation(productSummary.getImageLocation());
+        product.setThumbnailLocation(productSummary.getThumbnailLocation());
+
+        return product;
     }
 
     private ProductResponse.ProductPhoto toProductPhotoResponse(ProductPhoto productPhoto) {
@@ -0,0 +1,70 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProduct;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductDetail;
+import dev.mfikri.widuriestock.entity.incoming_product.IncomingProductVariantDetail;
+import dev.mfikri.widuriestock.repository.PurchaseAggregateDelta;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Collects the changes one transaction makes to the monthly purchase aggregates, merged per month, supplier
+ * and product. A detail counts as one line, with the totals of its variant details when it has variants.
+ */
+class PurchaseDeltas {
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::purchaseMonth)
+            .thenComparing(Key::supplierId)
+            .thenComparing(Key::productId);
+
+    private record Key(LocalDate purchaseMonth, Integer supplierId, Integer productId) {}
+
+    // quantity, total price and line count, in primary key order
+    private final SortedMap<Key, long[]> deltas = new TreeMap<>(KEY_ORDER);
+
+    void addDetail(IncomingProduct incomingProduct, IncomingProductDetail productDetail, int sign) {
+        Integer quantity = productDetail.getHasVariant() ? productDetail.getTotalVariantQuantity() : productDetail.getQuantity();
+        Integer totalPrice = productDetail.getHasVariant() ? productDetail.getTotalVariantPrice() : productDetail.getTotalPrice();
+        add(incomingProduct, productDetail.getProduct().getId(),
+                sign * valueOf(quantity), sign * valueOf(totalPrice), sign);
+    }
+
+    void addDetails(IncomingProduct incomingProduct, List<IncomingProductDetail> productDetails, int sign) {
+        productDetails.forEach(productDetail -> addDetail(incomingProduct, productDetail, sign));
+    }
+
+    // a variant detail changes the totals of its detail, the number of lines stays the same
+    void addVariantDetail(IncomingProduct incomingProduct, Integer productId, IncomingProductVariantDetail variantDetail, int sign) {
+        add(incomingProduct, productId,
+                sign * valueOf(variantDetail.getQuantity()), sign * valueOf(variantDetail.getTotalPrice()), 0);
+    }
+
+    private void add(IncomingProduct incomingProduct, Integer productId, long quantity, long totalPrice, int lines) {
+        // without a date the transaction belongs to no month yet
+        if (incomingProduct.getDateIn() == null) {
+            return;
+        }
+
+        Key key = new Key(incomingProduct.getDateIn().withDayOfMonth(1), incomingProduct.getSupplier().getId(), productId);
+        long[] delta = deltas.computeIfAbsent(key, k -> new long[3]);
+        delta[0] += quantity;
+        delta[1] += totalPrice;
+        delta[2] += lines;
+    }
+
+    // rows an update leaves unchanged are not written
+    List<PurchaseAggregateDelta> toPurchaseAggregateDeltas() {
+        List<PurchaseAggregateDelta> purchaseAggregateDeltas = new ArrayList<>();
+        deltas.forEach((key, delta) -> {
+            if (delta[0] != 0 || delta[1] != 0 || delta[2] != 0) {
+                purchaseAggregateDeltas.add(new PurchaseAggregateDelta(key.purchaseMonth(), key.supplierId(), key.productId(),
+                        delta[0], delta[1], (int) delta[2]));
+            }
+        });
+        return purchaseAggregateDeltas;
+    }
+
+    private static long valueOf(Integer value) {
+        return value != null ? value : 0;
+    }
+}
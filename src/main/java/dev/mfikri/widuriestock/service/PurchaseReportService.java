@@ -0,0 +1,19 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.report.ProductPurchaseReportResponse;
+import dev.mfikri.widuriestock.model.report.PurchaseReportRequest;
+import dev.mfikri.widuriestock.model.report.SupplierPurchaseReportResponse;
+
+import java.util.List;
+
+public interface PurchaseReportService {
+    List<SupplierPurchaseReportResponse> getSupplierReport(PurchaseReportRequest request);
+
+    List<ProductPurchaseReportResponse> getProductReport(PurchaseReportRequest request);
+
+    /**
+     * Recomputes every monthly aggregate from the incoming product details, repairing any drift of the
+     * incremental updates. Returns the number of aggregate rows.
+     */
+    int rebuild();
+}
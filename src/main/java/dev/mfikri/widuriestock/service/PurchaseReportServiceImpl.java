@@ -0,0 +1,72 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.report.ProductPurchaseReportResponse;
+import dev.mfikri.widuriestock.model.report.PurchaseReportRequest;
+import dev.mfikri.widuriestock.model.report.SupplierPurchaseReportResponse;
+import dev.mfikri.widuriestock.repository.PurchaseAggregateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Reads purchase totals from the monthly aggregates, which are kept up to date by every incoming product
+ * write, so a report reads at most one row per month, supplier and product.
+ */
+@Slf4j
+@Service
+public class PurchaseReportServiceImpl implements PurchaseReportService {
+    private static final int DEFAULT_RANGE_MONTHS = 12;
+
+    private final PurchaseAggregateRepository purchaseAggregateRepository;
+
+    public PurchaseReportServiceImpl(PurchaseAggregateRepository purchaseAggregateRepository) {
+        this.purchaseAggregateRepository = purchaseAggregateRepository;
+    }
+
+    private record MonthRange(YearMonth from, YearMonth to) {}
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SupplierPurchaseReportResponse> getSupplierReport(PurchaseReportRequest request) {
+        log.info("Processing request to get purchase report per supplier. from={}, to={}, supplierId={}, productId={}",
+                request.getFrom(), request.getTo(), request.getSupplierId(), request.getProductId());
+
+        MonthRange range = toMonthRange(request);
+        return purchaseAggregateRepository.findSupplierReport(range.from(), range.to(), request.getSupplierId(), request.getProductId());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ProductPurchaseReportResponse> getProductReport(PurchaseReportRequest request) {
+        log.info("Processing request to get purchase report per product. from={}, to={}, supplierId={}, productId={}",
+                request.getFrom(), request.getTo(), request.getSupplierId(), request.getProductId());
+
+        MonthRange range = toMonthRange(request);
+        return purchaseAggregateRepository.findProductReport(range.from(), range.to(), request.getSupplierId(), request.getProductId());
+    }
+
+    @Override
+    @Transactional
+    public int rebuild() {
+        log.info("Rebuilding purchase monthly aggregates.");
+        int count = purchaseAggregateRepository.rebuild();
+        log.info("Successfully rebuilt purchase monthly aggregates. count={}", count);
+        return count;
+    }
+
+    private MonthRange toMonthRange(PurchaseReportRequest request) {
+        YearMonth activeTo = request.getTo() != null ? request.getTo() : YearMonth.now();
+        YearMonth activeFrom = request.getFrom() != null ? request.getFrom() : activeTo.minusMonths(DEFAULT_RANGE_MONTHS - 1);
+
+        if (activeFrom.isAfter(activeTo)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Start month " + activeFrom + " must be before or equal to end month " + activeTo + ".");
+        }
+        return new MonthRange(activeFrom, activeTo);
+    }
+}
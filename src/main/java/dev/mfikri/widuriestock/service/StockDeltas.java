@@ -0,0 +1,67 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.entity.product.StockMovement;
+import dev.mfikri.widuriestock.entity.product.StockMovementSourceType;
+
+import java.util.*;
+
+/**
+ * Collects the stock changes of one transaction, merged per product and per product variant id,
+ * together with the source they are recorded under in the stock ledger.
+ */
+class StockDeltas {
+    private final StockMovementSourceType sourceType;
+    private final Integer sourceId;
+
+    private final SortedMap<Integer, Integer> productDeltas = new TreeMap<>();
+    private final SortedMap<Integer, Integer> productVariantDeltas = new TreeMap<>();
+    private final Map<Integer, Integer> productIdByVariantId = new HashMap<>();
+
+    StockDeltas(StockMovementSourceType sourceType, Integer sourceId) {
+        this.sourceType = sourceType;
+        this.sourceId = sourceId;
+    }
+
+    void addProduct(Integer productId, int delta) {
+        productDeltas.merge(productId, delta, Integer::sum);
+    }
+
+    void addProductVariant(Integer productId, Integer productVariantId, int delta) {
+        productVariantDeltas.merge(productVariantId, delta, Integer::sum);
+        productIdByVariantId.put(productVariantId, productId);
+    }
+
+    Map<Integer, Integer> getProductDeltas() {
+        return Collections.unmodifiableSortedMap(productDeltas);
+    }
+
+    Map<Integer, Integer> getProductVariantDeltas() {
+        return Collections.unmodifiableSortedMap(productVariantDeltas);
+    }
+
+    // createdAt is left empty, the ledger stamps it on insert
+    List<StockMovement> toStockMovements() {
+        List<StockMovement> stockMovements = new ArrayList<>();
+        productDeltas.forEach((productId, delta) -> {
+            if (delta != 0) {
+                stockMovements.add(toStockMovement(productId, null, delta));
+            }
+        });
+        productVariantDeltas.forEach((productVariantId, delta) -> {
+            if (delta != 0) {
+                stockMovements.add(toStockMovement(productIdByVariantId.get(productVariantId), productVariantId, delta));
+            }
+        });
+        return stockMovements;
+    }
+
+    private StockMovement toStockMovement(Integer productId, Integer productVariantId, int delta) {
+        return StockMovement.builder()
+                .productId(productId)
+                .productVariantId(productVariantId)
+                .delta(delta)
+                .sourceType(sourceType)
+                .sourceId(sourceId)
+                .build();
+    }
+}
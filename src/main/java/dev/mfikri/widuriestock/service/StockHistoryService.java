@@ -0,0 +1,16 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryRequest;
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryResponse;
+
+import java.time.Instant;
+
+public interface StockHistoryService {
+    ProductStockHistoryResponse getProductStockHistory(ProductStockHistoryRequest request);
+
+    /**
+     * Snapshots the stock of every item that moved since the previous boundary. Running it again for the
+     * same boundary is a no-op, and the boundary must already be in the past.
+     */
+    int takeSnapshots(Instant snapshotAt);
+}
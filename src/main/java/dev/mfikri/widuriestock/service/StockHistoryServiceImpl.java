@@ -0,0 +1,196 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.entity.product.Product;
+import dev.mfikri.widuriestock.entity.product.StockSnapshot;
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryRequest;
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryResponse;
+import dev.mfikri.widuriestock.repository.*;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the stock ledger. The stock of an item at a time X is its latest snapshot taken at or before X
+ * plus the movements created between the latest snapshot boundary and X, so a query never replays
+ * more than one snapshot period of movements.
+ */
+@Slf4j
+@Service
+public class StockHistoryServiceImpl implements StockHistoryService {
+    private static final int DEFAULT_POINTS = 100;
+    private static final int DEFAULT_RANGE_DAYS = 30;
+    private static final int SNAPSHOT_PRODUCT_BATCH_SIZE = 500;
+
+    private final ValidationService validationService;
+    private final ProductRepository productRepository;
+    private final ProductVariantRepository productVariantRepository;
+    private final StockMovementRepository stockMovementRepository;
+    private final StockSnapshotRepository stockSnapshotRepository;
+    private final StockRepository stockRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public StockHistoryServiceImpl(ValidationService validationService, ProductRepository productRepository, ProductVariantRepository productVariantRepository, StockMovementRepository stockMovementRepository, StockSnapshotRepository stockSnapshotRepository, StockRepository stockRepository, PlatformTransactionManager transactionManager) {
+        this.validationService = validationService;
+        this.productRepository = productRepository;
+        this.productVariantRepository = productVariantRepository;
+        this.stockMovementRepository = stockMovementRepository;
+        this.stockSnapshotRepository = stockSnapshotRepository;
+        this.stockRepository = stockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ProductStockHistoryResponse getProductStockHistory(ProductStockHistoryRequest request) {
+        log.info("Processing request to get stock history of a product. productId={}, variantId={}", request.getProductId(), request.getVariantId());
+
+        validationService.validate(request);
+
+        Product product = productRepository.findById(request.getProductId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product is not found."));
+
+        if (request.getVariantId() != null) {
+            productVariantRepository.findByIdAndProduct(request.getVariantId(), product)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Product variant is not found"));
+        }
+
+        LocalDate activeTo = request.getTo() != null ? request.getTo() : LocalDate.now();
+        LocalDate activeFrom = request.getFrom() != null ? request.getFrom() : activeTo.minusDays(DEFAULT_RANGE_DAYS - 1);
+        int activePoints = request.getPoints() != null ? request.getPoints() : DEFAULT_POINTS;
+
+        if (activeFrom.isAfter(activeTo)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Start date " + activeFrom + " must be before or equal to end date " + activeTo + ".");
+        }
+
+        // [from, to) covers whole days, cut at the next whole second because nothing has moved in the future yet
+        ZoneId zoneId = ZoneId.systemDefault();
+        Instant from = activeFrom.atStartOfDay(zoneId).toInstant();
+        Instant to = activeTo.plusDays(1).atStartOfDay(zoneId).toInstant();
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        if (to.isAfter(now)) {
+            to = from.isBefore(now) ? now : from.plusSeconds(1);
+        }
+
+        long rangeSeconds = Duration.between(from, to).toSeconds();
+        long bucketSeconds = Math.max(1, (rangeSeconds + activePoints - 1) / activePoints);
+        int bucketCount = (int) ((rangeSeconds + bucketSeconds - 1) / bucketSeconds);
+
+        int openingStock = stockAt(product.getId(), request.getVariantId(), from);
+
+        Map<Long, StockMovementBucket> bucketMap = stockMovementRepository
+                .sumDeltaGroupByBucket(product.getId(), request.getVariantId(), from, to, bucketSeconds)
+                .stream()
+                .collect(Collectors.toMap(StockMovementBucket::getBucket, bucket -> bucket));
+
+        List<ProductStockHistoryResponse.Point> points = new ArrayList<>(bucketCount);
+        int stock = openingStock;
+        for (int i = 0; i < bucketCount; i++) {
+            Instant start = from.plusSeconds(i * bucketSeconds);
+            Instant end = i == bucketCount - 1 ? to : start.plusSeconds(bucketSeconds);
+
+            StockMovementBucket bucket = bucketMap.get((long) i);
+            int inbound = bucket != null ? bucket.getInbound().intValue() : 0;
+            int outbound = bucket != null ? bucket.getOutbound().intValue() : 0;
+            stock += inbound - outbound;
+
+            points.add(ProductStockHistoryResponse.Point.builder()
+                    .start(start)
+                    .end(end)
+                    .stock(stock)
+                    .inbound(inbound)
+                    .outbound(outbound)
+                    .movements(bucket != null ? bucket.getMovements().intValue() : 0)
+                    .build());
+        }
+
+        log.info("Successfully get stock history of a product. productId={}, points={}, bucketSeconds={}", product.getId(), points.size(), bucketSeconds);
+        return ProductStockHistoryResponse.builder()
+                .productId(product.getId())
+                .variantId(request.getVariantId())
+                .from(from)
+                .to(to)
+                .bucketSeconds(bucketSeconds)
+                .openingStock(openingStock)
+                .closingStock(stock)
+                .points(points)
+                .build();
+    }
+
+    @Override
+    public int takeSnapshots(Instant snapshotAt) {
+        log.info("Processing request to take stock snapshots. snapshotAt={}", snapshotAt);
+
+        // movements are stamped by the database while their writer holds the barrier, so once every current
+        // writer has ended, a movement stamped before the boundary is committed and none can be stamped there later
+        if (!Instant.now().isAfter(snapshotAt)) {
+            throw new IllegalArgumentException("Stock snapshots can only be taken at a boundary in the past. snapshotAt=" + snapshotAt);
+        }
+        transactionTemplate.executeWithoutResult(status -> stockRepository.awaitStockMovementWriters());
+
+        Integer count = transactionTemplate.execute(status -> insertSnapshots(snapshotAt));
+        return count != null ? count : 0;
+    }
+
+    private int insertSnapshots(Instant snapshotAt) {
+        Optional<Instant> latestSnapshotAt = stockSnapshotRepository.findLatestSnapshotAt();
+        if (latestSnapshotAt.isPresent() && !latestSnapshotAt.get().isBefore(snapshotAt)) {
+            log.info("Stock snapshots are already taken. snapshotAt={}, latestSnapshotAt={}", snapshotAt, latestSnapshotAt.get());
+            return 0;
+        }
+
+        // only the items that moved since the previous boundary get a new snapshot,
+        // the latest snapshot of every other item is still its stock at this boundary
+        Instant previousSnapshotAt = latestSnapshotAt.orElse(Instant.EPOCH);
+        List<StockMovementSum> movementSums = stockMovementRepository.sumDeltaGroupByItem(previousSnapshotAt, snapshotAt);
+
+        List<Integer> productIds = movementSums.stream().map(StockMovementSum::getProductId).distinct().toList();
+        Map<StockItem, Integer> previousStocks = new HashMap<>();
+        for (int i = 0; i < productIds.size(); i += SNAPSHOT_PRODUCT_BATCH_SIZE) {
+            List<Integer> productIdsBatch = productIds.subList(i, Math.min(i + SNAPSHOT_PRODUCT_BATCH_SIZE, productIds.size()));
+            stockSnapshotRepository.findLatestByProductIdIn(productIdsBatch, previousSnapshotAt)
+                    .forEach(snapshot -> previousStocks.put(new StockItem(snapshot.getProductId(), snapshot.getProductVariantId()), snapshot.getStock()));
+        }
+
+        List<StockSnapshot> snapshots = movementSums.stream()
+                .map(movementSum -> StockSnapshot.builder()
+                        .productId(movementSum.getProductId())
+                        .productVariantId(movementSum.getProductVariantId())
+                        .stock(previousStocks.getOrDefault(new StockItem(movementSum.getProductId(), movementSum.getProductVariantId()), 0)
+                                + movementSum.getDelta().intValue())
+                        .snapshotAt(snapshotAt)
+                        .build())
+                .toList();
+        stockRepository.insertStockSnapshots(snapshots);
+
+        log.info("Successfully took stock snapshots. snapshotAt={}, count={}", snapshotAt, snapshots.size());
+        return snapshots.size();
+    }
+
+    private int stockAt(Integer productId, Integer productVariantId, Instant at) {
+        // an item without a snapshot at the latest boundary has not moved since its own latest snapshot
+        Instant latestSnapshotAt = stockSnapshotRepository.findLatestSnapshotAtNotAfter(at).orElse(Instant.EPOCH);
+
+        int snapshotStock = stockSnapshotRepository.findLatestByProductId(productId, productVariantId, at)
+                .stream()
+                .mapToInt(StockSnapshot::getStock)
+                .sum();
+        long tailDelta = stockMovementRepository.sumDelta(productId, productVariantId, latestSnapshotAt, at);
+
+        log.debug("Calculated stock from snapshot and ledger tail. productId={}, productVariantId={}, at={}, snapshotStock={}, tailDelta={}",
+                productId, productVariantId, at, snapshotStock, tailDelta);
+        return snapshotStock + (int) tailDelta;
+    }
+
+    private record StockItem(Integer productId, Integer productVariantId) {
+    }
+}
@@ -0,0 +1,273 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
+import dev.mfikri.widuriestock.config.StockCoalescingProperties;
+import dev.mfikri.widuriestock.entity.product.StockMovement;
+import dev.mfikri.widuriestock.repository.StockRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional write path for products that many concurrent transactions add stock to. A transaction writes its
+ * movements to the ledger together with a pending marker and leaves the stock columns alone. After commit the
+ * movements are queued in an accumulator striped by product/variant, and a single writer thread applies them as one
+ * increment per item every flush interval, or as soon as max batch entries movements are waiting.
+ * <p>
+ * The ledger row is committed with the request, so a crash loses nothing: the writer locks and deletes the pending
+ * markers in the same transaction as the increments, and markers left behind by a crash or another instance are
+ * queued again by the periodic recovery.
+ */
+@Slf4j
+@Component
+public class StockUpdateCoalescer {
+    private static final String METRIC_PREFIX = "stock.coalescing";
+    private static final int RECOVERY_BATCH_SIZE = 10000;
+
+    private final StockCoalescingProperties properties;
+    private final StockRepository stockRepository;
+    private final ProductDetailCache productDetailCache;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Stripe[] stripes;
+    private final AtomicInteger pendingMovements = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stock-coalescing-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Timer flushTimer;
+    private final DistributionSummary coalescingRatio;
+    private final Counter movementCounter;
+    private final Counter updateCounter;
+    private final Counter flushFailureCounter;
+
+    public StockUpdateCoalescer(StockCoalescingProperties properties, StockRepository stockRepository, ProductDetailCache productDetailCache, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.stockRepository = stockRepository;
+        this.productDetailCache = productDetailCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.stripes = new Stripe[properties.getStripes()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        Gauge.builder(METRIC_PREFIX + ".queue.depth", pendingMovements, AtomicInteger::get)
+                .description("Number of committed stock movements waiting for their stock column increment")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder(METRIC_PREFIX + ".flush")
+                .description("Time to apply one batch of coalesced stock increments")
+                .register(meterRegistry);
+        this.coalescingRatio = DistributionSummary.builder(METRIC_PREFIX + ".ratio")
+                .description("Stock movements applied per stock row update in one flush")
+                .register(meterRegistry);
+        this.movementCounter = Counter.builder(METRIC_PREFIX + ".movements")
+                .description("Number of stock movements applied by the writer")
+                .register(meterRegistry);
+        this.updateCounter = Counter.builder(METRIC_PREFIX + ".updates")
+                .description("Number of stock row updates issued by the writer")
+                .register(meterRegistry);
+        this.flushFailureCounter = Counter.builder(METRIC_PREFIX + ".flush.failures")
+                .description("Number of flushes rolled back and queued again")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        long flushIntervalMillis = properties.getFlushInterval().toMillis();
+        writer.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        // recovery runs even when coalescing is disabled, so turning it off never strands pending movements
+        long recoveryIntervalMillis = properties.getRecoveryInterval().toMillis();
+        writer.scheduleWithFixedDelay(this::recover, 0, recoveryIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        log.info("Stopping stock coalescing writer. pendingMovements={}", pendingMovements.get());
+        writer.execute(this::flush);
+        writer.shutdown();
+        if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Stock coalescing writer did not stop in time, the recovery of the next start applies the rest. pendingMovements={}", pendingMovements.get());
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Writes the ledger rows of the deltas in the current transaction and queues their stock
+     * increments once it commits. The deltas are dropped with the transaction on rollback.
+     */
+    void enqueue(StockDeltas stockDeltas) {
+        List<StockMovement> stockMovements = stockDeltas.toStockMovements();
+        List<Long> stockMovementIds = stockRepository.insertPendingStockMovements(stockMovements);
+
+        List<PendingMovement> movements = new ArrayList<>(stockMovements.size());
+        for (int i = 0; i < stockMovements.size(); i++) {
+            StockMovement stockMovement = stockMovements.get(i);
+            movements.add(new PendingMovement(stockMovementIds.get(i), new StockItem(stockMovement.getProductId(), stockMovement.getProductVariantId())));
+        }
+        afterCommit(() -> add(movements));
+    }
+
+    /**
+     * Runs a flush on the writer thread and waits for it.
+     */
+    public void flushNow() {
+        runOnWriter(this::flush);
+    }
+
+    /**
+     * Runs the recovery on the writer thread and waits for it.
+     */
+    public void recoverNow() {
+        runOnWriter(this::recover);
+    }
+
+    private void runOnWriter(Runnable action) {
+        try {
+            writer.submit(action).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void add(List<PendingMovement> movements) {
+        for (PendingMovement movement : movements) {
+            Stripe stripe = stripes[Math.floorMod(movement.item().hashCode(), stripes.length)];
+            synchronized (stripe) {
+                stripe.movementIds.computeIfAbsent(movement.item(), item -> new ArrayList<>()).add(movement.id());
+            }
+        }
+
+        if (pendingMovements.addAndGet(movements.size()) >= properties.getMaxBatchEntries() && flushRequested.compareAndSet(false, true)) {
+            writer.execute(this::flush);
+        }
+    }
+
+    private Map<StockItem, List<Long>> drain() {
+        Map<StockItem, List<Long>> drained = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                drained.putAll(stripe.movementIds);
+                stripe.movementIds.clear();
+            }
+        }
+        return drained;
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        Map<StockItem, List<Long>> drained = drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+
+        List<Long> stockMovementIds = drained.values().stream().flatMap(List::stream).distinct().sorted().toList();
+        pendingMovements.addAndGet(-drained.values().stream().mapToInt(List::size).sum());
+
+        Timer.Sample sample = Timer.start();
+        try {
+            transactionTemplate.executeWithoutResult(status -> apply(stockMovementIds));
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush coalesced stock increments, queuing them again. movements={}, error={}", stockMovementIds.size(), e.getMessage());
+            flushFailureCounter.increment();
+            drained.forEach((item, ids) -> add(ids.stream().map(id -> new PendingMovement(id, item)).toList()));
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    private void apply(List<Long> stockMovementIds) {
+        // the locked markers are the movements nobody else applied, a concurrent flush of another instance skips them
+        List<StockMovement> stockMovements = stockRepository.lockPendingStockMovements(stockMovementIds);
+        if (stockMovements.isEmpty()) {
+            return;
+        }
+
+        SortedMap<Integer, Integer> productDeltas = new TreeMap<>();
+        SortedMap<Integer, Integer> productVariantDeltas = new TreeMap<>();
+        Set<Integer> productIds = new HashSet<>();
+        for (StockMovement stockMovement : stockMovements) {
+            if (stockMovement.getProductVariantId() == null) {
+                productDeltas.merge(stockMovement.getProductId(), stockMovement.getDelta(), Integer::sum);
+            } else {
+                productVariantDeltas.merge(stockMovement.getProductVariantId(), stockMovement.getDelta(), Integer::sum);
+            }
+            productIds.add(stockMovement.getProductId());
+        }
+
+        stockRepository.incrementProductStocks(productDeltas);
+        stockRepository.incrementProductVariantStocks(productVariantDeltas);
+        stockRepository.deletePendingStockMovements(stockMovements.stream().map(StockMovement::getId).toList());
+        productDetailCache.evict(productIds);
+
+        int updates = productDeltas.size() + productVariantDeltas.size();
+        movementCounter.increment(stockMovements.size());
+        updateCounter.increment(updates);
+        coalescingRatio.record((double) stockMovements.size() / updates);
+        log.debug("Flushed coalesced stock increments. movements={}, updates={}", stockMovements.size(), updates);
+    }
+
+    private void recover() {
+        try {
+            List<StockMovement> stockMovements = stockRepository.findPendingStockMovementsCreatedBefore(properties.getRecoveryInterval(), RECOVERY_BATCH_SIZE);
+            if (stockMovements.isEmpty()) {
+                return;
+            }
+
+            log.info("Queuing pending stock movements again. count={}", stockMovements.size());
+            add(stockMovements.stream()
+                    .map(stockMovement -> new PendingMovement(stockMovement.getId(), new StockItem(stockMovement.getProductId(), stockMovement.getProductVariantId())))
+                    .toList());
+        } catch (RuntimeException e) {
+            log.warn("Failed to recover pending stock movements, retrying on the next run. error={}", e.getMessage());
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static final class Stripe {
+        private final Map<StockItem, List<Long>> movementIds = new HashMap<>();
+    }
+
+    private record StockItem(Integer productId, Integer productVariantId) {
+    }
+
+    private record PendingMovement(Long id, StockItem item) {
+    }
+}
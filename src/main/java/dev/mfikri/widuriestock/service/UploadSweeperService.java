@@ -0,0 +1,13 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.model.media.UploadSweepResponse;
+
+public interface UploadSweeperService {
+
+    /**
+     * Finds the files under the upload directory no row references and that are older than the grace period.
+     *
+     * @param dryRun only report the orphans, delete nothing
+     */
+    UploadSweepResponse sweep(boolean dryRun);
+}
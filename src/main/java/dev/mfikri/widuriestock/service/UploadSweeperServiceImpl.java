@@ -0,0 +1,192 @@
+package dev.mfikri.widuriestock.service;
+
+import dev.mfikri.widuriestock.config.UploadSweeperProperties;
+import dev.mfikri.widuriestock.model.media.UploadSweepResponse;
+import dev.mfikri.widuriestock.repository.ImageReferenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Deletes the files under the upload directory that no row references. The referenced locations are read
+ * once per run into a sorted array of 64 bit hashes, a collision only keeps an orphan until the next run.
+ * The tree is then walked lazily and the files are examined in batches with a pause in between, so a run
+ * does not saturate the disk.
+ * <p>
+ * Only files older than the grace period are deleted, a younger file may belong to a transaction that has
+ * not committed yet. Content addressed files are deleted through {@link PhotoStorage}, which checks their
+ * reference count under a lock, so a file that got referenced meanwhile is kept.
+ */
+@Slf4j
+@Service
+public class UploadSweeperServiceImpl implements UploadSweeperService {
+    private static final Path ROOT = Path.of("upload");
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("([0-9a-f]{64})(-w\\d+)?\\.[a-z]+");
+    private static final String TEMPORARY_PREFIX = ".tmp-";
+
+    private final UploadSweeperProperties properties;
+    private final ImageReferenceRepository imageReferenceRepository;
+    private final PhotoStorage photoStorage;
+    // a run of the job and a dry run from the endpoint would only double the disk load
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    public UploadSweeperServiceImpl(UploadSweeperProperties properties, ImageReferenceRepository imageReferenceRepository, PhotoStorage photoStorage) {
+        this.properties = properties;
+        this.imageReferenceRepository = imageReferenceRepository;
+        this.photoStorage = photoStorage;
+    }
+
+    @Override
+    public UploadSweepResponse sweep(boolean dryRun) {
+        if (!sweepLock.tryLock()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload sweep is already running.");
+        }
+
+        try {
+            log.info("Sweeping orphaned uploads. dryRun={}", dryRun);
+            long[] references = loadReferences();
+            Instant cutoff = Instant.now().minus(properties.getGracePeriod());
+
+            Sweep sweep = new Sweep(dryRun);
+            try (Stream<Path> files = Files.walk(ROOT)) {
+                files.forEach(path -> {
+                    try {
+                        examine(path, references, cutoff, sweep);
+                    } catch (IOException e) {
+                        log.warn("Failed to examine upload file. path={}, error={}", path, e.getMessage());
+                    }
+                });
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("Failed to walk upload directory. error={}", e.getMessage());
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
+            }
+
+            log.info("Swept orphaned uploads. dryRun={}, scannedFiles={}, orphanedFiles={}, orphanedBytes={}, deletedFiles={}",
+                    dryRun, sweep.scannedFiles, sweep.orphanedFiles, sweep.orphanedBytes, sweep.deletedFiles);
+            return UploadSweepResponse.builder()
+                    .dryRun(dryRun)
+                    .scannedFiles(sweep.scannedFiles)
+                    .orphanedFiles(sweep.orphanedFiles)
+                    .orphanedBytes(sweep.orphanedBytes)
+                    .deletedFiles(sweep.deletedFiles)
+                    .orphans(sweep.orphans)
+                    .build();
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private long[] loadReferences() {
+        LongStream.Builder builder = LongStream.builder();
+        imageReferenceRepository.streamImageLocations(imageLocation -> {
+            Path path = Path.of(imageLocation);
+            builder.add(hash(path.toString()));
+            // a rendition is made after its original is referenced, it is kept with the original
+            Matcher matcher = CONTENT_ADDRESSED_NAME.matcher(path.getFileName().toString());
+            if (matcher.matches() && matcher.group(2) == null && path.getParent() != null) {
+                builder.add(hash(path.getParent().resolve(matcher.group(1)).toString()));
+            }
+        });
+
+        long[] references = builder.build().toArray();
+        Arrays.sort(references);
+        log.debug("Loaded referenced upload files. count={}", references.length);
+        return references;
+    }
+
+    private void examine(Path path, long[] references, Instant cutoff, Sweep sweep) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String fileName = path.getFileName().toString();
+        // .gitkeep and other dot files are not uploads, left over temporary files are
+        if (!attributes.isRegularFile() || (fileName.startsWith(".") && !fileName.startsWith(TEMPORARY_PREFIX))) {
+            return;
+        }
+
+        sweep.scannedFiles++;
+        if (sweep.scannedFiles % properties.getBatchSize() == 0) {
+            pause();
+        }
+
+        if (attributes.lastModifiedTime().toInstant().isAfter(cutoff) || isReferenced(path, references)) {
+            return;
+        }
+
+        sweep.orphanedFiles++;
+        sweep.orphanedBytes += attributes.size();
+        if (sweep.orphans.size() < properties.getMaxReportedOrphans()) {
+            sweep.orphans.add(path.toString());
+        }
+        if (sweep.dryRun) {
+            return;
+        }
+
+        Matcher matcher = CONTENT_ADDRESSED_NAME.matcher(fileName);
+        if (matcher.matches() && matcher.group(2) == null) {
+            photoStorage.deleteIfUnreferenced(List.of(path));
+        } else {
+            Files.deleteIfExists(path);
+        }
+        if (Files.notExists(path)) {
+            sweep.deletedFiles++;
+        }
+    }
+
+    private static boolean isReferenced(Path path, long[] references) {
+        if (Arrays.binarySearch(references, hash(path.toString())) >= 0) {
+            return true;
+        }
+
+        Matcher matcher = CONTENT_ADDRESSED_NAME.matcher(path.getFileName().toString());
+        return matcher.matches() && matcher.group(2) != null
+                && Arrays.binarySearch(references, hash(path.getParent().resolve(matcher.group(1)).toString())) >= 0;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(properties.getBatchPause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
+        }
+    }
+
+    // 64 bit FNV-1a
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static class Sweep {
+        private final boolean dryRun;
+        private final List<String> orphans = new ArrayList<>();
+        private long scannedFiles;
+        private long orphanedFiles;
+        private long orphanedBytes;
+        private long deletedFiles;
+
+        private Sweep(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+    }
+}
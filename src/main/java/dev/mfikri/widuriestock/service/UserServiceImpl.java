@@ -1,5 +1,6 @@
 package dev.mfikri.widuriestock.service;
 
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
 import dev.mfikri.widuriestock.entity.Address;
 import dev.mfikri.widuriestock.entity.User;
 import dev.mfikri.widuriestock.model.address.AddressCreateRequest;
@@ -31,12 +32,16 @@ public class UserServiceImpl implements UserService {
     private final ValidationService validationService;
     private final AddressService addressService;
     private final PasswordEncoder passwordEncoder;
+    private final PhotoStorage photoStorage;
+    private final UserPrincipalCache userPrincipalCache;
 
-    public UserServiceImpl(UserRepository userRepository, ValidationService validationService, AddressService addressService, PasswordEncoder passwordEncoder) {
+    public UserServiceImpl(UserRepository userRepository, ValidationService validationService, AddressService addressService, PasswordEncoder passwordEncoder, PhotoStorage photoStorage, UserPrincipalCache userPrincipalCache) {
         this.userRepository = userRepository;
         this.validationService = validationService;
         this.addressService = addressService;
         this.passwordEncoder = passwordEncoder;
+        this.photoStorage = photoStorage;
+        this.userPrincipalCache = userPrincipalCache;
     }
 
     @Override
@@ -85,7 +90,8 @@ public class UserServiceImpl implements UserService {
         user.setEmail(request.getEmail());
 
         if (!request.getPhoto().isEmpty()){
-            Path path = ImageUtil.uploadPhoto(request.getPhoto(), request.getUsername(), false);
+            Path path = ImageUtil.uploadPhoto(photoStorage, request.getPhoto(), false);
+            photoStorage.retain(path.toString());
             user.setPhoto(path.toString());
         }
 
@@ -116,9 +122,16 @@ public class UserServiceImpl implements UserService {
         validationService.validate(request);
 
         User user = findUserByUsernameOrThrows(request.getUsername());
+        String role = user.getRole();
+        String password = user.getPassword();
 
         applyUpdatesToUser(request, user, isCurrentUser);
 
+        if (!Objects.equals(role, user.getRole()) || !Objects.equals(password, user.getPassword())) {
+            // the cached principal and the role claim of tokens issued until now are stale after commit
+            userPrincipalCache.evict(user.getUsername());
+        }
+
         log.info("Successfully updated user data. username={}", request.getUsername());
         return toUserResponse(user);
     }
@@ -137,7 +150,11 @@ public class UserServiceImpl implements UserService {
         Optional.ofNullable(request.getPhoto())
                 .filter(photo -> !photo.isEmpty())
                 .ifPresent(photo -> {
-                    Path path = ImageUtil.uploadPhoto(request.getPhoto(), request.getUsername(), false);
+                    Path path = ImageUtil.uploadPhoto(photoStorage, request.getPhoto(), false);
+                    if (!path.toString().equals(user.getPhoto())) {
+                        photoStorage.retain(path.toString());
+                        photoStorage.release(user.getPhoto());
+                    }
                     user.setPhoto(path.toString());
                 });
 
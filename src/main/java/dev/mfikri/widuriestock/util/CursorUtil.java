@@ -0,0 +1,60 @@
+package dev.mfikri.widuriestock.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+@Slf4j
+public class CursorUtil {
+    private static final String SEPARATOR = ".";
+
+    // every part is base64url encoded on its own, so the separator can never appear inside a value
+    public static String encode(String... parts) {
+        List<String> encodedParts = new ArrayList<>();
+        for (String part : parts) {
+            encodedParts.add(Base64.getUrlEncoder().withoutPadding().encodeToString(part.getBytes(StandardCharsets.UTF_8)));
+        }
+        return String.join(SEPARATOR, encodedParts);
+    }
+
+    public static List<String> decode(String cursor, int expectedParts) {
+        String[] encodedParts = cursor.split("\\" + SEPARATOR, -1);
+        if (encodedParts.length != expectedParts) {
+            log.debug("Cursor has wrong number of parts. expectedParts={}, actualParts={}", expectedParts, encodedParts.length);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor is not valid.");
+        }
+
+        List<String> parts = new ArrayList<>();
+        try {
+            for (String encodedPart : encodedParts) {
+                parts.add(new String(Base64.getUrlDecoder().decode(encodedPart), StandardCharsets.UTF_8));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor is not valid.");
+        }
+        return parts;
+    }
+
+    public static LocalDate decodeLocalDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor is not valid.");
+        }
+    }
+
+    public static Integer decodeInteger(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor is not valid.");
+        }
+    }
+}
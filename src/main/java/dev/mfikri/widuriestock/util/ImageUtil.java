@@ -1,14 +1,30 @@
 package dev.mfikri.widuriestock.util;
 
+import dev.mfikri.widuriestock.service.PhotoStorage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 @Slf4j
 public class ImageUtil {
@@ -18,7 +34,10 @@ public class ImageUtil {
         return allowedImage.contains(contentType);
     }
 
-    public static Path uploadPhoto(MultipartFile photo, String name, boolean isProduct) {
+    /**
+     * Checks the photo is an image and writes it to the storage, files are not named after the upload.
+     */
+    public static Path uploadPhoto(PhotoStorage photoStorage, MultipartFile photo, boolean isProduct) {
         String contentType = photo.getContentType();
         log.info(contentType);
         if (contentType == null || !isImage(contentType)) {
@@ -33,12 +52,84 @@ public class ImageUtil {
             folder = "profile";
         }
 
-        Path path = Path.of("upload/" + folder + "/"+ folder +"-" + name.trim().replaceAll("\\s", "-").toLowerCase() + "." + type);
-        try {
-            photo.transferTo(path);
-            return path;
+        try (InputStream content = photo.getInputStream()) {
+            return photoStorage.store(content, folder, type);
         } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Server unavailable, try again later");
         }
     }
+
+    /**
+     * Writes a jpeg copy of the image for every width smaller than the image itself, next to it and named
+     * {@code <name>-w<width>.jpg}. Formats ImageIO can not read (webp, avif) get no renditions.
+     *
+     * @return the written renditions keyed by width, in the order of the given widths
+     */
+    public static Map<Integer, Path> createRenditions(Path original, List<Integer> widths, float jpegQuality) throws IOException {
+        BufferedImage image = ImageIO.read(original.toFile());
+        if (image == null) {
+            log.debug("Image format can not be resized. path={}", original);
+            return Map.of();
+        }
+
+        String fileName = original.getFileName().toString();
+        int dot = fileName.lastIndexOf('.');
+        String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+
+        Map<Integer, Path> renditions = new LinkedHashMap<>();
+        for (Integer width : widths) {
+            if (width >= image.getWidth()) {
+                continue;
+            }
+
+            Path path = original.resolveSibling(baseName + "-w" + width + ".jpg");
+            writeJpeg(resizeToWidth(image, width), path, jpegQuality);
+            renditions.put(width, path);
+        }
+        return renditions;
+    }
+
+    private static BufferedImage resizeToWidth(BufferedImage image, int width) {
+        // halving first keeps bilinear scaling sharp for large reductions
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= width) {
+            current = scale(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        int height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+        return scale(current, width, height);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        // jpeg has no alpha channel, transparent pixels become white
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path path, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+
+        // written to a temporary file first, so a reader never sees a half written rendition,
+        // photos with the same content share their renditions and may make them at the same time
+        Path temporary = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(temporary.toFile())) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 }
@@ -0,0 +1,11 @@
+package dev.mfikri.widuriestock.util;
+
+import java.time.Instant;
+
+/**
+ * The claims of an access token whose signature and expiry have been verified.
+ *
+ * @param role null for a token issued without the role claim
+ */
+public record JwtClaims(String subject, String role, Instant issuedAt, Instant expiresAt) {
+}
@@ -1,66 +1,141 @@
 package dev.mfikri.widuriestock.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
-import java.util.function.Function;
 
+/**
+ * Issues and verifies access tokens. A token is verified once: the signature check and the parse give a
+ * {@link JwtClaims} that every check of the request reads, and recently verified tokens are remembered by their
+ * digest until they expire, so the next request with the same token skips the parse and the signature check.
+ */
 @Slf4j
 public class JwtUtil {
+    private static final String ROLE_CLAIM = "role";
 
     private final SecretKey secretKey;
+    // immutable and thread safe, built once instead of on every parse
+    private final JwtParser parser;
+    private final Cache<String, JwtClaims> verifiedTokens;
 
 
-    public JwtUtil(SecretKey secretKey) {
+    public JwtUtil(SecretKey secretKey, long verifiedTokenCacheSize) {
         this.secretKey = secretKey;
+        this.parser = Jwts.parser()
+                .verifyWith(secretKey)
+                .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedTokenCacheSize)
+                .expireAfter(new Expiry<String, JwtClaims>() {
+                    @Override
+                    public long expireAfterCreate(String key, JwtClaims claims, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), claims.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, JwtClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, JwtClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
     }
 
     public String generate(String username, Integer ttlInMs) {
+        return generate(username, null, ttlInMs);
+    }
+
+    /**
+     * @param role optional, added as the role claim so the token can be authorized without loading the user
+     */
+    public String generate(String username, String role, Integer ttlInMs) {
         long currentTime = System.currentTimeMillis();
         return Jwts.builder()
                 .subject(username)
+                .claim(ROLE_CLAIM, role)
                 .issuedAt(new Date(currentTime))
                 .expiration(new Date(currentTime + ttlInMs))
                 .signWith(secretKey)
                 .compact();
     }
 
+    /**
+     * Verifies the signature and the expiry of the token and returns its claims.
+     *
+     * @throws io.jsonwebtoken.ExpiredJwtException when the token is expired
+     * @throws JwtException when the token is not valid
+     */
+    public JwtClaims verify(String token) throws JwtException {
+        // the digest is the key so the cache does not hold usable tokens
+        String digest = digest(token);
+        JwtClaims cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return cached;
+        }
+
+        // an expired token is parsed again, so it fails with the same exception as on its first use
+        JwtClaims claims = toJwtClaims(parser.parseSignedClaims(token).getPayload());
+        verifiedTokens.put(digest, claims);
+        return claims;
+    }
+
     public String extractUsername(String token) {
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).subject();
     }
 
     public Date extractExpirationDate(String token) {
-        return extractClaim(token, Claims::getExpiration);
+        return Date.from(verify(token).expiresAt());
     }
 
     public Date extractCreatedAt(String token) {
-        return extractClaim(token, Claims::getIssuedAt);
+        return Date.from(verify(token).issuedAt());
     }
 
-    public boolean isTokenValid(String token, String username) {
-        return !isTokenExpired(token) && extractUsername(token).equals(username);
+    // null for a token issued without the role claim
+    public String extractRole(String token) {
+        return verify(token).role();
     }
 
-
-    private boolean isTokenExpired(String token) {
-        return extractExpirationDate(token).before(new Date());
+    public boolean isTokenValid(String token, String username) {
+        JwtClaims claims = verify(token);
+        return claims.expiresAt().isAfter(Instant.now()) && claims.subject().equals(username);
     }
 
-    private <T> T extractClaim(String token, Function<Claims, T> claimsResolvers) throws JwtException {
-        final Claims claims = extractClaims(token);
-        return claimsResolvers.apply(claims);
-
+    private static JwtClaims toJwtClaims(Claims claims) {
+        if (claims.getIssuedAt() == null || claims.getExpiration() == null) {
+            throw new MalformedJwtException("Token must have an issued at and an expiration.");
+        }
+        return new JwtClaims(claims.getSubject(),
+                claims.get(ROLE_CLAIM, String.class),
+                claims.getIssuedAt().toInstant(),
+                claims.getExpiration().toInstant());
     }
 
-    private Claims extractClaims(String token) throws JwtException {
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    private static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 }
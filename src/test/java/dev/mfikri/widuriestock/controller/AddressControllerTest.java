@@ -2,6 +2,7 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
 import dev.mfikri.widuriestock.entity.Address;
 import dev.mfikri.widuriestock.entity.Role;
 import dev.mfikri.widuriestock.entity.User;
@@ -39,6 +40,9 @@ class AddressControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
     @Autowired
     private AddressRepository addressRepository;
 
@@ -66,6 +70,7 @@ class AddressControllerTest {
         refreshTokenRepository.deleteAll();
         addressRepository.deleteAll();
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
 
         User user = new User();
         user.setUsername("owner");
@@ -2,6 +2,8 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
+import dev.mfikri.widuriestock.config.SecurityConfigProperties;
 import dev.mfikri.widuriestock.entity.RefreshToken;
 import dev.mfikri.widuriestock.entity.User;
 import dev.mfikri.widuriestock.model.user.AuthRefreshTokenRequest;
@@ -10,6 +12,9 @@ import dev.mfikri.widuriestock.model.user.AuthLoginRequest;
 import dev.mfikri.widuriestock.model.WebResponse;
 import dev.mfikri.widuriestock.repository.RefreshTokenRepository;
 import dev.mfikri.widuriestock.repository.UserRepository;
+import dev.mfikri.widuriestock.util.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -20,7 +25,10 @@ import org.springframework.http.MediaType;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
 
+import javax.crypto.SecretKey;
+import java.lang.management.ManagementFactory;
 import java.time.Instant;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -37,6 +45,15 @@ class AuthControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private SecurityConfigProperties securityConfigProperties;
+
     @Autowired
     private RefreshTokenRepository refreshTokenRepository;
 
@@ -51,6 +68,7 @@ class AuthControllerTest {
     void setUp() {
         refreshTokenRepository.deleteAll();
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
 
         User user = new User();
         user.setUsername("owner");
@@ -154,6 +172,7 @@ class AuthControllerTest {
             assertNull(response.getErrors());
             assertNotNull(response.getData());
             assertNotNull(response.getData().getAccessToken());
+            assertEquals("OWNER", jwtUtil.extractRole(response.getData().getAccessToken()));
             assertNotNull(response.getData().getRefreshToken());
 
             RefreshToken refreshToken = refreshTokenRepository.findByRefreshToken(response.getData().getRefreshToken()).orElse(null);
@@ -323,6 +342,7 @@ class AuthControllerTest {
             assertNull(response.getErrors());
             assertNotNull(response.getData());
             assertNotNull(response.getData().getAccessToken());
+            assertEquals("OWNER", jwtUtil.extractRole(response.getData().getAccessToken()));
             assertNotNull(response.getData().getRefreshToken());
 
             RefreshToken refreshToken = refreshTokenRepository.findByRefreshToken(response.getData().getRefreshToken()).orElse(null);
@@ -336,7 +356,81 @@ class AuthControllerTest {
         });
     }
 
-    //    @Test
+        @Test
+    void accessTokenExpiresAfterItWasVerified() throws Exception {
+        String token = jwtUtil.generate("owner", 1000);
+
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token)
+        ).andExpect(
+                status().isOk()
+        );
+
+        // the verified token is remembered, but not past its expiry
+        Thread.sleep(1100);
+        mockMvc.perform(
+                get("/api/users/current")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", "Bearer " + token)
+        ).andExpectAll(
+                status().isUnauthorized()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Access Token Expired", response.getErrors());
+        });
+    }
+
+    @Test
+    void verifyAccessTokenCostsLessThanParsingForEveryCheck() {
+        String token = jwtUtil.generate("owner", "OWNER", 300000);
+        SecretKey secretKey = Keys.hmacShaKeyFor(securityConfigProperties.getSecretKey().getBytes());
+
+        // the token path of the filter before: a new parser and a signature check for the username, the expiry and the username again
+        Runnable parseForEveryCheck = () -> {
+            for (int i = 0; i < 3; i++) {
+                Jwts.parser().verifyWith(secretKey).build().parseSignedClaims(token).getPayload();
+            }
+        };
+        Runnable verifyOnce = () -> jwtUtil.verify(token);
+
+        long[] parseCost = measure(parseForEveryCheck);
+        long[] verifyCost = measure(verifyOnce);
+        log.info("Access token path. parseForEveryCheckNanos={}, parseForEveryCheckBytes={}, verifyOnceNanos={}, verifyOnceBytes={}",
+                parseCost[0], parseCost[1], verifyCost[0], verifyCost[1]);
+
+        // latency depends on the machine and is only logged, a remembered token skips the parse and its allocations
+        assertEquals(jwtUtil.verify(token), jwtUtil.verify(token));
+        assertTrue(verifyCost[1] < parseCost[1], "allocated " + verifyCost[1] + " and " + parseCost[1] + " bytes");
+    }
+
+    /**
+     * @return median nanoseconds and median bytes allocated by the current thread of one run, after a warm-up
+     */
+    private static long[] measure(Runnable action) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 200; i++) {
+            action.run();
+        }
+
+        int runs = 200;
+        long[] nanos = new long[runs];
+        long[] bytes = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long startBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            action.run();
+            nanos[i] = System.nanoTime() - startNanos;
+            bytes[i] = threadMXBean.getCurrentThreadAllocatedBytes() - startBytes;
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        return new long[]{nanos[runs / 2], bytes[runs / 2]};
+    }
+
+//    @Test
 //    void logoutFailedByNotPassingToken() throws Exception {
 //        mockMvc.perform(
 //                delete("/api/auth/logout")
@@ -2,6 +2,7 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
 import dev.mfikri.widuriestock.entity.product.Category;
 import dev.mfikri.widuriestock.entity.Role;
 import dev.mfikri.widuriestock.entity.User;
@@ -45,6 +46,9 @@ class CategoryControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
     @Autowired
     private RefreshTokenRepository refreshTokenRepository;
 
@@ -64,6 +68,7 @@ class CategoryControllerTest {
     void setUp() {
         refreshTokenRepository.deleteAll();
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
         productPhotoRepository.deleteAll();
         productRepository.deleteAll();
         categoryRepository.deleteAll();
@@ -2,6 +2,10 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
+import dev.mfikri.widuriestock.config.IncomingProductBatchProperties;
+import dev.mfikri.widuriestock.config.StockCoalescingProperties;
 import dev.mfikri.widuriestock.entity.Address;
 import dev.mfikri.widuriestock.entity.Role;
 import dev.mfikri.widuriestock.entity.Supplier;
@@ -13,24 +17,48 @@ import dev.mfikri.widuriestock.entity.product.Category;
 import dev.mfikri.widuriestock.entity.product.Product;
 import dev.mfikri.widuriestock.entity.product.ProductVariant;
 import dev.mfikri.widuriestock.entity.product.ProductVariantAttribute;
+import dev.mfikri.widuriestock.entity.product.StockMovement;
+import dev.mfikri.widuriestock.entity.product.StockMovementSourceType;
 import dev.mfikri.widuriestock.model.WebResponse;
 import dev.mfikri.widuriestock.model.incoming_product.*;
+import dev.mfikri.widuriestock.model.product.ProductResponse;
 import dev.mfikri.widuriestock.repository.*;
+import dev.mfikri.widuriestock.service.IdempotencyService;
+import dev.mfikri.widuriestock.service.IncomingProductService;
+import dev.mfikri.widuriestock.service.StockUpdateCoalescer;
 import dev.mfikri.widuriestock.util.JwtUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
-
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -49,6 +77,9 @@ class IncomingProductControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
     @Autowired
     private SupplierRepository supplierRepository;
 
@@ -65,6 +96,12 @@ class IncomingProductControllerTest {
     @Autowired
     private ProductVariantRepository productVariantRepository;
 
+    @Autowired
+    private ProductPhotoRepository productPhotoRepository;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
     @Autowired
     private ProductVariantAttributeRepository productVariantAttributeRepository;
 
@@ -83,6 +120,39 @@ class IncomingProductControllerTest {
 
     @Autowired
     private JwtUtil jwtUtil;
+
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private StockUpdateCoalescer stockUpdateCoalescer;
+
+    @Autowired
+    private IncomingProductService incomingProductService;
+
+    @Autowired
+    private StockCoalescingProperties stockCoalescingProperties;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IncomingProductBatchProperties incomingProductBatchProperties;
     Integer jwtTtl = 300000;
 
     String authorizationToken = "";
@@ -94,11 +164,16 @@ class IncomingProductControllerTest {
 
     @BeforeEach
     void setUp() {
+        stockMovementRepository.deleteAllInBatch();
         incomingProductRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM idempotency_keys");
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
         supplierRepository.deleteAll();
+        productPhotoRepository.deleteAllInBatch();
         productRepository.deleteAll();
         categoryRepository.deleteAll();
+        productDetailCache.evictAll();
 
         User user = new User();
         user.setUsername("admin_warehouse");
@@ -679,6 +754,278 @@ class IncomingProductControllerTest {
         });
     }
 
+    @Test
+    void createSuccessEvictsCachedProductDetail() throws Exception {
+        mockMvc.perform(
+                get("/api/products/" + productWithoutVariant.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+
+        IncomingProductCreateRequest request = new IncomingProductCreateRequest();
+        request.setDateIn(LocalDate.parse("2025-10-10"));
+        request.setSupplierId(supplierId);
+        request.setIncomingProductDetails(new ArrayList<>(List.of(IncomingProductCreateRequest.IncomingProductDetails.builder()
+                .hasVariant(false)
+                .productId(productWithoutVariant.getId())
+                .pricePerUnit(100123)
+                .quantity(10)
+                .build())));
+        request.setTotalProducts(request.getIncomingProductDetails().size());
+
+        mockMvc.perform(
+                post("/api/incoming-products")
+                        .header("Authorization", authorizationToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpect(
+                status().isCreated()
+        );
+
+        mockMvc.perform(
+                get("/api/products/" + productWithoutVariant.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(productWithoutVariant.getStock() + 10, response.getData().getStock());
+        });
+    }
+
+    @Test
+    void createSuccessConcurrentWritersDoNotLoseStockIncrements() throws Exception {
+        int writers = 8;
+        int requestsPerWriter = 5;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerWriter; j++) {
+                        // every request touches the same product and the same variant with quantity 1
+                        IncomingProductCreateRequest.IncomingProductDetails detailWithoutVariant = incomingProductDetailWithoutVariant(productWithoutVariant.getId());
+                        detailWithoutVariant.setQuantity(1);
+                        IncomingProductCreateRequest.IncomingProductDetails detailWithVariant = incomingProductDetailWithVariant(productVariant.getId());
+                        detailWithVariant.getIncomingProductVariantDetails().getFirst().setQuantity(1);
+
+                        createIncomingProduct(List.of(detailWithVariant, detailWithoutVariant));
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Product product = productRepository.findById(productWithoutVariant.getId()).orElse(null);
+        assertNotNull(product);
+        assertEquals(productWithoutVariant.getStock() + writers * requestsPerWriter, product.getStock());
+
+        ProductVariant variant = productVariantRepository.findById(productVariant.getId()).orElse(null);
+        assertNotNull(variant);
+        assertEquals(productVariant.getStock() + writers * requestsPerWriter, variant.getStock());
+    }
+
+    @Test
+    void createSuccessConcurrentProductUpdateKeepsStockLedgerInSync() throws Exception {
+        int writers = 4;
+        int requestsPerWriter = 5;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(writers + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerWriter; j++) {
+                        IncomingProductCreateRequest.IncomingProductDetails detail = incomingProductDetailWithoutVariant(productWithoutVariant.getId());
+                        detail.setQuantity(1);
+                        createIncomingProduct(List.of(detail));
+                    }
+                    return null;
+                }));
+            }
+            // the product update sets the stock to an absolute value while the incoming products add to it
+            futures.add(executorService.submit(() -> {
+                start.await();
+                for (int j = 0; j < requestsPerWriter; j++) {
+                    mockMvc.perform(
+                            put("/api/products/" + productWithoutVariant.getId())
+                                    .header("Authorization", authorizationToken)
+                                    .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                                    .accept(MediaType.APPLICATION_JSON)
+                                    .param("name", productWithoutVariant.getName())
+                                    .param("description", productWithoutVariant.getDescription())
+                                    .param("categoryId", String.valueOf(categoryId))
+                                    .param("hasVariant", "false")
+                                    .param("stock", String.valueOf(100 + j))
+                                    .param("price", productWithoutVariant.getPrice().toString())
+                    ).andExpect(
+                            status().isOk()
+                    );
+                }
+                return null;
+            }));
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Product product = productRepository.findById(productWithoutVariant.getId()).orElse(null);
+        assertNotNull(product);
+        int ledgerDelta = stockMovementRepository.findAll().stream()
+                .filter(stockMovement -> stockMovement.getProductId().equals(productWithoutVariant.getId()))
+                .mapToInt(StockMovement::getDelta)
+                .sum();
+        assertEquals(productWithoutVariant.getStock() + ledgerDelta, product.getStock());
+    }
+
+    @Test
+    void createSuccessCoalescedStockUpdates() throws Exception {
+        int writers = 4;
+        int requestsPerWriter = 5;
+        double movementsBefore = meterRegistry.get("stock.coalescing.movements").counter().count();
+        double updatesBefore = meterRegistry.get("stock.coalescing.updates").counter().count();
+
+        stockCoalescingProperties.setEnabled(true);
+        ExecutorService executorService = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < writers; i++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < requestsPerWriter; j++) {
+                        createIncomingProduct(List.of(
+                                incomingProductDetailWithoutVariant(productWithoutVariant.getId()),
+                                incomingProductDetailWithVariant(productVariant.getId())));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            stockUpdateCoalescer.flushNow();
+        } finally {
+            stockCoalescingProperties.setEnabled(false);
+            executorService.shutdownNow();
+        }
+
+        int requests = writers * requestsPerWriter;
+        Product product = productRepository.findById(productWithoutVariant.getId()).orElse(null);
+        assertNotNull(product);
+        assertEquals(productWithoutVariant.getStock() + requests * 10, product.getStock());
+        ProductVariant variant = productVariantRepository.findById(productVariant.getId()).orElse(null);
+        assertNotNull(variant);
+        assertEquals(productVariant.getStock() + requests * 10, variant.getStock());
+
+        // every request still wrote its own ledger rows, the stock rows were updated fewer times than that
+        assertEquals(requests * 2, stockMovementRepository.count());
+        double movements = meterRegistry.get("stock.coalescing.movements").counter().count() - movementsBefore;
+        double updates = meterRegistry.get("stock.coalescing.updates").counter().count() - updatesBefore;
+        assertEquals(requests * 2, movements);
+        assertTrue(updates <= movements);
+        assertTrue(meterRegistry.get("stock.coalescing.ratio").summary().count() > 0);
+    }
+
+    @Test
+    void createSuccessCoalescedStockUpdatesRecoverCommittedMovements() throws Exception {
+        // a committed movement that never reached the queue, like after a crash
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> stockRepository.insertPendingStockMovements(List.of(StockMovement.builder()
+                .productId(productWithoutVariant.getId())
+                .delta(7)
+                .sourceType(StockMovementSourceType.INCOMING_PRODUCT)
+                .build())));
+
+        stockUpdateCoalescer.flushNow();
+        Product product = productRepository.findById(productWithoutVariant.getId()).orElse(null);
+        assertNotNull(product);
+        assertEquals(productWithoutVariant.getStock(), product.getStock());
+
+        Duration recoveryInterval = stockCoalescingProperties.getRecoveryInterval();
+        stockCoalescingProperties.setRecoveryInterval(Duration.ZERO);
+        try {
+            Thread.sleep(10);
+            stockUpdateCoalescer.recoverNow();
+            stockUpdateCoalescer.flushNow();
+        } finally {
+            stockCoalescingProperties.setRecoveryInterval(recoveryInterval);
+        }
+
+        product = productRepository.findById(productWithoutVariant.getId()).orElse(null);
+        assertNotNull(product);
+        assertEquals(productWithoutVariant.getStock() + 7, product.getStock());
+
+        // applied exactly once
+        stockUpdateCoalescer.recoverNow();
+        stockUpdateCoalescer.flushNow();
+        product = productRepository.findById(productWithoutVariant.getId()).orElse(null);
+        assertNotNull(product);
+        assertEquals(productWithoutVariant.getStock() + 7, product.getStock());
+    }
+
+    @Test
+    void createAndDeleteSuccessWriteStockMovements() throws Exception {
+        Integer incomingProductId = createIncomingProduct(List.of(
+                incomingProductDetailWithoutVariant(productWithoutVariant.getId()),
+                incomingProductDetailWithVariant(productVariant.getId())));
+
+        List<StockMovement> stockMovements = stockMovementRepository.findAll();
+        assertEquals(2, stockMovements.size());
+        stockMovements.forEach(stockMovement -> {
+            assertEquals(StockMovementSourceType.INCOMING_PRODUCT, stockMovement.getSourceType());
+            assertEquals(incomingProductId, stockMovement.getSourceId());
+            assertEquals(10, stockMovement.getDelta());
+            assertNotNull(stockMovement.getCreatedAt());
+        });
+
+        StockMovement productMovement = stockMovements.stream().filter(stockMovement -> stockMovement.getProductVariantId() == null).findFirst().orElse(null);
+        assertNotNull(productMovement);
+        assertEquals(productWithoutVariant.getId(), productMovement.getProductId());
+
+        StockMovement variantMovement = stockMovements.stream().filter(stockMovement -> stockMovement.getProductVariantId() != null).findFirst().orElse(null);
+        assertNotNull(variantMovement);
+        assertEquals(productVariant.getId(), variantMovement.getProductVariantId());
+        assertEquals(productWithVariant.getId(), variantMovement.getProductId());
+
+        mockMvc.perform(
+                delete("/api/incoming-products/" + incomingProductId)
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+
+        // the ledger is append-only, the delete is recorded as reversing movements
+        stockMovements = stockMovementRepository.findAll();
+        assertEquals(4, stockMovements.size());
+        assertEquals(0, stockMovements.stream().mapToInt(StockMovement::getDelta).sum());
+        assertEquals(2, stockMovements.stream().filter(stockMovement -> stockMovement.getDelta() == -10).count());
+    }
+
     @Test
     void createSuccessForMultipleProductWithoutVariant() throws Exception {
         Category category = categoryRepository.findById(categoryId).orElse(null);
@@ -1371,6 +1718,132 @@ class IncomingProductControllerTest {
         });
     }
 
+    @Test
+    void createSuccessStatementCountNotDependOnDetailCount() throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Product product = new Product();
+            product.setName("Fishing Rood Batch " + i);
+            product.setPrice(100500);
+            product.setStock(20);
+            product.setDescription("Description about rood");
+            product.setHasVariant(false);
+            product.setCategory(productWithoutVariant.getCategory());
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+
+        List<IncomingProductCreateRequest.IncomingProductDetails> smallDetails = products.subList(0, 2).stream()
+                .map(product -> incomingProductDetailWithoutVariant(product.getId()))
+                .toList();
+        List<IncomingProductCreateRequest.IncomingProductDetails> largeDetails = products.stream()
+                .map(product -> incomingProductDetailWithoutVariant(product.getId()))
+                .toList();
+
+        // the first create also loads the id blocks of the detail tables
+        createIncomingProduct(smallDetails);
+        long smallStatementCount = countStatementsOfCreate(smallDetails);
+        long largeStatementCount = countStatementsOfCreate(largeDetails);
+        log.info("Incoming product create statements. details={}, statements={}, details={}, statements={}",
+                smallDetails.size(), smallStatementCount, largeDetails.size(), largeStatementCount);
+
+        // the detail inserts go out as one batch, at most one more id block is fetched for the larger create
+        assertTrue(largeStatementCount <= smallStatementCount + 2, "statement count was " + smallStatementCount + " and " + largeStatementCount);
+        List<Integer> productIds = products.stream().map(Product::getId).toList();
+        assertEquals(2 + 2 + 40, incomingProductDetailRepository.findAll().stream()
+                .filter(incomingProductDetail -> productIds.contains(incomingProductDetail.getProduct().getId()))
+                .count());
+    }
+
+    @Test
+    void getSuccessStatementCountNotDependOnDetailCount() throws Exception {
+        ProductVariant productVariant2 = new ProductVariant();
+        productVariant2.setProduct(productWithVariant);
+        productVariant2.setSku("product-test-white");
+        productVariant2.setPrice(100500);
+        productVariant2.setStock(100);
+        productVariantRepository.save(productVariant2);
+
+        Product productWithoutVariant2 = new Product();
+        productWithoutVariant2.setName("Fishing Rood 456");
+        productWithoutVariant2.setPrice(100500);
+        productWithoutVariant2.setStock(20);
+        productWithoutVariant2.setDescription("Description about rood");
+        productWithoutVariant2.setHasVariant(false);
+        productWithoutVariant2.setCategory(productWithoutVariant.getCategory());
+        productRepository.save(productWithoutVariant2);
+
+        Integer smallIncomingProductId = createIncomingProduct(List.of(
+                incomingProductDetailWithVariant(productVariant.getId())
+        ));
+        Integer largeIncomingProductId = createIncomingProduct(List.of(
+                incomingProductDetailWithVariant(productVariant.getId(), productVariant2.getId()),
+                incomingProductDetailWithoutVariant(productWithoutVariant.getId()),
+                incomingProductDetailWithoutVariant(productWithoutVariant2.getId())
+        ));
+
+        long smallStatementCount = countStatementsOfGet("/api/incoming-products/" + smallIncomingProductId);
+        long largeStatementCount = countStatementsOfGet("/api/incoming-products/" + largeIncomingProductId);
+
+        // user lookup for the token, the incoming product itself is read with two plain JDBC queries
+        assertEquals(smallStatementCount, largeStatementCount);
+        assertTrue(largeStatementCount <= 4, "statement count was " + largeStatementCount);
+    }
+
+    @Test
+    void getSuccessProjectionCheaperThanEntityGraph() throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 199; i++) {
+            Product product = new Product();
+            product.setName("Fishing Rood Projection " + i);
+            product.setPrice(100500);
+            product.setStock(20);
+            product.setDescription("Description about rood");
+            product.setHasVariant(false);
+            product.setCategory(productWithoutVariant.getCategory());
+            products.add(product);
+        }
+        productRepository.saveAll(products);
+
+        List<IncomingProductCreateRequest.IncomingProductDetails> details = new ArrayList<>();
+        details.add(incomingProductDetailWithVariant(productVariant.getId()));
+        products.forEach(product -> details.add(incomingProductDetailWithoutVariant(product.getId())));
+
+        IncomingProductCreateRequest request = new IncomingProductCreateRequest();
+        request.setDateIn(LocalDate.parse("2025-10-10"));
+        request.setSupplierId(supplierId);
+        request.setUsername("admin_warehouse");
+        request.setIncomingProductDetails(details);
+        request.setTotalProducts(details.size());
+        IncomingProductResponse created = incomingProductService.create(request);
+
+        // the projection gives back exactly what the entity mapping gave on create
+        assertEquals(created, incomingProductService.get(created.getId()));
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        Runnable entityGraph = () -> transactionTemplate.executeWithoutResult(status -> {
+            IncomingProduct incomingProduct = incomingProductRepository.findDetailById(created.getId()).orElseThrow();
+            // touches everything the response is mapped from
+            Objects.requireNonNull(incomingProduct.getSupplier().getSupplierName());
+            for (IncomingProductDetail incomingProductDetail : incomingProduct.getIncomingProductDetails()) {
+                Objects.requireNonNull(incomingProductDetail.getProduct().getName());
+                if (incomingProductDetail.getHasVariant()) {
+                    incomingProductDetail.getIncomingProductVariantDetails().forEach(variantDetail -> Objects.requireNonNull(variantDetail.getProductVariant().getSku()));
+                }
+            }
+        });
+        Runnable projection = () -> incomingProductService.get(created.getId());
+
+        long[] entityGraphCost = measure(entityGraph);
+        long[] projectionCost = measure(projection);
+        log.info("Incoming product get with {} details. entityGraphNanos={}, entityGraphBytes={}, projectionNanos={}, projectionBytes={}",
+                details.size(), entityGraphCost[0], entityGraphCost[1], projectionCost[0], projectionCost[1]);
+
+        // latency depends on the machine and is only logged, the allocations of the projection are a fraction of the entity load
+        assertTrue(projectionCost[1] < entityGraphCost[1], "allocated " + projectionCost[1] + " and " + entityGraphCost[1] + " bytes");
+    }
+
     @Test
     void getListFailedTokenNotSend() throws Exception {
         mockMvc.perform(
@@ -1545,6 +2018,325 @@ class IncomingProductControllerTest {
         });
     }
 
+    @Test
+    void getListSuccessWithCursor() throws Exception {
+        Supplier supplier = supplierRepository.findById(supplierId).orElse(null);
+        assertNotNull(supplier);
+
+        User user = userRepository.findById("admin_warehouse").orElse(null);
+        assertNotNull(user);
+
+        // several transactions on the same day, the id keeps their order between pages
+        List<IncomingProduct> incomingProductList = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            IncomingProduct incomingProduct = new IncomingProduct();
+            incomingProduct.setDateIn(LocalDate.parse("2025-05-01").plusDays(i / 3));
+            incomingProduct.setSupplier(supplier);
+            incomingProduct.setUser(user);
+            incomingProduct.setTotalProducts(1);
+            incomingProductList.add(incomingProduct);
+        }
+        incomingProductRepository.saveAll(incomingProductList);
+
+        List<Integer> expectedIds = getListIds(get("/api/incoming-products")
+                .param("page", "0")
+                .param("size", "25"), null);
+        assertEquals(25, expectedIds.size());
+
+        List<Integer> ids = new ArrayList<>();
+        List<String> cursors = new ArrayList<>();
+        String after = "";
+        do {
+            List<String> nextCursor = new ArrayList<>();
+            ids.addAll(getListIds(get("/api/incoming-products")
+                    .param("size", "10")
+                    .param("after", after), nextCursor));
+            after = nextCursor.getFirst();
+            cursors.add(after);
+        } while (after != null);
+
+        assertEquals(expectedIds, ids);
+        assertEquals(3, cursors.size());
+        assertNull(cursors.getLast());
+    }
+
+    @Test
+    void getListSuccessWithoutCount() throws Exception {
+        Supplier supplier = supplierRepository.findById(supplierId).orElse(null);
+        assertNotNull(supplier);
+
+        User user = userRepository.findById("admin_warehouse").orElse(null);
+        assertNotNull(user);
+
+        List<IncomingProduct> incomingProductList = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            IncomingProduct incomingProduct = new IncomingProduct();
+            incomingProduct.setDateIn(LocalDate.parse("2025-05-01").plusDays(i));
+            incomingProduct.setSupplier(supplier);
+            incomingProduct.setUser(user);
+            incomingProduct.setTotalProducts(1);
+            incomingProductList.add(incomingProduct);
+        }
+        incomingProductRepository.saveAll(incomingProductList);
+
+        mockMvc.perform(
+                get("/api/incoming-products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("page", "1")
+                        .param("size", "10")
+                        .param("count", "false")
+        ).andExpectAll(
+                status().isOk()
+        ).andExpect(result -> {
+            WebResponse<List<IncomingProductGetListResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+
+            assertNull(response.getErrors());
+            assertEquals(5, response.getData().size());
+            assertEquals(LocalDate.parse("2025-05-11"), response.getData().getFirst().getDateIn());
+            assertEquals(supplier.getSupplierName(), response.getData().getFirst().getSupplier().getName());
+            assertEquals(1, response.getPaging().getCurrentPage());
+            assertNull(response.getPaging().getTotalPage());
+            assertEquals(10, response.getPaging().getSizePerPage());
+        });
+    }
+
+    @Test
+    void getListFailedCursorNotValid() throws Exception {
+        mockMvc.perform(
+                get("/api/incoming-products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("after", "bm90LWEtZGF0ZQ.MQ")
+        ).andExpectAll(
+                status().isBadRequest()
+        ).andExpect(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+
+            assertEquals("Cursor is not valid.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getListSuccessFilteredBySupplierUsernameAndNote() throws Exception {
+        Supplier supplier = supplierRepository.findById(supplierId).orElse(null);
+        assertNotNull(supplier);
+
+        Supplier supplier2 = new Supplier();
+        supplier2.setSupplierName("PT XYZ Filter");
+        supplier2.setPhone("62822229");
+        supplier2.setEmail("filter@xyz.com");
+        supplierRepository.save(supplier2);
+
+        User user = userRepository.findById("admin_warehouse").orElse(null);
+        assertNotNull(user);
+        User user2 = userRepository.findById("owner").orElse(null);
+        assertNotNull(user2);
+
+        List<IncomingProduct> incomingProductList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            IncomingProduct incomingProduct = new IncomingProduct();
+            incomingProduct.setDateIn(LocalDate.parse("2025-05-01").plusDays(i));
+            incomingProduct.setSupplier(i < 3 ? supplier : supplier2);
+            incomingProduct.setUser(i < 3 ? user : user2);
+            incomingProduct.setTotalProducts(1);
+            incomingProduct.setNote(i < 3 ? "Box damaged 10% of them" : "Product is well condition");
+            incomingProductList.add(incomingProduct);
+        }
+        incomingProductRepository.saveAll(incomingProductList);
+
+        List<Integer> bySupplier = getListIds(get("/api/incoming-products")
+                .param("supplierId", String.valueOf(supplier2.getId())), null);
+        assertEquals(incomingProductList.subList(3, 5).stream().map(IncomingProduct::getId).toList(), bySupplier);
+
+        List<Integer> byUsername = getListIds(get("/api/incoming-products")
+                .param("username", "owner")
+                .param("after", ""), null);
+        assertEquals(incomingProductList.subList(3, 5).stream().map(IncomingProduct::getId).toList(), byUsername);
+
+        List<Integer> byNote = getListIds(get("/api/incoming-products")
+                .param("note", "DAMAGED 10%"), null);
+        assertEquals(incomingProductList.subList(0, 3).stream().map(IncomingProduct::getId).toList(), byNote);
+
+        // wildcards in the note are matched literally
+        assertTrue(getListIds(get("/api/incoming-products")
+                .param("note", "Box_damaged"), null).isEmpty());
+    }
+
+    @Test
+    void getListSuccessFilteredByProductAndVariant() throws Exception {
+        Integer withoutVariantId = createIncomingProduct(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+        Integer withVariantId = createIncomingProduct(List.of(incomingProductDetailWithVariant(productVariant.getId())));
+
+        assertEquals(List.of(withoutVariantId), getListIds(get("/api/incoming-products")
+                .param("productId", String.valueOf(productWithoutVariant.getId())), null));
+        assertEquals(List.of(withVariantId), getListIds(get("/api/incoming-products")
+                .param("productId", String.valueOf(productWithVariant.getId())), null));
+        assertEquals(List.of(withVariantId), getListIds(get("/api/incoming-products")
+                .param("variantId", String.valueOf(productVariant.getId()))
+                .param("count", "false"), null));
+        assertTrue(getListIds(get("/api/incoming-products")
+                .param("productId", String.valueOf(productWithoutVariant.getId()))
+                .param("variantId", String.valueOf(productVariant.getId())), null).isEmpty());
+    }
+
+    @Test
+    void getIncomingHistorySuccessWithCursor() throws Exception {
+        ProductVariant productVariant2 = new ProductVariant();
+        productVariant2.setProduct(productWithVariant);
+        productVariant2.setSku("product-test-white");
+        productVariant2.setPrice(100500);
+        productVariant2.setStock(100);
+        productVariantRepository.save(productVariant2);
+
+        List<Integer> incomingProductIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            incomingProductIds.add(createIncomingProduct(List.of(
+                    incomingProductDetailWithVariant(productVariant.getId(), productVariant2.getId()),
+                    incomingProductDetailWithoutVariant(productWithoutVariant.getId())
+            )));
+        }
+
+        List<IncomingProductHistoryResponse> lines = new ArrayList<>();
+        List<String> cursors = new ArrayList<>();
+        String after = "";
+        do {
+            String content = mockMvc.perform(
+                    get("/api/products/" + productWithVariant.getId() + "/incoming-history")
+                            .header("Authorization", authorizationToken)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .param("size", "4")
+                            .param("after", after)
+            ).andExpect(
+                    status().isOk()
+            ).andReturn().getResponse().getContentAsString();
+
+            WebResponse<List<IncomingProductHistoryResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+            });
+            assertEquals(4, response.getPaging().getSizePerPage());
+            lines.addAll(response.getData());
+            after = response.getPaging().getNextCursor();
+            cursors.add(after);
+        } while (after != null);
+
+        // two variant lines for each transaction, the latest transaction first
+        assertEquals(2, cursors.size());
+        assertEquals(6, lines.size());
+        assertEquals(List.of(incomingProductIds.get(2), incomingProductIds.get(2), incomingProductIds.get(1), incomingProductIds.get(1), incomingProductIds.get(0), incomingProductIds.get(0)),
+                lines.stream().map(IncomingProductHistoryResponse::getIncomingProductId).toList());
+        assertEquals(6, lines.stream().map(IncomingProductHistoryResponse::getIncomingProductVariantDetailId).distinct().count());
+
+        IncomingProductHistoryResponse line = lines.getFirst();
+        assertEquals(LocalDate.parse("2025-10-10"), line.getDateIn());
+        assertEquals(supplierId, line.getSupplier().getId());
+        assertEquals("admin_warehouse", line.getUsername());
+        assertEquals(productVariant2.getId(), line.getVariant().getId());
+        assertEquals("product-test-white", line.getVariant().getSku());
+        assertEquals(100123, line.getPricePerUnit());
+        assertEquals(10, line.getQuantity());
+        assertEquals(1001230, line.getTotalPrice());
+
+        mockMvc.perform(
+                get("/api/products/" + productWithVariant.getId() + "/incoming-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("variantId", String.valueOf(productVariant.getId()))
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<IncomingProductHistoryResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(3, response.getData().size());
+            assertNull(response.getPaging().getNextCursor());
+            response.getData().forEach(variantLine -> assertEquals(productVariant.getId(), variantLine.getVariant().getId()));
+        });
+
+        // lines of a product without variants have no variant
+        mockMvc.perform(
+                get("/api/products/" + productWithoutVariant.getId() + "/incoming-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<IncomingProductHistoryResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals(3, response.getData().size());
+            assertNull(response.getData().getFirst().getVariant());
+            assertNull(response.getData().getFirst().getIncomingProductVariantDetailId());
+        });
+    }
+
+    @Test
+    void getIncomingHistoryFailedProductNotFound() throws Exception {
+        mockMvc.perform(
+                get("/api/products/999999/incoming-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isNotFound()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Product is not found. Please check Product id again.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getListSuccessStatementCountNotDependOnPageSize() throws Exception {
+        Supplier supplier = supplierRepository.findById(supplierId).orElse(null);
+        assertNotNull(supplier);
+
+        User user = userRepository.findById("admin_warehouse").orElse(null);
+        assertNotNull(user);
+
+        IncomingProduct incomingProduct = new IncomingProduct();
+        incomingProduct.setDateIn(LocalDate.parse("2025-05-01"));
+        incomingProduct.setSupplier(supplier);
+        incomingProduct.setUser(user);
+        incomingProduct.setTotalProducts(1);
+        incomingProductRepository.save(incomingProduct);
+
+        long smallStatementCount = countStatementsOfGet("/api/incoming-products");
+
+        User user2 = userRepository.findById("owner").orElse(null);
+        assertNotNull(user2);
+
+        for (int i = 0; i < 5; i++) {
+            Supplier supplier2 = new Supplier();
+            supplier2.setSupplierName("PT XYZ " + i);
+            supplier2.setPhone("6282222" + i);
+            supplier2.setEmail("john" + i + "@xyz.com");
+
+            Address address = new Address();
+            address.setStreet("JLN Sudirman");
+            address.setVillage("Kel. Karet");
+            address.setDistrict("Kec. Setiabudi");
+            address.setCity("Jakarta");
+            address.setProvince("Jakarta");
+            address.setCountry("Indonesia");
+            address.setPostalCode("123123");
+            address.setSupplier(supplier2);
+            supplier2.setAddress(address);
+            supplierRepository.save(supplier2);
+
+            IncomingProduct incomingProduct2 = new IncomingProduct();
+            incomingProduct2.setDateIn(LocalDate.parse("2025-05-02").plusDays(i));
+            incomingProduct2.setSupplier(supplier2);
+            incomingProduct2.setUser(i % 2 == 0 ? user : user2);
+            incomingProduct2.setTotalProducts(1);
+            incomingProductRepository.save(incomingProduct2);
+        }
+
+        long largeStatementCount = countStatementsOfGet("/api/incoming-products");
+
+        // user lookup for the token, page projection joined with the supplier, count when the page is full
+        assertEquals(smallStatementCount, largeStatementCount);
+        assertTrue(largeStatementCount <= 3, "statement count was " + largeStatementCount);
+    }
+
     @Test
     void getListSuccessWithJustStartDate() throws Exception {
         Supplier supplier = supplierRepository.findById(supplierId).orElse(null);
@@ -2671,7 +3463,7 @@ class IncomingProductControllerTest {
             assertEquals(incomingProductDetailDB.getHasVariant(), incomingProductDetailResponse.getHasVariant());
             assertNull(incomingProductDetailDB.getTotalVariantPrice());
             assertNull(incomingProductDetailDB.getTotalVariantQuantity());
-            assertEquals(0, incomingProductDetailDB.getIncomingProductVariantDetails().size());
+            assertEquals(0, incomingProductVariantDetailRepository.countByIncomingProductDetail(incomingProductDetailDB));
 
             // check updated quantity of product
             int quantityChange = incomingProductDetailRequest.getQuantity() - incomingProductDetail.getQuantity();
@@ -2851,7 +3643,7 @@ class IncomingProductControllerTest {
                 assertEquals(incomingProductDetailDB.getHasVariant(), incomingProductDetailResponse.getHasVariant());
                 assertNull(incomingProductDetailDB.getTotalVariantPrice());
                 assertNull(incomingProductDetailDB.getTotalVariantQuantity());
-                assertEquals(0, incomingProductDetailDB.getIncomingProductVariantDetails().size());
+                assertEquals(0, incomingProductVariantDetailRepository.countByIncomingProductDetail(incomingProductDetailDB));
 
                 // check updated quantity of product
                 IncomingProductDetail incomingProductDetailBeforeUpdated = productDetailsBeforeUpdated.stream()
@@ -3005,7 +3797,7 @@ class IncomingProductControllerTest {
             assertEquals(incomingProductDetailDB.getHasVariant(), incomingProductDetailResponse.getHasVariant());
             assertEquals(incomingProductDetailDB.getTotalVariantPrice(), incomingProductDetailResponse.getTotalVariantPrice());
             assertEquals(incomingProductDetailDB.getTotalVariantQuantity(), incomingProductDetailResponse.getTotalVariantQuantity());
-            assertEquals(1, incomingProductDetailDB.getIncomingProductVariantDetails().size());
+            assertEquals(1, incomingProductVariantDetailRepository.countByIncomingProductDetail(incomingProductDetailDB));
 
             // assert incomingProductVariantDetail
             IncomingProductResponse.IncomingProductVariantDetail incomingProductVariantDetailResponse = incomingProductDetailResponse.getIncomingProductVariantDetails()
@@ -3207,7 +3999,7 @@ class IncomingProductControllerTest {
                     assertNull(incomingProductDetailResponse.getIncomingProductVariantDetails());
 
                     // check incomingProductDB
-                    assertEquals(0, incomingProductDetailDB.getIncomingProductVariantDetails().size());
+                    assertEquals(0, incomingProductVariantDetailRepository.countByIncomingProductDetail(incomingProductDetailDB));
 
                     // check updated quantity of product
                     int quantityChange = incomingProductDetailRequestCurrent.getQuantity() - incomingProductDetail2.getQuantity();
@@ -3246,7 +4038,7 @@ class IncomingProductControllerTest {
                     assertEquals(1, incomingProductDetailResponse.getIncomingProductVariantDetails().size());
 
                     // check incomingProductDB
-                    assertEquals(1, incomingProductDetailDB.getIncomingProductVariantDetails().size());
+                    assertEquals(1, incomingProductVariantDetailRepository.countByIncomingProductDetail(incomingProductDetailDB));
 
                     // assert incomingProductVariantDetail response
                     IncomingProductResponse.IncomingProductVariantDetail incomingProductVariantDetailResponse = incomingProductDetailResponse.getIncomingProductVariantDetails()
@@ -4655,4 +5447,429 @@ class IncomingProductControllerTest {
             assertEquals(productWithoutVariant.getStock() - incomingProductDetail2.getQuantity(), productUpdated.getStock());
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void createSuccessReplayedWithIdempotencyKey() throws Exception {
+        IncomingProductCreateRequest request = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+
+        Integer firstId = readIncomingProductId(postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isCreated()));
+        Integer retryId = readIncomingProductId(postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isCreated()));
+
+        assertEquals(firstId, retryId);
+        assertEquals(1, incomingProductRepository.count());
+        Product product = productRepository.findById(productWithoutVariant.getId()).orElseThrow();
+        assertEquals(productWithoutVariant.getStock() + 10, product.getStock());
+
+        // another key is another write
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-2")
+                .andExpect(status().isCreated());
+        assertEquals(2, incomingProductRepository.count());
+    }
+
+    @Test
+    void createSuccessConcurrentRetriesRunOnce() throws Exception {
+        int retries = 6;
+        IncomingProductCreateRequest request = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(retries);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < retries; i++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    return readIncomingProductId(postWithIdempotencyKey("/api/incoming-products", request, "concurrent-retry")
+                            .andExpect(status().isCreated()));
+                }));
+            }
+
+            start.countDown();
+            Integer firstId = futures.getFirst().get();
+            for (Future<Integer> future : futures) {
+                assertEquals(firstId, future.get());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(1, incomingProductRepository.count());
+        Product product = productRepository.findById(productWithoutVariant.getId()).orElseThrow();
+        assertEquals(productWithoutVariant.getStock() + 10, product.getStock());
+    }
+
+    @Test
+    void createFailedIdempotencyKeyUsedForDifferentRequest() throws Exception {
+        IncomingProductCreateRequest request = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isCreated());
+
+        request.setNote("Another delivery note");
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isUnprocessableEntity())
+                .andDo(result -> {
+                    WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+                    });
+                    assertEquals("Idempotency-Key is already used for a different request.", response.getErrors());
+                });
+        assertEquals(1, incomingProductRepository.count());
+    }
+
+    @Test
+    void createFailedIdempotencyKeyNotStoredWhenWriteFails() throws Exception {
+        IncomingProductCreateRequest request = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+        request.setSupplierId(supplierId + 1000);
+
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isNotFound());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys", Integer.class));
+
+        // the failed request is retried with the same key once the body is fixed
+        request.setSupplierId(supplierId);
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isCreated());
+        assertEquals(1, incomingProductRepository.count());
+    }
+
+    @Test
+    void createIncomingProductDetailAndVariantDetailSuccessReplayedWithIdempotencyKey() throws Exception {
+        Integer incomingProductId = createIncomingProduct(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+
+        IncomingProductCreateRequest.IncomingProductDetails detailRequest = incomingProductDetailWithVariant(productVariant.getId());
+        String detailPath = "/api/incoming-products/" + incomingProductId + "/incoming-product-details";
+        String firstDetail = postWithIdempotencyKey(detailPath, detailRequest, "detail-1")
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String retryDetail = postWithIdempotencyKey(detailPath, detailRequest, "detail-1")
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(firstDetail, retryDetail);
+
+        IncomingProduct incomingProduct = incomingProductRepository.findById(incomingProductId).orElseThrow();
+        assertEquals(2, incomingProduct.getTotalProducts());
+
+        WebResponse<IncomingProductResponse.IncomingProductDetail> detailResponse = objectMapper.readValue(firstDetail, new TypeReference<>() {
+        });
+        ProductVariant otherVariant = new ProductVariant();
+        otherVariant.setProduct(productWithVariant);
+        otherVariant.setSku("product-test-white");
+        otherVariant.setPrice(100500);
+        otherVariant.setStock(50);
+        productVariantRepository.save(otherVariant);
+
+        IncomingProductCreateRequest.IncomingProductVariantDetail variantDetailRequest = IncomingProductCreateRequest.IncomingProductVariantDetail.builder()
+                .variantId(otherVariant.getId())
+                .pricePerUnit(1000)
+                .quantity(3)
+                .build();
+        String variantDetailPath = "/api/incoming-product-details/" + detailResponse.getData().getId() + "/incoming-product-variant-detail";
+        postWithIdempotencyKey(variantDetailPath, variantDetailRequest, "variant-detail-1")
+                .andExpect(status().isCreated());
+        postWithIdempotencyKey(variantDetailPath, variantDetailRequest, "variant-detail-1")
+                .andExpect(status().isCreated());
+
+        ProductVariant variant = productVariantRepository.findById(otherVariant.getId()).orElseThrow();
+        assertEquals(otherVariant.getStock() + 3, variant.getStock());
+
+        // the key of the variant detail can not be reused for the detail endpoint
+        postWithIdempotencyKey(detailPath, detailRequest, "variant-detail-1")
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void sweepExpiredIdempotencyKeysSuccess() throws Exception {
+        IncomingProductCreateRequest request = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isCreated());
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-2")
+                .andExpect(status().isCreated());
+
+        assertEquals(0, idempotencyService.sweepExpired());
+
+        jdbcTemplate.update("UPDATE idempotency_keys SET expires_at = ?", Timestamp.from(Instant.now().minusSeconds(60)));
+        assertEquals(2, idempotencyService.sweepExpired());
+
+        // an expired key is a new key again
+        postWithIdempotencyKey("/api/incoming-products", request, "retry-1")
+                .andExpect(status().isCreated());
+        assertEquals(3, incomingProductRepository.count());
+    }
+
+    @Test
+    void createBatchSuccess() throws Exception {
+        Long purchasedQuantityBefore = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM purchase_monthly_aggregates WHERE product_id = ?", Long.class, productWithoutVariant.getId());
+
+        StringBuilder body = new StringBuilder();
+        body.append(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId()))))).append("\n");
+        body.append(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(incomingProductDetailWithVariant(productVariant.getId()))))).append("\n");
+        body.append("\n");
+        body.append(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId()), incomingProductDetailWithVariant(productVariant.getId()))))).append("\n");
+
+        // two chunks, the same product is incremented by receipts of both
+        int batchSize = incomingProductBatchProperties.getBatchSize();
+        incomingProductBatchProperties.setBatchSize(2);
+        try {
+            mockMvc.perform(
+                    post("/api/incoming-products/batch")
+                            .header("Authorization", authorizationToken)
+                            .contentType(MediaType.APPLICATION_NDJSON)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .content(body.toString())
+            ).andExpect(
+                    status().isOk()
+            ).andDo(result -> {
+                WebResponse<IncomingProductBatchResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+                });
+                assertNull(response.getErrors());
+                assertEquals(3, response.getData().getCreated());
+                assertEquals(0, response.getData().getFailed());
+                assertEquals(List.of(1L, 2L, 4L), response.getData().getResults().stream().map(IncomingProductBatchResponse.ReceiptResult::getRow).toList());
+                response.getData().getResults().forEach(receiptResult -> {
+                    assertNotNull(receiptResult.getIncomingProductId());
+                    assertNull(receiptResult.getError());
+                });
+
+                Integer incomingProductId = response.getData().getResults().getLast().getIncomingProductId();
+                IncomingProductResponse incomingProduct = incomingProductService.get(incomingProductId);
+                assertEquals("admin_warehouse", incomingProduct.getUsername());
+                assertEquals(supplierId, incomingProduct.getSupplier().getId());
+                assertEquals(2, incomingProduct.getIncomingProductDetails().size());
+
+                IncomingProductResponse.IncomingProductDetail variantDetail = incomingProduct.getIncomingProductDetails().stream()
+                        .filter(IncomingProductResponse.IncomingProductDetail::getHasVariant)
+                        .findFirst().orElseThrow();
+                assertEquals(10, variantDetail.getTotalVariantQuantity());
+                assertEquals(100123 * 10, variantDetail.getTotalVariantPrice());
+                assertEquals(productVariant.getId(), variantDetail.getIncomingProductVariantDetails().getFirst().getVariant().getId());
+            });
+        } finally {
+            incomingProductBatchProperties.setBatchSize(batchSize);
+        }
+
+        assertEquals(3, incomingProductRepository.count());
+        assertEquals(productWithoutVariant.getStock() + 20, productRepository.findById(productWithoutVariant.getId()).orElseThrow().getStock());
+        assertEquals(productVariant.getStock() + 20, productVariantRepository.findById(productVariant.getId()).orElseThrow().getStock());
+
+        // every receipt keeps its own ledger rows
+        List<StockMovement> stockMovements = stockMovementRepository.findAll();
+        assertEquals(4, stockMovements.size());
+        assertEquals(3, stockMovements.stream().map(StockMovement::getSourceId).distinct().count());
+        stockMovements.forEach(stockMovement -> assertEquals(StockMovementSourceType.INCOMING_PRODUCT, stockMovement.getSourceType()));
+
+        Long purchasedQuantityAfter = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(quantity), 0) FROM purchase_monthly_aggregates WHERE product_id = ?", Long.class, productWithoutVariant.getId());
+        assertEquals(purchasedQuantityBefore + 20, purchasedQuantityAfter);
+    }
+
+    @Test
+    void createBatchReportsFailedReceipts() throws Exception {
+        IncomingProductCreateRequest unknownSupplier = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+        unknownSupplier.setSupplierId(supplierId + 1000);
+        IncomingProductCreateRequest withoutDateIn = incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())));
+        withoutDateIn.setDateIn(null);
+        IncomingProductCreateRequest.IncomingProductDetails hasVariantMismatch = incomingProductDetailWithoutVariant(productWithVariant.getId());
+
+        StringBuilder body = new StringBuilder();
+        body.append("{not json\n");
+        body.append(objectMapper.writeValueAsString(unknownSupplier)).append("\n");
+        body.append(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId() + 1000))))).append("\n");
+        body.append(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(hasVariantMismatch)))).append("\n");
+        body.append(objectMapper.writeValueAsString(withoutDateIn)).append("\n");
+        body.append(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId()))))).append("\n");
+
+        mockMvc.perform(
+                post("/api/incoming-products/batch")
+                        .header("Authorization", authorizationToken)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(body.toString())
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<IncomingProductBatchResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(1, response.getData().getCreated());
+            assertEquals(5, response.getData().getFailed());
+
+            List<IncomingProductBatchResponse.ReceiptResult> results = response.getData().getResults();
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), results.stream().map(IncomingProductBatchResponse.ReceiptResult::getRow).toList());
+            assertTrue(results.get(0).getError().startsWith("Row is not a valid incoming product"));
+            assertEquals("Supplier is not found. Please check Supplier Id again.", results.get(1).getError());
+            assertEquals("Some products are not found. Please check product IDs again.", results.get(2).getError());
+            assertEquals("Product id: " + productWithVariant.getId() + " hasVariant is true, please check hasVariant again.", results.get(3).getError());
+            assertEquals("dateIn must not be null", results.get(4).getError());
+            assertNull(results.get(5).getError());
+            assertNotNull(results.get(5).getIncomingProductId());
+        });
+
+        assertEquals(1, incomingProductRepository.count());
+        assertEquals(productWithoutVariant.getStock() + 10, productRepository.findById(productWithoutVariant.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void createBatchFailedTokenNotSend() throws Exception {
+        mockMvc.perform(
+                post("/api/incoming-products/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(incomingProductCreateRequest(List.of(incomingProductDetailWithoutVariant(productWithoutVariant.getId())))))
+        ).andExpectAll(
+                status().isUnauthorized()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+
+            assertNull(response.getData());
+            assertEquals("Authentication failed", response.getErrors());
+        });
+
+        assertEquals(0, incomingProductRepository.count());
+    }
+
+    private IncomingProductCreateRequest.IncomingProductDetails incomingProductDetailWithoutVariant(Integer productId) {
+        return IncomingProductCreateRequest.IncomingProductDetails.builder()
+                .hasVariant(false)
+                .productId(productId)
+                .pricePerUnit(100123)
+                .quantity(10)
+                .build();
+    }
+
+    private IncomingProductCreateRequest.IncomingProductDetails incomingProductDetailWithVariant(Integer... variantIds) {
+        List<IncomingProductCreateRequest.IncomingProductVariantDetail> variantDetails = new ArrayList<>();
+        for (Integer variantId : variantIds) {
+            variantDetails.add(IncomingProductCreateRequest.IncomingProductVariantDetail.builder()
+                    .variantId(variantId)
+                    .pricePerUnit(100123)
+                    .quantity(10)
+                    .build());
+        }
+
+        return IncomingProductCreateRequest.IncomingProductDetails.builder()
+                .hasVariant(true)
+                .productId(productWithVariant.getId())
+                .incomingProductVariantDetails(variantDetails)
+                .build();
+    }
+
+    private IncomingProductCreateRequest incomingProductCreateRequest(List<IncomingProductCreateRequest.IncomingProductDetails> incomingProductDetails) {
+        IncomingProductCreateRequest request = new IncomingProductCreateRequest();
+        request.setDateIn(LocalDate.parse("2025-10-10"));
+        request.setSupplierId(supplierId);
+        request.setIncomingProductDetails(new ArrayList<>(incomingProductDetails));
+        request.setTotalProducts(incomingProductDetails.size());
+        return request;
+    }
+
+    private ResultActions postWithIdempotencyKey(String path, Object request, String idempotencyKey) throws Exception {
+        return mockMvc.perform(
+                post(path)
+                        .header("Authorization", authorizationToken)
+                        .header("Idempotency-Key", idempotencyKey)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        );
+    }
+
+    private Integer readIncomingProductId(ResultActions resultActions) throws Exception {
+        WebResponse<IncomingProductResponse> response = objectMapper.readValue(resultActions.andReturn().getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        return response.getData().getId();
+    }
+
+    private Integer createIncomingProduct(List<IncomingProductCreateRequest.IncomingProductDetails> incomingProductDetails) throws Exception {
+        IncomingProductCreateRequest request = new IncomingProductCreateRequest();
+        request.setDateIn(LocalDate.parse("2025-10-10"));
+        request.setSupplierId(supplierId);
+        request.setIncomingProductDetails(new ArrayList<>(incomingProductDetails));
+        request.setTotalProducts(incomingProductDetails.size());
+
+        String content = mockMvc.perform(
+                post("/api/incoming-products")
+                        .header("Authorization", authorizationToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request))
+        ).andExpect(
+                status().isCreated()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<IncomingProductResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData().getId();
+    }
+
+    private long countStatementsOfCreate(List<IncomingProductCreateRequest.IncomingProductDetails> incomingProductDetails) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            createIncomingProduct(incomingProductDetails);
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    /**
+     * @return median nanoseconds and median bytes allocated by the current thread of one run, after a warm-up
+     */
+    private static long[] measure(Runnable action) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < 20; i++) {
+            action.run();
+        }
+
+        int runs = 30;
+        long[] nanos = new long[runs];
+        long[] bytes = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long startBytes = threadMXBean.getCurrentThreadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            action.run();
+            nanos[i] = System.nanoTime() - startNanos;
+            bytes[i] = threadMXBean.getCurrentThreadAllocatedBytes() - startBytes;
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(bytes);
+        return new long[]{nanos[runs / 2], bytes[runs / 2]};
+    }
+
+    private List<Integer> getListIds(MockHttpServletRequestBuilder request, List<String> nextCursor) throws Exception {
+        String content = mockMvc.perform(
+                request.header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<List<IncomingProductGetListResponse>> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        if (nextCursor != null) {
+            nextCursor.add(response.getPaging().getNextCursor());
+        }
+        return response.getData().stream().map(IncomingProductGetListResponse::getId).toList();
+    }
+
+    private long countStatementsOfGet(String url) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        // every measured request loads the user for its token, not only the first one
+        userPrincipalCache.evictAll();
+        statistics.clear();
+        try {
+            mockMvc.perform(
+                    get(url)
+                            .header("Authorization", authorizationToken)
+                            .accept(MediaType.APPLICATION_JSON)
+            ).andExpect(
+                    status().isOk()
+            );
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package dev.mfikri.widuriestock.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
+import dev.mfikri.widuriestock.entity.User;
+import dev.mfikri.widuriestock.model.WebResponse;
+import dev.mfikri.widuriestock.model.media.UploadSweepResponse;
+import dev.mfikri.widuriestock.repository.RefreshTokenRepository;
+import dev.mfikri.widuriestock.repository.UserRepository;
+import dev.mfikri.widuriestock.service.PhotoStorage;
+import dev.mfikri.widuriestock.service.UploadSweeperService;
+import dev.mfikri.widuriestock.util.JwtUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Slf4j
+@SpringBootTest
+@AutoConfigureMockMvc
+class MediaControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private PhotoStorage photoStorage;
+
+    @Autowired
+    private UploadSweeperService uploadSweeperService;
+
+    private String authorizationToken;
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenRepository.deleteAll();
+        userRepository.deleteAll();
+        userPrincipalCache.evictAll();
+
+        User user = new User();
+        user.setUsername("owner");
+        user.setPassword(passwordEncoder.encode("owner123"));
+        user.setFirstName("owner");
+        user.setPhone("+000000000");
+        user.setRole("OWNER");
+        userRepository.save(user);
+
+        authorizationToken = "Bearer " + jwtUtil.generate(user.getUsername(), 300000);
+    }
+
+    @Test
+    void getFailedTokenNotSend() throws Exception {
+        Path path = store(randomBytes(100));
+
+        mockMvc.perform(
+                get(mediaUrl(path))
+        ).andExpect(
+                status().isUnauthorized()
+        );
+    }
+
+    @Test
+    void getFailedNotFound() throws Exception {
+        mockMvc.perform(
+                get("/media/product/00/00/" + UUID.randomUUID() + ".png")
+                        .header("Authorization", authorizationToken)
+        ).andExpect(
+                status().isNotFound()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Media is not found.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getFailedTemporaryFileNotServed() throws Exception {
+        Path temporary = Path.of("upload/product/.tmp-" + UUID.randomUUID());
+        Files.write(temporary, randomBytes(100));
+        try {
+            mockMvc.perform(
+                    get("/media/product/" + temporary.getFileName())
+                            .header("Authorization", authorizationToken)
+            ).andExpect(
+                    status().isNotFound()
+            );
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Test
+    void getSuccessSmallFileFromMemory() throws Exception {
+        byte[] content = randomBytes(1000);
+        Path path = store(content);
+        String etag = "\"" + path.getFileName().toString().replace(".png", "") + "\"";
+
+        // the second request is served from the hot file cache
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(
+                    get(mediaUrl(path))
+                            .header("Authorization", authorizationToken)
+            ).andExpectAll(
+                    status().isOk(),
+                    header().string(HttpHeaders.ETAG, etag),
+                    header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"),
+                    header().string(HttpHeaders.ACCEPT_RANGES, "bytes"),
+                    header().string(HttpHeaders.CONTENT_TYPE, "image/png"),
+                    header().longValue(HttpHeaders.CONTENT_LENGTH, content.length),
+                    content().bytes(content)
+            );
+        }
+    }
+
+    @Test
+    void getSuccessLargeFileTransferred() throws Exception {
+        byte[] content = randomBytes(200_000);
+        Path path = store(content);
+
+        mockMvc.perform(
+                get(mediaUrl(path))
+                        .header("Authorization", authorizationToken)
+        ).andExpectAll(
+                status().isOk(),
+                header().longValue(HttpHeaders.CONTENT_LENGTH, content.length),
+                content().bytes(content)
+        );
+    }
+
+    @Test
+    void getSuccessNotModified() throws Exception {
+        Path path = store(randomBytes(1000));
+        String etag = "\"" + path.getFileName().toString().replace(".png", "") + "\"";
+
+        mockMvc.perform(
+                get(mediaUrl(path))
+                        .header("Authorization", authorizationToken)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag)
+        ).andExpectAll(
+                status().isNotModified(),
+                header().string(HttpHeaders.ETAG, etag),
+                content().bytes(new byte[0])
+        );
+    }
+
+    @Test
+    void getSuccessRange() throws Exception {
+        byte[] content = randomBytes(200_000);
+        Path path = store(content);
+
+        mockMvc.perform(
+                get(mediaUrl(path))
+                        .header("Authorization", authorizationToken)
+                        .header(HttpHeaders.RANGE, "bytes=100-199")
+        ).andExpectAll(
+                status().isPartialContent(),
+                header().string(HttpHeaders.CONTENT_RANGE, "bytes 100-199/200000"),
+                header().longValue(HttpHeaders.CONTENT_LENGTH, 100),
+                content().bytes(Arrays.copyOfRange(content, 100, 200))
+        );
+
+        // the last bytes of the file
+        mockMvc.perform(
+                get(mediaUrl(path))
+                        .header("Authorization", authorizationToken)
+                        .header(HttpHeaders.RANGE, "bytes=-10")
+        ).andExpectAll(
+                status().isPartialContent(),
+                header().string(HttpHeaders.CONTENT_RANGE, "bytes 199990-199999/200000"),
+                content().bytes(Arrays.copyOfRange(content, 199_990, 200_000))
+        );
+
+        // a range of another version is answered with the whole file
+        mockMvc.perform(
+                get(mediaUrl(path))
+                        .header("Authorization", authorizationToken)
+                        .header(HttpHeaders.RANGE, "bytes=100-199")
+                        .header(HttpHeaders.IF_RANGE, "\"other\"")
+        ).andExpectAll(
+                status().isOk(),
+                content().bytes(content)
+        );
+    }
+
+    @Test
+    void getFailedRangeNotSatisfiable() throws Exception {
+        Path path = store(randomBytes(1000));
+
+        mockMvc.perform(
+                get(mediaUrl(path))
+                        .header("Authorization", authorizationToken)
+                        .header(HttpHeaders.RANGE, "bytes=1000-")
+        ).andExpectAll(
+                status().isRequestedRangeNotSatisfiable(),
+                header().string(HttpHeaders.CONTENT_RANGE, "bytes */1000")
+        );
+    }
+
+    @Test
+    void getOrphansSuccessDryRunThenSweep() throws Exception {
+        Instant old = Instant.now().minus(Duration.ofDays(2));
+        Path legacyOrphan = Path.of("upload/product/product-orphan-" + UUID.randomUUID() + ".png");
+        Path referenced = Path.of("upload/profile/profile-referenced-" + UUID.randomUUID() + ".png");
+        Path youngOrphan = Path.of("upload/product/product-young-orphan-" + UUID.randomUUID() + ".png");
+        Files.write(legacyOrphan, randomBytes(100));
+        Files.write(referenced, randomBytes(100));
+        Files.write(youngOrphan, randomBytes(100));
+        Path storedOrphan = store(randomBytes(100));
+        for (Path path : List.of(legacyOrphan, referenced, storedOrphan)) {
+            Files.setLastModifiedTime(path, FileTime.from(old));
+        }
+
+        User user = userRepository.findById("owner").orElseThrow();
+        user.setPhoto(referenced.toString());
+        userRepository.save(user);
+
+        try {
+            mockMvc.perform(
+                    get("/api/media/orphans")
+                            .header("Authorization", authorizationToken)
+                            .accept(MediaType.APPLICATION_JSON)
+            ).andExpect(
+                    status().isOk()
+            ).andDo(result -> {
+                WebResponse<UploadSweepResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+                });
+                assertTrue(response.getData().getDryRun());
+                assertEquals(0, response.getData().getDeletedFiles());
+                assertTrue(response.getData().getOrphans().contains(legacyOrphan.toString()));
+                assertTrue(response.getData().getOrphans().contains(storedOrphan.toString()));
+                assertFalse(response.getData().getOrphans().contains(referenced.toString()));
+                assertFalse(response.getData().getOrphans().contains(youngOrphan.toString()));
+            });
+            // a dry run deletes nothing
+            assertTrue(Files.exists(legacyOrphan));
+            assertTrue(Files.exists(storedOrphan));
+
+            UploadSweepResponse response = uploadSweeperService.sweep(false);
+            assertFalse(response.getDryRun());
+            assertTrue(response.getDeletedFiles() >= 2);
+            assertFalse(Files.exists(legacyOrphan));
+            assertFalse(Files.exists(storedOrphan));
+            assertTrue(Files.exists(referenced));
+            assertTrue(Files.exists(youngOrphan));
+        } finally {
+            Files.deleteIfExists(legacyOrphan);
+            Files.deleteIfExists(referenced);
+            Files.deleteIfExists(youngOrphan);
+        }
+    }
+
+    @Test
+    void getOrphansFailedNotOwner() throws Exception {
+        User user = new User();
+        user.setUsername("admin_warehouse");
+        user.setPassword(passwordEncoder.encode("admin_warehouse_password"));
+        user.setFirstName("John Doe");
+        user.setPhone("+6283213121");
+        user.setRole("ADMIN_WAREHOUSE");
+        userRepository.save(user);
+
+        mockMvc.perform(
+                get("/api/media/orphans")
+                        .header("Authorization", "Bearer " + jwtUtil.generate(user.getUsername(), 300000))
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isForbidden()
+        );
+    }
+
+    private Path store(byte[] content) throws Exception {
+        return photoStorage.store(new ByteArrayInputStream(content), "product", "png");
+    }
+
+    private static String mediaUrl(Path path) {
+        return "/media/" + Path.of("upload").relativize(path).toString().replace('\\', '/');
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] content = new byte[size];
+        new Random().nextBytes(content);
+        return content;
+    }
+}
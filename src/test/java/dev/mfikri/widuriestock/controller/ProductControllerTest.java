@@ -2,32 +2,72 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
 import dev.mfikri.widuriestock.entity.Role;
 import dev.mfikri.widuriestock.entity.User;
 import dev.mfikri.widuriestock.entity.product.*;
 import dev.mfikri.widuriestock.model.WebResponse;
 import dev.mfikri.widuriestock.model.product.ProductCreateRequest;
+import dev.mfikri.widuriestock.model.product.ProductExportResponse;
+import dev.mfikri.widuriestock.model.product.ProductImportResponse;
 import dev.mfikri.widuriestock.model.product.ProductResponse;
+import dev.mfikri.widuriestock.model.product.ProductStockHistoryResponse;
 import dev.mfikri.widuriestock.model.product.ProductsGetListResponse;
 import dev.mfikri.widuriestock.repository.*;
+import dev.mfikri.widuriestock.service.ProductListViewService;
+import dev.mfikri.widuriestock.service.StockHistoryService;
 import dev.mfikri.widuriestock.util.JwtUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpMethod;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -47,6 +87,9 @@ class ProductControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
     @Autowired
     private AddressRepository addressRepository;
 
@@ -68,11 +111,44 @@ class ProductControllerTest {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ProductListViewRepository productListViewRepository;
+
+    @Autowired
+    private ProductListViewService productListViewService;
+
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    private StockHistoryService stockHistoryService;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
     @Autowired
     private JwtUtil jwtUtil;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
     Integer jwtTtl = 300000;
 
     String authorizationToken = "";
@@ -83,11 +159,16 @@ class ProductControllerTest {
         refreshTokenRepository.deleteAll();
         addressRepository.deleteAll();
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
         productPhotoRepository.deleteAllInBatch();
         productVariantAttributeRepository.deleteAllInBatch();
         productVariantRepository.deleteAllInBatch();
         productRepository.deleteAllInBatch();
+        productListViewRepository.deleteAllInBatch();
         categoryRepository.deleteAll();
+        stockMovementRepository.deleteAllInBatch();
+        stockSnapshotRepository.deleteAllInBatch();
+        productDetailCache.evictAll();
 
         Category category = new Category();
         category.setName("Category Test");
@@ -251,6 +332,52 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void createFailedProductAlreadyExistsStagedPhotosDeleted() throws Exception {
+        Category category = categoryRepository.findById(categoryId).orElse(null);
+        assertNotNull(category);
+
+        Product product = new Product();
+        product.setName("Product Staged Test");
+        product.setDescription("Description ...");
+        product.setCategory(category);
+        product.setHasVariant(false);
+        product.setStock(10);
+        product.setPrice(10000);
+        productRepository.save(product);
+
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("name", "Product Staged Test");
+        params.add("description", "Product description test");
+        params.add("categoryId", categoryId.toString());
+        params.add("hasVariant", "false");
+        params.add("stock", "100");
+        params.add("price", "120500");
+
+        byte[] image1 = randomPng();
+        byte[] image2 = randomPng();
+
+        // the photos are written before the name is checked, the failed transaction leaves none of them behind
+        mockMvc.perform(
+                multipart(HttpMethod.POST, "/api/products")
+                        .file(new MockMultipartFile("productPhotos[0].image", "1.png", "image/png", image1))
+                        .file(new MockMultipartFile("productPhotos[1].image", "2.png", "image/png", image2))
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .params(params)
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Product name is already exists.", response.getErrors());
+        });
+
+        assertFalse(Files.exists(storedProductPhotoLocation(image1, "png")));
+        assertFalse(Files.exists(storedProductPhotoLocation(image2, "png")));
+    }
+
     @Test
     void createFailedHasVariantFalseError() throws Exception{
 
@@ -546,6 +673,64 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void createSuccessProductPhotoRenditions() throws Exception {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("name", "Product Rendition Test");
+        params.add("description", "Product description test");
+        params.add("categoryId", categoryId.toString());
+        params.add("hasVariant", "false");
+        params.add("stock", "100");
+        params.add("price", "120500");
+
+        // 1.jpg is 1120 pixels wide, so every configured width is made
+        String content = mockMvc.perform(
+                multipart(HttpMethod.POST, "/api/products")
+                        .file(new MockMultipartFile("productPhotos[0].image", "1.jpg", "image/jpg", getClass().getResourceAsStream("/images/1.jpg")))
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .params(params)
+        ).andExpect(
+                status().isCreated()
+        ).andReturn().getResponse().getContentAsString();
+        WebResponse<ProductResponse> createResponse = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        ProductResponse.ProductPhoto photo = createResponse.getData().getPhotos().getFirst();
+
+        List<Map<String, Object>> renditions = List.of();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (renditions.size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+            renditions = jdbcTemplate.queryForList("SELECT r.width, r.image_location FROM product_photo_renditions r JOIN product_photos pp ON pp.id = r.product_photo_id " +
+                    "WHERE pp.product_id = ? ORDER BY r.width", createResponse.getData().getId());
+        }
+        assertEquals(List.of(160, 480, 1080), renditions.stream().map(rendition -> ((Number) rendition.get("width")).intValue()).toList());
+        for (Map<String, Object> rendition : renditions) {
+            BufferedImage image = ImageIO.read(Path.of((String) rendition.get("image_location")).toFile());
+            assertNotNull(image);
+            assertEquals(((Number) rendition.get("width")).intValue(), image.getWidth());
+            assertEquals(Math.round(600f * image.getWidth() / 1120), image.getHeight());
+        }
+        // the original stays available
+        assertTrue(Files.exists(Path.of(photo.getImageLocation())));
+        String thumbnailLocation = (String) renditions.getFirst().get("image_location");
+
+        mockMvc.perform(
+                get("/api/products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<ProductsGetListResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            ProductsGetListResponse product = response.getData().getFirst();
+            assertEquals(photo.getImageLocation(), product.getImageLocation());
+            assertEquals(thumbnailLocation, product.getThumbnailLocation());
+        });
+    }
+
     @Test
     void createSuccessProductWithPhotos() throws Exception{
 
@@ -693,6 +878,141 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void getListFailedCursorNotValid() throws Exception{
+        mockMvc.perform(
+                get("/api/products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("after", "not-a-valid-cursor")
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+
+            assertNull(response.getData());
+            assertEquals("Cursor is not valid.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getListFailedCursorSizeTooLarge() throws Exception{
+        mockMvc.perform(
+                get("/api/products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("after", "")
+                        .param("size", String.valueOf(Integer.MAX_VALUE))
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+
+            assertNull(response.getData());
+            assertEquals("Size must not be greater than 100.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getListSuccessWithCursor() throws Exception{
+        createBulkProduct(10);
+
+        List<String> productNames = new ArrayList<>();
+        String after = "";
+        int requestCount = 0;
+
+        while (after != null) {
+            String currentAfter = after;
+            String responseBody = mockMvc.perform(
+                    get("/api/products")
+                            .header("Authorization", authorizationToken)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .param("size", "4")
+                            .param("after", currentAfter)
+            ).andExpect(
+                    status().isOk()
+            ).andReturn().getResponse().getContentAsString();
+
+            WebResponse<List<ProductsGetListResponse>> response = objectMapper.readValue(responseBody, new TypeReference<>() {
+            });
+
+            assertNull(response.getErrors());
+            assertNotNull(response.getData());
+            assertEquals(4, response.getPaging().getSizePerPage());
+            assertNull(response.getPaging().getCurrentPage());
+            assertNull(response.getPaging().getTotalPage());
+
+            response.getData().forEach(product -> productNames.add(product.getName()));
+            after = response.getPaging().getNextCursor();
+            requestCount++;
+        }
+
+        assertEquals(3, requestCount);
+        assertEquals(10, productNames.size());
+        assertEquals("Product 0", productNames.getFirst());
+        assertEquals("Product 9", productNames.getLast());
+        assertEquals(productNames.stream().sorted().toList(), productNames);
+    }
+
+    @Test
+    void getListSuccessReadModelFollowsWrites() throws Exception{
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("name", "Product Test");
+        params.add("description", "Product description test");
+        params.add("categoryId", categoryId.toString());
+        params.add("hasVariant", "false");
+        params.add("stock", "100");
+        params.add("price", "120500");
+
+        String createResponseBody = mockMvc.perform(
+                multipart(HttpMethod.POST,"/api/products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .params(params)
+        ).andExpect(
+                status().isCreated()
+        ).andReturn().getResponse().getContentAsString();
+
+        WebResponse<ProductResponse> createResponse = objectMapper.readValue(createResponseBody, new TypeReference<>() {
+        });
+        Integer productId = createResponse.getData().getId();
+
+        ProductListView productListView = productListViewRepository.findById(productId).orElse(null);
+        assertNotNull(productListView);
+        assertEquals("Product Test", productListView.getName());
+        assertEquals(categoryId, productListView.getCategoryId());
+        assertEquals("Category Test", productListView.getCategoryName());
+        assertNull(productListView.getImageLocation());
+
+        mockMvc.perform(
+                get("/api/products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<List<ProductsGetListResponse>> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+
+            assertEquals(1, response.getData().size());
+            assertEquals(productId, response.getData().getFirst().getId());
+            assertEquals("Product Test", response.getData().getFirst().getName());
+        });
+
+        mockMvc.perform(
+                delete("/api/products/" + productId)
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+
+        assertFalse(productListViewRepository.existsById(productId));
+    }
+
     @Test
     void getFailedTokenNotSend() throws Exception{
         mockMvc.perform(
@@ -781,6 +1101,85 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void getSuccessServedFromCacheUntilProductDeleted() throws Exception {
+        Category category = categoryRepository.findById(categoryId).orElse(null);
+        assertNotNull(category);
+
+        Product product = new Product();
+        product.setName("Product Test");
+        product.setDescription("Product Description Test");
+        product.setHasVariant(false);
+        product.setPrice(120500);
+        product.setStock(100);
+        product.setCategory(category);
+        productRepository.save(product);
+
+        mockMvc.perform(
+                get("/api/products/" + product.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+
+        // written behind the service, so the cached product detail is not evicted
+        product.setStock(5);
+        productRepository.save(product);
+
+        mockMvc.perform(
+                get("/api/products/" + product.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(100, response.getData().getStock());
+        });
+
+        mockMvc.perform(
+                delete("/api/products/" + product.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+
+        mockMvc.perform(
+                get("/api/products/" + product.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isNotFound()
+        );
+    }
+
+    @Test
+    void getFailedProductNotFoundIsCached() throws Exception {
+        double hitsBefore = meterRegistry.get("cache.gets").tag("cache", "product.detail").tag("result", "hit").functionCounter().count();
+        double missesBefore = meterRegistry.get("cache.gets").tag("cache", "product.detail").tag("result", "miss").functionCounter().count();
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(
+                    get("/api/products/123")
+                            .header("Authorization", authorizationToken)
+                            .accept(MediaType.APPLICATION_JSON)
+            ).andExpect(
+                    status().isNotFound()
+            ).andDo(result -> {
+                WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+                });
+                assertEquals("Product is not found.", response.getErrors());
+            });
+        }
+
+        assertEquals(missesBefore + 1, meterRegistry.get("cache.gets").tag("cache", "product.detail").tag("result", "miss").functionCounter().count());
+        assertEquals(hitsBefore + 1, meterRegistry.get("cache.gets").tag("cache", "product.detail").tag("result", "hit").functionCounter().count());
+    }
+
     @Test
     void getSuccessProductWithVariant() throws Exception {
         Category category = categoryRepository.findById(categoryId).orElse(null);
@@ -841,6 +1240,19 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void getSuccessStatementCountNotDependOnVariantCount() throws Exception {
+        Product smallProduct = createProductWithVariants("Product Small", 1);
+        Product largeProduct = createProductWithVariants("Product Large", 6);
+
+        long smallStatementCount = countStatementsOfGet("/api/products/" + smallProduct.getId());
+        long largeStatementCount = countStatementsOfGet("/api/products/" + largeProduct.getId());
+
+        // user lookup for the token, product with category and variants, photos, variant attributes
+        assertEquals(smallStatementCount, largeStatementCount);
+        assertTrue(largeStatementCount <= 4, "statement count was " + largeStatementCount);
+    }
+
     @Test
     void getSuccessProductWithVariantAndPhoto() throws Exception {
         Category category = categoryRepository.findById(categoryId).orElse(null);
@@ -1018,6 +1430,447 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void importSuccessCsvWithVariantsAndRowErrors() throws Exception {
+        createProductWithoutVariant("Existing Product", 1);
+
+        String body = """
+                name,description,categoryId,hasVariant,price,stock,sku,attribute1Key,attribute1Value
+                Fishing Rod 100,"Carbon rod, 2 meters",%1$d,false,150000,10,,,
+                Reel 200,Spinning reel,%1$d,true,250000,5,reel-200-black,color,black
+                Reel 200,Spinning reel,%1$d,true,260000,3,reel-200-red,color,red
+                existing product,Duplicate of an existing name,%1$d,false,1000,1,,,
+                Hook 300,Hook,%1$d,false,abc,1,,,
+                Line 400,Fishing line,%1$d,false,5000,7,,,
+                """.formatted(categoryId);
+
+        mockMvc.perform(
+                post("/api/products/import")
+                        .header("Authorization", authorizationToken)
+                        .contentType("text/csv")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(body)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductImportResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(3, response.getData().getImported());
+            assertEquals(2, response.getData().getFailed());
+            assertEquals(List.of(5L, 6L), response.getData().getErrors().stream().map(ProductImportResponse.RowError::getRow).toList());
+            assertEquals("Product name is already exists.", response.getData().getErrors().get(0).getMessage());
+            assertEquals("'price' must be a number.", response.getData().getErrors().get(1).getMessage());
+        });
+
+        Product rod = productRepository.findAll().stream().filter(product -> product.getName().equals("Fishing Rod 100")).findFirst().orElse(null);
+        assertNotNull(rod);
+        assertEquals("Carbon rod, 2 meters", rod.getDescription());
+        assertEquals(10, rod.getStock());
+
+        Product reel = productRepository.findAll().stream().filter(product -> product.getName().equals("Reel 200")).findFirst().orElse(null);
+        assertNotNull(reel);
+        assertTrue(reel.getHasVariant());
+        assertNull(reel.getStock());
+        List<ProductVariant> variants = productVariantRepository.findAll().stream()
+                .filter(variant -> variant.getProduct().getId().equals(reel.getId()))
+                .toList();
+        assertEquals(List.of("reel-200-black", "reel-200-red"), variants.stream().map(ProductVariant::getSku).sorted().toList());
+        assertEquals(2, productVariantAttributeRepository.count());
+
+        // imported products are listed and have their opening stock in the ledger
+        assertEquals(3, productListViewRepository.count());
+        assertEquals(10 + 5 + 3 + 7, stockMovementRepository.findAll().stream().mapToInt(StockMovement::getDelta).sum());
+    }
+
+    @Test
+    void importSuccessNdjsonInBatches() throws Exception {
+        int size = 1200;
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            body.append(objectMapper.writeValueAsString(ProductCreateRequest.builder()
+                    .name("Product Import " + i)
+                    .description("Product Description " + i)
+                    .categoryId(categoryId)
+                    .hasVariant(false)
+                    .price(1000 + i)
+                    .stock(i % 10)
+                    .build())).append('\n');
+        }
+        // a broken line, an unknown category, a name repeated in the same body and a failed validation
+        body.append("{not json\n");
+        body.append("{\"name\":\"Product Unknown Category\",\"description\":\"Description\",\"categoryId\":").append(categoryId + 1000).append(",\"hasVariant\":false,\"price\":1,\"stock\":1}\n");
+        body.append("{\"name\":\"PRODUCT IMPORT 1\",\"description\":\"Description\",\"categoryId\":").append(categoryId).append(",\"hasVariant\":false,\"price\":1,\"stock\":1}\n");
+        body.append("{\"name\":\"Product No Price\",\"description\":\"Description\",\"categoryId\":").append(categoryId).append(",\"hasVariant\":false}\n");
+
+        mockMvc.perform(
+                post("/api/products/import")
+                        .header("Authorization", authorizationToken)
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(body.toString())
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductImportResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(size, response.getData().getImported());
+            assertEquals(4, response.getData().getFailed());
+
+            List<ProductImportResponse.RowError> errors = response.getData().getErrors();
+            assertEquals(List.of((long) size + 1, (long) size + 2, (long) size + 3, (long) size + 4), errors.stream().map(ProductImportResponse.RowError::getRow).toList());
+            assertTrue(errors.get(0).getMessage().startsWith("Row is not a valid product"));
+            assertEquals("Category is not found.", errors.get(1).getMessage());
+            assertEquals("Product name is already exists.", errors.get(2).getMessage());
+            assertEquals("Price and Stock must be included when 'hasVariant' is false.", errors.get(3).getMessage());
+        });
+
+        assertEquals(size, productRepository.count());
+        assertEquals(size, productListViewRepository.count());
+    }
+
+    @Test
+    void importFailedCsvWithoutNameColumn() throws Exception {
+        mockMvc.perform(
+                post("/api/products/import")
+                        .header("Authorization", authorizationToken)
+                        .contentType("text/csv")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("title,description\nProduct,Description\n")
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Import header must contain the 'name' column.", response.getErrors());
+        });
+    }
+
+    @Test
+    void exportSuccessCsv() throws Exception {
+        String body = """
+                name,description,categoryId,hasVariant,price,stock,sku,attribute1Key,attribute1Value
+                Fishing Rod 100,"Carbon rod, 2 meters",%1$d,false,150000,10,,,
+                Reel 200,Spinning reel,%1$d,true,250000,5,reel-200-black,color,black
+                Reel 200,Spinning reel,%1$d,true,260000,3,reel-200-red,color,red
+                """.formatted(categoryId);
+        mockMvc.perform(
+                post("/api/products/import")
+                        .header("Authorization", authorizationToken)
+                        .contentType("text/csv")
+                        .content(body)
+        ).andExpect(
+                status().isOk()
+        );
+
+        MvcResult asyncResult = mockMvc.perform(
+                get("/api/products/export")
+                        .header("Authorization", authorizationToken)
+        ).andExpect(
+                request().asyncStarted()
+        ).andReturn();
+
+        mockMvc.perform(
+                asyncDispatch(asyncResult)
+        ).andExpect(
+                status().isOk()
+        ).andExpect(
+                content().contentTypeCompatibleWith("text/csv")
+        ).andExpect(
+                header().doesNotExist("Content-Encoding")
+        ).andDo(result -> {
+            List<String> lines = result.getResponse().getContentAsString().lines().toList();
+            assertEquals(4, lines.size());
+            assertEquals("id,name,description,categoryId,categoryName,hasVariant,price,stock,variantId,sku,attribute1Key,attribute1Value,attribute2Key,attribute2Value", lines.get(0));
+            assertTrue(lines.get(1).contains(",Fishing Rod 100,\"Carbon rod, 2 meters\"," + categoryId + ",Category Test,false,150000,10,,,,,,"));
+            assertTrue(lines.get(2).contains(",Reel 200,Spinning reel," + categoryId + ",Category Test,true,250000,5,"));
+            assertTrue(lines.get(2).endsWith(",reel-200-black,color,black,,"));
+            assertTrue(lines.get(3).endsWith(",reel-200-red,color,red,,"));
+        });
+    }
+
+    @Test
+    void exportSuccessNdjsonGzip() throws Exception {
+        int size = 300;
+        for (int i = 0; i < size; i++) {
+            createProductWithoutVariant("Product Export " + i, i);
+        }
+
+        MvcResult asyncResult = mockMvc.perform(
+                get("/api/products/export")
+                        .queryParam("format", "ndjson")
+                        .header("Authorization", authorizationToken)
+                        .header("Accept-Encoding", "deflate, gzip;q=0.8")
+        ).andExpect(
+                request().asyncStarted()
+        ).andReturn();
+
+        mockMvc.perform(
+                asyncDispatch(asyncResult)
+        ).andExpect(
+                status().isOk()
+        ).andExpect(
+                content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+        ).andExpect(
+                header().string("Content-Encoding", "gzip")
+        ).andDo(result -> {
+            List<String> lines;
+            try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+                lines = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+            }
+            assertEquals(size, lines.size());
+
+            List<ProductExportResponse> products = new ArrayList<>();
+            for (String line : lines) {
+                products.add(objectMapper.readValue(line, ProductExportResponse.class));
+            }
+            assertEquals("Product Export 0", products.get(0).getName());
+            assertEquals(size - 1, products.get(size - 1).getStock());
+            assertTrue(products.stream().allMatch(product -> product.getVariants() == null));
+        });
+    }
+
+    @Test
+    void exportFailedUnknownFormat() throws Exception {
+        mockMvc.perform(
+                get("/api/products/export")
+                        .queryParam("format", "xml")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Format must be csv or ndjson.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getStockHistoryFailedProductNotFound() throws Exception {
+        mockMvc.perform(
+                get("/api/products/99999/stock-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isNotFound()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Product is not found.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getStockHistoryFailedStartDateAfterEndDate() throws Exception {
+        Product product = createProductWithoutVariant("Product Test", 10);
+
+        mockMvc.perform(
+                get("/api/products/" + product.getId() + "/stock-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("from", "2025-06-03")
+                        .param("to", "2025-06-01")
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Start date 2025-06-03 must be before or equal to end date 2025-06-01.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getStockHistorySuccessFromSnapshotAndLedgerTail() throws Exception {
+        Product product = createProductWithoutVariant("Product Test", 105);
+        LocalDate firstDay = LocalDate.now().minusDays(10);
+        Instant base = firstDay.atStartOfDay(ZoneId.systemDefault()).toInstant();
+
+        saveStockMovement(product.getId(), 100, base.plus(Duration.ofHours(1)));
+        saveStockMovement(product.getId(), -20, base.plus(Duration.ofDays(1)).plus(Duration.ofHours(1)));
+        saveStockMovement(product.getId(), 5, base.plus(Duration.ofDays(2)).plus(Duration.ofHours(1)));
+        assertEquals(1, stockHistoryService.takeSnapshots(base.plus(Duration.ofDays(3))));
+        // taking the same snapshot again is a no-op
+        assertEquals(0, stockHistoryService.takeSnapshots(base.plus(Duration.ofDays(3))));
+
+        // the movements before the snapshot are not read anymore
+        stockMovementRepository.deleteAllInBatch();
+        saveStockMovement(product.getId(), -10, base.plus(Duration.ofDays(4)).plus(Duration.ofHours(1)));
+        saveStockMovement(product.getId(), 30, base.plus(Duration.ofDays(6)).plus(Duration.ofHours(1)));
+
+        mockMvc.perform(
+                get("/api/products/" + product.getId() + "/stock-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("from", firstDay.plusDays(5).toString())
+                        .param("to", firstDay.plusDays(7).toString())
+                        .param("points", "3")
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductStockHistoryResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(product.getId(), response.getData().getProductId());
+            assertEquals(Duration.ofDays(1).toSeconds(), response.getData().getBucketSeconds());
+            assertEquals(75, response.getData().getOpeningStock());
+            assertEquals(105, response.getData().getClosingStock());
+
+            List<ProductStockHistoryResponse.Point> points = response.getData().getPoints();
+            assertEquals(3, points.size());
+            assertEquals(base.plus(Duration.ofDays(5)), points.get(0).getStart());
+            assertEquals(List.of(75, 105, 105), points.stream().map(ProductStockHistoryResponse.Point::getStock).toList());
+            assertEquals(List.of(0, 30, 0), points.stream().map(ProductStockHistoryResponse.Point::getInbound).toList());
+            assertEquals(List.of(0, 1, 0), points.stream().map(ProductStockHistoryResponse.Point::getMovements).toList());
+        });
+    }
+
+    @Test
+    void getStockHistorySuccessOverlappingSnapshotRunsWriteOneSnapshot() throws Exception {
+        Product product = createProductWithoutVariant("Product Test", 10);
+        LocalDate firstDay = LocalDate.now().minusDays(3);
+        Instant base = firstDay.atStartOfDay(ZoneId.systemDefault()).toInstant();
+        saveStockMovement(product.getId(), 10, base.plus(Duration.ofHours(1)));
+
+        int runs = 4;
+        ExecutorService executorService = Executors.newFixedThreadPool(runs);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs; i++) {
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    return stockHistoryService.takeSnapshots(base.plus(Duration.ofDays(1)));
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        assertEquals(1, stockSnapshotRepository.count());
+
+        mockMvc.perform(
+                get("/api/products/" + product.getId() + "/stock-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .param("from", firstDay.plusDays(2).toString())
+                        .param("to", firstDay.plusDays(2).toString())
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductStockHistoryResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(10, response.getData().getOpeningStock());
+        });
+    }
+
+    @Test
+    void getStockHistorySuccessSnapshotWaitsForLateMovement() throws Exception {
+        Product product = createProductWithoutVariant("Product Test", 10);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        CountDownLatch stamped = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        try {
+            // the movement is stamped before the boundary but its transaction commits after the snapshot started
+            Future<?> writer = executorService.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                stockRepository.insertStockMovements(List.of(StockMovement.builder()
+                        .productId(product.getId())
+                        .delta(7)
+                        .sourceType(StockMovementSourceType.PRODUCT)
+                        .sourceId(product.getId())
+                        .build()));
+                stamped.countDown();
+                try {
+                    commit.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            stamped.await();
+            Thread.sleep(1500);
+            Instant snapshotAt = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+            Future<Integer> snapshot = executorService.submit(() -> stockHistoryService.takeSnapshots(snapshotAt));
+            assertThrows(TimeoutException.class, () -> snapshot.get(500, TimeUnit.MILLISECONDS));
+
+            commit.countDown();
+            writer.get();
+            assertEquals(1, snapshot.get());
+        } finally {
+            commit.countDown();
+            executorService.shutdownNow();
+        }
+
+        List<StockSnapshot> snapshots = stockSnapshotRepository.findAll();
+        assertEquals(1, snapshots.size());
+        assertEquals(7, snapshots.getFirst().getStock());
+    }
+
+    @Test
+    void getStockHistorySuccessFollowsProductWrites() throws Exception {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("name", "Product Test");
+        params.add("description", "Product Description Test");
+        params.add("categoryId", categoryId.toString());
+        params.add("hasVariant", "false");
+        params.add("stock", "10");
+        params.add("price", "150500");
+
+        String content = mockMvc.perform(
+                multipart(HttpMethod.POST, "/api/products")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .params(params)
+        ).andExpect(
+                status().isCreated()
+        ).andReturn().getResponse().getContentAsString();
+        Integer productId = objectMapper.<WebResponse<ProductResponse>>readValue(content, new TypeReference<>() {
+        }).getData().getId();
+
+        params.set("stock", "4");
+        mockMvc.perform(
+                put("/api/products/" + productId)
+                        .header("Authorization", authorizationToken)
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .params(params)
+        ).andExpect(
+                status().isOk()
+        );
+
+        List<StockMovement> stockMovements = stockMovementRepository.findAll();
+        assertEquals(List.of(10, -6), stockMovements.stream().map(StockMovement::getDelta).toList());
+        stockMovements.forEach(stockMovement -> {
+            assertEquals(StockMovementSourceType.PRODUCT, stockMovement.getSourceType());
+            assertEquals(productId, stockMovement.getSourceId());
+        });
+
+        mockMvc.perform(
+                get("/api/products/" + productId + "/stock-history")
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        ).andDo(result -> {
+            WebResponse<ProductStockHistoryResponse> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertNull(response.getErrors());
+            assertEquals(0, response.getData().getOpeningStock());
+            assertEquals(4, response.getData().getClosingStock());
+            assertTrue(response.getData().getPoints().size() <= 100);
+            assertEquals(10, response.getData().getPoints().stream().mapToInt(ProductStockHistoryResponse.Point::getInbound).sum());
+            assertEquals(6, response.getData().getPoints().stream().mapToInt(ProductStockHistoryResponse.Point::getOutbound).sum());
+        });
+    }
+
     @Test
     void updateFailedTokenNotSend() throws Exception {
         mockMvc.perform(
@@ -1425,6 +2278,117 @@ class ProductControllerTest {
         });
     }
 
+    @Test
+    void updateSuccessReplacedPhotoFileDeleted() throws Exception {
+        byte[] replacedImage = randomPng();
+        byte[] image = randomPng();
+        ProductResponse created = createProductWithPhoto("Product Test", replacedImage);
+        Path replacedLocation = storedProductPhotoLocation(replacedImage, "png");
+        assertEquals(replacedLocation.toString(), created.getPhotos().getFirst().getImageLocation());
+
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("name", "Product Test");
+        params.add("description", "Product Description Test");
+        params.add("categoryId", categoryId.toString());
+        params.add("hasVariant", "false");
+        params.add("stock", "10");
+        params.add("price", "10000");
+        params.add("productPhotos[0].id", productPhotoRepository.findAll().getFirst().getId());
+
+        String content = mockMvc.perform(
+                multipart(HttpMethod.PUT, "/api/products/" + created.getId())
+                        .file(new MockMultipartFile("productPhotos[0].image", "1.png", "image/png", image))
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .params(params)
+        ).andExpect(
+                status().isOk()
+        ).andReturn().getResponse().getContentAsString();
+        WebResponse<ProductResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+
+        // the new image is named by its content, the replaced one is deleted once the update commits
+        String imageLocation = response.getData().getPhotos().getFirst().getImageLocation();
+        assertEquals(storedProductPhotoLocation(image, "png").toString(), imageLocation);
+        assertTrue(Files.exists(Path.of(imageLocation)));
+        assertFalse(Files.exists(replacedLocation));
+    }
+
+    @Test
+    void deleteSuccessSharedPhotoFileKeptUntilLastReference() throws Exception {
+        byte[] image = randomPng();
+        ProductResponse first = createProductWithPhoto("Product Test 1", image);
+        ProductResponse second = createProductWithPhoto("Product Test 2", image);
+
+        // identical content is stored once
+        Path location = storedProductPhotoLocation(image, "png");
+        assertEquals(location.toString(), first.getPhotos().getFirst().getImageLocation());
+        assertEquals(location.toString(), second.getPhotos().getFirst().getImageLocation());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT ref_count FROM stored_photos WHERE image_location = ?", Integer.class, location.toString()));
+
+        mockMvc.perform(
+                delete("/api/products/" + first.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+        assertTrue(Files.exists(location));
+
+        mockMvc.perform(
+                delete("/api/products/" + second.getId())
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isOk()
+        );
+        assertFalse(Files.exists(location));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stored_photos WHERE image_location = ?", Integer.class, location.toString()));
+    }
+
+    private ProductResponse createProductWithPhoto(String name, byte[] image) throws Exception {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("name", name);
+        params.add("description", "Product description test");
+        params.add("categoryId", categoryId.toString());
+        params.add("hasVariant", "false");
+        params.add("stock", "10");
+        params.add("price", "10000");
+
+        String content = mockMvc.perform(
+                multipart(HttpMethod.POST, "/api/products")
+                        .file(new MockMultipartFile("productPhotos[0].image", "1.png", "image/png", image))
+                        .header("Authorization", authorizationToken)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .params(params)
+        ).andExpect(
+                status().isCreated()
+        ).andReturn().getResponse().getContentAsString();
+        WebResponse<ProductResponse> response = objectMapper.readValue(content, new TypeReference<>() {
+        });
+        return response.getData();
+    }
+
+    // content no other test uploads, so its stored file is only referenced by the current test
+    private static byte[] randomPng() throws IOException {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random();
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.setRGB(x, y, random.nextInt(0xFFFFFF));
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        return output.toByteArray();
+    }
+
+    private static Path storedProductPhotoLocation(byte[] content, String extension) throws NoSuchAlgorithmException {
+        String hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        return Path.of("upload/product", hash.substring(0, 2), hash.substring(2, 4), hash + "." + extension);
+    }
 
     @Test
     void updateSuccessForProductWithoutVariant() throws Exception {
@@ -1792,6 +2756,29 @@ class ProductControllerTest {
         });
     }
 
+    private Product createProductWithoutVariant(String name, int stock) {
+        Category category = categoryRepository.findById(categoryId).orElseThrow();
+
+        Product product = new Product();
+        product.setName(name);
+        product.setDescription("Product Description Test");
+        product.setHasVariant(false);
+        product.setPrice(120500);
+        product.setStock(stock);
+        product.setCategory(category);
+        return productRepository.save(product);
+    }
+
+    private void saveStockMovement(Integer productId, int delta, Instant createdAt) {
+        stockMovementRepository.save(StockMovement.builder()
+                .productId(productId)
+                .delta(delta)
+                .sourceType(StockMovementSourceType.PRODUCT)
+                .sourceId(productId)
+                .createdAt(createdAt)
+                .build());
+    }
+
     private void createBulkProduct(int size) {
         Category category = categoryRepository.findById(categoryId).orElse(null);
         assertNotNull(category);
@@ -1848,10 +2835,69 @@ class ProductControllerTest {
         productPhotoRepository.saveAll(productPhotoList);
         productVariantRepository.saveAll(variantList);
         productVariantAttributeRepository.saveAll(variantAttributeList);
+
+        // the rows above bypass ProductService, so the list read model has to be rebuilt
+        productListViewService.rebuild(500);
     }
 
 //    @Test
 //    void creat10kProduct() {
 //        createBulkProduct(10_000);
 //    }
-}
\ No newline at end of file
+
+    private Product createProductWithVariants(String name, int variantCount) {
+        Category category = categoryRepository.findById(categoryId).orElseThrow();
+
+        Product product = new Product();
+        product.setName(name);
+        product.setDescription("Product Description Test");
+        product.setHasVariant(true);
+        product.setCategory(category);
+        productRepository.save(product);
+
+        for (int i = 0; i < variantCount; i++) {
+            ProductVariant productVariant = new ProductVariant();
+            productVariant.setProduct(product);
+            productVariant.setSku(name + "-sku-" + i);
+            productVariant.setPrice(100500);
+            productVariant.setStock(100);
+            productVariantRepository.save(productVariant);
+
+            for (String attributeKey : List.of("color", "size")) {
+                ProductVariantAttribute productVariantAttribute = new ProductVariantAttribute();
+                productVariantAttribute.setProductVariant(productVariant);
+                productVariantAttribute.setAttributeKey(attributeKey);
+                productVariantAttribute.setAttributeValue(attributeKey + "-" + i);
+                productVariantAttributeRepository.save(productVariantAttribute);
+            }
+
+            ProductPhoto productPhoto = new ProductPhoto();
+            productPhoto.setId(UUID.randomUUID().toString());
+            productPhoto.setProduct(product);
+            productPhoto.setImageLocation("upload/product/" + productPhoto.getId() + ".jpg");
+            productPhotoRepository.save(productPhoto);
+        }
+
+        return product;
+    }
+
+    private long countStatementsOfGet(String url) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        // every measured request loads the user for its token, not only the first one
+        userPrincipalCache.evictAll();
+        statistics.clear();
+        try {
+            mockMvc.perform(
+                    get(url)
+                            .header("Authorization", authorizationToken)
+                            .accept(MediaType.APPLICATION_JSON)
+            ).andExpect(
+                    status().isOk()
+            );
+            return statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package dev.mfikri.widuriestock.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.ProductDetailCache;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
+import dev.mfikri.widuriestock.entity.Address;
+import dev.mfikri.widuriestock.entity.Role;
+import dev.mfikri.widuriestock.entity.Supplier;
+import dev.mfikri.widuriestock.entity.User;
+import dev.mfikri.widuriestock.entity.product.Category;
+import dev.mfikri.widuriestock.entity.product.Product;
+import dev.mfikri.widuriestock.entity.product.ProductVariant;
+import dev.mfikri.widuriestock.model.WebResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductCreateRequest;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductResponse;
+import dev.mfikri.widuriestock.model.incoming_product.IncomingProductUpdateRequest;
+import dev.mfikri.widuriestock.model.report.ProductPurchaseReportResponse;
+import dev.mfikri.widuriestock.model.report.SupplierPurchaseReportResponse;
+import dev.mfikri.widuriestock.repository.*;
+import dev.mfikri.widuriestock.service.IncomingProductService;
+import dev.mfikri.widuriestock.service.PurchaseReportService;
+import dev.mfikri.widuriestock.util.JwtUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PurchaseReportControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
+    @Autowired
+    private SupplierRepository supplierRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductVariantRepository productVariantRepository;
+
+    @Autowired
+    private ProductPhotoRepository productPhotoRepository;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private IncomingProductRepository incomingProductRepository;
+
+    @Autowired
+    private IncomingProductService incomingProductService;
+
+    @Autowired
+    private PurchaseReportService purchaseReportService;
+
+    @Autowired
+    private ProductDetailCache productDetailCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    Integer jwtTtl = 300000;
+
+    String ownerToken = "";
+    String adminWarehouseToken = "";
+    Supplier supplier = new Supplier();
+    Supplier otherSupplier = new Supplier();
+    Product productWithoutVariant = new Product();
+    Product productWithVariant = new Product();
+    ProductVariant productVariant = new ProductVariant();
+
+    @BeforeEach
+    void setUp() {
+        stockMovementRepository.deleteAllInBatch();
+        incomingProductRepository.deleteAll();
+        jdbcTemplate.update("DELETE FROM purchase_monthly_aggregates");
+        userRepository.deleteAll();
+        userPrincipalCache.evictAll();
+        supplierRepository.deleteAll();
+        productPhotoRepository.deleteAllInBatch();
+        productRepository.deleteAll();
+        categoryRepository.deleteAll();
+        productDetailCache.evictAll();
+
+        User adminWarehouse = new User();
+        adminWarehouse.setUsername("admin_warehouse");
+        adminWarehouse.setPassword(passwordEncoder.encode("admin_warehouse_password"));
+        adminWarehouse.setFirstName("John Doe");
+        adminWarehouse.setPhone("+6283213121");
+        adminWarehouse.setRole(Role.ADMIN_WAREHOUSE.name());
+        userRepository.save(adminWarehouse);
+        adminWarehouseToken = "Bearer " + jwtUtil.generate(adminWarehouse.getUsername(), jwtTtl);
+
+        User owner = new User();
+        owner.setUsername("owner");
+        owner.setPassword(passwordEncoder.encode("owner123"));
+        owner.setFirstName("owner");
+        owner.setPhone("+000000000");
+        owner.setRole("OWNER");
+        userRepository.save(owner);
+        ownerToken = "Bearer " + jwtUtil.generate(owner.getUsername(), jwtTtl);
+
+        supplier = saveSupplier("PT ABC", "62811111");
+        otherSupplier = saveSupplier("PT XYZ", "62822222");
+
+        Category category = new Category();
+        category.setName("Reels");
+        category.setDescription("Reels category");
+        categoryRepository.save(category);
+
+        productWithoutVariant = new Product();
+        productWithoutVariant.setName("Fishing Rood 123");
+        productWithoutVariant.setPrice(100500);
+        productWithoutVariant.setStock(20);
+        productWithoutVariant.setDescription("Description about rood");
+        productWithoutVariant.setHasVariant(false);
+        productWithoutVariant.setCategory(category);
+        productRepository.save(productWithoutVariant);
+
+        productWithVariant = new Product();
+        productWithVariant.setName("Product Test");
+        productWithVariant.setDescription("Description about product test");
+        productWithVariant.setHasVariant(true);
+        productWithVariant.setCategory(category);
+        productRepository.save(productWithVariant);
+
+        productVariant = new ProductVariant();
+        productVariant.setProduct(productWithVariant);
+        productVariant.setSku("product-test-black");
+        productVariant.setPrice(100500);
+        productVariant.setStock(100);
+        productVariantRepository.save(productVariant);
+    }
+
+    @Test
+    void getReportFailedForbidden() throws Exception {
+        mockMvc.perform(
+                get("/api/reports/purchases/suppliers")
+                        .header("Authorization", adminWarehouseToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isForbidden()
+        );
+    }
+
+    @Test
+    void getReportFailedMonthRangeNotValid() throws Exception {
+        mockMvc.perform(
+                get("/api/reports/purchases/products")
+                        .queryParam("from", "2025-12")
+                        .queryParam("to", "2025-01")
+                        .header("Authorization", ownerToken)
+                        .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(
+                status().isBadRequest()
+        ).andDo(result -> {
+            WebResponse<String> response = objectMapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {
+            });
+            assertEquals("Start month 2025-12 must be before or equal to end month 2025-01.", response.getErrors());
+        });
+    }
+
+    @Test
+    void getReportSuccessFollowsEveryWrite() throws Exception {
+        IncomingProductResponse october = incomingProductService.create(createRequest(LocalDate.parse("2025-10-10"), supplier.getId(), List.of(
+                withoutVariant(100, 10),
+                IncomingProductCreateRequest.IncomingProductDetails.builder()
+                        .hasVariant(true)
+                        .productId(productWithVariant.getId())
+                        .incomingProductVariantDetails(List.of(IncomingProductCreateRequest.IncomingProductVariantDetail.builder()
+                                .variantId(productVariant.getId())
+                                .pricePerUnit(200)
+                                .quantity(5)
+                                .build()))
+                        .build())));
+        IncomingProductResponse november = incomingProductService.create(createRequest(LocalDate.parse("2025-11-03"), supplier.getId(), List.of(
+                withoutVariant(100, 4))));
+
+        List<SupplierPurchaseReportResponse> suppliers = getSupplierReport("2025-10", "2025-12");
+        assertEquals(2, suppliers.size());
+        assertSupplierRow(suppliers.get(0), YearMonth.parse("2025-10"), supplier, 15, 2000, 2);
+        assertSupplierRow(suppliers.get(1), YearMonth.parse("2025-11"), supplier, 4, 400, 1);
+
+        List<ProductPurchaseReportResponse> products = getProductReport("2025-10", "2025-12");
+        assertEquals(3, products.size());
+        assertProductRow(products.get(0), YearMonth.parse("2025-10"), productWithoutVariant, 10, 1000, 1);
+        assertProductRow(products.get(1), YearMonth.parse("2025-10"), productWithVariant, 5, 1000, 1);
+        assertProductRow(products.get(2), YearMonth.parse("2025-11"), productWithoutVariant, 4, 400, 1);
+
+        // moving a transaction to another month and supplier moves its lines with it
+        IncomingProductUpdateRequest updateRequest = IncomingProductUpdateRequest.builder()
+                .id(november.getId())
+                .dateIn(LocalDate.parse("2025-12-01"))
+                .supplierId(otherSupplier.getId())
+                .username("admin_warehouse")
+                .totalProducts(1)
+                .updateReason("Wrong supplier")
+                .incomingProductDetails(List.of(IncomingProductUpdateRequest.IncomingProductDetail.builder()
+                        .id(november.getIncomingProductDetails().getFirst().getId())
+                        .productId(productWithoutVariant.getId())
+                        .hasVariant(false)
+                        .pricePerUnit(100)
+                        .quantity(6)
+                        .build()))
+                .build();
+        incomingProductService.update(updateRequest);
+
+        suppliers = getSupplierReport("2025-10", "2025-12");
+        assertEquals(2, suppliers.size());
+        assertSupplierRow(suppliers.get(0), YearMonth.parse("2025-10"), supplier, 15, 2000, 2);
+        assertSupplierRow(suppliers.get(1), YearMonth.parse("2025-12"), otherSupplier, 6, 600, 1);
+
+        // removing a variant detail keeps the line, removing the detail drops it
+        IncomingProductResponse.IncomingProductDetail variantDetail = october.getIncomingProductDetails().stream()
+                .filter(IncomingProductResponse.IncomingProductDetail::getHasVariant)
+                .findFirst().orElseThrow();
+        incomingProductService.deleteIncomingProductVariantDetails(variantDetail.getIncomingProductVariantDetails().getFirst().getId());
+
+        products = getProductReport("2025-10", "2025-10");
+        assertEquals(2, products.size());
+        assertProductRow(products.get(1), YearMonth.parse("2025-10"), productWithVariant, 0, 0, 1);
+
+        incomingProductService.deleteIncomingProductDetails(variantDetail.getId());
+        products = getProductReport("2025-10", "2025-10");
+        assertEquals(1, products.size());
+        assertProductRow(products.getFirst(), YearMonth.parse("2025-10"), productWithoutVariant, 10, 1000, 1);
+
+        incomingProductService.deleteIncomingProduct(november.getId());
+        suppliers = getSupplierReport("2025-10", "2025-12");
+        assertEquals(1, suppliers.size());
+        assertSupplierRow(suppliers.getFirst(), YearMonth.parse("2025-10"), supplier, 10, 1000, 1);
+
+        // filters narrow the rows to one supplier or one product
+        assertEquals(0, getSupplierReport("2025-10", "2025-12", "supplierId", otherSupplier.getId()).size());
+        assertEquals(0, getProductReport("2025-10", "2025-12", "productId", productWithVariant.getId()).size());
+    }
+
+    @Test
+    void rebuildSuccessMatchesIncrementalAggregates() throws Exception {
+        IncomingProductResponse october = incomingProductService.create(createRequest(LocalDate.parse("2025-10-10"), supplier.getId(), List.of(
+                withoutVariant(100, 10))));
+        incomingProductService.create(createRequest(LocalDate.parse("2025-10-20"), otherSupplier.getId(), List.of(
+                withoutVariant(150, 2))));
+        incomingProductService.create(createRequest(LocalDate.parse("2026-01-05"), supplier.getId(), List.of(
+                withoutVariant(120, 7))));
+        incomingProductService.addIncomingProductDetails(october.getId(), IncomingProductCreateRequest.IncomingProductDetails.builder()
+                .hasVariant(true)
+                .productId(productWithVariant.getId())
+                .incomingProductVariantDetails(List.of(IncomingProductCreateRequest.IncomingProductVariantDetail.builder()
+                        .variantId(productVariant.getId())
+                        .pricePerUnit(300)
+                        .quantity(3)
+                        .build()))
+                .build());
+
+        List<SupplierPurchaseReportResponse> incrementalSuppliers = getSupplierReport("2025-01", "2026-12");
+        List<ProductPurchaseReportResponse> incrementalProducts = getProductReport("2025-01", "2026-12");
+        assertEquals(3, incrementalSuppliers.size());
+        assertSupplierRow(incrementalSuppliers.get(0), YearMonth.parse("2025-10"), supplier, 13, 1900, 2);
+
+        // drift the aggregates on purpose, the rebuild recomputes them from the details
+        jdbcTemplate.update("UPDATE purchase_monthly_aggregates SET quantity = quantity + 100");
+        assertEquals(4, purchaseReportService.rebuild());
+
+        assertEquals(incrementalSuppliers, getSupplierReport("2025-01", "2026-12"));
+        assertEquals(incrementalProducts, getProductReport("2025-01", "2026-12"));
+    }
+
+    private Supplier saveSupplier(String supplierName, String phone) {
+        Supplier supplier = new Supplier();
+        supplier.setSupplierName(supplierName);
+        supplier.setPhone(phone);
+
+        Address address = new Address();
+        address.setStreet("JLN Diponegoro");
+        address.setVillage("Kel. Air Baru");
+        address.setDistrict("Kec. Pantai Indah");
+        address.setCity("Meikarta");
+        address.setProvince("Jakarta");
+        address.setCountry("Indonesia");
+        address.setPostalCode("123123");
+        address.setSupplier(supplier);
+        supplier.setAddress(address);
+        supplierRepository.save(supplier);
+        addressRepository.save(address);
+        return supplier;
+    }
+
+    private IncomingProductCreateRequest createRequest(LocalDate dateIn, Integer supplierId, List<IncomingProductCreateRequest.IncomingProductDetails> details) {
+        return IncomingProductCreateRequest.builder()
+                .dateIn(dateIn)
+                .supplierId(supplierId)
+                .username("admin_warehouse")
+                .totalProducts(details.size())
+                .incomingProductDetails(new ArrayList<>(details))
+                .build();
+    }
+
+    private IncomingProductCreateRequest.IncomingProductDetails withoutVariant(int pricePerUnit, int quantity) {
+        return IncomingProductCreateRequest.IncomingProductDetails.builder()
+                .hasVariant(false)
+                .productId(productWithoutVariant.getId())
+                .pricePerUnit(pricePerUnit)
+                .quantity(quantity)
+                .build();
+    }
+
+    private List<SupplierPurchaseReportResponse> getSupplierReport(String from, String to, Object... filter) throws Exception {
+        return getReport("/api/reports/purchases/suppliers", from, to, filter, new TypeReference<>() {
+        });
+    }
+
+    private List<ProductPurchaseReportResponse> getProductReport(String from, String to, Object... filter) throws Exception {
+        return getReport("/api/reports/purchases/products", from, to, filter, new TypeReference<>() {
+        });
+    }
+
+    private <T> List<T> getReport(String path, String from, String to, Object[] filter, TypeReference<WebResponse<List<T>>> typeReference) throws Exception {
+        var requestBuilder = get(path)
+                .queryParam("from", from)
+                .queryParam("to", to)
+                .header("Authorization", ownerToken)
+                .accept(MediaType.APPLICATION_JSON);
+        for (int i = 0; i < filter.length; i += 2) {
+            requestBuilder.queryParam(filter[i].toString(), filter[i + 1].toString());
+        }
+
+        String content = mockMvc.perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        WebResponse<List<T>> response = objectMapper.readValue(content, typeReference);
+        assertNull(response.getErrors());
+        return response.getData();
+    }
+
+    private static void assertSupplierRow(SupplierPurchaseReportResponse row, YearMonth month, Supplier supplier, long quantity, long totalPrice, int lines) {
+        assertEquals(month, row.getMonth());
+        assertEquals(supplier.getId(), row.getSupplier().getId());
+        assertEquals(supplier.getSupplierName(), row.getSupplier().getName());
+        assertEquals(quantity, row.getQuantity());
+        assertEquals(totalPrice, row.getTotalPrice());
+        assertEquals(lines, row.getLines());
+    }
+
+    private static void assertProductRow(ProductPurchaseReportResponse row, YearMonth month, Product product, long quantity, long totalPrice, int lines) {
+        assertEquals(month, row.getMonth());
+        assertEquals(product.getId(), row.getProduct().getId());
+        assertEquals(product.getName(), row.getProduct().getName());
+        assertEquals(quantity, row.getQuantity());
+        assertEquals(totalPrice, row.getTotalPrice());
+        assertEquals(lines, row.getLines());
+    }
+}
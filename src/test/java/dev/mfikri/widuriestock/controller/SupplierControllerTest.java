@@ -2,6 +2,7 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
 import dev.mfikri.widuriestock.entity.Address;
 import dev.mfikri.widuriestock.entity.Role;
 import dev.mfikri.widuriestock.entity.Supplier;
@@ -44,6 +45,9 @@ class SupplierControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
     @Autowired
     private AddressRepository addressRepository;
 
@@ -66,6 +70,7 @@ class SupplierControllerTest {
     void setUp() {
         addressRepository.deleteAll();
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
         supplierRepository.deleteAll();
         User user2 = new User();
         user2.setUsername("owner");
@@ -2,6 +2,8 @@ package dev.mfikri.widuriestock.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.mfikri.widuriestock.cache.UserPrincipalCache;
+import dev.mfikri.widuriestock.config.UserPrincipalCacheProperties;
 import dev.mfikri.widuriestock.entity.Address;
 import dev.mfikri.widuriestock.entity.Role;
 import dev.mfikri.widuriestock.entity.User;
@@ -44,6 +46,12 @@ class UserControllerTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserPrincipalCache userPrincipalCache;
+
+    @Autowired
+    private UserPrincipalCacheProperties userPrincipalCacheProperties;
+
     @Autowired
     private AddressRepository addressRepository;
 
@@ -67,6 +75,7 @@ class UserControllerTest {
         refreshTokenRepository.deleteAll();
         addressRepository.deleteAll();
         userRepository.deleteAll();
+        userPrincipalCache.evictAll();
 
         createTestOwnerUser();
     }
@@ -1018,6 +1027,117 @@ class UserControllerTest {
     // test authorization
 
 
+    @Test
+    void authenticateUsesCachedPrincipal() throws Exception {
+        User user = saveUser("adminwhs", Role.ADMIN_WAREHOUSE.toString());
+        String token = "Bearer " + jwtUtil.generate(user.getUsername(), jwtTtl);
+
+        mockMvc.perform(
+                get("/api/users/owner")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", token)
+        ).andExpect(
+                status().isForbidden()
+        );
+
+        // changed behind the service, the cached principal is used until it expires
+        User stored = userRepository.findById(user.getUsername()).orElseThrow();
+        stored.setRole("OWNER");
+        userRepository.save(stored);
+        mockMvc.perform(
+                get("/api/users/owner")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", token)
+        ).andExpect(
+                status().isForbidden()
+        );
+
+        userPrincipalCache.evictAll();
+        mockMvc.perform(
+                get("/api/users/owner")
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", token)
+        ).andExpect(
+                status().isOk()
+        );
+    }
+
+    @Test
+    void updateRoleEvictsCachedPrincipal() throws Exception {
+        User user = saveUser("adminseller", Role.ADMIN_SELLER.toString());
+        String token = "Bearer " + jwtUtil.generate(user.getUsername(), jwtTtl);
+
+        mockMvc.perform(
+                post("/api/categories")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", token)
+                        .content("{}")
+        ).andExpect(
+                status().isForbidden()
+        );
+
+        mockMvc.perform(
+                multipart(HttpMethod.PATCH, "/api/users/adminseller")
+                        .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", authorizationToken)
+                        .param("role", Role.ADMIN_WAREHOUSE.toString())
+        ).andExpect(
+                status().isOk()
+        );
+
+        // authorized with the new role, then rejected by the validation of the empty body
+        mockMvc.perform(
+                post("/api/categories")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header("Authorization", token)
+                        .content("{}")
+        ).andExpect(
+                status().isBadRequest()
+        );
+    }
+
+    @Test
+    void authenticateWithRoleClaim() throws Exception {
+        saveUser("adminwhs", Role.ADMIN_WAREHOUSE.toString());
+        // the claim is trusted over the stored role while it is enabled
+        String token = "Bearer " + jwtUtil.generate("adminwhs", "OWNER", jwtTtl);
+
+        userPrincipalCacheProperties.setRoleClaimEnabled(true);
+        try {
+            mockMvc.perform(
+                    get("/api/users/owner")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("Authorization", token)
+            ).andExpect(
+                    status().isOk()
+            );
+
+            // a token issued before a role change falls back to the stored role
+            mockMvc.perform(
+                    multipart(HttpMethod.PATCH, "/api/users/adminwhs")
+                            .contentType(MediaType.MULTIPART_FORM_DATA_VALUE)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("Authorization", authorizationToken)
+                            .param("role", Role.ADMIN_SELLER.toString())
+            ).andExpect(
+                    status().isOk()
+            );
+
+            mockMvc.perform(
+                    get("/api/users/owner")
+                            .accept(MediaType.APPLICATION_JSON)
+                            .header("Authorization", token)
+            ).andExpect(
+                    status().isForbidden()
+            );
+        } finally {
+            userPrincipalCacheProperties.setRoleClaimEnabled(false);
+        }
+    }
+
     @Test
     void testAdminWarehouse() throws Exception{
         User user = new User();
@@ -1269,4 +1389,14 @@ class UserControllerTest {
             assertEquals(Role.ADMIN_SELLER.toString(), response.getData().getRole());
         });
     }
-}
\ No newline at end of file
+
+    private User saveUser(String username, String role) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword(passwordEncoder.encode(username + "_password"));
+        user.setFirstName("John Doe");
+        user.setPhone("+6283213121");
+        user.setRole(role);
+        return userRepository.save(user);
+    }
+}